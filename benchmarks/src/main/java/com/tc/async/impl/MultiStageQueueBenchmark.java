@@ -0,0 +1,111 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.util.concurrent.QueueFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of routing a context into {@link MultiStageQueueImpl} and taking it back out, without any worker thread, for
+ * contexts with a scheduling key and for those left to the shortest queue search.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiStageQueueBenchmark {
+
+  private static final int KEYS = 1024;
+
+  @Param({ "1", "4", "16" })
+  public int queueCount;
+
+  private MultiStageQueueImpl<Event> queue;
+  private Event[] keyed;
+  private Event unkeyed;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    queue = new MultiStageQueueImpl<Event>(queueCount, new QueueFactory<ContextWrapper<Event>>(), new DefaultLoggerProvider(), "benchmark", Integer.MAX_VALUE);
+    keyed = new Event[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      keyed[i] = new Event(i);
+    }
+    unkeyed = new Event(null);
+  }
+
+  @Benchmark
+  public ContextWrapper<Event> keyed() throws InterruptedException {
+    Event event = keyed[next++ & (KEYS - 1)];
+    queue.addMultiThreaded(event);
+    return drain();
+  }
+
+  @Benchmark
+  public ContextWrapper<Event> unkeyed() throws InterruptedException {
+    queue.addMultiThreaded(unkeyed);
+    return drain();
+  }
+
+  private ContextWrapper<Event> drain() throws InterruptedException {
+    for (int i = 0; i < queueCount; i++) {
+      ContextWrapper<Event> taken = queue.getSource(i).poll(0);
+      if (taken != null) {
+        return taken;
+      }
+    }
+    throw new IllegalStateException("nothing queued");
+  }
+
+  static class Event implements MultiThreadedEventContext {
+    private final Object key;
+
+    Event(Object key) {
+      this.key = key;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return key;
+    }
+
+    @Override
+    public boolean flush() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.AbstractEventHandler;
+import com.tc.async.api.EventHandlerException;
+import com.tc.async.api.Sink;
+import com.tc.async.api.Stage;
+import com.tc.util.concurrent.QueueFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events pushed through two in-process stages the way the server wires them: a multi-threaded stage keyed by
+ * concurrency key handing off to a single-threaded one, with the stage manager's configured queue type.  Each
+ * invocation sends a batch and returns once the last stage has seen all of it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SedaPipelineBenchmark {
+
+  private static final int BATCH = 1000;
+
+  @Param({ "1", "4" })
+  public int workers;
+
+  private StageManagerImpl stageManager;
+  private Sink<MultiStageQueueBenchmark.Event> first;
+  private MultiStageQueueBenchmark.Event[] events;
+  private volatile CountDownLatch done;
+
+  @Setup
+  public void setUp() {
+    stageManager = new StageManagerImpl(new ThreadGroup("benchmark"), new QueueFactory<ContextWrapper<Object>>());
+    final Stage<Object> second = stageManager.createStage("benchmark-second", Object.class, new AbstractEventHandler<Object>() {
+      @Override
+      public void handleEvent(Object context) throws EventHandlerException {
+        done.countDown();
+      }
+    }, 1, 0);
+    Stage<MultiStageQueueBenchmark.Event> stage = stageManager.createStage("benchmark-first", MultiStageQueueBenchmark.Event.class, new AbstractEventHandler<MultiStageQueueBenchmark.Event>() {
+      @Override
+      public void handleEvent(MultiStageQueueBenchmark.Event context) throws EventHandlerException {
+        second.getSink().addSingleThreaded(context.getSchedulingKey());
+      }
+    }, workers, 0);
+    first = stage.getSink();
+    events = new MultiStageQueueBenchmark.Event[BATCH];
+    for (int i = 0; i < BATCH; i++) {
+      events[i] = new MultiStageQueueBenchmark.Event(i % 64);
+    }
+    stageManager.startAll(new ConfigurationContextImpl(stageManager), Collections.emptyList());
+  }
+
+  @TearDown
+  public void tearDown() {
+    stageManager.stopAll();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void pipeline() throws InterruptedException {
+    done = new CountDownLatch(BATCH);
+    for (MultiStageQueueBenchmark.Event event : events) {
+      first.addMultiThreaded(event);
+    }
+    done.await();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two benchmark result files in the baseline format described in the module's README, the CSV JMH writes
+ * with {@code -rf csv}, and prints the change of every benchmark present in both.
+ * <p>
+ * Usage: {@code BaselineComparison <baseline.csv> <candidate.csv> [threshold percent, 10 by default]}
+ * <p>
+ * A benchmark regressed when its score moved the wrong way (down for throughput, up for the time modes) by more than
+ * the threshold and by more than the two error margins combined.  The exit status is 1 if any benchmark regressed.
+ */
+public class BaselineComparison {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: BaselineComparison <baseline.csv> <candidate.csv> [threshold percent]");
+      System.exit(2);
+    }
+    double threshold = (args.length > 2) ? Double.parseDouble(args[2]) : 10;
+    Map<String, Result> baseline = read(args[0]);
+    Map<String, Result> candidate = read(args[1]);
+
+    int regressions = 0;
+    System.out.println(String.format("%-90s %14s %14s %9s", "Benchmark", "Baseline", "Candidate", "Change"));
+    for (Map.Entry<String, Result> entry : candidate.entrySet()) {
+      Result before = baseline.get(entry.getKey());
+      Result after = entry.getValue();
+      if (null == before) {
+        System.out.println(String.format("%-90s %14s %14.3f %9s %s", entry.getKey(), "-", after.score, "new", after.unit));
+        continue;
+      }
+      double change = (after.score - before.score) * 100 / before.score;
+      double worse = after.higherIsBetter() ? -change : change;
+      boolean regressed = worse > threshold && Math.abs(after.score - before.score) > (before.error + after.error);
+      if (regressed) {
+        regressions += 1;
+      }
+      System.out.println(String.format("%-90s %14.3f %14.3f %+8.1f%% %s%s", entry.getKey(), before.score, after.score,
+          change, after.unit, regressed ? "  REGRESSION" : ""));
+    }
+    for (String missing : baseline.keySet()) {
+      if (!candidate.containsKey(missing)) {
+        System.out.println(String.format("%-90s %14.3f %14s %9s", missing, baseline.get(missing).score, "-", "gone"));
+      }
+    }
+    System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+    System.exit(regressions > 0 ? 1 : 0);
+  }
+
+  static Map<String, Result> read(String file) throws IOException {
+    List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+    if (lines.isEmpty()) {
+      throw new IOException(file + " is empty");
+    }
+    List<String> header = split(lines.get(0));
+    int benchmark = header.indexOf("Benchmark");
+    int mode = header.indexOf("Mode");
+    int threads = header.indexOf("Threads");
+    int score = header.indexOf("Score");
+    int error = header.indexOf("Score Error (99.9%)");
+    int unit = header.indexOf("Unit");
+    if (benchmark < 0 || mode < 0 || score < 0 || unit < 0) {
+      throw new IOException(file + " is not a JMH CSV result file");
+    }
+    Map<String, Result> results = new LinkedHashMap<>();
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      List<String> fields = split(line);
+      StringBuilder key = new StringBuilder(fields.get(benchmark)).append(" ").append(fields.get(mode));
+      if (threads >= 0) {
+        key.append(" t=").append(fields.get(threads));
+      }
+      for (int i = 0; i < header.size(); i++) {
+        if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+          key.append(" ").append(header.get(i).substring("Param: ".length())).append("=").append(fields.get(i));
+        }
+      }
+      results.put(key.toString(), new Result(fields.get(mode), number(fields.get(score)),
+          (error >= 0) ? number(fields.get(error)) : 0, fields.get(unit)));
+    }
+    return results;
+  }
+
+  private static double number(String field) {
+    // a sample count of one leaves no error margin
+    return (field.isEmpty() || "NaN".equals(field)) ? 0 : Double.parseDouble(field);
+  }
+
+  static List<String> split(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i += 1;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  static class Result {
+    final String mode;
+    final double score;
+    final double error;
+    final String unit;
+
+    Result(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+
+    boolean higherIsBetter() {
+      return "thrpt".equals(mode);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.io;
+
+import com.tc.bytes.TCByteBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a message shaped body (a few primitives, a string and an opaque payload) through
+ * {@link TCByteBufferOutputStream} and {@link TCByteBufferInputStream}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TCByteBufferStreamBenchmark {
+
+  @Param({ "64", "4096", "262144" })
+  public int payloadSize;
+
+  @Param({ "false", "true" })
+  public boolean direct;
+
+  private byte[] payload;
+  private TCByteBuffer[] encoded;
+
+  @Setup
+  public void setUp() {
+    payload = new byte[payloadSize];
+    new Random(0).nextBytes(payload);
+    encoded = write().toArray();
+  }
+
+  @Benchmark
+  public int writeMessage() {
+    TCByteBufferOutputStream out = write();
+    int written = out.getBytesWritten();
+    out.recycle();
+    return written;
+  }
+
+  @Benchmark
+  public void readMessage(Blackhole blackhole) throws IOException {
+    // reads from duplicates, so the encoded buffers are left as they are
+    TCByteBufferInputStream in = new TCByteBufferInputStream(encoded);
+    blackhole.consume(in.readLong());
+    blackhole.consume(in.readInt());
+    blackhole.consume(in.readBoolean());
+    blackhole.consume(in.readString());
+    byte[] body = new byte[in.readInt()];
+    in.readFully(body);
+    blackhole.consume(body);
+  }
+
+  private TCByteBufferOutputStream write() {
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream(4096, direct);
+    out.writeLong(42L);
+    out.writeInt(7);
+    out.writeBoolean(true);
+    out.writeString("com.tc.benchmark.Entity");
+    out.writeInt(payload.length);
+    out.write(payload);
+    out.close();
+    return out;
+  }
+}
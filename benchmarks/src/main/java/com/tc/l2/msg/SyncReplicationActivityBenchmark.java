@@ -0,0 +1,83 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.l2.msg;
+
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.l2.msg.SyncReplicationActivity.ActivityType;
+import com.tc.net.ClientID;
+import com.tc.object.FetchID;
+import com.tc.object.tx.TransactionID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the invoke activities every replicated client request turns into, and of their decoding on the
+ * passive.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyncReplicationActivityBenchmark {
+
+  @Param({ "0", "128", "8192" })
+  public int payloadSize;
+
+  private SyncReplicationActivity activity;
+  private TCByteBufferOutputStream serialized;
+
+  @Setup
+  public void setUp() {
+    activity = SyncReplicationActivity.createInvokeMessage(new FetchID(1), new ClientID(1), new TransactionID(2), new TransactionID(1),
+        ActivityType.INVOKE_ACTION, new byte[payloadSize], 3, "");
+    serialized = new TCByteBufferOutputStream();
+    activity.serializeTo(serialized);
+    serialized.close();
+  }
+
+  @Benchmark
+  public int serializeTo() {
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    activity.serializeTo(out);
+    int written = out.getBytesWritten();
+    out.recycle();
+    return written;
+  }
+
+  @Benchmark
+  public SyncReplicationActivity deserializeFrom() throws IOException {
+    return SyncReplicationActivity.deserializeFrom(new TCByteBufferInputStream(serialized.toArray()));
+  }
+}
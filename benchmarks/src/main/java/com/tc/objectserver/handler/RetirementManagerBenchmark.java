@@ -0,0 +1,113 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.object.tx.TransactionID;
+import com.tc.objectserver.api.Retiree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terracotta.entity.EntityMessage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Register, complete and retire cycles through one entity's {@link RetirementManager}, alone and with several threads
+ * each working on their own concurrency key the way the multi-threaded invoke stage does, and with one message
+ * deferring the retirement of another.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RetirementManagerBenchmark {
+
+  private RetirementManager retirementManager;
+  private final AtomicInteger keys = new AtomicInteger();
+
+  @Setup
+  public void setUp() {
+    retirementManager = new RetirementManager();
+  }
+
+  @State(Scope.Thread)
+  public static class Key {
+    int concurrencyKey;
+
+    @Setup
+    public void setUp(RetirementManagerBenchmark benchmark) {
+      concurrencyKey = benchmark.keys.incrementAndGet();
+    }
+  }
+
+  @Benchmark
+  public List<Retiree> retire(Key key) {
+    return cycle(key.concurrencyKey);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public List<Retiree> retireFromSeveralKeys(Key key) {
+    return cycle(key.concurrencyKey);
+  }
+
+  @Benchmark
+  public List<Retiree> retireDeferred(Key key) {
+    Message first = new Message();
+    retirementManager.registerWithMessage(first, key.concurrencyKey);
+    retirementManager.updateWithRetiree(first, first);
+    Message later = new Message();
+    retirementManager.deferRetirement(first, later);
+    retirementManager.retireForCompletion(first);
+    retirementManager.registerWithMessage(later, key.concurrencyKey);
+    retirementManager.updateWithRetiree(later, later);
+    return retirementManager.retireForCompletion(later);
+  }
+
+  private List<Retiree> cycle(int concurrencyKey) {
+    Message message = new Message();
+    retirementManager.registerWithMessage(message, concurrencyKey);
+    retirementManager.updateWithRetiree(message, message);
+    return retirementManager.retireForCompletion(message);
+  }
+
+  private static class Message implements EntityMessage, Retiree {
+    @Override
+    public void retired() {
+    }
+
+    @Override
+    public TransactionID getTransaction() {
+      return TransactionID.NULL_ID;
+    }
+  }
+}
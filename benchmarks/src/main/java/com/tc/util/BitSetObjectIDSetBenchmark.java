@@ -0,0 +1,105 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util;
+
+import com.tc.object.ObjectID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, updates, iteration and copies of a {@link BitSetObjectIDSet} holding either consecutive ids, its best case,
+ * or ids scattered widely enough that most bit sets hold a single id.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitSetObjectIDSetBenchmark {
+
+  private static final int PROBES = 4096;
+
+  @Param({ "100000" })
+  public int size;
+
+  @Param({ "1", "1000" })
+  public int stride;
+
+  private BitSetObjectIDSet set;
+  private ObjectID[] present;
+  private ObjectID[] absent;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    set = new BitSetObjectIDSet();
+    for (long i = 0; i < size; i++) {
+      set.add(new ObjectID(i * stride));
+    }
+    Random random = new Random(0);
+    present = new ObjectID[PROBES];
+    absent = new ObjectID[PROBES];
+    for (int i = 0; i < PROBES; i++) {
+      long index = random.nextInt(size);
+      present[i] = new ObjectID(index * stride);
+      // past the populated range, so adding it grows the set for real
+      absent[i] = new ObjectID((size + index) * stride);
+    }
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return set.contains(present[next++ & (PROBES - 1)]);
+  }
+
+  @Benchmark
+  public boolean addThenRemove() {
+    ObjectID id = absent[next++ & (PROBES - 1)];
+    set.add(id);
+    return set.remove(id);
+  }
+
+  @Benchmark
+  public long iterate() {
+    long sum = 0;
+    for (ObjectID id : set) {
+      sum += id.toLong();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public BitSetObjectIDSet copy() {
+    return new BitSetObjectIDSet(set);
+  }
+}
@@ -35,7 +35,9 @@ public interface EventHandler<EC> extends PostInit {
   public void handleEvent(EC context) throws EventHandlerException;
 
   /**
-   * Handle multiple events at once in a batch. This can be more performant because it avoids context switching
+   * Handle multiple events at once in a batch. This can be more performant because it avoids context switching.
+   * The stage calls this with the events it drained in queue order when its batch size (seda.&lt;stage&gt;.batchsize)
+   * is greater than 1.
    * 
    * @param context
    * @throws EventHandlerException
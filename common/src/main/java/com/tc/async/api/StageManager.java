@@ -23,6 +23,7 @@ import com.tc.stats.Stats;
 import com.tc.text.PrettyPrintable;
 
 import java.util.List;
+import java.util.Map;
 
 
 public interface StageManager extends PrettyPrintable {
@@ -43,5 +44,13 @@ public interface StageManager extends PrettyPrintable {
 
   public Stats[] getStats();
 
+  /**
+   * Queue wait and handler execution latencies, in nanoseconds, of every stage that keeps them. Each stage maps to
+   * counts, maxima and percentiles keyed like {@code queueWait.p99} or {@code execution.max}.
+   */
+  public Map<String, Map<String, Long>> getLatencyStats();
+
+  public void resetLatencyStats();
+
   public void cleanup();
 }
@@ -25,4 +25,9 @@ public interface StageQueueStats extends Stats {
   String getName();
 
   int getDepth();
+
+  /**
+   * @return number of contexts taken off this queue by the worker of a sibling queue, -1 if not monitored
+   */
+  long getStealCount();
 }
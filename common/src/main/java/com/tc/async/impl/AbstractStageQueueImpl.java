@@ -8,10 +8,14 @@ import com.tc.async.api.Source;
 import com.tc.async.api.SpecializedEventContext;
 import com.tc.async.api.StageQueueStats;
 import com.tc.exception.TCRuntimeException;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.UpdatableFixedHeap;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author cschanck
@@ -22,6 +26,15 @@ public class AbstractStageQueueImpl<EC> {
   public AbstractStageQueueImpl() {
   }
 
+  /**
+   * Whether the stage keeps queue wait and handler latency histograms.  Its contexts are only timed when it does.
+   */
+  static boolean isLatencyStatsEnabled(String stageName) {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    return props.getBoolean("seda." + stageName + ".latencystats",
+                            props.getBoolean(TCPropertiesConsts.TC_SEDA_LATENCY_STATS_ENABLED, false));
+  }
+
   interface SourceQueue<W> extends Source<W> {
     AbstractStageQueueImpl.StageQueueStatsCollector getStatsCollector();
 
@@ -55,6 +68,8 @@ public class AbstractStageQueueImpl<EC> {
 
     public abstract void contextRemoved();
 
+    public abstract void contextStolen();
+
     protected String makeWidth(String name, int width) {
       final int len = name.length();
       if (len == width) {
@@ -97,6 +112,11 @@ public class AbstractStageQueueImpl<EC> {
       // NO-OP
     }
 
+    @Override
+    public void contextStolen() {
+      // NO-OP
+    }
+
     @Override
     public void reset() {
       // NO-OP
@@ -111,11 +131,17 @@ public class AbstractStageQueueImpl<EC> {
     public int getDepth() {
       return -1;
     }
+
+    @Override
+    public long getStealCount() {
+      return -1;
+    }
   }
 
   static class StageQueueStatsCollectorImpl extends StageQueueStatsCollector {
 
     private final AtomicInteger count = new AtomicInteger(0);
+    private final AtomicLong steals = new AtomicLong(0);
     private final String name;
     private final String trimmedName;
 
@@ -126,7 +152,8 @@ public class AbstractStageQueueImpl<EC> {
 
     @Override
     public String getDetails() {
-      return this.name + " : " + this.count;
+      long stolen = this.steals.get();
+      return this.name + " : " + this.count + (stolen > 0 ? " stolen: " + stolen : "");
     }
 
     @Override
@@ -139,9 +166,15 @@ public class AbstractStageQueueImpl<EC> {
       this.count.decrementAndGet();
     }
 
+    @Override
+    public void contextStolen() {
+      this.steals.incrementAndGet();
+    }
+
     @Override
     public void reset() {
       this.count.set(0);
+      this.steals.set(0);
     }
 
     @Override
@@ -153,26 +186,44 @@ public class AbstractStageQueueImpl<EC> {
     public int getDepth() {
       return this.count.get();
     }
+
+    @Override
+    public long getStealCount() {
+      return this.steals.get();
+    }
   }
 
   static class DirectExecuteContext<EC> implements ContextWrapper<EC> {
     private final SpecializedEventContext context;
+    private final long enqueueTime;
 
-    public DirectExecuteContext(SpecializedEventContext context) {
+    public DirectExecuteContext(SpecializedEventContext context, long enqueueTime) {
       this.context = context;
+      this.enqueueTime = enqueueTime;
     }
 
     @Override
     public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
       this.context.execute();
     }
+
+    @Override
+    public long getEnqueueTime() {
+      return this.enqueueTime;
+    }
   }
 
   static class HandledContext<C> implements ContextWrapper<C> {
     private final C context;
+    private final long enqueueTime;
 
-    public HandledContext(C context) {
+    public HandledContext(C context, long enqueueTime) {
       this.context = context;
+      this.enqueueTime = enqueueTime;
+    }
+
+    C getContext() {
+      return this.context;
     }
 
     @Override
@@ -180,6 +231,11 @@ public class AbstractStageQueueImpl<EC> {
       handler.handleEvent(this.context);
     }
 
+    @Override
+    public long getEnqueueTime() {
+      return this.enqueueTime;
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (context.getClass().isInstance(obj)) {
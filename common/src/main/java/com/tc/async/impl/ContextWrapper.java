@@ -27,4 +27,10 @@ import com.tc.async.api.EventHandlerException;
    */
 public interface ContextWrapper<EC> {
   public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException;
+
+  /**
+   * @return the {@link System#nanoTime()} at which this wrapper was put on the queue it is being taken from, used to
+   *         measure how long contexts wait before the stage gets to them, 0 when the stage keeps no latency stats
+   */
+  public long getEnqueueTime();
 }
@@ -30,13 +30,19 @@ import com.tc.async.impl.AbstractStageQueueImpl.HandledContext;
 import com.tc.async.impl.AbstractStageQueueImpl.NullStageQueueStatsCollector;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.stats.Stats;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
 
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import static com.tc.async.impl.AbstractStageQueueImpl.DirectExecuteContext;
 import static com.tc.async.impl.AbstractStageQueueImpl.SourceQueue;
@@ -51,6 +57,8 @@ import static com.tc.async.impl.AbstractStageQueueImpl.StageQueueStatsCollectorI
 public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
 
   static final String FINDSTRATEGY_PROPNAME = "tc.stagequeueimpl.findstrategy";
+  // how long an idle worker blocks on its own queue before looking at its siblings again
+  private static final long STEAL_POLL_SLICE = 5;
 
 
   private static final ShortestFindStrategy SHORTEST_FIND_STRATEGY;
@@ -76,6 +84,9 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
   private final ShortestFindStrategy myShortestFindStrategy;
   private final Logger logger;
   private final MultiSourceQueueImpl<ContextWrapper<EC>>[] sourceQueues;
+  private final boolean workStealing;
+  // contexts are only stamped with their enqueue time when the stage keeps latency stats
+  private final boolean latencyStats;
   private volatile boolean closed = false;
   private volatile int fcheck = 0;  // used to start the shortest queue search
   private AtomicInteger partitionHand =new AtomicInteger(0);
@@ -107,6 +118,8 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
 
     this.logger = loggerProvider.getLogger(Sink.class.getName() + ": " + stageName);
     this.stageName = stageName;
+    this.latencyStats = AbstractStageQueueImpl.isLatencyStatsEnabled(stageName);
+    this.workStealing = queueCount > 1 && isWorkStealingEnabled(stageName);
     this.sourceQueues = new MultiSourceQueueImpl[queueCount];
     createWorkerQueues(queueCount, queueFactory, queueSize, stageName);
 
@@ -131,6 +144,19 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     return defaultVal;
   }
 
+  private static boolean isWorkStealingEnabled(String stageName) {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    return props.getBoolean("seda." + stageName + ".workstealing",
+                            props.getBoolean(TCPropertiesConsts.TC_SEDA_WORKSTEALING_ENABLED, false));
+  }
+
+  /**
+   * @return the enqueue time of a context put on the queue now, 0 when the stage keeps no latency stats
+   */
+  private long enqueueTime() {
+    return this.latencyStats ? System.nanoTime() : 0L;
+  }
+
   private int moduloQueueCount(int i) {
     if (moduloAnd) {
       return i & moduleMask;
@@ -176,7 +202,7 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     }
 
     boolean interrupted = Thread.interrupted();
-    ContextWrapper<EC> wrapper = new HandledContext<EC>(context);
+    ContextWrapper<EC> wrapper = new HandledContext<EC>(context, enqueueTime());
     try {
       while (true) {
         try {
@@ -209,8 +235,15 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     boolean interrupted = Thread.interrupted();
     MultiThreadedEventContext cxt = (MultiThreadedEventContext) context;
     int index = getSourceQueueFor(cxt);
-    ContextWrapper<EC> wrapper = (cxt.flush()) ? new FlushingHandledContext(context, index) : new HandledContext<EC>(
-      context);
+    ContextWrapper<EC> wrapper;
+    if (cxt.flush()) {
+      wrapper = new FlushingHandledContext(context, index);
+    } else if (workStealing && cxt.getSchedulingKey() == null) {
+      // no ordering requirement, so any idle worker may pick this up
+      wrapper = new StealableContext<EC>(context, enqueueTime());
+    } else {
+      wrapper = new HandledContext<EC>(context, enqueueTime());
+    }
     try {
       while (true) {
         try {
@@ -233,7 +266,7 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     if (closed) {
       throw new IllegalStateException("closed");
     }
-    ContextWrapper<EC> wrapper = new DirectExecuteContext<EC>(specialized);
+    ContextWrapper<EC> wrapper = new DirectExecuteContext<EC>(specialized, enqueueTime());
     boolean interrupted = Thread.interrupted();
     int index = getSourceQueueFor(specialized);
     try {
@@ -309,6 +342,16 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     return Math.abs(hashcode % arrayLength);
   }
 
+  private ContextWrapper<EC> stealFromSiblings(int thief) {
+    for (int i = 1; i < this.sourceQueues.length; i++) {
+      ContextWrapper<EC> stolen = this.sourceQueues[moduloQueueCount(thief + i)].steal();
+      if (stolen != null) {
+        return stolen;
+      }
+    }
+    return null;
+  }
+
   // Used for testing
   @Override
   public int size() {
@@ -403,6 +446,12 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     private final BlockingQueue<W> queue;
     private final int                      sourceIndex;
     private volatile StageQueueStatsCollector statsCollector;
+    // unordered contexts also sitting in the queue above, offered to idle sibling workers
+    private final Queue<StealableContext<EC>> stealable = new ConcurrentLinkedQueue<StealableContext<EC>>();
+    private final AtomicInteger stealsInFlight = new AtomicInteger();
+    private volatile boolean flushing = false;
+    // a flush waits here for the stolen contexts still running to be done
+    private final Object stealsDone = new Object();
 
     public MultiSourceQueueImpl(BlockingQueue<W> queue, int sourceIndex, StageQueueStatsCollector statsCollector) {
       this.queue = queue;
@@ -428,6 +477,7 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     // XXX: poor man's clear.
     @Override
     public int clear() {
+      this.stealable.clear();
       int cleared = 0;
       try {
         while (poll(0) != null) {
@@ -445,15 +495,39 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public W poll(long timeout) throws InterruptedException {
+      if (!workStealing || timeout <= 0) {
+        return pollLocal(timeout);
+      }
+      final long deadline = System.currentTimeMillis() + timeout;
+      W rv = pollLocal(0);
+      while (rv == null) {
+        ContextWrapper<EC> stolen = stealFromSiblings(this.sourceIndex);
+        if (stolen != null) {
+          return (W) stolen;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          break;
+        }
+        rv = pollLocal(Math.min(remaining, STEAL_POLL_SLICE));
+      }
+      return rv;
+    }
+
+    private W pollLocal(long timeout) throws InterruptedException {
       W rv = this.queue.poll(timeout, TimeUnit.MILLISECONDS);
-      if (rv != null) {
+      while (rv != null) {
         this.statsCollector.contextRemoved();
-        if (queue.isEmpty()) {
-          // set the empty index for shortest queue in hopes of catching it on the first try
-          fcheck = this.sourceIndex;
+        if (!(rv instanceof StealableContext) || claimLocally(rv)) {
+          break;
         }
-      } else {
+        // already run by a sibling worker
+        rv = this.queue.poll();
+      }
+      if (rv == null || queue.isEmpty()) {
+        // set the empty index for shortest queue in hopes of catching it on the first try
         fcheck = this.sourceIndex;
       }
       return rv;
@@ -463,6 +537,85 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     public void put(W context) throws InterruptedException {
       this.queue.put(context);
       this.statsCollector.contextAdded();
+      if (context instanceof StealableContext) {
+        @SuppressWarnings("unchecked")
+        StealableContext<EC> s = (StealableContext<EC>) context;
+        this.stealable.add(s);
+      }
+    }
+
+    /**
+     * Called by a sibling worker.  The stolen context stays in this queue and is skipped by the owning worker.
+     */
+    ContextWrapper<EC> steal() {
+      if (this.stealable.isEmpty()) {
+        return null;
+      }
+      // count before checking the flag so a flush either sees this steal or blocks it
+      this.stealsInFlight.incrementAndGet();
+      if (!this.flushing) {
+        StealableContext<EC> candidate;
+        while ((candidate = this.stealable.poll()) != null) {
+          if (candidate.claim()) {
+            this.statsCollector.contextStolen();
+            return new StolenContext(candidate, this);
+          }
+        }
+      }
+      releaseSteal();
+      return null;
+    }
+
+    void stolenContextDone() {
+      releaseSteal();
+    }
+
+    private void releaseSteal() {
+      // a flush sets the flag before looking at the count so it is either seen here or the flush sees zero
+      if (this.stealsInFlight.decrementAndGet() == 0 && this.flushing) {
+        synchronized (this.stealsDone) {
+          this.stealsDone.notifyAll();
+        }
+      }
+    }
+
+    private boolean claimLocally(W context) {
+      if (!((StealableContext<?>) context).claim()) {
+        return false;
+      }
+      // drop claimed entries from the head so the list does not grow when nobody is stealing
+      StealableContext<EC> head;
+      while ((head = this.stealable.peek()) != null && head.isClaimed()) {
+        this.stealable.poll();
+      }
+      return true;
+    }
+
+    /**
+     * A flush passing through this queue must not overtake contexts stolen from it that are still running elsewhere.
+     */
+    void waitForStolenContexts() {
+      if (!workStealing) {
+        return;
+      }
+      this.flushing = true;
+      boolean interrupted = false;
+      try {
+        synchronized (this.stealsDone) {
+          while (this.stealsInFlight.get() != 0) {
+            try {
+              this.stealsDone.wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+          }
+        }
+      } finally {
+        this.flushing = false;
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
     }
 
     @Override
@@ -481,6 +634,7 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
     private final EC context;
     private final int offset;
     private int executionCount = 0;
+    private long enqueueTime = enqueueTime();
     public FlushingHandledContext(EC context, int offset) {
       this.context = context;
       this.offset = offset;
@@ -488,11 +642,13 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
 
     @Override
     public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
+      sourceQueues[moduloQueueCount(executionCount + offset)].waitForStolenContexts();
       if (++executionCount == sourceQueues.length) {
 //  been through all the queues.  execute now.
         handler.handleEvent(this.context);
       } else {
-//  move to next queue
+//  move to next queue, queue wait is measured per hop
+        this.enqueueTime = enqueueTime();
         boolean interrupted = false;
         try {
           while (true) {
@@ -512,6 +668,11 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
       }
     }
 
+    @Override
+    public long getEnqueueTime() {
+      return this.enqueueTime;
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (context.getClass().isInstance(obj)) {
@@ -520,4 +681,72 @@ public class MultiStageQueueImpl<EC> implements StageQueue<EC> {
       return super.equals(obj);
     }
   }
+
+  /**
+   * Wraps a context without a scheduling key.  Whichever worker claims it first, the owner of the queue or an idle
+   * sibling, runs it; the other one skips it.
+   */
+  private static class StealableContext<C> implements ContextWrapper<C> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<StealableContext> CLAIMED = AtomicIntegerFieldUpdater.newUpdater(StealableContext.class, "claimed");
+    private final C context;
+    private final long enqueueTime;
+    private volatile int claimed = 0;
+
+    StealableContext(C context, long enqueueTime) {
+      this.context = context;
+      this.enqueueTime = enqueueTime;
+    }
+
+    boolean claim() {
+      return CLAIMED.compareAndSet(this, 0, 1);
+    }
+
+    boolean isClaimed() {
+      return this.claimed != 0;
+    }
+
+    @Override
+    public void runWithHandler(EventHandler<C> handler) throws EventHandlerException {
+      // only reached through the owning queue once claimed there
+      handler.handleEvent(this.context);
+    }
+
+    @Override
+    public long getEnqueueTime() {
+      return this.enqueueTime;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (context.getClass().isInstance(obj)) {
+        return context.equals(obj);
+      }
+      return super.equals(obj);
+    }
+  }
+
+  private class StolenContext implements ContextWrapper<EC> {
+    private final StealableContext<EC> stolen;
+    private final MultiSourceQueueImpl<?> victim;
+
+    StolenContext(StealableContext<EC> stolen, MultiSourceQueueImpl<?> victim) {
+      this.stolen = stolen;
+      this.victim = victim;
+    }
+
+    @Override
+    public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
+      try {
+        handler.handleEvent(this.stolen.context);
+      } finally {
+        this.victim.stolenContextDone();
+      }
+    }
+
+    @Override
+    public long getEnqueueTime() {
+      return this.stolen.enqueueTime;
+    }
+  }
 }
@@ -51,6 +51,8 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
 
   private final String stageName;
   private final Logger logger;
+  // contexts are only stamped with their enqueue time when the stage keeps latency stats
+  private final boolean latencyStats;
   private final SourceQueueImpl<ContextWrapper<EC>> sourceQueue;
   private volatile boolean closed = false;
 
@@ -67,9 +69,9 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
                           TCLoggerProvider loggerProvider,
                           String stageName,
                           int queueSize) {
-
     this.logger = loggerProvider.getLogger(Sink.class.getName() + ": " + stageName);
     this.stageName = stageName;
+    this.latencyStats = AbstractStageQueueImpl.isLatencyStatsEnabled(stageName);
     this.sourceQueue = createWorkerQueue(queueFactory, queueSize, stageName);
   }
 
@@ -107,7 +109,7 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
     }
 
     boolean interrupted = Thread.interrupted();
-    ContextWrapper<EC> wrapper = new HandledContext<EC>(context);
+    ContextWrapper<EC> wrapper = new HandledContext<EC>(context, enqueueTime());
     deliverToQueue("Single", wrapper);
   }
 
@@ -124,7 +126,7 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
 
     // NOTE:  We don't currently consult the predicate for multi-threaded events (the only implementation always returns true, in any case).
     MultiThreadedEventContext cxt = (MultiThreadedEventContext) context;
-    ContextWrapper<EC> wrapper = (cxt.flush()) ? new FlushingHandledContext(context) : new HandledContext<EC>(context);
+    ContextWrapper<EC> wrapper = (cxt.flush()) ? new FlushingHandledContext(context) : new HandledContext<EC>(context, enqueueTime());
     deliverToQueue("Multi", wrapper);
   }
 
@@ -133,10 +135,17 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
     if (closed) {
       throw new IllegalStateException("closed");
     }
-    ContextWrapper<EC> wrapper = new DirectExecuteContext<EC>(specialized);
+    ContextWrapper<EC> wrapper = new DirectExecuteContext<EC>(specialized, enqueueTime());
     deliverToQueue("Specialized", wrapper);
   }
 
+  /**
+   * @return the enqueue time of a context put on the queue now, 0 when the stage keeps no latency stats
+   */
+  private long enqueueTime() {
+    return this.latencyStats ? System.nanoTime() : 0L;
+  }
+
   private void deliverToQueue(String type, ContextWrapper<EC> wrapper) {
     boolean interrupted = Thread.interrupted();
     try {
@@ -281,6 +290,7 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
 
   private class FlushingHandledContext<T extends EC> implements ContextWrapper<EC> {
     private final EC context;
+    private final long enqueueTime = enqueueTime();
     private int executionCount = 0;
 
     public FlushingHandledContext(EC context) {
@@ -292,6 +302,11 @@ public class SingletonStageQueueImpl<EC> implements StageQueue<EC> {
       handler.handleEvent(this.context);
     }
 
+    @Override
+    public long getEnqueueTime() {
+      return this.enqueueTime;
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (context.getClass().isInstance(obj)) {
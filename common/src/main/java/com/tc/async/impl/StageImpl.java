@@ -26,13 +26,19 @@ import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.Sink;
 import com.tc.async.api.Source;
 import com.tc.async.api.Stage;
+import com.tc.async.impl.AbstractStageQueueImpl.HandledContext;
 import com.tc.exception.TCNotRunningException;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.stats.LatencyHistogram;
 import com.tc.util.concurrent.QueueFactory;
 import com.tc.util.concurrent.ThreadUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The SEDA Stage
  */
@@ -47,6 +53,10 @@ public class StageImpl<EC> implements Stage<EC> {
   private final Logger logger;
   private final int            sleepMs;
   private final boolean        pausable;
+  private final int            batchSize;
+  private final boolean        latencyStats;
+  private final LatencyHistogram queueWaitLatency = new LatencyHistogram();
+  private final LatencyHistogram executionLatency = new LatencyHistogram();
 
   private volatile boolean     paused;
   private volatile boolean     shutdown = true;
@@ -79,6 +89,12 @@ public class StageImpl<EC> implements Stage<EC> {
     if (this.pausable) {
       logger.warn("Stage pausing is enabled for stage " + name);
     }
+    this.batchSize = TCPropertiesImpl.getProperties().getInt("seda." + name + ".batchsize",
+        TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.TC_SEDA_BATCH_SIZE, 1));
+    if (this.batchSize > 1) {
+      logger.info("Stage " + name + " hands up to " + this.batchSize + " events at a time to its handler");
+    }
+    this.latencyStats = AbstractStageQueueImpl.isLatencyStatsEnabled(name);
   }
 
   @Override
@@ -131,7 +147,7 @@ public class StageImpl<EC> implements Stage<EC> {
       } else {
         threadName = threadName + ")";
       }
-      threads[i] = new WorkerThread<EC>(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable, name);
+      threads[i] = new WorkerThread<EC>(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable, name, batchSize);
       threads[i].start();
     }
   }
@@ -152,6 +168,30 @@ public class StageImpl<EC> implements Stage<EC> {
     return name;
   }
 
+  public boolean isLatencyStatsEnabled() {
+    return latencyStats;
+  }
+
+  /**
+   * Time, in nanoseconds, contexts spent queued before a worker picked them up.
+   */
+  public LatencyHistogram getQueueWaitLatency() {
+    return queueWaitLatency;
+  }
+
+  /**
+   * Time, in nanoseconds, spent in the handler per invocation. A batch handed to
+   * {@link EventHandler#handleEvents} counts as one invocation.
+   */
+  public LatencyHistogram getExecutionLatency() {
+    return executionLatency;
+  }
+
+  public void resetLatencyStats() {
+    queueWaitLatency.reset();
+    executionLatency.reset();
+  }
+
   @Override
   public String toString() {
     return "StageImpl(" + name + ")";
@@ -164,8 +204,11 @@ public class StageImpl<EC> implements Stage<EC> {
     private final int          sleepMs;
     private final boolean      pausable;
     private final String       stageName;
+    private final int          batchSize;
+    // taken from the queue while draining a batch, it runs next even if the batch throws
+    private ContextWrapper<EC> carried;
 
-    public WorkerThread(String name, Source<ContextWrapper<EC>> source, EventHandler<EC> handler, ThreadGroup group, Logger logger, int sleepMs, boolean pausable, String stageName) {
+    public WorkerThread(String name, Source<ContextWrapper<EC>> source, EventHandler<EC> handler, ThreadGroup group, Logger logger, int sleepMs, boolean pausable, String stageName, int batchSize) {
       super(group, name);
       tcLogger = logger;
       setDaemon(true);
@@ -174,6 +217,7 @@ public class StageImpl<EC> implements Stage<EC> {
       this.sleepMs = sleepMs;
       this.pausable = pausable;
       this.stageName = stageName;
+      this.batchSize = batchSize;
     }
 
     private void handleStageDebugPauses() {
@@ -188,15 +232,71 @@ public class StageImpl<EC> implements Stage<EC> {
       }
     }
 
+    /**
+     * Drains whatever else is already queued, up to the batch size, behind the given context and hands the plain
+     * handler contexts to {@link EventHandler#handleEvents} in one call.  Draining stops at the first wrapper that needs
+     * special treatment; it is carried over to run right after the batch, keeping queue order, whether or not the
+     * handler throws.
+     */
+    @SuppressWarnings("unchecked")
+    private void runBatch(HandledContext<EC> first, List<EC> batch, long start) throws InterruptedException, EventHandlerException {
+      batch.add(first.getContext());
+      while (batch.size() < batchSize) {
+        ContextWrapper<EC> next = source.poll(0);
+        if (next instanceof HandledContext) {
+          if (latencyStats) {
+            queueWaitLatency.record(start - next.getEnqueueTime());
+          }
+          batch.add(((HandledContext<EC>) next).getContext());
+        } else {
+          carried = next;
+          break;
+        }
+      }
+      if (batch.size() == 1) {
+        handler.handleEvent(batch.get(0));
+      } else {
+        handler.handleEvents(batch);
+      }
+    }
+
+    private long startTiming(ContextWrapper<EC> ctxt) {
+      if (!latencyStats) {
+        return 0;
+      }
+      long now = System.nanoTime();
+      queueWaitLatency.record(now - ctxt.getEnqueueTime());
+      return now;
+    }
+
+    private void stopTiming(long start) {
+      if (latencyStats) {
+        executionLatency.record(System.nanoTime() - start);
+      }
+    }
+
     @Override
+    @SuppressWarnings("unchecked")
     public void run() {
-      while (!shutdown || !source.isEmpty()) {
+      List<EC> batch = (batchSize > 1) ? new ArrayList<EC>(batchSize) : null;
+      while (!shutdown || carried != null || !source.isEmpty()) {
         ContextWrapper<EC> ctxt = null;
         try {
-          ctxt = source.poll(pollTime);
+          if (carried != null) {
+            ctxt = carried;
+            carried = null;
+          } else {
+            ctxt = source.poll(pollTime);
+          }
           if (ctxt != null) {
             handleStageDebugPauses();
-            ctxt.runWithHandler(handler);
+            long start = startTiming(ctxt);
+            if (batch != null && ctxt instanceof HandledContext) {
+              runBatch((HandledContext<EC>) ctxt, batch, start);
+            } else {
+              ctxt.runWithHandler(handler);
+            }
+            stopTiming(start);
           }
         } catch (InterruptedException ie) {
           if (shutdown) { continue; }
@@ -217,6 +317,9 @@ public class StageImpl<EC> implements Stage<EC> {
           // to the context will exist until another context comes in. This can potentially keep many objects in memory
           // longer than necessary
           ctxt = null;
+          if (batch != null) {
+            batch.clear();
+          }
         }
       }
     }
@@ -27,12 +27,15 @@ import com.tc.async.api.Stage;
 import com.tc.async.api.StageManager;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCProperties;
 import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.stats.Stats;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.RingBufferBlockingQueue.WaitStrategy;
+import com.tc.util.concurrent.RingBufferQueueFactory;
 import com.tc.util.concurrent.ThreadUtil;
 
 import java.util.Arrays;
@@ -42,6 +45,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -54,6 +58,9 @@ public class StageManagerImpl implements StageManager {
   private static final long        MONITOR_DELAY = TCPropertiesImpl.getProperties()
                                                      .getLong(TCPropertiesConsts.TC_STAGE_MONITOR_DELAY);
 
+  private static final String      RINGBUFFER_QUEUE = "ringbuffer";
+  private static final int         DEFAULT_RINGBUFFER_SIZE = 8192;
+
   private final Map<String, Stage<?>>   stages        = new ConcurrentHashMap<String, Stage<?>>();
   private final Map<String, Class<?>> classVerifications = new ConcurrentHashMap<String, Class<?>>();
   private TCLoggerProvider           loggerProvider;
@@ -112,15 +119,34 @@ public class StageManagerImpl implements StageManager {
     }
 
     int capacity = maxSize > 0 ? maxSize : Integer.MAX_VALUE;
-    // Note that the queue factory is used by all the stages under this manager so it can't be type-safe.
-    @SuppressWarnings("unchecked")
-    QueueFactory<ContextWrapper<EC>> queueFactory = (QueueFactory<ContextWrapper<EC>>) this.queueFactory;
+    QueueFactory<ContextWrapper<EC>> queueFactory = queueFactoryFor(name);
     Stage<EC> s = new StageImpl<EC>(loggerProvider, name, handler, queueCount, group, queueFactory, capacity);
     addStage(name, s);
     this.classVerifications.put(name,  verification);
     return s;
   }
 
+  private <EC> QueueFactory<ContextWrapper<EC>> queueFactoryFor(String name) {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    String type = stageProperty(props, name, "queue.type", TCPropertiesConsts.TC_SEDA_QUEUE_TYPE);
+    if (RINGBUFFER_QUEUE.equalsIgnoreCase(type)) {
+      WaitStrategy wait = WaitStrategy.parse(stageProperty(props, name, "queue.waitstrategy", TCPropertiesConsts.TC_SEDA_QUEUE_WAITSTRATEGY), WaitStrategy.PARK);
+      String size = stageProperty(props, name, "queue.ringbuffer.size", TCPropertiesConsts.TC_SEDA_QUEUE_RINGBUFFER_SIZE);
+      int ringSize = size != null ? Integer.parseInt(size.trim()) : DEFAULT_RINGBUFFER_SIZE;
+      loggerProvider.getLogger(getClass()).info("Stage " + name + " uses a ring buffer queue of size " + ringSize + " with " + wait + " waits");
+      return new RingBufferQueueFactory<ContextWrapper<EC>>(ringSize, wait);
+    }
+    // Note that the queue factory is used by all the stages under this manager so it can't be type-safe.
+    @SuppressWarnings("unchecked")
+    QueueFactory<ContextWrapper<EC>> queueFactory = (QueueFactory<ContextWrapper<EC>>) this.queueFactory;
+    return queueFactory;
+  }
+
+  private static String stageProperty(TCProperties props, String stage, String suffix, String defaultKey) {
+    String value = props.getProperty("seda." + stage + "." + suffix, true);
+    return value != null ? value : props.getProperty(defaultKey, true);
+  }
+
   private synchronized <EC> void addStage(String name, Stage<EC> s) {
     Object prev = stages.put(name, s);
     Assert.assertNull(prev);
@@ -184,6 +210,30 @@ public class StageManagerImpl implements StageManager {
     return stats;
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getLatencyStats() {
+    Map<String, Map<String, Long>> latencies = new TreeMap<String, Map<String, Long>>();
+    for (Stage<?> stage : stages.values()) {
+      if (stage instanceof StageImpl && ((StageImpl<?>) stage).isLatencyStatsEnabled()) {
+        StageImpl<?> impl = (StageImpl<?>) stage;
+        Map<String, Long> stageLatencies = new LinkedHashMap<String, Long>();
+        impl.getQueueWaitLatency().summarize("queueWait.", stageLatencies);
+        impl.getExecutionLatency().summarize("execution.", stageLatencies);
+        latencies.put(stage.getName(), stageLatencies);
+      }
+    }
+    return latencies;
+  }
+
+  @Override
+  public void resetLatencyStats() {
+    for (Stage<?> stage : stages.values()) {
+      if (stage instanceof StageImpl) {
+        ((StageImpl<?>) stage).resetLatencyStats();
+      }
+    }
+  }
+
   @Override
   public PrettyPrinter prettyPrint(PrettyPrinter out) {
     Map<String,Object> map = new LinkedHashMap<String,Object>();
@@ -38,4 +38,9 @@ public class TCByteBufferFactoryConfigImpl implements TCByteBufferFactoryConfig
     return (TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT, 3000));
   }
 
+  @Override
+  public int getMaxPooledBufferSize() {
+    return (TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.TC_BYTEBUFFER_POOL_MAX_BUFFER_SIZE_KB, 1024) * 1024);
+  }
+
 }
@@ -47,18 +47,22 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The communication thread. Creates {@link Selector selector}, registers {@link SocketChannel} to the selector and does
  * other NIO operations.
+ * <p>
+ * Reading and writing are done by separate selector threads. A worker comm may run several of each, in which case
+ * every connection is served by one reader and one writer picked by measured throughput, and
+ * {@link #rebalance(long)} moves live connections off a selector thread that is busier than its siblings.
  *
  * @author mgovinda
  */
@@ -68,10 +72,16 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   private final TCWorkerCommManager            workerCommMgr;
   private final String                         commThreadName;
   private final SocketParams                   socketParams;
-  private final CommThread                     readerComm;
-  private final CommThread                     writerComm;
+  private final SelectorStrategy               selectorStrategy;
+  private final CommThread[]                   readerComms;
+  private final CommThread[]                   writerComms;
   private final SetOnceFlag                    stopRequested = new SetOnceFlag();
 
+  // selector threads of each connection, only tracked when there is more than one reader or writer to choose from
+  private final boolean                        multiSelector;
+  private final ConcurrentHashMap<SelectableChannel, ChannelSelectors> channelSelectors = new ConcurrentHashMap<SelectableChannel, ChannelSelectors>();
+  private long                                 lastRebalanceNanos = System.nanoTime();
+
   // maintains weight of all L1 Connections which is handled by this WorkerComm
   private final HashMap<TCConnection, Integer> managedConnectionsMap;
   private int                                  clientWeights;
@@ -84,29 +94,65 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   }
 
   public CoreNIOServices(String commThreadName, TCWorkerCommManager workerCommManager, SocketParams socketParams) {
+    this(commThreadName, workerCommManager, socketParams, 1, 1, new NIOSelectorStrategy());
+  }
+
+  /**
+   * @param readerCount number of reader selector threads connections are spread over
+   * @param writerCount number of writer selector threads connections are spread over
+   * @param selectorStrategy how the selector threads wait for network events
+   */
+  public CoreNIOServices(String commThreadName, TCWorkerCommManager workerCommManager, SocketParams socketParams,
+                         int readerCount, int writerCount, SelectorStrategy selectorStrategy) {
+    if (readerCount <= 0 || writerCount <= 0) { throw new IllegalArgumentException("invalid selector thread count: "
+                                                                                  + readerCount + " readers, "
+                                                                                  + writerCount + " writers"); }
     this.commThreadName = commThreadName;
     this.workerCommMgr = workerCommManager;
     this.socketParams = socketParams;
+    this.selectorStrategy = selectorStrategy;
     this.managedConnectionsMap = new HashMap<TCConnection, Integer>();
-    this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER);
-    this.writerComm = new CommThread(COMM_THREAD_MODE.NIO_WRITER);
+    this.multiSelector = readerCount > 1 || writerCount > 1;
+    this.readerComms = new CommThread[readerCount];
+    for (int i = 0; i < readerCount; i++) {
+      this.readerComms[i] = new CommThread(COMM_THREAD_MODE.NIO_READER, readerCount > 1 ? i : -1);
+    }
+    this.writerComms = new CommThread[writerCount];
+    for (int i = 0; i < writerCount; i++) {
+      this.writerComms[i] = new CommThread(COMM_THREAD_MODE.NIO_WRITER, writerCount > 1 ? i : -1);
+    }
   }
 
   public void start() {
-    readerComm.start();
-    writerComm.start();
+    for (CommThread comm : readerComms) {
+      comm.start();
+    }
+    for (CommThread comm : writerComms) {
+      comm.start();
+    }
   }
 
   public void requestStop() {
     if (stopRequested.attemptSet()) {
-      readerComm.requestStop();
-      writerComm.requestStop();
+      for (CommThread comm : readerComms) {
+        comm.requestStop();
+      }
+      for (CommThread comm : writerComms) {
+        comm.requestStop();
+      }
     }
   }
 
   public void cleanupChannel(SocketChannel channel, Runnable callback) {
-    readerComm.cleanupChannel(channel, callback);
-    writerComm.cleanupChannel(channel, callback);
+    ChannelSelectors selectors = multiSelector ? channelSelectors.remove(channel) : null;
+    if (selectors != null) {
+      selectors.release();
+      selectors.reader.cleanupChannel(channel, callback);
+      selectors.writer.cleanupChannel(channel, callback);
+    } else {
+      readerComms[0].cleanupChannel(channel, callback);
+      writerComms[0].cleanupChannel(channel, callback);
+    }
   }
 
   @Override
@@ -120,24 +166,31 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     lsnr.addEventListener(this);
   }
 
-  // listener was with readerComm only
+  // listener was with the first readerComm only
   public void stopListener(ServerSocketChannel ssc, Runnable callback) {
-    readerComm.stopListener(ssc, callback);
+    readerComms[0].stopListener(ssc, callback);
   }
 
   private synchronized void listenerRemoved(TCListener listener) {
     boolean removed = listeners.remove(listener);
     Assert.eval(removed);
     updateListenerString();
-    readerComm.updateThreadName();
-    writerComm.updateThreadName();
+    updateThreadNames();
   }
 
   private synchronized void listenerAdded(TCListener listener) {
     listeners.add(listener);
     updateListenerString();
-    readerComm.updateThreadName();
-    writerComm.updateThreadName();
+    updateThreadNames();
+  }
+
+  private void updateThreadNames() {
+    for (CommThread comm : readerComms) {
+      comm.updateThreadName();
+    }
+    for (CommThread comm : writerComms) {
+      comm.updateThreadName();
+    }
   }
 
   private void updateListenerString() {
@@ -164,11 +217,25 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   }
 
   public long getTotalBytesRead() {
-    return readerComm.getTotalBytesRead() + writerComm.getTotalBytesRead();
+    long total = 0;
+    for (CommThread comm : readerComms) {
+      total += comm.getTotalBytesRead();
+    }
+    for (CommThread comm : writerComms) {
+      total += comm.getTotalBytesRead();
+    }
+    return total;
   }
 
   public long getTotalBytesWritten() {
-    return readerComm.getTotalBytesWritten() + writerComm.getTotalBytesWritten();
+    long total = 0;
+    for (CommThread comm : readerComms) {
+      total += comm.getTotalBytesWritten();
+    }
+    for (CommThread comm : writerComms) {
+      total += comm.getTotalBytesWritten();
+    }
+    return total;
   }
   
   public boolean compareWeights(CoreNIOServices incoming) {
@@ -206,11 +273,19 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   }
 
   protected CommThread getReaderComm() {
-    return this.readerComm;
+    return this.readerComms[0];
   }
 
   protected CommThread getWriterComm() {
-    return this.writerComm;
+    return this.writerComms[0];
+  }
+
+  protected CommThread[] getReaderComms() {
+    return this.readerComms.clone();
+  }
+
+  protected CommThread[] getWriterComms() {
+    return this.writerComms.clone();
   }
 
   /**
@@ -236,7 +311,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     // MainComm Thread
     if (workerCommMgr == null) { return; }
 
-    readerComm.unregister(channel);
+    readerComms[0].unregister(channel);
     final CoreNIOServices workerComm = workerCommMgr.getNextWorkerComm();
     connection.setCommWorker(workerComm);
     workerComm.addConnection(connection, addWeightBy);
@@ -287,48 +362,258 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   }
 
   void requestConnectInterest(TCConnectionImpl conn, SocketChannel sc) {
-    readerComm.requestConnectInterest(conn, sc);
+    readerComms[0].requestConnectInterest(conn, sc);
   }
 
   private void requestAcceptInterest(TCListenerImpl lsnr, ServerSocketChannel ssc) {
-    readerComm.requestAcceptInterest(lsnr, ssc);
+    readerComms[0].requestAcceptInterest(lsnr, ssc);
   }
 
   void requestReadInterest(TCChannelReader reader, ScatteringByteChannel channel) {
-    readerComm.requestReadInterest(reader, channel);
+    readerFor((SelectableChannel) channel).requestReadInterest(reader, channel);
   }
 
   void removeReadInterest(TCConnectionImpl conn, SelectableChannel channel) {
-    readerComm.removeReadInterest(conn, channel);
+    readerFor(channel).removeReadInterest(conn, channel);
   }
 
   void requestWriteInterest(TCChannelWriter writer, GatheringByteChannel channel) {
-    writerComm.requestWriteInterest(writer, channel);
+    writerFor((SelectableChannel) channel).requestWriteInterest(writer, channel);
   }
 
   void removeWriteInterest(TCConnectionImpl conn, SelectableChannel channel) {
-    writerComm.removeWriteInterest(conn, channel);
+    writerFor(channel).removeWriteInterest(conn, channel);
   }
 
   private void requestReadWriteInterest(TCConnectionImpl conn, SocketChannel sc) {
-    readerComm.requestReadInterest(conn, sc);
-    writerComm.requestWriteInterest(conn, sc);
+    readerFor(sc).requestReadInterest(conn, sc);
+    writerFor(sc).requestWriteInterest(conn, sc);
+  }
+
+  private CommThread readerFor(SelectableChannel channel) {
+    if (!multiSelector) { return readerComms[0]; }
+    ChannelSelectors selectors = selectorsFor(channel);
+    return selectors != null ? selectors.reader : readerComms[0];
+  }
+
+  private CommThread writerFor(SelectableChannel channel) {
+    if (!multiSelector) { return writerComms[0]; }
+    ChannelSelectors selectors = selectorsFor(channel);
+    return selectors != null ? selectors.writer : writerComms[0];
+  }
+
+  /**
+   * The selector threads serving the given channel, picking the least loaded reader and writer the first time the
+   * channel is seen.
+   */
+  private ChannelSelectors selectorsFor(SelectableChannel channel) {
+    ChannelSelectors selectors = channelSelectors.get(channel);
+    if (selectors == null && channel.isOpen()) {
+      ChannelSelectors created = new ChannelSelectors(channel, leastLoaded(readerComms), leastLoaded(writerComms));
+      selectors = channelSelectors.putIfAbsent(channel, created);
+      if (selectors == null) {
+        created.reader.channelCount.incrementAndGet();
+        created.writer.channelCount.incrementAndGet();
+        selectors = created;
+      }
+    }
+    return selectors;
+  }
+
+  /**
+   * The selector thread with the lowest measured throughput. Threads whose throughput is about as low (within a
+   * quarter, or a KiB/s) are told apart by the number of channels they serve, so that a burst of new, still idle,
+   * connections is spread out before any rate has been measured for them.
+   */
+  private static CommThread leastLoaded(CommThread[] comms) {
+    double minRate = Double.MAX_VALUE;
+    for (CommThread comm : comms) {
+      minRate = Math.min(minRate, comm.loadRate);
+    }
+    double threshold = minRate * 1.25 + 1024;
+    CommThread selected = null;
+    for (CommThread comm : comms) {
+      if (comm.loadRate <= threshold && (selected == null || comm.channelCount.get() < selected.channelCount.get())) {
+        selected = comm;
+      }
+    }
+    return selected;
+  }
+
+  private CommThread ownerOf(SelectableChannel channel, boolean reader) {
+    ChannelSelectors selectors = multiSelector ? channelSelectors.get(channel) : null;
+    if (selectors == null) { return null; }
+    return reader ? selectors.reader : selectors.writer;
+  }
+
+  /**
+   * Measures the bytes per second each selector thread, and each of the channels it serves, moved since the last call
+   * and moves at most one connection per direction off the busiest selector thread onto the least busy one. A
+   * connection is only moved when that narrows the gap between the two, so a single hot connection stays put while
+   * its neighbours move away from it.
+   */
+  void rebalance(long minimumRate) {
+    if (!multiSelector || stopRequested.isSet()) { return; }
+    long now = System.nanoTime();
+    double seconds = Math.max(now - lastRebalanceNanos, 1) / 1e9;
+    lastRebalanceNanos = now;
+    for (CommThread comm : readerComms) {
+      comm.sampleRate(seconds);
+    }
+    for (CommThread comm : writerComms) {
+      comm.sampleRate(seconds);
+    }
+    for (ChannelSelectors selectors : channelSelectors.values()) {
+      selectors.sampleRates(seconds);
+    }
+    rebalance(readerComms, true, minimumRate);
+    rebalance(writerComms, false, minimumRate);
+  }
+
+  private void rebalance(CommThread[] comms, boolean readers, long minimumRate) {
+    if (comms.length < 2) { return; }
+    CommThread busiest = comms[0];
+    CommThread idlest = comms[0];
+    for (CommThread comm : comms) {
+      if (comm.loadRate > busiest.loadRate) {
+        busiest = comm;
+      }
+      if (comm.loadRate < idlest.loadRate) {
+        idlest = comm;
+      }
+    }
+    double gap = busiest.loadRate - idlest.loadRate;
+    if (busiest.loadRate < minimumRate || gap < busiest.loadRate / 2) { return; }
+
+    ChannelSelectors candidate = null;
+    double candidateRate = 0;
+    for (ChannelSelectors selectors : channelSelectors.values()) {
+      if ((readers ? selectors.reader : selectors.writer) != busiest) {
+        continue;
+      }
+      double rate = readers ? selectors.readRate : selectors.writeRate;
+      if (rate > candidateRate && rate < gap) {
+        candidate = selectors;
+        candidateRate = rate;
+      }
+    }
+    if (candidate != null) {
+      migrate(candidate, busiest, idlest, readers);
+      // keep the estimates roughly right until the next sample
+      busiest.loadRate -= candidateRate;
+      idlest.loadRate += candidateRate;
+    }
+  }
+
+  /**
+   * Moves a live channel from one selector thread to another. The channel's key is cancelled on the old selector, by
+   * its own thread so that no select is in progress for it, and registered with the same interest ops and attachment
+   * on the new selector, ahead of any interest change made after the move. Interest changes that still reach the old
+   * thread are forwarded to the new one.
+   */
+  void migrate(final ChannelSelectors selectors, final CommThread from, final CommThread to, final boolean reader) {
+    from.addSelectorTask(new Runnable() {
+      @Override
+      public void run() {
+        if (channelSelectors.get(selectors.channel) != selectors || (reader ? selectors.reader : selectors.writer) != from) { return; }
+        SelectionKey key = selectors.channel.keyFor(from.selector);
+        final int ops;
+        final Object attachment;
+        if (key != null && key.isValid()) {
+          ops = key.interestOps();
+          attachment = key.attachment();
+          key.cancel();
+        } else {
+          // nothing registered yet or the channel is closing, later interest requests go to the new owner
+          ops = 0;
+          attachment = null;
+        }
+        if (attachment != null) {
+          // queued before the new owner is published so that it runs ahead of any interest change sent to the new
+          // owner, which would otherwise be overwritten by these ops
+          to.addSelectorTask(new Runnable() {
+            @Override
+            public void run() {
+              to.register(selectors.channel, ops, attachment);
+            }
+          });
+        }
+        if (reader) {
+          selectors.reader = to;
+        } else {
+          selectors.writer = to;
+        }
+        from.channelCount.decrementAndGet();
+        to.channelCount.incrementAndGet();
+        if (logger.isDebugEnabled()) {
+          logger.debug("Moved " + selectors.channel + " from " + from.getName() + " to " + to.getName());
+        }
+      }
+    });
+  }
+
+  ChannelSelectors getChannelSelectors(SelectableChannel channel) {
+    return channelSelectors.get(channel);
+  }
+
+  /**
+   * The reader and writer selector threads serving a channel, along with how many bytes went through it for measuring
+   * its throughput.
+   */
+  static final class ChannelSelectors {
+    final SelectableChannel channel;
+    volatile CommThread     reader;
+    volatile CommThread     writer;
+    final AtomicLong        bytesRead    = new AtomicLong();
+    final AtomicLong        bytesWritten = new AtomicLong();
+    // only touched by rebalance()
+    private long            lastBytesRead;
+    private long            lastBytesWritten;
+    double                  readRate;
+    double                  writeRate;
+
+    ChannelSelectors(SelectableChannel channel, CommThread reader, CommThread writer) {
+      this.channel = channel;
+      this.reader = reader;
+      this.writer = writer;
+    }
+
+    private void sampleRates(double seconds) {
+      long read = bytesRead.get();
+      long written = bytesWritten.get();
+      // smoothed the same way as the selector thread rates so the two can be compared
+      readRate = (readRate + (read - lastBytesRead) / seconds) / 2;
+      writeRate = (writeRate + (written - lastBytesWritten) / seconds) / 2;
+      lastBytesRead = read;
+      lastBytesWritten = written;
+    }
+
+    private void release() {
+      reader.channelCount.decrementAndGet();
+      writer.channelCount.decrementAndGet();
+    }
   }
 
   protected class CommThread extends Thread {
+    private final TCSelector                    tcSelector;
     private final Selector                      selector;
     private final LinkedBlockingQueue<Runnable> selectorTasks;
     private final String                        name;
     private final AtomicLong                    bytesRead    = new AtomicLong(0);
     private final AtomicLong                    bytesWritten = new AtomicLong(0);
     private final COMM_THREAD_MODE              mode;
+    // channels served and smoothed bytes per second, for spreading connections over several selector threads
+    final AtomicInteger                         channelCount = new AtomicInteger();
+    volatile double                             loadRate;
+    private long                                lastSampledBytes;
 
-    public CommThread(COMM_THREAD_MODE mode) {
-      name = commThreadName + (mode == COMM_THREAD_MODE.NIO_READER ? "_R" : "_W");
+    public CommThread(COMM_THREAD_MODE mode, int index) {
+      name = commThreadName + (mode == COMM_THREAD_MODE.NIO_READER ? "_R" : "_W") + (index >= 0 ? index : "");
       setDaemon(true);
       setName(name);
 
-      this.selector = createSelector();
+      this.tcSelector = createSelector();
+      this.selector = this.tcSelector.selector();
       this.selectorTasks = new LinkedBlockingQueue<Runnable>();
       this.mode = mode;
     }
@@ -346,13 +631,13 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
         logger.error("Unhandled exception from selectLoop", t);
         throw new RuntimeException(t);
       } finally {
-        dispose(selector, selectorTasks);
+        dispose(tcSelector, selectorTasks);
       }
     }
 
     public void requestStop() {
       try {
-        this.selector.wakeup();
+        this.tcSelector.wakeup();
       } catch (Exception e) {
         logger.error("Exception trying to stop " + getName() + ": ", e);
       }
@@ -363,8 +648,8 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
 
     @SuppressWarnings("resource")
-    private Selector createSelector() {
-      Selector selector1 = null;
+    private TCSelector createSelector() {
+      TCSelector selector1 = null;
 
       final int tries = 3;
 
@@ -372,7 +657,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       try {
         for (int i = 0; i < tries; i++) {
           try {
-            selector1 = Selector.open();
+            selector1 = selectorStrategy.openSelector();
             return selector1;
           } catch (IOException ioe) {
             throw new RuntimeException(ioe);
@@ -411,7 +696,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
           }
         }
       } finally {
-        this.selector.wakeup();
+        this.tcSelector.wakeup();
         Util.selfInterruptIfNeeded(isInterrupted);
       }
     }
@@ -560,12 +845,12 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       }
     }
 
-    private void dispose(Selector localSelector, LinkedBlockingQueue<Runnable> localSelectorTasks) {
+    private void dispose(TCSelector localSelector, LinkedBlockingQueue<Runnable> localSelectorTasks) {
       Assert.eval(Thread.currentThread() == this);
 
       if (localSelector != null) {
 
-        for (SelectionKey key : localSelector.keys()) {
+        for (SelectionKey key : localSelector.selector().keys()) {
           try {
             cleanupChannel(key.channel(), null);
           } catch (Exception e) {
@@ -590,7 +875,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private void selectLoop() throws IOException {
       Assert.eval(Thread.currentThread() == this);
 
-      Selector localSelector = this.selector;
+      TCSelector localSelector = this.tcSelector;
       LinkedBlockingQueue<Runnable> localSelectorTasks = this.selectorTasks;
 
       while (true) {
@@ -647,14 +932,13 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
         }
         Util.selfInterruptIfNeeded(isInterrupted);
 
-        final Set<SelectionKey> selectedKeys = localSelector.selectedKeys();
-        if ((0 == numKeys) && (0 == selectedKeys.size())) {
+        final int selectedKeyCount = localSelector.selectedKeyCount();
+        if ((0 == numKeys) && (0 == selectedKeyCount)) {
           continue;
         }
 
-        for (Iterator<SelectionKey> iter = selectedKeys.iterator(); iter.hasNext();) {
-          SelectionKey key = iter.next();
-          iter.remove();
+        for (int i = 0; i < selectedKeyCount; i++) {
+          SelectionKey key = localSelector.selectedKey(i);
 
           if (null == key) {
             logger.error("Selection key is null");
@@ -675,16 +959,30 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
 
             if (isReader() && key.isValid() && key.isReadable()) {
               int read;
+              long total = 0;
               TCChannelReader reader = (TCChannelReader) key.attachment();
               do {
                 read = reader.doRead();
                 this.bytesRead.addAndGet(read);
+                total += read;
               } while ((read != 0) && key.isReadable());
+              if (multiSelector) {
+                ChannelSelectors selectors = channelSelectors.get(key.channel());
+                if (selectors != null) {
+                  selectors.bytesRead.addAndGet(total);
+                }
+              }
             }
 
             if (key.isValid() && !isReader() && key.isWritable()) {
               int written = ((TCChannelWriter) key.attachment()).doWrite();
               this.bytesWritten.addAndGet(written);
+              if (multiSelector) {
+                ChannelSelectors selectors = channelSelectors.get(key.channel());
+                if (selectors != null) {
+                  selectors.bytesWritten.addAndGet(written);
+                }
+              }
             }
 
             TCConnection conn = (TCConnection) key.attachment();
@@ -704,6 +1002,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
             }
           }
         } // for
+        localSelector.clearSelectedKeys();
       } // while (true)
     }
 
@@ -769,6 +1068,29 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       return this.bytesWritten.get();
     }
 
+    public double getLoadRate() {
+      return this.loadRate;
+    }
+
+    private void sampleRate(double seconds) {
+      long bytes = isReader() ? getTotalBytesRead() : getTotalBytesWritten();
+      double rate = (bytes - this.lastSampledBytes) / seconds;
+      this.lastSampledBytes = bytes;
+      // smooth out bursts so that connections are not moved back and forth
+      this.loadRate = (this.loadRate + rate) / 2;
+    }
+
+    private void register(SelectableChannel channel, int ops, Object attachment) {
+      Assert.eval(Thread.currentThread() == this);
+      try {
+        channel.register(this.selector, ops, attachment);
+      } catch (ClosedChannelException cce) {
+        logger.debug("Channel closed while moving it to " + getName());
+      } catch (CancelledKeyException cke) {
+        logger.warn("Exception trying to move channel to " + getName() + ": " + cke);
+      }
+    }
+
     private void handleRequest(final InterestRequest req) {
       // ignore the request if we are stopped/stopping
       if (isStopRequested()) { return; }
@@ -791,9 +1113,21 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       return stopRequested.isSet();
     }
 
-    private void modifyInterest(InterestRequest request) {
+    private void modifyInterest(final InterestRequest request) {
       Assert.eval(Thread.currentThread() == this);
 
+      final CommThread owner = ownerOf(request.channel, isReader());
+      if (owner != null && owner != this) {
+        // the channel moved to another selector thread after this request was made
+        owner.addSelectorTask(new Runnable() {
+          @Override
+          public void run() {
+            owner.handleRequest(request);
+          }
+        });
+        return;
+      }
+
       Selector localSelector = null;
       localSelector = selector;
 
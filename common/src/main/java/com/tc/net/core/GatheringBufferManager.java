@@ -0,0 +1,38 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BufferManager} for transports that send the outbound bytes unchanged, so callers may hand their own buffers
+ * straight to the socket instead of copying them into the manager's send buffer first.
+ */
+public interface GatheringBufferManager extends BufferManager {
+
+  /**
+   * Writes as much of {@code srcs[offset..offset+length)} as the socket accepts with a single gathering write. Bytes
+   * still held in the manager's own send buffer are sent first; if they cannot all be sent nothing from {@code srcs} is
+   * written.
+   * 
+   * @return the number of bytes written from {@code srcs}
+   */
+  long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException;
+}
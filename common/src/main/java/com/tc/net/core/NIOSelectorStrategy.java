@@ -0,0 +1,90 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The portable strategy: a plain JDK selector, blocking in {@link Selector#select()} and woken up on every request.
+ */
+public class NIOSelectorStrategy implements SelectorStrategy {
+
+  @Override
+  public TCSelector openSelector() throws IOException {
+    return new NIOSelector(Selector.open());
+  }
+
+  @Override
+  public String toString() {
+    return "nio";
+  }
+
+  private static final class NIOSelector implements TCSelector {
+    private final Selector           selector;
+    private final List<SelectionKey> selected = new ArrayList<SelectionKey>();
+
+    NIOSelector(Selector selector) {
+      this.selector = selector;
+    }
+
+    @Override
+    public Selector selector() {
+      return selector;
+    }
+
+    @Override
+    public int select() throws IOException {
+      int numKeys = selector.select();
+      Set<SelectionKey> selectedKeys = selector.selectedKeys();
+      selected.addAll(selectedKeys);
+      selectedKeys.clear();
+      return numKeys;
+    }
+
+    @Override
+    public void wakeup() {
+      selector.wakeup();
+    }
+
+    @Override
+    public int selectedKeyCount() {
+      return selected.size();
+    }
+
+    @Override
+    public SelectionKey selectedKey(int index) {
+      return selected.get(index);
+    }
+
+    @Override
+    public void clearSelectedKeys() {
+      selected.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      selector.close();
+    }
+  }
+}
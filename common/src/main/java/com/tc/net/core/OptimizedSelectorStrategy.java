@@ -0,0 +1,200 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A selection strategy tuned for busy servers, in particular on Linux where the JDK selector is epoll based.
+ * <ul>
+ * <li>The selector's selected-key set is swapped for a {@link SelectedKeySet} so that handing out ready channels does
+ * not produce garbage. This needs access to the JDK's selector internals; where that is denied (Java 9 and later
+ * without {@code --add-opens java.base/sun.nio.ch=ALL-UNNAMED}) the regular set is used instead.</li>
+ * <li>{@link TCSelector#wakeup()} only reaches the selector when its thread is actually blocked in it, requests made
+ * while the thread is busy are picked up by its next select without a system call.</li>
+ * <li>Optionally the selector thread busy polls for a while before blocking, trading a core for lower latency.</li>
+ * </ul>
+ */
+public class OptimizedSelectorStrategy implements SelectorStrategy {
+
+  private static final Logger logger = LoggerFactory.getLogger(OptimizedSelectorStrategy.class);
+
+  private static final Field  SELECTED_KEYS;
+  private static final Field  PUBLIC_SELECTED_KEYS;
+
+  static {
+    Field selectedKeys = null;
+    Field publicSelectedKeys = null;
+    try {
+      Class<?> selectorImpl = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+      selectedKeys = selectorImpl.getDeclaredField("selectedKeys");
+      publicSelectedKeys = selectorImpl.getDeclaredField("publicSelectedKeys");
+      selectedKeys.setAccessible(true);
+      publicSelectedKeys.setAccessible(true);
+    } catch (Exception e) {
+      // includes InaccessibleObjectException on newer JDKs
+      logger.info("Selected key set of the JDK selector cannot be replaced, using the regular one: " + e);
+      selectedKeys = null;
+      publicSelectedKeys = null;
+    }
+    SELECTED_KEYS = selectedKeys;
+    PUBLIC_SELECTED_KEYS = publicSelectedKeys;
+  }
+
+  private final long busyPollNanos;
+
+  public OptimizedSelectorStrategy() {
+    this(0);
+  }
+
+  /**
+   * @param busyPollMicros how long a selector thread with nothing to do keeps polling before it blocks, 0 to block
+   *        straight away
+   */
+  public OptimizedSelectorStrategy(long busyPollMicros) {
+    if (busyPollMicros < 0) { throw new IllegalArgumentException("negative busy poll time: " + busyPollMicros); }
+    this.busyPollNanos = TimeUnit.MICROSECONDS.toNanos(busyPollMicros);
+  }
+
+  @Override
+  public TCSelector openSelector() throws IOException {
+    Selector selector = Selector.open();
+    SelectedKeySet keySet = null;
+    if (SELECTED_KEYS != null && SELECTED_KEYS.getDeclaringClass().isInstance(selector)) {
+      keySet = new SelectedKeySet();
+      try {
+        SELECTED_KEYS.set(selector, keySet);
+        PUBLIC_SELECTED_KEYS.set(selector, keySet);
+      } catch (Exception e) {
+        logger.info("Selected key set of " + selector + " cannot be replaced, using the regular one: " + e);
+        keySet = null;
+      }
+    }
+    return new OptimizedSelector(selector, keySet, busyPollNanos);
+  }
+
+  @Override
+  public String toString() {
+    return "optimized" + (busyPollNanos > 0 ? "(busyPoll=" + TimeUnit.NANOSECONDS.toMicros(busyPollNanos) + "us)" : "");
+  }
+
+  static final class OptimizedSelector implements TCSelector {
+    private final Selector           selector;
+    // null if the selector's own set could not be replaced
+    private final SelectedKeySet     keySet;
+    private final List<SelectionKey> copiedKeys;
+    private final long               busyPollNanos;
+    // a wakeup was asked for since the last select started
+    private final AtomicBoolean      wakeupPending = new AtomicBoolean();
+    // the owning thread is, or is about to be, blocked in the selector
+    private final AtomicBoolean      blocked       = new AtomicBoolean();
+
+    OptimizedSelector(Selector selector, SelectedKeySet keySet, long busyPollNanos) {
+      this.selector = selector;
+      this.keySet = keySet;
+      this.copiedKeys = keySet == null ? new ArrayList<SelectionKey>() : null;
+      this.busyPollNanos = busyPollNanos;
+    }
+
+    boolean hasSelectedKeySet() {
+      return keySet != null;
+    }
+
+    @Override
+    public Selector selector() {
+      return selector;
+    }
+
+    @Override
+    public int select() throws IOException {
+      int numKeys = doSelect();
+      if (keySet == null) {
+        Set<SelectionKey> selectedKeys = selector.selectedKeys();
+        copiedKeys.addAll(selectedKeys);
+        selectedKeys.clear();
+      }
+      return numKeys;
+    }
+
+    private int doSelect() throws IOException {
+      if (busyPollNanos > 0) {
+        long deadline = System.nanoTime() + busyPollNanos;
+        do {
+          int numKeys = selector.selectNow();
+          if (numKeys > 0 || wakeupPending.getAndSet(false)) { return numKeys; }
+        } while (System.nanoTime() - deadline < 0);
+      }
+
+      // either wakeup() sees the thread blocked and wakes the selector up, or the thread sees the pending wakeup
+      blocked.set(true);
+      try {
+        if (wakeupPending.getAndSet(false)) { return selector.selectNow(); }
+        int numKeys = selector.select();
+        // whoever asked for a wakeup in the meantime is served by the tasks and keys handled after this select
+        wakeupPending.set(false);
+        return numKeys;
+      } finally {
+        blocked.set(false);
+      }
+    }
+
+    @Override
+    public void wakeup() {
+      wakeupPending.set(true);
+      if (blocked.get()) {
+        selector.wakeup();
+      }
+    }
+
+    @Override
+    public int selectedKeyCount() {
+      return keySet != null ? keySet.size() : copiedKeys.size();
+    }
+
+    @Override
+    public SelectionKey selectedKey(int index) {
+      return keySet != null ? keySet.get(index) : copiedKeys.get(index);
+    }
+
+    @Override
+    public void clearSelectedKeys() {
+      if (keySet != null) {
+        keySet.clear();
+      } else {
+        copiedKeys.clear();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      selector.close();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Array backed stand-in for the selected-key {@code HashSet} of the JDK selector, so that selecting does not allocate
+ * a hash node per ready channel. Only supports what the selector itself does with it: adding keys and clearing. Keys
+ * are not deduplicated and cancelled keys are not removed, the comm thread copes with both.
+ */
+final class SelectedKeySet extends AbstractSet<SelectionKey> {
+
+  private SelectionKey[] keys = new SelectionKey[1024];
+  private int            size;
+
+  @Override
+  public boolean add(SelectionKey key) {
+    if (key == null) { return false; }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size << 1);
+    }
+    keys[size++] = key;
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  SelectionKey get(int index) {
+    return keys[index];
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keys, 0, size, null);
+    size = 0;
+  }
+
+  @Override
+  public Iterator<SelectionKey> iterator() {
+    return new Iterator<SelectionKey>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public SelectionKey next() {
+        if (!hasNext()) { throw new NoSuchElementException(); }
+        return keys[index++];
+      }
+    };
+  }
+}
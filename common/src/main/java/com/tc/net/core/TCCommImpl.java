@@ -37,15 +37,16 @@ class TCCommImpl implements TCComm {
 
   private volatile boolean          started        = false;
 
-  TCCommImpl(String name, int workerCommCount, SocketParams socketParams) {
+  TCCommImpl(String name, int workerCommCount, SocketParams socketParams, SelectorStrategy selectorStrategy) {
     if (workerCommCount > 0) {
-      workerCommMgr = new TCWorkerCommManager(name, workerCommCount, socketParams);
+      workerCommMgr = new TCWorkerCommManager(name, workerCommCount, socketParams, selectorStrategy);
     } else {
       logger.debug("Comm Worker Threads NOT requested");
       workerCommMgr = null;
     }
 
-    this.commThread = new CoreNIOServices(name + ":" + commThreadName, workerCommMgr, socketParams);
+    this.commThread = new CoreNIOServices(name + ":" + commThreadName, workerCommMgr, socketParams, 1, 1,
+                                          selectorStrategy);
   }
 
   protected int getWeightForWorkerComm(int workerCommId) {
@@ -106,6 +106,11 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private final Object                          pipeSocketWriteInterestLock = new Object();
   private boolean                               hasPipeSocketWriteInterest  = false;
   private int                                   writeBufferSize             = 0;
+  // gathering write state, only touched by the writer under writerLock
+  private ByteBuffer[]                          gatherBuffers;
+  private TCByteBuffer[]                        gatherSources;
+  private ByteBuffer                            headerBuffer;
+  private int                                   gatheredCount;
 
   private static final boolean                  MSG_GROUPING_ENABLED        = TCPropertiesImpl
                                                                                 .getProperties()
@@ -118,6 +123,16 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
                                                                                 .getProperties()
                                                                                 .getBoolean(TCPropertiesConsts.TC_MESSAGE_PACKUP_ENABLED,
                                                                                             true);
+  private static final boolean                  GATHERING_WRITES            = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getBoolean(TCPropertiesConsts.TC_MESSAGE_GATHERING_WRITES_ENABLED,
+                                                                                            true);
+  // most buffers handed to one gathering write, below IOV_MAX on the usual platforms
+  private static final int                      MAX_GATHER_BUFFERS          = 256;
+  // heap buffers up to this size, message headers mostly, are copied into the direct header buffer so the socket
+  // write does not have to stage each of them through a temporary direct buffer
+  private static final int                      SMALL_BUFFER_BYTES          = 256;
+  private static final int                      HEADER_BUFFER_BYTES         = 4 * 1024;
   private final Object                          readerLock                  = new Object();
   private final Object                          writerLock                  = new Object();
 
@@ -336,6 +351,13 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   private int doWriteInternal() throws IOException {
+    final BufferManager manager = this.bufferManager;
+    if (GATHERING_WRITES && pipeSocket == null && manager instanceof GatheringBufferManager) {
+      int gathered = doGatheringWrite((GatheringBufferManager) manager);
+      this.totalWrite.addAndGet(gathered);
+      return gathered;
+    }
+
     int written;
     try {
       written = doWriteToBuffer();
@@ -385,7 +407,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
   }
 
-  private void buildWriteContextsFromMessages() {
+  private void buildWriteContextsFromMessages(boolean gathering) {
     TCNetworkMessage messagesToWrite[];
     synchronized (this.writeMessages) {
       if (this.closed.isSet()) { return; }
@@ -403,15 +425,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       if (element instanceof WireProtocolMessage) {
         // we don't want to group already constructed Transport Handshake WireProtocolMessages
         final WireProtocolMessage ms = finalizeWireProtocolMessage((WireProtocolMessage) element, 1);
-        this.writeContexts.add(new WriteContext(ms));
+        this.writeContexts.add(new WriteContext(ms, gathering));
       } else if (WireProtocolHeader.PROTOCOL_UNKNOWN == WireProtocolHeader.getProtocolForMessageClass(element)) {
         // GenericNetwork messages are used for testing
-        this.writeContexts.add(new WriteContext(element));
+        this.writeContexts.add(new WriteContext(element, gathering));
       } else if (MSG_GROUPING_ENABLED) {
         int realMessageSize = getRealMessgeSize(element.getTotalLength());
         if (!canBatch(realMessageSize, batchSize, batchMsgCount)) {
           // We can't add this to the current batch so seal the current batch as a write context and create a new one.
-          this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(currentBatch)));
+          this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(currentBatch), gathering));
           batchSize = 0;
           batchMsgCount = 0;
           currentBatch = new ArrayList<TCNetworkMessage>();
@@ -420,13 +442,13 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         batchMsgCount++;
         currentBatch.add(element);
       } else {
-        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(element)));
+        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(element), gathering));
       }
     }
 
     if (MSG_GROUPING_ENABLED && batchMsgCount > 0) {
       final WireProtocolMessage ms = buildWireProtocolMessageGroup(currentBatch);
-      this.writeContexts.add(new WriteContext(ms));
+      this.writeContexts.add(new WriteContext(ms, gathering));
     }
   }
 
@@ -487,7 +509,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     // get a copy of the current write contexts. Since we call out to event/error handlers in the write
     // loop below, we don't want to be holding the lock on the writeContexts queue
     if (this.writeContexts.size() <= 0) {
-      buildWriteContextsFromMessages();
+      buildWriteContextsFromMessages(false);
     }
     while (this.writeContexts.size() > 0) {
       WriteContext context = this.writeContexts.get(0);
@@ -540,6 +562,122 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return totalBytesWritten;
   }
 
+  /**
+   * Writes the queued messages straight from their own buffers, as many messages per gathering socket write as fit.
+   * Small heap buffers (headers) are copied into a reusable direct buffer, everything else is handed to the socket
+   * as is.
+   */
+  private int doGatheringWrite(GatheringBufferManager manager) throws IOException {
+    final boolean debug = logger.isDebugEnabled();
+    int totalBytesWritten = 0;
+
+    if (this.writeContexts.isEmpty()) {
+      buildWriteContextsFromMessages(true);
+    }
+    if (this.gatherBuffers == null && !this.writeContexts.isEmpty()) {
+      this.gatherBuffers = new ByteBuffer[MAX_GATHER_BUFFERS];
+      this.gatherSources = new TCByteBuffer[MAX_GATHER_BUFFERS];
+      this.headerBuffer = ByteBuffer.allocateDirect(HEADER_BUFFER_BYTES);
+    }
+    while (!this.writeContexts.isEmpty()) {
+      final long requested = gatherPendingBuffers();
+      final int count = this.gatheredCount;
+      long written;
+      try {
+        written = manager.sendFromBuffers(this.gatherBuffers, 0, count);
+      } catch (IOException ioe) {
+        releaseGatheredBuffers(count, false);
+        closeWriteOnException(ioe);
+        return totalBytesWritten;
+      }
+      releaseGatheredBuffers(count, true);
+      totalBytesWritten += written;
+
+      if (debug) {
+        logger.debug("Gathering write of " + written + " of " + requested + " bytes from " + count + " buffers on connection "
+                     + this.channel.toString());
+      }
+      retireWrittenContexts();
+      if (written < requested) {
+        // socket send buffer is full, carry on when selected for write again
+        break;
+      }
+    }
+
+    synchronized (this.writeMessages) {
+      if (this.closed.isSet()) { return totalBytesWritten; }
+
+      if (this.writeMessages.isEmpty() && this.writeContexts.isEmpty()) {
+        this.commWorker.removeWriteInterest(this, this.channel);
+      }
+    }
+    return totalBytesWritten;
+  }
+
+  private long gatherPendingBuffers() {
+    final ByteBuffer headers = this.headerBuffer;
+    headers.clear();
+    int count = 0;
+    long bytes = 0;
+    gather: for (final WriteContext context : this.writeContexts) {
+      final TCByteBuffer[] buffers = context.entireMessageData;
+      for (int i = context.index; i < buffers.length; i++) {
+        if (count == MAX_GATHER_BUFFERS) {
+          break gather;
+        }
+        final TCByteBuffer source = buffers[i];
+        final ByteBuffer src = source.getNioBuffer();
+        final int length = src.remaining();
+        if (length == 0) {
+          continue;
+        }
+        ByteBuffer entry = src;
+        if (length <= SMALL_BUFFER_BYTES && !src.isDirect() && headers.remaining() >= length) {
+          final int start = headers.position();
+          headers.put(src.duplicate());
+          entry = headers.duplicate();
+          entry.limit(start + length);
+          entry.position(start);
+          entry = entry.slice();
+        }
+        this.gatherBuffers[count] = entry;
+        this.gatherSources[count] = source;
+        count++;
+        bytes += length;
+      }
+    }
+    this.gatheredCount = count;
+    return bytes;
+  }
+
+  private void releaseGatheredBuffers(int count, boolean advanceCopied) {
+    for (int i = 0; i < count; i++) {
+      final ByteBuffer entry = this.gatherBuffers[i];
+      final TCByteBuffer source = this.gatherSources[i];
+      if (advanceCopied && entry != source.getNioBuffer()) {
+        // written from the header buffer copy, move the source along by what went out
+        source.position(source.position() + entry.position());
+      }
+      this.gatherBuffers[i] = null;
+      this.gatherSources[i] = null;
+    }
+  }
+
+  private void retireWrittenContexts() {
+    while (!this.writeContexts.isEmpty()) {
+      final WriteContext context = this.writeContexts.get(0);
+      final TCByteBuffer[] buffers = context.entireMessageData;
+      while (context.index < buffers.length && !buffers[context.index].hasRemaining()) {
+        context.incrementIndexAndCleanOld();
+      }
+      if (!context.done()) {
+        return;
+      }
+      context.writeComplete();
+      this.writeContexts.remove(0);
+    }
+  }
+
   static private ByteBuffer extractNioBuffer(TCByteBuffer buffer) {
     return buffer.getNioBuffer();
   }
@@ -944,12 +1082,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     private final TCNetworkMessage message;
     private int                    index = 0;
     private final TCByteBuffer[]   entireMessageData;
+    private final boolean          recycleWritten;
 
-    WriteContext(TCNetworkMessage message) {
+    WriteContext(TCNetworkMessage message, boolean gathering) {
       // either WireProtocolMessage or WireProtocolMessageGroup
       this.message = message;
+      // gathering writes go out of the message's own buffers, never pack them up
+      this.recycleWritten = MESSSAGE_PACKUP && !gathering;
 
-      if (MESSSAGE_PACKUP && TCByteBufferFactory.isPoolingEnabled()) {
+      if (MESSSAGE_PACKUP && !gathering && TCByteBufferFactory.isPoolingEnabled()) {
         this.entireMessageData = getPackedUpMessage(message.getEntireMessageData());
       } else {
         this.entireMessageData = getClonedMessage(message.getEntireMessageData());
@@ -966,7 +1107,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
 
     void incrementIndexAndCleanOld() {
-      if (MESSSAGE_PACKUP) {
+      if (recycleWritten) {
         // we created these new messages. lets recycle it.
         entireMessageData[index].recycle();
       }
@@ -33,6 +33,9 @@ import com.tc.net.protocol.TCProtocolAdaptor;
 import com.tc.net.protocol.transport.ConnectionHealthCheckerUtil;
 import com.tc.net.protocol.transport.HealthCheckerConfig;
 import com.tc.net.protocol.transport.HealthCheckerConfigImpl;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.io.IOException;
@@ -71,15 +74,40 @@ public class TCConnectionManagerImpl implements TCConnectionManager {
 
   public TCConnectionManagerImpl(String name, int workerCommCount, HealthCheckerConfig healthCheckerConfig,
                                  TCSecurityManager securityManager) {
+    this(name, workerCommCount, healthCheckerConfig, securityManager, createSelectorStrategy());
+  }
+
+  /**
+   * @param selectorStrategy how the comm threads of this manager wait for network events
+   */
+  public TCConnectionManagerImpl(String name, int workerCommCount, HealthCheckerConfig healthCheckerConfig,
+                                 TCSecurityManager securityManager, SelectorStrategy selectorStrategy) {
     this.securityManager = securityManager;
     this.connEvents = new ConnectionEvents();
     this.listenerEvents = new ListenerEvents();
     this.socketParams = new SocketParams();
     this.healthCheckerConfig = healthCheckerConfig;
-    this.comm = new TCCommImpl(name, workerCommCount, socketParams);
+    this.comm = new TCCommImpl(name, workerCommCount, socketParams, selectorStrategy);
     this.comm.start();
   }
 
+  /**
+   * The selector strategy configured with {@link TCPropertiesConsts#NET_CORE_SELECTOR_STRATEGY}.
+   */
+  static SelectorStrategy createSelectorStrategy() {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    String strategy = props.getProperty(TCPropertiesConsts.NET_CORE_SELECTOR_STRATEGY, true);
+    if (strategy == null || strategy.trim().isEmpty() || strategy.trim().equalsIgnoreCase("nio")) {
+      return new NIOSelectorStrategy();
+    } else if (strategy.trim().equalsIgnoreCase("optimized")) {
+      return new OptimizedSelectorStrategy(props.getLong(TCPropertiesConsts.NET_CORE_SELECTOR_BUSY_POLL_MICROS, 0));
+    } else {
+      throw new IllegalArgumentException("Unknown selector strategy " + strategy + " for "
+                                         + TCPropertiesConsts.NET_CORE_SELECTOR_STRATEGY
+                                         + ", expected nio or optimized");
+    }
+  }
+
   protected TCConnection createConnectionImpl(TCProtocolAdaptor adaptor, TCConnectionEventListener listener) {
     return new TCConnectionImpl(listener, adaptor, this, comm.nioServiceThreadForNewConnection(), socketParams, securityManager);
   }
@@ -0,0 +1,62 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * A {@link Selector} along with the way a comm thread waits on it and walks through its selected keys. Everything but
+ * {@link #wakeup()} is called by the owning comm thread only.
+ */
+public interface TCSelector {
+
+  /**
+   * The underlying selector, channels are registered with it directly.
+   */
+  Selector selector();
+
+  /**
+   * Waits for at least one channel to be selected or for a {@link #wakeup()}.
+   *
+   * @return the number of keys whose ready set was updated
+   */
+  int select() throws IOException;
+
+  /**
+   * Makes the current or the next {@link #select()} return promptly.
+   */
+  void wakeup();
+
+  /**
+   * @return the number of keys selected by the last {@link #select()}
+   */
+  int selectedKeyCount();
+
+  SelectionKey selectedKey(int index);
+
+  /**
+   * Forgets the keys selected by the last {@link #select()}, once they have all been handled.
+   */
+  void clearSelectedKeys();
+
+  void close() throws IOException;
+
+}
@@ -23,10 +23,14 @@ import org.slf4j.LoggerFactory;
 
 import com.tc.logging.LossyTCLogger;
 import com.tc.logging.LossyTCLogger.LossyTCLoggerType;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
 
 
 /**
@@ -44,15 +48,39 @@ public class TCWorkerCommManager {
   private final CoreNIOServices[] workerCommThreads;
   private final SetOnceFlag       started            = new SetOnceFlag();
   private final SetOnceFlag       stopped            = new SetOnceFlag();
+  private final String            name;
+  private final long              rebalanceInterval;
+  private final long              rebalanceMinimumRate;
+  private Timer                   rebalanceTimer;
 
   TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams) {
+    this(name, workerCommCount, socketParams, new NIOSelectorStrategy());
+  }
+
+  TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams, SelectorStrategy selectorStrategy) {
+    this(name, workerCommCount, socketParams,
+         TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.NET_CORE_WORKERCOMM_READER_THREADS, 1),
+         TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.NET_CORE_WORKERCOMM_WRITER_THREADS, 1),
+         selectorStrategy);
+  }
+
+  TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams, int readersPerWorkerComm,
+                      int writersPerWorkerComm, SelectorStrategy selectorStrategy) {
     if (workerCommCount <= 0) { throw new IllegalArgumentException("invalid worker count: " + workerCommCount); }
-    logger.info("Creating " + workerCommCount + " worker comm threads for " + name);
+    logger.info("Creating " + workerCommCount + " worker comm threads for " + name + " with " + readersPerWorkerComm
+                + " reader and " + writersPerWorkerComm + " writer selector threads each, using the "
+                + selectorStrategy + " selector strategy");
+    this.name = name;
     this.totalWorkerComm = workerCommCount;
     this.workerCommThreads = new CoreNIOServices[workerCommCount];
     for (int i = 0; i < this.workerCommThreads.length; i++) {
-      this.workerCommThreads[i] = new CoreNIOServices(name + ":" + WORKER_NAME_PREFIX + i, this, socketParams);
+      this.workerCommThreads[i] = new CoreNIOServices(name + ":" + WORKER_NAME_PREFIX + i, this, socketParams,
+                                                      readersPerWorkerComm, writersPerWorkerComm, selectorStrategy);
     }
+    this.rebalanceInterval = (readersPerWorkerComm > 1 || writersPerWorkerComm > 1) ? TCPropertiesImpl.getProperties()
+        .getLong(TCPropertiesConsts.NET_CORE_WORKERCOMM_REBALANCE_INTERVAL, 5000) : 0;
+    this.rebalanceMinimumRate = TCPropertiesImpl.getProperties()
+        .getLong(TCPropertiesConsts.NET_CORE_WORKERCOMM_REBALANCE_MIN_RATE, 1024 * 1024);
   }
 
   public CoreNIOServices getNextWorkerComm() {
@@ -96,6 +124,15 @@ public class TCWorkerCommManager {
       for (CoreNIOServices workerCommThread : this.workerCommThreads) {
         workerCommThread.start();
       }
+      if (this.rebalanceInterval > 0) {
+        this.rebalanceTimer = new Timer(name + " selector rebalancer", true);
+        this.rebalanceTimer.schedule(new TimerTask() {
+          @Override
+          public void run() {
+            rebalance();
+          }
+        }, this.rebalanceInterval, this.rebalanceInterval);
+      }
     } else {
       throw new IllegalStateException("already started");
     }
@@ -105,12 +142,28 @@ public class TCWorkerCommManager {
     if (!this.started.isSet()) { return; }
 
     if (this.stopped.attemptSet()) {
+      if (this.rebalanceTimer != null) {
+        this.rebalanceTimer.cancel();
+      }
       for (int i = 0; i < this.totalWorkerComm; i++) {
         this.workerCommThreads[i].requestStop();
       }
     }
   }
 
+  /**
+   * Spreads the connections of each worker comm over its selector threads according to their measured throughput.
+   */
+  void rebalance() {
+    for (CoreNIOServices workerCommThread : this.workerCommThreads) {
+      try {
+        workerCommThread.rebalance(this.rebalanceMinimumRate);
+      } catch (Exception e) {
+        logger.warn("Exception rebalancing " + workerCommThread, e);
+      }
+    }
+  }
+
   protected CoreNIOServices getWorkerComm(int workerCommId) {
     return this.workerCommThreads[workerCommId];
   }
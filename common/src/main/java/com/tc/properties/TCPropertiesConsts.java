@@ -62,6 +62,70 @@ public interface TCPropertiesConsts {
    ********************************************************************************************************************/
   public static final String L1_SEDA_STAGE_SINK_CAPACITY                                    = "l1.seda.stage.sink.capacity";
 
+  /*********************************************************************************************************************
+   * <code>
+   * Section : L2 transaction order persistence
+   * Description : Controls how the global order of permanent client transactions reaches storage
+   * groupcommit.enabled      : Gather the sequence updates of many clients and store them together off the
+   *                            processing thread, completing all of their futures at once
+   * groupcommit.window.micros : How long a group commit waits for more updates before storing, 0 to store whatever
+   *                            built up while the previous group was being stored
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_TRANSACTION_ORDER_GROUP_COMMIT_ENABLED                      = "l2.transactionorder.groupcommit.enabled";
+  public static final String L2_TRANSACTION_ORDER_GROUP_COMMIT_WINDOW_MICROS                = "l2.transactionorder.groupcommit.window.micros";
+
+  /*********************************************************************************************************************
+   * <code>
+   * Section : L2 entity persistence
+   * Description : Controls how the lifecycle state of entities reaches storage
+   * journal.compaction.threshold : Number of changes appended to the entity journal before the entity maps are
+   *                                written out again as a snapshot and the journal is truncated
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_ENTITY_PERSISTOR_JOURNAL_COMPACTION_THRESHOLD               = "l2.entitypersistor.journal.compaction.threshold";
+
+  /*********************************************************************************************************************
+   * <code>
+   * Section : L2 built-in platform persistence
+   * Description : Restartable storage for the platform and entities when no IPlatformPersistence service is configured
+   * segmentedlog.enabled              : Store in a log of memory-mapped segment files instead of only in memory
+   * segmentedlog.directory            : Where the segment files go, a platform-data directory next to the server
+   *                                     logs when not set
+   * segmentedlog.segment.size         : Size in bytes of each segment file
+   * segmentedlog.fsync.interval.millis : How long writes wait for more writes to share their fsync, 0 to fsync as
+   *                                     soon as the previous fsync is done
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_PERSISTENCE_SEGMENTED_LOG_ENABLED                           = "l2.persistence.segmentedlog.enabled";
+  public static final String L2_PERSISTENCE_SEGMENTED_LOG_DIRECTORY                         = "l2.persistence.segmentedlog.directory";
+  public static final String L2_PERSISTENCE_SEGMENTED_LOG_SEGMENT_SIZE                      = "l2.persistence.segmentedlog.segment.size";
+  public static final String L2_PERSISTENCE_SEGMENTED_LOG_FSYNC_INTERVAL_MILLIS             = "l2.persistence.segmentedlog.fsync.interval.millis";
+
+  /*********************************************************************************************************************
+   * <code>
+   * Section : L2 entity reload
+   * Description : Controls how the entities of a restartable server are brought back on restart
+   * entity.reload.parallelism : Number of threads reloading and promoting entities, 1 (default) to handle them one at
+   *                             a time in creation order and 0 for one per available processor
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_ENTITY_RELOAD_PARALLELISM                                   = "l2.entity.reload.parallelism";
+
+  /*********************************************************************************************************************
+   * <code>
+   * Section : L2 timer
+   * Description : Sizes the timing wheel behind the delayed and periodic tasks scheduled by entities and services
+   * timer.tick.millis     : Granularity of the finest wheel, tasks run up to this late
+   * timer.wheel.size      : Number of buckets of each wheel, a power of two
+   * timer.worker.threads  : Number of threads running the tasks which have come due, more than 1 lets different
+   *                         tasks run concurrently and so out of start time order
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_TIMER_TICK_MILLIS                                           = "l2.timer.tick.millis";
+  public static final String L2_TIMER_WHEEL_SIZE                                            = "l2.timer.wheel.size";
+  public static final String L2_TIMER_WORKER_THREADS                                        = "l2.timer.worker.threads";
+
   /*********************************************************************************************************************
    * <code>
    * Section : Network HA (nha)
@@ -86,6 +150,8 @@ public interface TCPropertiesConsts {
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_MAX_DELAYEDACKS                   = "l2.nha.tcgroupcomm.reconnect.maxDelayedAcks";
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_SEND_WINDOW                       = "l2.nha.tcgroupcomm.reconnect.sendWindow";
   public static final String L2_NHA_TCGROUPCOMM_DISCOVERY_INTERVAL                          = "l2.nha.tcgroupcomm.discovery.interval";
+  public static final String L2_NHA_TCGROUPCOMM_COMPRESSION_ENABLED                         = "l2.nha.tcgroupcomm.compression.enabled";
+  public static final String L2_NHA_TCGROUPCOMM_COMPRESSION_MIN_SIZE                        = "l2.nha.tcgroupcomm.compression.minSize";
   // a hidden tc.properties only used for l2 proxy testing purpose
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_L2PROXY_TO_PORT                   = "l2.nha.tcgroupcomm.l2proxytoport";
   public static final String L2_NHA_DIRTYDB_AUTODELETE                                      = "l2.nha.dirtydb.autoDelete";
@@ -126,6 +192,8 @@ public interface TCPropertiesConsts {
   
   public static final String CLIENT_MAX_PENDING_REQUESTS                                    = "client.requests.pending.max";
   public static final String CLIENT_MAX_SENT_REQUESTS                                       = "client.requests.sent.max";
+  public static final String CLIENT_REQUESTS_COALESCE_WINDOW_MICROS                         = "client.requests.coalesce.windowMicros";
+  public static final String CLIENT_REQUESTS_COALESCE_MAX_BYTES                             = "client.requests.coalesce.maxBytes";
 
   public static final String TC_TRANSPORT_HANDSHAKE_TIMEOUT                                 = "tc.transport.handshake.timeout";
   public static final String TC_CONFIG_SOURCEGET_TIMEOUT                                    = "tc.config.getFromSource.timeout";
@@ -185,6 +253,10 @@ public interface TCPropertiesConsts {
    * bytebuffer.pooling.enabled           : Enable/disable tc byte buffer pooling
    * bytebuffer.common.pool.maxcount      : Max size of pool for tc byte buffer
    * bytebuffer.threadlocal.pool.maxcount : Thread pool size
+   * bytebuffer.pool.maxBufferSizeKiloBytes : largest power of two size class pooled, the counts above are
+   *                                        byte budgets in 4KiB buffers, split evenly across the size classes
+   * messages.gatheringWrites.enabled     : write queued messages straight from their own buffers with gathering
+   *                                        socket writes instead of copying them (clear text connections only)
    * </code>
    ********************************************************************************************************************/
   public static final String TC_STAGE_MONITOR_ENABLED                                       = "tc.stage.monitor.enabled";
@@ -192,9 +264,42 @@ public interface TCPropertiesConsts {
   public static final String TC_BYTEBUFFER_POOLING_ENABLED                                  = "tc.bytebuffer.pooling.enabled";
   public static final String TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT                             = "tc.bytebuffer.common.pool.maxcount";
   public static final String TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT                        = "tc.bytebuffer.threadlocal.pool.maxcount";
+  public static final String TC_BYTEBUFFER_POOL_MAX_BUFFER_SIZE_KB                          = "tc.bytebuffer.pool.maxBufferSizeKiloBytes";
   public static final String TC_MESSAGE_GROUPING_ENABLED                                    = "tc.messages.grouping.enabled";
   public static final String TC_MESSAGE_GROUPING_MAXSIZE_KB                                 = "tc.messages.grouping.maxSizeKiloBytes";
   public static final String TC_MESSAGE_PACKUP_ENABLED                                      = "tc.messages.packup.enabled";
+  public static final String TC_MESSAGE_GATHERING_WRITES_ENABLED                            = "tc.messages.gatheringWrites.enabled";
+
+  /*********************************************************************************************************************
+   * <code>
+   * Section : Common SEDA queue properties for both L1 and L2
+   * Description : Selects the queue implementation behind the SEDA stages. Each value can be overridden for a single
+   *               stage with seda.&lt;stage name&gt;.queue.type, seda.&lt;stage name&gt;.queue.waitstrategy and
+   *               seda.&lt;stage name&gt;.queue.ringbuffer.size
+   * seda.queue.type                 : blocking   - linked blocking queues (default)
+   *                                   ringbuffer - preallocated lock-free ring buffers
+   * seda.queue.waitstrategy         : spin/yield/park - how an idle ring buffer consumer or a producer facing a full
+   *                                   ring buffer waits
+   * seda.queue.ringbuffer.size      : ring size used when the stage itself is unbounded, rounded up to a power of 2
+   * seda.workstealing.enabled       : let idle workers of a multi-threaded stage run contexts without a scheduling key
+   *                                   that are queued on a busy sibling, per stage as seda.&lt;stage name&gt;.workstealing
+   * seda.batchsize                  : most events a stage worker drains and passes to EventHandler.handleEvents() in
+   *                                   one call, 1 disables batching, per stage as seda.&lt;stage name&gt;.batchsize
+   * seda.latencystats.enabled       : keep queue wait and handler execution histograms for every stage, published
+   *                                   through the TCServerInfo MBean, per stage as seda.&lt;stage name&gt;.latencystats,
+   *                                   off by default as it times every enqueue and dequeue
+   * seda.active_to_passive_driver_stage.batchsize : batch size of the stage replicating to the passives, the flush
+   *                                   requests for a passive queued within one batch are run as a single flush (how
+   *                                   activities are packed into replication messages is up to GroupMessageBatchContext)
+   * </code>
+   ********************************************************************************************************************/
+  public static final String TC_SEDA_QUEUE_TYPE                                             = "tc.seda.queue.type";
+  public static final String TC_SEDA_QUEUE_WAITSTRATEGY                                     = "tc.seda.queue.waitstrategy";
+  public static final String TC_SEDA_QUEUE_RINGBUFFER_SIZE                                  = "tc.seda.queue.ringbuffer.size";
+  public static final String TC_SEDA_WORKSTEALING_ENABLED                                   = "tc.seda.workstealing.enabled";
+  public static final String TC_SEDA_BATCH_SIZE                                             = "tc.seda.batchsize";
+  public static final String TC_SEDA_LATENCY_STATS_ENABLED                                  = "tc.seda.latencystats.enabled";
+  public static final String SEDA_ACTIVE_TO_PASSIVE_DRIVER_STAGE_BATCH_SIZE                 = "seda.active_to_passive_driver_stage.batchsize";
 
   /*********************************************************************************************************************
    * <code>
@@ -245,20 +350,39 @@ public interface TCPropertiesConsts {
    * enabled            : Enable/disable greedy locks grant from L2
    * leaseTimeInMillis  : Time for which greedy locks are given to L1 if more than one of them
    *                      are contending for them
+   * shards             : Number of independent lock manager shards, each with its own lock store, pending
+   *                      request queue and timer, and of threads handling lock requests
    * </code>
    ********************************************************************************************************************/
   public static final String L2_LOCKMANAGER_GREEDY_LEASE_ENABLED                            = "l2.lockmanager.greedy.lease.enabled";
   public static final String L2_LOCKMANAGER_GREEDY_LEASE_LEASETIME_INMILLS                  = "l2.lockmanager.greedy.lease.leaseTimeInMillis";
+  public static final String L2_LOCKMANAGER_SHARDS                                          = "l2.lockmanager.shards";
 
   /*********************************************************************************************************************
    * <code>
    * Section : TCP Settings
    * tcpnodelay : Enable/disable tcp packet batching
    * keepalive  : Enable/disable tcp probe for running/broken connections
+   * workerComm.readerThreads : reader selector threads per worker comm thread the server's connections are
+   *                            spread over
+   * workerComm.writerThreads : writer selector threads per worker comm thread
+   * workerComm.rebalance.intervalMillis : how often connections are moved from the busiest to the least busy
+   *                            selector thread of a worker comm, by measured bytes per second (0 to disable)
+   * workerComm.rebalance.minBytesPerSecond : selector threads moving less than this are never rebalanced
+   * selector.strategy : how the selector threads wait for network events, nio (the plain JDK selector) or
+   *                     optimized (garbage free selected keys and fewer wakeups, best on Linux)
+   * selector.busyPollMicros : with the optimized strategy, how long an idle selector thread keeps polling before
+   *                           blocking, trading a core per selector thread for latency (0 to block straight away)
    * </code>
    ********************************************************************************************************************/
   public static final String NET_CORE_KEEPALIVE                                             = "net.core.keepalive";
   public static final String NET_CORE_TCP_NO_DELAY                                          = "net.core.tcpnodelay";
+  public static final String NET_CORE_WORKERCOMM_READER_THREADS                             = "net.core.workerComm.readerThreads";
+  public static final String NET_CORE_WORKERCOMM_WRITER_THREADS                             = "net.core.workerComm.writerThreads";
+  public static final String NET_CORE_WORKERCOMM_REBALANCE_INTERVAL                         = "net.core.workerComm.rebalance.intervalMillis";
+  public static final String NET_CORE_WORKERCOMM_REBALANCE_MIN_RATE                         = "net.core.workerComm.rebalance.minBytesPerSecond";
+  public static final String NET_CORE_SELECTOR_STRATEGY                                     = "net.core.selector.strategy";
+  public static final String NET_CORE_SELECTOR_BUSY_POLL_MICROS                             = "net.core.selector.busyPollMicros";
 
   /*********************************************************************************************************************
    * <code>
@@ -0,0 +1,206 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, log-linear bucketed histogram of non-negative values (nanoseconds in practice), in the style of an HDR
+ * histogram.
+ * <p>
+ * Values below 32 get a bucket each; above that every power of two is split into 16 linear sub-buckets, so a reported
+ * percentile is never more than about 6% above the true value. Recording is a single atomic increment, no allocation
+ * and no lock, which makes it cheap enough to sit on the SEDA hot path. Values beyond {@link #MAX_TRACKABLE} (about 18
+ * minutes in nanoseconds) are counted in the last bucket; the exact maximum is tracked separately.
+ * <p>
+ * {@link #reset()} may run concurrently with recording; samples recorded during the reset may or may not survive it.
+ */
+public class LatencyHistogram {
+
+  private static final int  SUB_BUCKET_BITS  = 5;
+  private static final int  SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int  SUB_BUCKET_HALF  = SUB_BUCKET_COUNT >> 1;
+  private static final int  MAX_SHIFT        = 40 - SUB_BUCKET_BITS;
+
+  public static final long  MAX_TRACKABLE    = (1L << 40) - 1;
+
+  private static final int  BUCKET_COUNT     = SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong      max     = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0) {
+      // nanoTime is only monotonic per JVM, be defensive about values handed in from other clocks
+      value = 0;
+    }
+    buckets.incrementAndGet(indexFor(value));
+    updateMax(value);
+  }
+
+  /**
+   * Adds everything recorded by {@code other} to this histogram, e.g. to combine per-thread histograms once their
+   * threads are done.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = other.buckets.get(i);
+      if (count != 0) {
+        buckets.addAndGet(i, count);
+      }
+    }
+    updateMax(other.max.get());
+  }
+
+  private void updateMax(long value) {
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+    max.set(0);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += buckets.get(i);
+    }
+    return count;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return the mean, taking every value to be in the middle of its bucket, 0 if nothing was recorded
+   */
+  public double getMean() {
+    long highest = max.get();
+    long total = 0;
+    double sum = 0;
+    long lowest = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = buckets.get(i);
+      long bucketHighest = highestEquivalentValue(i);
+      if (count != 0) {
+        total += count;
+        // the last bucket also holds everything beyond MAX_TRACKABLE
+        long top = (i == BUCKET_COUNT - 1) ? Math.max(highest, bucketHighest) : Math.min(bucketHighest, highest);
+        sum += count * ((lowest + Math.max(lowest, top)) / 2.0);
+      }
+      lowest = bucketHighest + 1;
+    }
+    return (total > 0) ? sum / total : 0;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the highest value equivalent to the recorded value at the given percentile, 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    return getValuesAtPercentiles(percentile)[0];
+  }
+
+  /**
+   * Resolves several percentiles against a single pass over the buckets so they are consistent with each other.
+   */
+  public long[] getValuesAtPercentiles(double... percentiles) {
+    long[] counts = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets.get(i);
+      total += counts[i];
+    }
+    long[] values = new long[percentiles.length];
+    if (total == 0) {
+      return values;
+    }
+    long highest = max.get();
+    for (int p = 0; p < percentiles.length; p++) {
+      double percentile = Math.min(Math.max(percentiles[p], 0.0), 100.0);
+      long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += counts[i];
+        if (seen >= target) {
+          // the last bucket also holds everything beyond MAX_TRACKABLE
+          values[p] = (i == BUCKET_COUNT - 1) ? highest : Math.min(highestEquivalentValue(i), highest);
+          break;
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * A summary suitable for publishing over JMX: the count, max and p50/p90/p99/p999, with keys prefixed by
+   * {@code prefix}.
+   */
+  public Map<String, Long> summarize(String prefix, Map<String, Long> into) {
+    long[] values = getValuesAtPercentiles(50.0, 90.0, 99.0, 99.9);
+    into.put(prefix + "count", getCount());
+    into.put(prefix + "p50", values[0]);
+    into.put(prefix + "p90", values[1]);
+    into.put(prefix + "p99", values[2]);
+    into.put(prefix + "p999", values[3]);
+    into.put(prefix + "max", getMax());
+    return into;
+  }
+
+  public Map<String, Long> summarize() {
+    return summarize("", new LinkedHashMap<String, Long>());
+  }
+
+  static int indexFor(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    if (value > MAX_TRACKABLE) {
+      return BUCKET_COUNT - 1;
+    }
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int offset = index - SUB_BUCKET_COUNT;
+    int shift = offset / SUB_BUCKET_HALF + 1;
+    long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram" + summarize();
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated, lock-free ring buffer exposed as a {@link BlockingQueue}.
+ * <p>
+ * The queue is tuned for the SEDA case of many producers feeding a single worker thread: producers claim slots with a
+ * CAS on the tail and publish through a per-slot sequence number, so no lock is ever handed off between threads. The
+ * consumer side claims slots the same way, which keeps the occasional foreign poller (for example
+ * {@code Sink.clear()}) safe.
+ * <p>
+ * The capacity is rounded up to the next power of two. What a thread does while the queue is empty (consumer) or full
+ * (producer) is controlled by the {@link WaitStrategy}.
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  public enum WaitStrategy {
+    /**
+     * Busy spin. Lowest latency, burns a core per waiting thread.
+     */
+    SPIN,
+    /**
+     * Spin briefly then {@link Thread#yield()}.
+     */
+    YIELD,
+    /**
+     * Spin briefly then park. Producers unpark a parked consumer when they publish.
+     */
+    PARK;
+
+    private static final int SPIN_TRIES = 100;
+
+    public static WaitStrategy parse(String name, WaitStrategy defaultValue) {
+      if (name != null) {
+        for (WaitStrategy s : values()) {
+          if (s.name().equalsIgnoreCase(name.trim())) {
+            return s;
+          }
+        }
+      }
+      return defaultValue;
+    }
+  }
+
+  // upper bound on a single consumer park so a consumer that lost the waiter slot still wakes up in good time
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  // producers waiting for space are never signalled, they only re-check
+  private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final Object[]           elements;
+  private final AtomicLongArray    sequences;
+  private final int                mask;
+  private final int                capacity;
+  private final WaitStrategy       waitStrategy;
+  private final AtomicLong         head = new AtomicLong();
+  private final AtomicLong         tail = new AtomicLong();
+  private volatile Thread          waitingConsumer;
+
+  public RingBufferBlockingQueue(int capacity) {
+    this(capacity, WaitStrategy.PARK);
+  }
+
+  public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity: " + capacity);
+    }
+    this.capacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+    this.mask = this.capacity - 1;
+    this.elements = new Object[this.capacity];
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      this.sequences.set(i, i);
+    }
+    this.waitStrategy = waitStrategy;
+  }
+
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long dif = sequences.get(index) - pos;
+      if (dif == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          elements[index] = e;
+          sequences.set(index, pos + 1);
+          signalConsumer();
+          return true;
+        }
+        pos = tail.get();
+      } else if (dif < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long dif = sequences.get(index) - (pos + 1);
+      if (dif == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          E e = (E) elements[index];
+          elements[index] = null;
+          sequences.set(index, pos + capacity);
+          return e;
+        }
+        pos = head.get();
+      } else if (dif < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    int tries = 0;
+    while (!offer(e)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      tries = producerIdle(tries);
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int tries = 0;
+    while (!offer(e)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (deadline - System.nanoTime() <= 0) {
+        return false;
+      }
+      tries = producerIdle(tries);
+    }
+    return true;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    E e;
+    while ((e = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null) {
+      // keep waiting
+    }
+    return e;
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E e = poll();
+    if (e != null) {
+      return e;
+    }
+    final long nanos = unit.toNanos(timeout);
+    if (nanos <= 0) {
+      return null;
+    }
+    final long deadline = System.nanoTime() + nanos;
+    int tries = 0;
+    while (true) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      if (tries < WaitStrategy.SPIN_TRIES) {
+        tries++;
+      } else if (waitStrategy == WaitStrategy.YIELD) {
+        Thread.yield();
+      } else if (waitStrategy == WaitStrategy.PARK) {
+        Thread me = Thread.currentThread();
+        waitingConsumer = me;
+        // re-check after advertising ourselves so a producer that published concurrently is not missed
+        if (isEmpty()) {
+          LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+        }
+        if (waitingConsumer == me) {
+          waitingConsumer = null;
+        }
+      }
+      e = poll();
+      if (e != null) {
+        return e;
+      }
+    }
+  }
+
+  private void signalConsumer() {
+    Thread waiter = waitingConsumer;
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  private int producerIdle(int tries) {
+    if (tries < WaitStrategy.SPIN_TRIES) {
+      return tries + 1;
+    } else if (waitStrategy == WaitStrategy.YIELD) {
+      Thread.yield();
+    } else if (waitStrategy == WaitStrategy.PARK) {
+      LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+    }
+    return tries;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    while (true) {
+      long pos = head.get();
+      int index = (int) pos & mask;
+      if (sequences.get(index) != pos + 1) {
+        return null;
+      }
+      E e = (E) elements[index];
+      if (e != null && head.get() == pos) {
+        return e;
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    // read head first so a concurrent poll can only make the result smaller, never negative
+    long h = head.get();
+    long t = tail.get();
+    long size = t - h;
+    return size < 0 ? 0 : (int) Math.min(size, capacity);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    long pos = head.get();
+    return sequences.get((int) pos & mask) != pos + 1;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    int drained = 0;
+    E e;
+    while (drained < maxElements && (e = poll()) != null) {
+      c.add(e);
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * Weakly consistent view of the elements present when the iterator was created. Removal is not supported.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    final long start = head.get();
+    final long end = tail.get();
+    return new Iterator<E>() {
+      private long pos = start;
+      private E    next = advance();
+
+      @SuppressWarnings("unchecked")
+      private E advance() {
+        while (pos < end) {
+          int index = (int) pos & mask;
+          long expected = pos + 1;
+          pos++;
+          Object e = elements[index];
+          if (sequences.get(index) == expected && e != null) {
+            return (E) e;
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public E next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        E e = next;
+        next = advance();
+        return e;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "RingBufferBlockingQueue{capacity=" + capacity + ", size=" + size() + ", wait=" + waitStrategy + '}';
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import com.tc.util.concurrent.RingBufferBlockingQueue.WaitStrategy;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Creates {@link RingBufferBlockingQueue}s. Unbounded requests get a ring of the configured default size since a ring
+ * buffer is always preallocated.
+ */
+public class RingBufferQueueFactory<E> extends QueueFactory<E> {
+
+  private final int          defaultSize;
+  private final WaitStrategy waitStrategy;
+
+  public RingBufferQueueFactory(int defaultSize, WaitStrategy waitStrategy) {
+    this.defaultSize = defaultSize;
+    this.waitStrategy = waitStrategy;
+  }
+
+  @Override
+  public BlockingQueue<E> createInstance() {
+    return new RingBufferBlockingQueue<E>(defaultSize, waitStrategy);
+  }
+
+  @Override
+  public BlockingQueue<E> createInstance(int capacity) {
+    return new RingBufferBlockingQueue<E>(capacity == Integer.MAX_VALUE ? defaultSize : capacity, waitStrategy);
+  }
+
+  @Override
+  public String toString() {
+    return "RingBufferQueueFactory{size=" + defaultSize + ", wait=" + waitStrategy + '}';
+  }
+}
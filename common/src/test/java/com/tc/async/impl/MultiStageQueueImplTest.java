@@ -18,9 +18,14 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.StageQueueStats;
+import com.tc.async.impl.AbstractStageQueueImpl.SourceQueue;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
 import org.junit.After;
@@ -39,6 +44,8 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -56,6 +63,9 @@ import static org.mockito.Mockito.when;
  */
 public class MultiStageQueueImplTest {
 
+  private String overriddenProperty;
+  private String overriddenValue;
+
 
   public MultiStageQueueImplTest() {
   }
@@ -74,6 +84,18 @@ public class MultiStageQueueImplTest {
 
   @After
   public void tearDown() {
+    if (overriddenProperty != null) {
+      // an absent per-stage key falls back on the global default, so that is what restores it
+      TCPropertiesImpl.getProperties().setProperty(overriddenProperty, overriddenValue != null ? overriddenValue
+          : TCPropertiesImpl.getProperties().getProperty(TCPropertiesConsts.TC_SEDA_WORKSTEALING_ENABLED));
+      overriddenProperty = null;
+    }
+  }
+
+  private void overrideProperty(String key, String value) {
+    overriddenProperty = key;
+    overriddenValue = TCPropertiesImpl.getProperties().getProperty(key, true);
+    TCPropertiesImpl.getProperties().setProperty(key, value);
   }
 
   /**
@@ -196,6 +218,126 @@ public class MultiStageQueueImplTest {
     Assert.assertFalse(cxts.get(5).isEmpty());
   }
 
+  @Test
+  public void testIdleWorkerStealsUnkeyedContexts() throws Exception {
+    overrideProperty("seda.stealing.workstealing", "true");
+    QueueFactory<ContextWrapper<MultiThreadedEventContext>> qFactory = new QueueFactory<ContextWrapper<MultiThreadedEventContext>>();
+    StageQueue<MultiThreadedEventContext> impl = new MultiStageQueueImpl<MultiThreadedEventContext>(2, qFactory, new DefaultLoggerProvider(), "stealing", Integer.MAX_VALUE);
+    impl.enableStatsCollection(true);
+
+    MultiThreadedEventContext unkeyed = mock(MultiThreadedEventContext.class);
+    when(unkeyed.getSchedulingKey()).thenReturn(null);
+    MultiThreadedEventContext keyed = mock(MultiThreadedEventContext.class);
+    when(keyed.getSchedulingKey()).thenReturn(0);
+    for (int x = 0; x < 10; x++) {
+      impl.addMultiThreaded(unkeyed);
+    }
+    impl.addMultiThreaded(keyed);
+
+    final List<MultiThreadedEventContext> handled = new ArrayList<MultiThreadedEventContext>();
+    AbstractEventHandler<MultiThreadedEventContext> handler = new AbstractEventHandler<MultiThreadedEventContext>() {
+      @Override
+      public void handleEvent(MultiThreadedEventContext context) {
+        handled.add(context);
+      }
+    };
+    // the worker of queue 1 runs every unkeyed context, its own and those stolen from queue 0
+    ContextWrapper<MultiThreadedEventContext> next;
+    while ((next = impl.getSource(1).poll(50)) != null) {
+      next.runWithHandler(handler);
+    }
+    assertEquals(10, handled.size());
+    assertTrue(((StageQueueStats) ((SourceQueue<?>) impl.getSource(0)).getStatsCollector()).getStealCount() > 0);
+
+    // keyed work is never stolen, and queue 0 skips what was taken from it
+    handled.clear();
+    while ((next = impl.getSource(0).poll(0)) != null) {
+      next.runWithHandler(handler);
+    }
+    assertEquals(1, handled.size());
+    assertEquals(keyed, handled.get(0));
+    assertEquals(0, impl.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testFlushBlocksUntilStolenContextIsDone() throws Exception {
+    overrideProperty("seda.stealing.workstealing", "true");
+    QueueFactory<ContextWrapper<MultiThreadedEventContext>> qFactory = new QueueFactory<ContextWrapper<MultiThreadedEventContext>>();
+    final StageQueue<MultiThreadedEventContext> impl = new MultiStageQueueImpl<MultiThreadedEventContext>(2, qFactory, new DefaultLoggerProvider(), "stealing", Integer.MAX_VALUE);
+
+    MultiThreadedEventContext unkeyed = mock(MultiThreadedEventContext.class);
+    when(unkeyed.getSchedulingKey()).thenReturn(null);
+    impl.addMultiThreaded(unkeyed);
+    final int victim = impl.getSource(0).isEmpty() ? 1 : 0;
+    MultiThreadedEventContext flush = mock(MultiThreadedEventContext.class);
+    when(flush.getSchedulingKey()).thenReturn(victim);
+    when(flush.flush()).thenReturn(true);
+
+    final List<MultiThreadedEventContext> handled = new CopyOnWriteArrayList<MultiThreadedEventContext>();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AbstractEventHandler<MultiThreadedEventContext> handler = new AbstractEventHandler<MultiThreadedEventContext>() {
+      @Override
+      public void handleEvent(MultiThreadedEventContext context) {
+        handled.add(context);
+      }
+    };
+    // the other worker steals the unkeyed context and holds on to it
+    Thread thief = new Thread() {
+      @Override
+      public void run() {
+        try {
+          impl.getSource(1 - victim).poll(1000).runWithHandler(new AbstractEventHandler<MultiThreadedEventContext>() {
+            @Override
+            public void handleEvent(MultiThreadedEventContext context) {
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                throw new AssertionError(e);
+              }
+              handled.add(context);
+            }
+          });
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    thief.start();
+    started.await();
+
+    impl.addMultiThreaded(flush);
+    final ContextWrapper<MultiThreadedEventContext> flushing = impl.getSource(victim).poll(0);
+    assertNotNull(flushing);
+    Thread owner = new Thread() {
+      @Override
+      public void run() {
+        try {
+          flushing.runWithHandler(handler);
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    owner.start();
+    // the flush waits for the stolen context without spinning
+    while (owner.getState() != Thread.State.WAITING) {
+      assertTrue(owner.isAlive());
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertTrue(handled.isEmpty());
+    release.countDown();
+    owner.join();
+    thief.join();
+
+    // the flush has moved on to the other queue, behind the stolen context
+    impl.getSource(1 - victim).poll(0).runWithHandler(handler);
+    assertEquals(2, handled.size());
+    assertEquals(unkeyed, handled.get(0));
+    assertEquals(flush, handled.get(1));
+  }
+
   @Test
   @Ignore
   public void testThroughput8() throws InterruptedException {
@@ -21,6 +21,7 @@ package com.tc.async.impl;
 import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
 import org.junit.After;
@@ -141,4 +142,29 @@ public class SingletonStageQueueImplTest {
     assertEquals(cxts.get(rand % cxts.size()).poll(), context1);
   }
 
+  @Test
+  public void testEnqueueTimeOnlyStampedWithLatencyStats() throws Exception {
+    QueueFactory<ContextWrapper<Object>> factory = mock(QueueFactory.class);
+    when(factory.createInstance(Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
+      @Override
+      public BlockingQueue<Object> answer(InvocationOnMock invocation) throws Throwable {
+        return new ArrayBlockingQueue<Object>((Integer) invocation.getArguments()[0]);
+      }
+    });
+    MultiThreadedEventContext cxt = mock(MultiThreadedEventContext.class);
+
+    SingletonStageQueueImpl<Object> untimed = new SingletonStageQueueImpl(factory, new DefaultLoggerProvider(), "untimed", 16);
+    untimed.addMultiThreaded(cxt);
+    assertEquals(0L, untimed.getSource(0).poll(0).getEnqueueTime());
+
+    TCPropertiesImpl.getProperties().setProperty("seda.timed.latencystats", "true");
+    try {
+      SingletonStageQueueImpl<Object> timed = new SingletonStageQueueImpl(factory, new DefaultLoggerProvider(), "timed", 16);
+      timed.addMultiThreaded(cxt);
+      assertTrue(timed.getSource(0).poll(0).getEnqueueTime() != 0L);
+    } finally {
+      TCPropertiesImpl.getProperties().setProperty("seda.timed.latencystats", "false");
+    }
+  }
+
 }
@@ -18,12 +18,17 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.SpecializedEventContext;
+import com.tc.exception.TCNotRunningException;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.QueueFactory;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -41,9 +46,12 @@ import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -55,6 +63,9 @@ import static org.mockito.Mockito.when;
  * @author mscott
  */
 public class StageImplTest {
+
+  private String overriddenProperty;
+  private String overriddenValue;
   
   public StageImplTest() {
   }
@@ -73,6 +84,18 @@ public class StageImplTest {
   
   @After
   public void tearDown() {
+    if (overriddenProperty != null) {
+      // an absent per-stage key falls back on the global default, so that is what restores it
+      TCPropertiesImpl.getProperties().setProperty(overriddenProperty, overriddenValue != null ? overriddenValue
+          : TCPropertiesImpl.getProperties().getProperty(TCPropertiesConsts.TC_SEDA_BATCH_SIZE));
+      overriddenProperty = null;
+    }
+  }
+
+  private void overrideProperty(String key, String value) {
+    overriddenProperty = key;
+    overriddenValue = TCPropertiesImpl.getProperties().getProperty(key, true);
+    TCPropertiesImpl.getProperties().setProperty(key, value);
   }
   
   @Test
@@ -105,6 +128,69 @@ public class StageImplTest {
     
   }
   
+  @Test
+  public void testBatchedDelivery() throws Exception {
+    overrideProperty("seda.batching.batchsize", "8");
+    final List<Integer> batches = new ArrayList<Integer>();
+    final CountDownLatch handled = new CountDownLatch(20);
+    EventHandler<Object> handler = new AbstractEventHandler<Object>() {
+      @Override
+      public void handleEvent(Object context) throws EventHandlerException {
+        handled.countDown();
+      }
+
+      @Override
+      public void handleEvents(Collection<Object> contexts) throws EventHandlerException {
+        batches.add(contexts.size());
+        super.handleEvents(contexts);
+      }
+    };
+    StageImpl<Object> instance = new StageImpl<Object>(new DefaultLoggerProvider(), "batching", handler, 1, null, new QueueFactory<ContextWrapper<Object>>(), 32);
+    for (int x = 0; x < 20; x++) {
+      instance.getSink().addSingleThreaded(new Object());
+    }
+    instance.start(new ConfigurationContextImpl(null));
+    assertTrue(handled.await(10, TimeUnit.SECONDS));
+    instance.destroy();
+    // everything was queued before the worker started so it drains full batches
+    assertEquals(8, batches.get(0).intValue());
+    assertEquals(8, batches.get(1).intValue());
+    assertEquals(4, batches.get(2).intValue());
+  }
+
+  @Test
+  public void testContextAfterFailedBatchStillRuns() throws Exception {
+    overrideProperty("seda.failing.batchsize", "8");
+    EventHandler<Object> handler = new AbstractEventHandler<Object>() {
+      @Override
+      public void handleEvent(Object context) throws EventHandlerException {
+      }
+
+      @Override
+      public void handleEvents(Collection<Object> contexts) throws EventHandlerException {
+        throw new TCNotRunningException();
+      }
+    };
+    final CountDownLatch executed = new CountDownLatch(1);
+    SpecializedEventContext special = mock(SpecializedEventContext.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        executed.countDown();
+        return null;
+      }
+    }).when(special).execute();
+    StageImpl<Object> instance = new StageImpl<Object>(new DefaultLoggerProvider(), "failing", handler, 1, null, new QueueFactory<ContextWrapper<Object>>(), 32);
+    for (int x = 0; x < 3; x++) {
+      instance.getSink().addSingleThreaded(new Object());
+    }
+    // drained from the queue along with the batch, which the handler then fails
+    instance.getSink().addSpecialized(special);
+    instance.start(new ConfigurationContextImpl(null));
+    assertTrue(executed.await(10, TimeUnit.SECONDS));
+    instance.destroy();
+  }
+
   private void testMultiContextFlush(int size) throws Exception {
     System.out.println("test a multi context flush");
     TCLoggerProvider logger = new DefaultLoggerProvider();
@@ -0,0 +1,68 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ClearTextBufferManagerTest {
+
+  @Test
+  public void testGatheringWriteKeepsBufferedBytesFirst() throws Exception {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("localhost", 0));
+    SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    SocketChannel accepted = server.accept();
+    try {
+      ClearTextBufferManager manager = new ClearTextBufferManager(client);
+      // something left in the copying send buffer has to go out ahead of the gathered buffers
+      manager.forwardToWriteBuffer(ByteBuffer.wrap(new byte[] { 1, 2 }));
+
+      ByteBuffer header = ByteBuffer.wrap(new byte[] { 3 });
+      ByteBuffer payload = ByteBuffer.allocateDirect(3);
+      payload.put(new byte[] { 4, 5, 6 }).flip();
+      ByteBuffer[] srcs = new ByteBuffer[] { ByteBuffer.allocate(0), header, payload };
+      long written = 0;
+      while (written < 4) {
+        written += manager.sendFromBuffers(srcs, 1, 2);
+      }
+      assertEquals(4, written);
+      assertFalse(payload.hasRemaining());
+
+      ByteBuffer received = ByteBuffer.allocate(6);
+      while (received.hasRemaining()) {
+        accepted.read(received);
+      }
+      for (int i = 0; i < 6; i++) {
+        assertEquals(i + 1, received.get(i));
+      }
+    } finally {
+      accepted.close();
+      client.close();
+      server.close();
+    }
+  }
+}
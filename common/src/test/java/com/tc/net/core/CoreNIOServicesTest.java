@@ -0,0 +1,253 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoreNIOServicesTest {
+
+  private CoreNIOServices           services;
+  private ServerSocketChannel       server;
+  private final List<SocketChannel> channels = new ArrayList<SocketChannel>();
+
+  @Before
+  public void setUp() throws Exception {
+    services = new CoreNIOServices("CoreNIOServicesTest", null, new SocketParams(), 2, 2,
+                                   new OptimizedSelectorStrategy());
+    services.start();
+    server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("localhost", 0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    services.requestStop();
+    for (SocketChannel channel : channels) {
+      channel.close();
+    }
+    server.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSelectorThreadCountMustBePositive() {
+    new CoreNIOServices("CoreNIOServicesTest", null, new SocketParams(), 0, 1, new NIOSelectorStrategy());
+  }
+
+  @Test
+  public void testConnectionsAreSpreadAndMigrated() throws Exception {
+    SocketChannel[] first = connect();
+    SocketChannel[] second = connect();
+    CountingReader firstReader = new CountingReader(first[1]);
+    CountingReader secondReader = new CountingReader(second[1]);
+    services.requestReadInterest(firstReader.proxy(), first[1]);
+    services.requestReadInterest(secondReader.proxy(), second[1]);
+
+    CoreNIOServices.ChannelSelectors firstSelectors = services.getChannelSelectors(first[1]);
+    CoreNIOServices.ChannelSelectors secondSelectors = services.getChannelSelectors(second[1]);
+    // nothing has been measured yet, so the channel count decides
+    assertNotSame(firstSelectors.reader, secondSelectors.reader);
+
+    send(first[0], 1000);
+    firstReader.await(1000);
+    assertSame(firstSelectors.reader, firstReader.lastThread);
+    assertEquals(1000, firstSelectors.bytesRead.get());
+
+    CoreNIOServices.CommThread from = firstSelectors.reader;
+    CoreNIOServices.CommThread to = secondSelectors.reader;
+    services.migrate(firstSelectors, from, to, true);
+    long deadline = System.currentTimeMillis() + 10000;
+    while (firstSelectors.reader != to && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertSame(to, firstSelectors.reader);
+    assertEquals(0, from.channelCount.get());
+    assertEquals(2, to.channelCount.get());
+
+    // the read interest went along with the channel
+    send(first[0], 500);
+    firstReader.await(1500);
+    assertSame(to, firstReader.lastThread);
+  }
+
+  @Test
+  public void testInterestChangedRightAfterMigrationIsKept() throws Exception {
+    SocketChannel[] first = connect();
+    SocketChannel[] second = connect();
+    CountingReader firstReader = new CountingReader(first[1]);
+    CountingReader secondReader = new CountingReader(second[1]);
+    services.requestReadInterest(firstReader.proxy(), first[1]);
+    services.requestReadInterest(secondReader.proxy(), second[1]);
+    CoreNIOServices.ChannelSelectors firstSelectors = services.getChannelSelectors(first[1]);
+    CoreNIOServices.ChannelSelectors secondSelectors = services.getChannelSelectors(second[1]);
+    send(first[0], 100);
+    firstReader.await(100);
+
+    // hold the new owner so that the move and the interest change are both queued on it before either runs
+    CoreNIOServices.CommThread from = firstSelectors.reader;
+    CoreNIOServices.CommThread to = secondSelectors.reader;
+    final CountDownLatch release = new CountDownLatch(1);
+    to.addSelectorTask(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    services.migrate(firstSelectors, from, to, true);
+    long deadline = System.currentTimeMillis() + 10000;
+    while (firstSelectors.reader != to && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertSame(to, firstSelectors.reader);
+    services.removeReadInterest(null, first[1]);
+    release.countDown();
+
+    // the registration carried over from the old selector must not bring the read interest back
+    send(first[0], 100);
+    send(second[0], 100);
+    secondReader.await(100);
+    Thread.sleep(200);
+    assertEquals(100, firstReader.count.get());
+  }
+
+  @Test
+  public void testRebalanceMovesConnectionOffBusiestSelector() throws Exception {
+    SocketChannel[] first = connect();
+    SocketChannel[] second = connect();
+    CountingReader firstReader = new CountingReader(first[1]);
+    CountingReader secondReader = new CountingReader(second[1]);
+    services.requestReadInterest(firstReader.proxy(), first[1]);
+    services.requestReadInterest(secondReader.proxy(), second[1]);
+    CoreNIOServices.ChannelSelectors firstSelectors = services.getChannelSelectors(first[1]);
+    CoreNIOServices.ChannelSelectors secondSelectors = services.getChannelSelectors(second[1]);
+
+    // put both connections on the same reader
+    CoreNIOServices.CommThread busy = firstSelectors.reader;
+    CoreNIOServices.CommThread idle = secondSelectors.reader;
+    services.migrate(secondSelectors, idle, busy, true);
+    long deadline = System.currentTimeMillis() + 10000;
+    while (secondSelectors.reader != busy && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertSame(busy, secondSelectors.reader);
+
+    services.rebalance(1);
+    send(first[0], 100000);
+    send(second[0], 10000);
+    firstReader.await(100000);
+    secondReader.await(10000);
+    services.rebalance(1);
+
+    // the heavier connection still narrows the gap, so it is the one that moves
+    deadline = System.currentTimeMillis() + 10000;
+    while (firstSelectors.reader != idle && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertSame(idle, firstSelectors.reader);
+    assertSame(busy, secondSelectors.reader);
+    assertTrue(idle.getLoadRate() > 0);
+  }
+
+  private SocketChannel[] connect() throws Exception {
+    SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    SocketChannel accepted = server.accept();
+    accepted.configureBlocking(false);
+    channels.add(client);
+    channels.add(accepted);
+    return new SocketChannel[] { client, accepted };
+  }
+
+  private static void send(SocketChannel channel, int length) throws Exception {
+    ByteBuffer data = ByteBuffer.allocate(length);
+    while (data.hasRemaining()) {
+      channel.write(data);
+    }
+  }
+
+  /**
+   * Drains its channel when selected, remembering which selector thread did it. The select loop treats attachments as
+   * connections as well, hence the proxy.
+   */
+  private static class CountingReader implements InvocationHandler {
+    private final SocketChannel channel;
+    private final AtomicLong    count = new AtomicLong();
+    private final ByteBuffer    buffer = ByteBuffer.allocate(4096);
+    private volatile Thread     lastThread;
+
+    CountingReader(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    TCChannelReader proxy() {
+      return (TCChannelReader) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                    new Class<?>[] { TCConnection.class, TCChannelReader.class }, this);
+    }
+
+    void await(long total) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (count.get() < total && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(total, count.get());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getName().equals("doRead")) {
+        buffer.clear();
+        int read = Math.max(channel.read(buffer), 0);
+        lastThread = Thread.currentThread();
+        count.addAndGet(read);
+        return read;
+      }
+      if (method.getName().equals("isClosePending")) {
+        return false;
+      }
+      if (method.getName().equals("equals")) {
+        return proxy == args[0];
+      }
+      if (method.getName().equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      return null;
+    }
+  }
+}
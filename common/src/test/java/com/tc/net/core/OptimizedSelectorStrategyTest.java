@@ -0,0 +1,162 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OptimizedSelectorStrategyTest {
+
+  @Test
+  public void testSelectedKeys() throws Exception {
+    checkSelectedKeys(new OptimizedSelectorStrategy());
+    checkSelectedKeys(new OptimizedSelectorStrategy(100));
+    checkSelectedKeys(new NIOSelectorStrategy());
+  }
+
+  @Test
+  public void testWakeup() throws Exception {
+    final TCSelector selector = new OptimizedSelectorStrategy().openSelector();
+    try {
+      // a wakeup asked for while the thread is busy makes the next select return straight away
+      selector.wakeup();
+      assertEquals(0, selector.select());
+
+      Thread waker = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          selector.wakeup();
+        }
+      };
+      waker.start();
+      long start = System.nanoTime();
+      assertEquals(0, selector.select());
+      waker.join();
+      assertTrue(System.nanoTime() - start < 10000000000L);
+    } finally {
+      selector.close();
+    }
+  }
+
+  @Test
+  public void testSelectedKeySet() {
+    SelectedKeySet keys = new SelectedKeySet();
+    SelectionKey[] added = new SelectionKey[2000];
+    for (int i = 0; i < added.length; i++) {
+      added[i] = new DummyKey();
+      keys.add(added[i]);
+    }
+    assertEquals(added.length, keys.size());
+    int i = 0;
+    for (SelectionKey key : keys) {
+      assertSame(added[i], keys.get(i));
+      assertSame(added[i++], key);
+    }
+    keys.clear();
+    assertEquals(0, keys.size());
+    assertTrue(keys.isEmpty());
+  }
+
+  private static void checkSelectedKeys(SelectorStrategy strategy) throws Exception {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("localhost", 0));
+    SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    SocketChannel accepted = server.accept();
+    TCSelector selector = strategy.openSelector();
+    try {
+      accepted.configureBlocking(false);
+      SelectionKey key = accepted.register(selector.selector(), SelectionKey.OP_READ);
+      client.write(ByteBuffer.wrap(new byte[] { 1 }));
+
+      int numKeys = 0;
+      while (numKeys == 0) {
+        numKeys = selector.select();
+      }
+      assertEquals(1, numKeys);
+      assertEquals(1, selector.selectedKeyCount());
+      assertSame(key, selector.selectedKey(0));
+      assertTrue(key.isReadable());
+      selector.clearSelectedKeys();
+      assertEquals(0, selector.selectedKeyCount());
+
+      // level triggered: still readable as long as the byte has not been consumed
+      assertEquals(1, selector.select());
+      assertSame(key, selector.selectedKey(0));
+      selector.clearSelectedKeys();
+    } finally {
+      selector.close();
+      accepted.close();
+      client.close();
+      server.close();
+    }
+  }
+
+  private static class DummyKey extends SelectionKey {
+    @Override
+    public SelectableChannel channel() {
+      return null;
+    }
+
+    @Override
+    public Selector selector() {
+      return null;
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
+    public void cancel() {
+      //
+    }
+
+    @Override
+    public int interestOps() {
+      return 0;
+    }
+
+    @Override
+    public SelectionKey interestOps(int ops) {
+      return this;
+    }
+
+    @Override
+    public int readyOps() {
+      return 0;
+    }
+  }
+}
@@ -18,23 +18,36 @@
  */
 package com.tc.net.core;
 
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
 import com.tc.net.TCSocketAddress;
 import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.security.TCSecurityManager;
+import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.net.protocol.TCProtocolAdaptor;
 import com.tc.util.PortChooser;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -102,5 +115,138 @@ public class TCConnectionImplTest {
     socket.close();
   }
 
-  
+  @Test
+  public void testGatheringWriteOfPartialWrites() throws Exception {
+    int port = new PortChooser().chooseRandomPort();
+    ServerSocket socket = new ServerSocket(port);
+    // accepts a few bytes at a time, ending writes part way through buffers and messages
+    final TricklingBufferManager manager = new TricklingBufferManager(7, 1, 300, 13, 4099, 2, 0, 129);
+    TCSecurityManager securityManager = mock(TCSecurityManager.class);
+    when(securityManager.getBufferManagerFactory()).thenReturn(new BufferManagerFactory() {
+      @Override
+      public BufferManager createBufferManager(SocketChannel socketChannel, boolean client) {
+        return manager;
+      }
+    });
+    TCConnectionImpl conn = new TCConnectionImpl(mock(TCConnectionEventListener.class), mock(TCProtocolAdaptor.class),
+                                                 new TCConnectionManagerImpl(), mock(CoreNIOServices.class),
+                                                 new SocketParams(), securityManager);
+    conn.connect(new TCSocketAddress("localhost", port), 0);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final List<Integer> messageEnds = new ArrayList<Integer>();
+    final List<Integer> writtenWhenSent = new ArrayList<Integer>();
+    List<TCNetworkMessage> messages = new ArrayList<TCNetworkMessage>();
+    for (int i = 0; i < 5; i++) {
+      // a header and a small payload, both copied into the header buffer, then a large heap and a direct buffer
+      TCByteBuffer[] data = new TCByteBuffer[] { filled(false, 16, expected), filled(false, 100 + i, expected),
+          filled(false, 5000, expected), filled(true, 3000 + i, expected) };
+      messageEnds.add(expected.size());
+      TCNetworkMessage message = mock(TCNetworkMessage.class);
+      when(message.getEntireMessageData()).thenReturn(data);
+      when(message.getTotalLength()).thenReturn(16 + 100 + i + 5000 + 3000 + i);
+      doAnswer(invocation -> {
+        writtenWhenSent.add(manager.written.size());
+        return null;
+      }).when(message).wasSent();
+      messages.add(message);
+      conn.putMessage(message);
+    }
+
+    long total = 0;
+    for (int calls = 0; total < expected.size() && calls < 100000; calls++) {
+      total += conn.doWrite();
+      // a message is only handed back once all of it went out, and then by the write which finished it
+      int finished = 0;
+      while (finished < messageEnds.size() && messageEnds.get(finished) <= manager.written.size()) {
+        finished++;
+      }
+      assertEquals(finished, writtenWhenSent.size());
+      for (int i = 0; i < writtenWhenSent.size(); i++) {
+        assertTrue(writtenWhenSent.get(i) >= messageEnds.get(i));
+      }
+    }
+    assertEquals(expected.size(), total);
+    assertArrayEquals(expected.toByteArray(), manager.written.toByteArray());
+    // each released once
+    assertEquals(messages.size(), writtenWhenSent.size());
+    socket.close();
+  }
+
+  private static int next = 0;
+
+  private static TCByteBuffer filled(boolean direct, int length, ByteArrayOutputStream expected) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (next++ * 31);
+    }
+    expected.write(bytes, 0, length);
+    TCByteBuffer buffer = TCByteBufferFactory.getInstance(direct, length);
+    buffer.put(bytes);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Takes in at most the next of its limits, in turn, on each gathering write, like a socket with a nearly full send
+   * buffer.
+   */
+  private static class TricklingBufferManager implements GatheringBufferManager {
+    private final int[]                 limits;
+    private int                         call  = 0;
+    final ByteArrayOutputStream         written = new ByteArrayOutputStream();
+
+    TricklingBufferManager(int... limits) {
+      this.limits = limits;
+    }
+
+    @Override
+    public long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) {
+      int budget = limits[call++ % limits.length];
+      long sent = 0;
+      for (int i = offset; i < offset + length && budget > 0; i++) {
+        while (srcs[i].hasRemaining() && budget > 0) {
+          written.write(srcs[i].get());
+          budget--;
+          sent++;
+        }
+      }
+      return sent;
+    }
+
+    @Override
+    public int forwardFromReadBuffer(ByteBuffer dest) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int forwardToWriteBuffer(ByteBuffer src) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int sendFromBuffer() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int recvToBuffer() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // nothing to close
+    }
+
+    @Override
+    public int forwardFromReadBuffer(GatheringByteChannel gbc) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int forwardToWriteBuffer(ScatteringByteChannel sbc) {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
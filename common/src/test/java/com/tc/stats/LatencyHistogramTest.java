@@ -0,0 +1,116 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketsAreContiguous() {
+    long previous = -1;
+    for (int i = 0; LatencyHistogram.highestEquivalentValue(i) < LatencyHistogram.MAX_TRACKABLE; i++) {
+      long highest = LatencyHistogram.highestEquivalentValue(i);
+      assertEquals(i, LatencyHistogram.indexFor(previous + 1));
+      assertEquals(i, LatencyHistogram.indexFor(highest));
+      previous = highest;
+    }
+    assertEquals(LatencyHistogram.MAX_TRACKABLE,
+                 LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexFor(LatencyHistogram.MAX_TRACKABLE)));
+  }
+
+  @Test
+  public void testPercentilesStayWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long v = 1; v <= 10000; v++) {
+      histogram.record(v * 1000);
+    }
+    assertEquals(10000, histogram.getCount());
+    assertEquals(10000000, histogram.getMax());
+    long[] values = histogram.getValuesAtPercentiles(50.0, 99.0, 99.9, 100.0);
+    assertWithin(5000000, values[0]);
+    assertWithin(9900000, values[1]);
+    assertWithin(9990000, values[2]);
+    assertEquals(10000000, values[3]);
+  }
+
+  @Test
+  public void testResetAndSummary() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(7);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(3, histogram.getCount());
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(0));
+    assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+
+    histogram.reset();
+    Map<String, Long> summary = histogram.summarize();
+    assertEquals(Long.valueOf(0), summary.get("count"));
+    assertEquals(Long.valueOf(0), summary.get("p99"));
+    assertEquals(Long.valueOf(0), summary.get("max"));
+  }
+
+  @Test
+  public void testAddMergesCountsAndMax() {
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    for (long v = 1; v <= 5000; v++) {
+      first.record(v * 1000);
+      second.record((v + 5000) * 1000);
+    }
+    LatencyHistogram merged = new LatencyHistogram();
+    merged.add(second);
+    merged.add(first);
+    assertEquals(10000, merged.getCount());
+    assertEquals(10000000, merged.getMax());
+    long[] values = merged.getValuesAtPercentiles(50.0, 99.0, 100.0);
+    assertWithin(5000000, values[0]);
+    assertWithin(9900000, values[1]);
+    assertEquals(10000000, values[2]);
+    // the sources are left as they were
+    assertEquals(5000, first.getCount());
+    assertEquals(5000000, first.getMax());
+  }
+
+  @Test
+  public void testMean() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0.0, histogram.getMean(), 0.0);
+    histogram.record(3);
+    histogram.record(5);
+    assertEquals(4.0, histogram.getMean(), 0.0);
+    histogram.reset();
+    for (long v = 1; v <= 10000; v++) {
+      histogram.record(v * 1000);
+    }
+    double mean = histogram.getMean();
+    assertTrue("expected ~5000500 got " + mean, Math.abs(mean - 5000500) <= 5000500 / 32);
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("expected ~" + expected + " got " + actual, actual >= expected && actual <= expected + expected / 16);
+  }
+}
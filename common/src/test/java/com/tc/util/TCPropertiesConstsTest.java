@@ -60,6 +60,10 @@ public class TCPropertiesConstsTest extends TCTestCase {
   
     exemptedProperties.add(TCPropertiesConsts.CLIENT_MAX_PENDING_REQUESTS);
     exemptedProperties.add(TCPropertiesConsts.CLIENT_MAX_SENT_REQUESTS);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_REQUESTS_COALESCE_WINDOW_MICROS);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_REQUESTS_COALESCE_MAX_BYTES);
+
+    exemptedProperties.add(TCPropertiesConsts.L2_PERSISTENCE_SEGMENTED_LOG_DIRECTORY);
 
     // exempt all subcategories
     exemptedProperties.add(TCPropertiesConsts.L1_CATEGORY);
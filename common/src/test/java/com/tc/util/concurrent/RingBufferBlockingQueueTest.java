@@ -0,0 +1,137 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import org.junit.Test;
+
+import com.tc.util.concurrent.RingBufferBlockingQueue.WaitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferBlockingQueueTest {
+
+  @Test
+  public void testCapacityRoundsUpToPowerOfTwo() {
+    assertEquals(8, new RingBufferBlockingQueue<Object>(5).capacity());
+    assertEquals(16, new RingBufferBlockingQueue<Object>(16).capacity());
+  }
+
+  @Test
+  public void testFifoAndBounds() throws Exception {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(4, WaitStrategy.SPIN);
+    assertTrue(queue.isEmpty());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(4));
+    assertFalse(queue.offer(4, 10, TimeUnit.MILLISECONDS));
+    assertEquals(4, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    assertEquals(Integer.valueOf(0), queue.peek());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(Integer.valueOf(i), queue.poll());
+    }
+    assertNull(queue.poll());
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testWrapAroundAndDrain() throws Exception {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(4, WaitStrategy.YIELD);
+    for (int round = 0; round < 10; round++) {
+      queue.put(round);
+      queue.put(round + 100);
+      assertEquals(Integer.valueOf(round), queue.take());
+      assertEquals(Integer.valueOf(round + 100), queue.take());
+    }
+    for (int i = 0; i < 3; i++) {
+      queue.put(i);
+    }
+    List<Integer> drained = new ArrayList<Integer>();
+    assertEquals(2, queue.drainTo(drained, 2));
+    assertEquals(Integer.valueOf(2), queue.iterator().next());
+    assertEquals(1, queue.drainTo(drained));
+    assertEquals(3, drained.size());
+  }
+
+  @Test
+  public void testParkedConsumerIsWoken() throws Exception {
+    final RingBufferBlockingQueue<Object> queue = new RingBufferBlockingQueue<Object>(2, WaitStrategy.PARK);
+    final CountDownLatch received = new CountDownLatch(1);
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          if (queue.poll(30, TimeUnit.SECONDS) != null) {
+            received.countDown();
+          }
+        } catch (InterruptedException e) {
+          // fall through
+        }
+      }
+    };
+    consumer.start();
+    Thread.sleep(50);
+    queue.put(new Object());
+    assertTrue(received.await(5, TimeUnit.SECONDS));
+    consumer.join();
+  }
+
+  @Test
+  public void testManyProducersOneConsumer() throws Exception {
+    final int producers = 4;
+    final int perProducer = 50000;
+    final RingBufferBlockingQueue<long[]> queue = new RingBufferBlockingQueue<long[]>(64, WaitStrategy.PARK);
+    for (int p = 0; p < producers; p++) {
+      final int id = p;
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < perProducer; i++) {
+              queue.put(new long[] { id, i });
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      }.start();
+    }
+    long[] last = new long[producers];
+    for (int p = 0; p < producers; p++) {
+      last[p] = -1;
+    }
+    for (int i = 0; i < producers * perProducer; i++) {
+      long[] next = queue.poll(30, TimeUnit.SECONDS);
+      // per producer order must be preserved
+      assertEquals(last[(int) next[0]] + 1, next[1]);
+      last[(int) next[0]] = next[1];
+    }
+    assertTrue(queue.isEmpty());
+  }
+}
@@ -33,7 +33,9 @@ import com.tc.object.msg.ClientHandshakeMessage;
 import com.tc.object.tx.TransactionID;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -144,6 +146,15 @@ public class DiagnosticClientEntityManager implements ClientEntityManager {
     return message;
   }
 
+  @Override
+  public List<InvokeFuture<byte[]>> invokeActions(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, boolean requiresReplication, boolean shouldBlockGetOnRetire, List<byte[]> payloads) {
+    List<InvokeFuture<byte[]>> futures = new ArrayList<InvokeFuture<byte[]>>(payloads.size());
+    for (byte[] payload : payloads) {
+      futures.add(invokeAction(entityDescriptor, acks, requiresReplication, shouldBlockGetOnRetire, payload));
+    }
+    return futures;
+  }
+
   private DiagnosticMessage createMessage(byte[] config) {
     // Get the clientID for our channel.
     // Get the next transaction ID.
@@ -0,0 +1,50 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.InvokeFuture;
+import org.terracotta.entity.MessageCodecException;
+
+import java.util.List;
+
+
+/**
+ * Builds several invocations of the same entity which are shipped to the server together, instead of one network
+ * message per invocation.  The acks and flags apply to every message added, and each message still gets its own
+ * future, in the order the messages were added.
+ */
+public interface BatchInvocationBuilder<M extends EntityMessage, R extends EntityResponse> {
+  BatchInvocationBuilder<M, R> message(M message);
+
+  BatchInvocationBuilder<M, R> ackSent();
+
+  BatchInvocationBuilder<M, R> ackReceived();
+
+  BatchInvocationBuilder<M, R> ackCompleted();
+
+  BatchInvocationBuilder<M, R> ackRetired();
+
+  BatchInvocationBuilder<M, R> replicate(boolean requiresReplication);
+
+  BatchInvocationBuilder<M, R> blockGetOnRetire(boolean shouldBlock);
+
+  List<InvokeFuture<R>> invoke() throws MessageCodecException;
+}
@@ -38,6 +38,9 @@ public class ClientConfigurationContext extends ConfigurationContextImpl {
 
   public static final int                MAX_PENDING_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_PENDING_REQUESTS, 5000);
   public static final int                MAX_SENT_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_SENT_REQUESTS, 200);
+  // fire-and-forget invokes are only coalesced when the window is positive
+  public static final long               COALESCE_WINDOW_MICROS                   = TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.CLIENT_REQUESTS_COALESCE_WINDOW_MICROS, 0);
+  public static final int                COALESCE_MAX_BYTES                       = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_REQUESTS_COALESCE_MAX_BYTES, 64 * 1024);
   
   private final ClientEntityManager       entityManager;
   private final ClientHandshakeManager    clientHandshakeManager;
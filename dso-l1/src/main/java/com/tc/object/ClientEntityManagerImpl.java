@@ -39,6 +39,7 @@ import org.terracotta.entity.MessageCodecException;
 import org.terracotta.exception.ConnectionClosedException;
 import org.terracotta.exception.EntityException;
 
+import com.tc.entity.NetworkVoltronEntityBatchMessage;
 import com.tc.entity.NetworkVoltronEntityMessage;
 import com.tc.entity.ResendVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage;
@@ -66,9 +67,11 @@ import com.tc.util.Assert;
 import com.tc.util.Util;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -93,6 +96,8 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   private final ConcurrentMap<ClientInstanceID, EntityClientEndpointImpl<?, ?>> objectStoreMap;
     
   private final StageManager stages;
+  // only there when fire-and-forget invokes are coalesced
+  private final InvokeCoalescer coalescer;
   
   private boolean isShutdown = false;
   private final boolean reconnectable;
@@ -100,7 +105,12 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
 //  for testing
   private boolean wasBusy = false;
   
-  public ClientEntityManagerImpl(ClientMessageChannel channel, StageManager mgr) {
+  /**
+   * @param coalesceWindowMicros how long a fire-and-forget invoke may be held back to go out with others, 0 to send
+   *   every invoke right away
+   * @param coalesceMaxBytes payload after which the held back invokes go out without waiting for the window
+   */
+  public ClientEntityManagerImpl(ClientMessageChannel channel, StageManager mgr, long coalesceWindowMicros, int coalesceMaxBytes) {
     this.logger = new ClientIDLogger(channel, LoggerFactory.getLogger(ClientEntityManager.class));
     
     this.channel = channel;
@@ -113,6 +123,9 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     this.stages = mgr;
     
     this.outbound = createSendStage();
+    this.coalescer = (coalesceWindowMicros > 0)
+        ? new InvokeCoalescer(logger, channel, coalesceWindowMicros, coalesceMaxBytes)
+        : null;
     
     this.reconnectable = channel.getProductId().isReconnectEnabled();
   }
@@ -140,7 +153,10 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
             }
           }
           if (doSend) {
-              if (first.send()) {
+              if (coalescer != null && InvokeCoalescer.isCoalescable(first.getMessage())) {
+//  nobody is waiting on the server for this one so it can be held back a little and sent along with others
+                coalescer.add(first);
+              } else if (coalescer != null ? coalescer.send(first) : first.send()) {
 //  when encountering a send for anything other than an invoke, wait here before sending anything else
 //  this is a bit paranoid but it is to prevent too many resends of lifecycle operations.  Just
 //  make sure those complete before sending any new invokes or lifecycle messages
@@ -300,12 +316,76 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     return inFlightMessageAfterAcks;
   }
 
+  @Override
+  public List<InvokeFuture<byte[]>> invokeActions(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> requestedAcks, boolean requiresReplication, boolean shouldBlockGetOnRetire, List<byte[]> payloads) {
+    List<InvokeFuture<byte[]>> futures = new ArrayList<InvokeFuture<byte[]>>(payloads.size());
+    // a batch takes a request ticket per invocation so it can never be larger than the number of tickets
+    for (int start = 0; start < payloads.size(); start += ClientConfigurationContext.MAX_SENT_REQUESTS) {
+      List<byte[]> chunk = payloads.subList(start, Math.min(payloads.size(), start + ClientConfigurationContext.MAX_SENT_REQUESTS));
+      futures.addAll(sendBatch(entityDescriptor, requestedAcks, requiresReplication, shouldBlockGetOnRetire, chunk));
+    }
+    return futures;
+  }
+
+  private List<InFlightMessage> sendBatch(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> requestedAcks, boolean requiresReplication, boolean shouldBlockGetOnRetire, List<byte[]> payloads) {
+    NetworkVoltronEntityBatchMessage batch = (NetworkVoltronEntityBatchMessage) channel.createMessage(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE);
+    TransactionID first = new TransactionID(currentTransactionID.addAndGet(payloads.size()) - payloads.size() + 1);
+    batch.setContents(this.channel.getClientID(), entityDescriptor, oldestTransactionPending(first));
+    List<InFlightMessage> inFlight = new ArrayList<InFlightMessage>(payloads.size());
+    long next = first.toLong();
+    for (byte[] payload : payloads) {
+      VoltronEntityMessage invoke = batch.addInvoke(new TransactionID(next++), requiresReplication, payload, requestedAcks);
+      inFlight.add(new InFlightMessage(invoke, requestedAcks, shouldBlockGetOnRetire));
+    }
+
+    try {
+      requestTickets.acquire(inFlight.size());
+    } catch (InterruptedException ie) {
+      throw Throwables.propagate(ie);
+    }
+    boolean doSend = false;
+    synchronized (this) {
+      if (!isShutdown) {
+        for (InFlightMessage message : inFlight) {
+          inFlightMessages.put(message.getTransactionID(), message);
+          message.sent();
+        }
+        doSend = true;
+      }
+    }
+    if (doSend) {
+      // the invocations are tracked on their own, so a batch which is not sent is resent one invocation at a time
+      if (!(coalescer != null ? coalescer.send(batch) : batch.send())) {
+        logger.warn("batch not sent.  Make sure resend happens " + inFlight);
+      }
+    } else {
+      requestTickets.release(inFlight.size());
+      for (InFlightMessage message : inFlight) {
+        throwClosedExceptionOnMessage(message, "Connection closed before sending message");
+      }
+    }
+    for (InFlightMessage message : inFlight) {
+      message.waitForAcks();
+    }
+    return inFlight;
+  }
+
   @Override
   public synchronized PrettyPrinter prettyPrint(PrettyPrinter out) {
   //  TODO: implement something sane
+    if (coalescer != null) {
+      out.println("invoke coalescing: " + coalescer.getStats());
+    }
     return out;
   }
 
+  /**
+   * Batch sizes and the latency added to the invokes held back by coalescing, empty when it is not enabled.
+   */
+  public Map<String, Long> getCoalescingStats() {
+    return (coalescer != null) ? coalescer.getStats() : Collections.<String, Long>emptyMap();
+  }
+
   @Override
   public void received(TransactionID id) {
     // Note that this call comes the platform, potentially concurrently with complete()/failure().
@@ -388,6 +468,10 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     flush = new FlushResponse();
     responderMulti.getSink().addSingleThreaded(flush);
     flush.waitForAccess();
+    // Anything still held back is in-flight as well so it goes out with the resends instead.
+    if (coalescer != null) {
+      coalescer.clear();
+    }
     // Walk the inFlightMessages, adding them all to the handshake, since we need them to be replayed.
     for (InFlightMessage inFlight : this.inFlightMessages.values()) {
       VoltronEntityMessage message = inFlight.getMessage();
@@ -404,6 +488,9 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   public synchronized void shutdown(boolean fromShutdownHook) {
     isShutdown = true;
     stateManager.stop();
+    if (coalescer != null) {
+      coalescer.shutdown();
+    }
     for (InFlightMessage msg : inFlightMessages.values()) {
       throwClosedExceptionOnMessage(msg, "Connection closed under in-flight message");
     }
@@ -577,6 +664,14 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     // Get the next transaction ID.
     TransactionID transactionID = new TransactionID(currentTransactionID.incrementAndGet());
     // Figure out the "trailing edge" of the current progress through the transaction stream.
+    TransactionID oldestTransactionPending = oldestTransactionPending(transactionID);
+    // Create the message and populate it.
+    NetworkVoltronEntityMessage message = (NetworkVoltronEntityMessage) channel.createMessage(TCMessageType.VOLTRON_ENTITY_MESSAGE);
+    message.setContents(clientID, transactionID, entityDescriptor, type, requiresReplication, config, oldestTransactionPending, acks);
+    return message;
+  }
+
+  private TransactionID oldestTransactionPending(TransactionID transactionID) {
     TransactionID oldestTransactionPending = transactionID;
     // if reconnectable, discover the oldest transaction still being waited for
     if (reconnectable) {
@@ -587,10 +682,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
         }
       }
     }
-    // Create the message and populate it.
-    NetworkVoltronEntityMessage message = (NetworkVoltronEntityMessage) channel.createMessage(TCMessageType.VOLTRON_ENTITY_MESSAGE);
-    message.setContents(clientID, transactionID, entityDescriptor, type, requiresReplication, config, oldestTransactionPending, acks);
-    return message;
+    return oldestTransactionPending;
   }
   
   private static class FlushResponse implements VoltronEntityResponse, VoltronEntityMultiResponse {
@@ -33,7 +33,9 @@ import com.tc.entity.VoltronEntityMessage;
 import com.tc.util.Assert;
 import org.terracotta.exception.EntityException;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -173,35 +175,92 @@ public class EntityClientEndpointImpl<M extends EntityMessage, R extends EntityR
       checkInvoked();
       invoked = true;
       final InvokeFuture<byte[]> invokeFuture = invocationHandler.invokeAction(invokeDescriptor, this.acks, this.requiresReplication, this.shouldBlockGetOnRetire, codec.encodeMessage(request));
-      return new InvokeFuture<R>() {
-        @Override
-        public boolean isDone() {
-          return invokeFuture.isDone();
-        }
+      return decodingFuture(invokeFuture);
+    }
 
-        @Override
-        public R get() throws InterruptedException, EntityException {
-          try {
-            return codec.decodeResponse(invokeFuture.get());
-          } catch (MessageCodecException e) {
-            throw new RuntimeException(e);
-          }
-        }
+    private void checkInvoked() {
+      if (invoked) {
+        throw new IllegalStateException("Already invoked");
+      }
+    }
+  }
 
-        @Override
-        public R getWithTimeout(long timeout, TimeUnit unit) throws InterruptedException, EntityException, TimeoutException {
-          try {
-            return codec.decodeResponse(invokeFuture.getWithTimeout(timeout, unit));
-          } catch (MessageCodecException e) {
-            throw new RuntimeException(e);
-          }
-        }
+  /**
+   * Starts a set of invocations which are sent to the server together.  Ordering with invocations made through
+   * {@link #beginInvoke()} is the same as if the messages of the batch had been invoked one after the other.
+   */
+  public BatchInvocationBuilder<M, R> beginBatchInvoke() {
+    // We can't create new invocations when the endpoint is closed.
+    checkEndpointOpen();
+    return new BatchInvocationBuilderImpl();
+  }
+
+  private class BatchInvocationBuilderImpl implements BatchInvocationBuilder<M, R> {
+    private boolean invoked = false;
+    private final List<M> requests = new ArrayList<M>();
+    private final Set<VoltronEntityMessage.Acks> acks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
+    private boolean requiresReplication = true;
+    // By default, we block the get() on the RETIRE ack.
+    private boolean shouldBlockGetOnRetire = true;
+
+    @Override
+    public synchronized BatchInvocationBuilder<M, R> message(M request) {
+      checkInvoked();
+      this.requests.add(request);
+      return this;
+    }
+
+    @Override
+    public BatchInvocationBuilder<M, R> ackSent() {
+      acks.add(VoltronEntityMessage.Acks.SENT);
+      return this;
+    }
+
+    @Override
+    public BatchInvocationBuilder<M, R> ackReceived() {
+      acks.add(VoltronEntityMessage.Acks.RECEIVED);
+      return this;
+    }
 
-        @Override
-        public void interrupt() {
-          invokeFuture.interrupt();
+    @Override
+    public BatchInvocationBuilder<M, R> ackCompleted() {
+      acks.add(VoltronEntityMessage.Acks.COMPLETED);
+      return this;
+    }
+
+    @Override
+    public BatchInvocationBuilder<M, R> ackRetired() {
+      acks.add(VoltronEntityMessage.Acks.RETIRED);
+      return this;
+    }
+
+    @Override
+    public BatchInvocationBuilder<M, R> replicate(boolean requiresReplication) {
+      this.requiresReplication = requiresReplication;
+      return this;
+    }
+
+    @Override
+    public BatchInvocationBuilder<M, R> blockGetOnRetire(boolean shouldBlock) {
+      this.shouldBlockGetOnRetire = shouldBlock;
+      return this;
+    }
+
+    @Override
+    public synchronized List<InvokeFuture<R>> invoke() throws MessageCodecException {
+      checkInvoked();
+      invoked = true;
+      List<byte[]> payloads = new ArrayList<byte[]>(requests.size());
+      for (M request : requests) {
+        payloads.add(codec.encodeMessage(request));
+      }
+      List<InvokeFuture<R>> futures = new ArrayList<InvokeFuture<R>>(payloads.size());
+      if (!payloads.isEmpty()) {
+        for (InvokeFuture<byte[]> invokeFuture : invocationHandler.invokeActions(invokeDescriptor, this.acks, this.requiresReplication, this.shouldBlockGetOnRetire, payloads)) {
+          futures.add(decodingFuture(invokeFuture));
         }
-      };
+      }
+      return futures;
     }
 
     private void checkInvoked() {
@@ -211,6 +270,38 @@ public class EntityClientEndpointImpl<M extends EntityMessage, R extends EntityR
     }
   }
 
+  private InvokeFuture<R> decodingFuture(final InvokeFuture<byte[]> invokeFuture) {
+    return new InvokeFuture<R>() {
+      @Override
+      public boolean isDone() {
+        return invokeFuture.isDone();
+      }
+
+      @Override
+      public R get() throws InterruptedException, EntityException {
+        try {
+          return codec.decodeResponse(invokeFuture.get());
+        } catch (MessageCodecException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public R getWithTimeout(long timeout, TimeUnit unit) throws InterruptedException, EntityException, TimeoutException {
+        try {
+          return codec.decodeResponse(invokeFuture.getWithTimeout(timeout, unit));
+        } catch (MessageCodecException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public void interrupt() {
+        invokeFuture.interrupt();
+      }
+    };
+  }
+
   public byte[] getExtendedReconnectData() {
     // TODO:  Determine if we need to limit anything here on closed.  The call can come from another thread so it may not
     // yet know that we are closed when the call originated.
@@ -20,6 +20,7 @@ package com.tc.object;
 
 import com.tc.entity.VoltronEntityMessage;
 
+import java.util.List;
 import java.util.Set;
 
 import org.terracotta.entity.InvokeFuture;
@@ -30,4 +31,11 @@ import org.terracotta.entity.InvokeFuture;
  */
 public interface InvocationHandler {
   InvokeFuture<byte[]> invokeAction(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload);
+
+  /**
+   * Sends several invocations of the same entity, sharing their acks and flags, in as few network messages as
+   * possible.  Each invocation still gets its own future, in the order of the payloads, and is received, completed and
+   * retired on its own.
+   */
+  List<InvokeFuture<byte[]>> invokeActions(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, boolean requiresReplication, boolean shouldBlockGetOnRetire, List<byte[]> payloads);
 }
@@ -0,0 +1,212 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import com.tc.entity.NetworkVoltronEntityBatchMessage;
+import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.VoltronEntityMessage;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.TCMessage;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.tx.TransactionID;
+import com.tc.stats.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Holds back fire-and-forget invocations, the ones whose caller does not wait on the server, for a short window so
+ * that those queued for the same entity go out as one {@link NetworkVoltronEntityBatchMessage}.
+ * <p>
+ * Pending invocations are flushed once the oldest of them has waited for the time window, once their payloads add up
+ * to the byte window, or as soon as anything which can't be held back is sent, which always goes out after them so
+ * the order in which the client sends its messages is unchanged.  Invocations which are flushed alone are sent as the
+ * message they were created as.
+ */
+class InvokeCoalescer {
+  private final Logger logger;
+  private final MessageChannel channel;
+  private final long windowNanos;
+  private final int maxBytes;
+
+  private final List<InFlightMessage> pending = new ArrayList<InFlightMessage>();
+  private final List<Long> pendingSince = new ArrayList<Long>();
+  private long pendingBytes;
+  private boolean stopped;
+  private final Thread flusher;
+
+  private final LatencyHistogram batchSizes = new LatencyHistogram();
+  private final LatencyHistogram addedLatency = new LatencyHistogram();
+
+  InvokeCoalescer(Logger logger, MessageChannel channel, long windowMicros, int maxBytes) {
+    this.logger = logger;
+    this.channel = channel;
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+    this.maxBytes = maxBytes;
+    this.flusher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        flushOnWindow();
+      }
+    }, "Invoke coalescer");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * @return true if the message is an invocation nobody waits on beyond its being sent
+   */
+  static boolean isCoalescable(VoltronEntityMessage message) {
+    if (message.getVoltronType() != VoltronEntityMessage.Type.INVOKE_ACTION || !(message instanceof NetworkVoltronEntityMessage)) {
+      return false;
+    }
+    Set<VoltronEntityMessage.Acks> acks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
+    acks.addAll(((NetworkVoltronEntityMessage) message).getRequestedAcks());
+    acks.remove(VoltronEntityMessage.Acks.SENT);
+    return acks.isEmpty();
+  }
+
+  /**
+   * Queues an invocation which is already tracked as in flight.
+   */
+  synchronized void add(InFlightMessage message) {
+    if (!pending.isEmpty() && !sameEntity(pending.get(0).getMessage(), message.getMessage())) {
+      flushPending();
+    }
+    if (pending.isEmpty()) {
+      notifyAll();
+    }
+    pending.add(message);
+    pendingSince.add(System.nanoTime());
+    pendingBytes += message.getMessage().getExtendedData().length;
+    if (pendingBytes >= maxBytes) {
+      flushPending();
+    }
+  }
+
+  /**
+   * Sends a message which is not held back, after anything pending.
+   */
+  synchronized boolean send(InFlightMessage message) {
+    flushPending();
+    return message.send();
+  }
+
+  synchronized boolean send(TCMessage message) {
+    flushPending();
+    return message.send();
+  }
+
+  /**
+   * Forgets the pending invocations, which the caller is resending or failing by other means.
+   */
+  synchronized void clear() {
+    pending.clear();
+    pendingSince.clear();
+    pendingBytes = 0;
+  }
+
+  synchronized void shutdown() {
+    clear();
+    stopped = true;
+    notifyAll();
+  }
+
+  Map<String, Long> getStats() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    batchSizes.summarize("batchSize.", stats);
+    addedLatency.summarize("addedLatencyNanos.", stats);
+    return stats;
+  }
+
+  private synchronized void flushOnWindow() {
+    boolean interrupted = false;
+    while (!stopped) {
+      try {
+        if (pending.isEmpty()) {
+          wait();
+        } else {
+          long remaining = pendingSince.get(0) + windowNanos - System.nanoTime();
+          if (remaining > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          } else {
+            flushPending();
+          }
+        }
+      } catch (InterruptedException ie) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void flushPending() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    long now = System.nanoTime();
+    batchSizes.record(pending.size());
+    for (long since : pendingSince) {
+      addedLatency.record(now - since);
+    }
+    boolean sent;
+    if (pending.size() == 1) {
+      sent = pending.get(0).send();
+    } else {
+      // every invocation was created with its own idea of the oldest pending transaction, the earliest covers them all
+      TransactionID oldest = pending.get(0).getMessage().getOldestTransactionOnClient();
+      for (InFlightMessage message : pending) {
+        TransactionID candidate = message.getMessage().getOldestTransactionOnClient();
+        if (candidate.compareTo(oldest) < 0) {
+          oldest = candidate;
+        }
+      }
+      VoltronEntityMessage first = pending.get(0).getMessage();
+      NetworkVoltronEntityBatchMessage batch = (NetworkVoltronEntityBatchMessage) channel.createMessage(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE);
+      batch.setContents(first.getSource(), first.getEntityDescriptor(), oldest);
+      for (InFlightMessage message : pending) {
+        VoltronEntityMessage invoke = message.getMessage();
+        batch.addInvoke(invoke.getTransactionID(), invoke.doesRequireReplication(), invoke.getExtendedData(), ((NetworkVoltronEntityMessage) invoke).getRequestedAcks());
+      }
+      sent = batch.send();
+    }
+    if (!sent) {
+      logger.warn("coalesced invokes not sent.  Make sure resend happens " + pending);
+    }
+    clear();
+  }
+
+  private static boolean sameEntity(VoltronEntityMessage one, VoltronEntityMessage other) {
+    // invoke descriptors don't support equals
+    EntityDescriptor descriptor = one.getEntityDescriptor();
+    EntityDescriptor otherDescriptor = other.getEntityDescriptor();
+    return descriptor.getFetchID().equals(otherDescriptor.getFetchID())
+        && descriptor.getClientInstanceID().equals(otherDescriptor.getClientInstanceID());
+  }
+}
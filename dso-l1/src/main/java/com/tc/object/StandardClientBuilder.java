@@ -94,7 +94,7 @@ public class StandardClientBuilder implements ClientBuilder {
 
   @Override
   public ClientEntityManager createClientEntityManager(ClientMessageChannel channel, StageManager stages) {
-    return new ClientEntityManagerImpl(channel, stages);
+    return new ClientEntityManagerImpl(channel, stages, ClientConfigurationContext.COALESCE_WINDOW_MICROS, ClientConfigurationContext.COALESCE_MAX_BYTES);
   }
 
 }
@@ -36,6 +36,7 @@ import org.terracotta.exception.ConnectionClosedException;
 import org.terracotta.exception.EntityException;
 import org.terracotta.exception.EntityNotFoundException;
 
+import com.tc.entity.NetworkVoltronEntityBatchMessage;
 import com.tc.entity.NetworkVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage.Acks;
@@ -54,8 +55,11 @@ import com.tc.util.concurrent.ThreadUtil;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -96,7 +100,7 @@ public class ClientEntityManagerTest extends TestCase {
         return stage;
       }
     });
-    this.manager = new ClientEntityManagerImpl(this.channel, stageMgr);
+    this.manager = new ClientEntityManagerImpl(this.channel, stageMgr, 0, 0);
     
     String entityClassName = "Class Name";
     String entityInstanceName = "Instance Name";
@@ -396,6 +400,132 @@ public class ClientEntityManagerTest extends TestCase {
     assertThat(t.isAlive(), is(false));
   }
 
+  @Test
+  public void testBatchInvokeIsChunkedAtMaxSentRequests() throws Exception {
+    final byte[] resultObject = new byte[0];
+    final List<TestBatchMessage> batches = new ArrayList<TestBatchMessage>();
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE)).then(new Answer<TCMessage>() {
+      @Override
+      public TCMessage answer(InvocationOnMock invocation) throws Throwable {
+        TestBatchMessage batch = new TestBatchMessage(manager, resultObject, true);
+        batches.add(batch);
+        return batch;
+      }
+    });
+    int count = ClientConfigurationContext.MAX_SENT_REQUESTS + 1;
+    List<byte[]> payloads = new ArrayList<byte[]>(count);
+    for (int i = 0; i < count; i++) {
+      payloads.add(new byte[] { (byte) i });
+    }
+    // The second chunk only gets its request tickets once the first one has retired.
+    List<InvokeFuture<byte[]>> results = this.manager.invokeActions(descriptor, Collections.<Acks>emptySet(), false, true, payloads);
+
+    assertEquals(2, batches.size());
+    assertEquals(ClientConfigurationContext.MAX_SENT_REQUESTS, batches.get(0).getInvokes().size());
+    assertEquals(1, batches.get(1).getInvokes().size());
+    TransactionID previous = null;
+    int index = 0;
+    for (TestBatchMessage batch : batches) {
+      assertTrue(batch.sent);
+      for (VoltronEntityMessage invoke : batch.getInvokes()) {
+        assertTrue(Arrays.equals(payloads.get(index++), invoke.getExtendedData()));
+        if (previous != null) {
+          assertEquals(previous.toLong() + 1, invoke.getTransactionID().toLong());
+        }
+        previous = invoke.getTransactionID();
+      }
+    }
+    assertEquals(count, results.size());
+    for (InvokeFuture<byte[]> result : results) {
+      assertTrue(resultObject == result.get());
+    }
+  }
+
+  @Test
+  public void testBatchInvokeWaitsForEachAck() throws Exception {
+    final TestBatchMessage batch = new TestBatchMessage(this.manager, null, false);
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE)).thenReturn(batch);
+    final EnumSet<VoltronEntityMessage.Acks> requestedAcks = EnumSet.of(VoltronEntityMessage.Acks.RECEIVED);
+    final ClientEntityManager mgr = manager;
+    Thread t = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        mgr.invokeActions(descriptor, requestedAcks, false, true, Arrays.asList(new byte[1], new byte[2], new byte[3]));
+      }
+      
+    });
+    t.start();
+
+    t.join(1000);
+    assertThat(t.isAlive(), is(true));
+    assertTrue(batch.sent);
+    List<VoltronEntityMessage> invokes = batch.getInvokes();
+    assertEquals(3, invokes.size());
+
+    // Every invocation of the batch is acked on its own.
+    this.manager.received(invokes.get(2).getTransactionID());
+    this.manager.received(invokes.get(0).getTransactionID());
+    t.join(1000);
+    assertThat(t.isAlive(), is(true));
+
+    this.manager.received(invokes.get(1).getTransactionID());
+    t.join();
+    assertThat(t.isAlive(), is(false));
+  }
+
+  @Test
+  public void testBatchInvokeSendsCoalescedInvokesFirst() throws Exception {
+    // A window long enough that nothing goes out on its own while the test runs.
+    ClientEntityManager coalescing = new ClientEntityManagerImpl(this.channel, this.stageMgr, TimeUnit.MINUTES.toMicros(1), Integer.MAX_VALUE);
+    try {
+      TestRequestBatchMessage single = new TestRequestBatchMessage(coalescing, null, null, false);
+      when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_MESSAGE)).thenReturn(single);
+      TestBatchMessage batch = new TestBatchMessage(coalescing, null, false);
+      batch.sentAfter = single;
+      when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE)).thenReturn(batch);
+
+      coalescing.invokeAction(descriptor, Collections.<Acks>emptySet(), false, true, new byte[0]);
+      // Nobody waits on a fire-and-forget invoke so it is held back.
+      assertFalse(single.sent);
+
+      coalescing.invokeActions(descriptor, Collections.<Acks>emptySet(), false, true, Arrays.asList(new byte[1], new byte[2]));
+      assertTrue(single.sent);
+      assertTrue(batch.sent);
+      assertEquals(2, batch.getInvokes().size());
+    } finally {
+      coalescing.shutdown(false);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testBeginBatchInvokeSendsOneBatch() throws Exception {
+    final TestBatchMessage batch = new TestBatchMessage(this.manager, new byte[0], true);
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE)).thenReturn(batch);
+    EntityMessage first = mock(EntityMessage.class);
+    EntityMessage second = mock(EntityMessage.class);
+    EntityResponse response = mock(EntityResponse.class);
+    MessageCodec<EntityMessage, EntityResponse> codec = mock(MessageCodec.class);
+    when(codec.encodeMessage(first)).thenReturn(new byte[] { 1 });
+    when(codec.encodeMessage(second)).thenReturn(new byte[] { 2 });
+    when(codec.decodeResponse(any(byte[].class))).thenReturn(response);
+    EntityClientEndpointImpl<EntityMessage, EntityResponse> endpoint = new EntityClientEndpointImpl<EntityMessage, EntityResponse>(entityID, 1L, descriptor, this.manager, new byte[0], codec, mock(Runnable.class));
+
+    List<InvokeFuture<EntityResponse>> results = endpoint.beginBatchInvoke().message(first).message(second).replicate(false).invoke();
+
+    assertTrue(batch.sent);
+    List<VoltronEntityMessage> invokes = batch.getInvokes();
+    assertEquals(2, invokes.size());
+    assertTrue(Arrays.equals(new byte[] { 1 }, invokes.get(0).getExtendedData()));
+    assertTrue(Arrays.equals(new byte[] { 2 }, invokes.get(1).getExtendedData()));
+    assertFalse(invokes.get(0).doesRequireReplication());
+    assertEquals(2, results.size());
+    for (InvokeFuture<EntityResponse> result : results) {
+      assertTrue(response == result.get());
+    }
+  }
+
   private boolean didFindEndpoint(TestFetcher fetcher) throws Exception {
     boolean didFind = false;
     try {
@@ -455,6 +585,7 @@ public class ClientEntityManagerTest extends TestCase {
     private EntityDescriptor descriptor;
     private byte[] extendedData;
     private boolean requiresReplication;
+    private Set<Acks> acks;
     
     public TestRequestBatchMessage(ClientEntityManager clientEntityManager, byte[] resultObject, EntityException resultException, boolean autoComplete) {
       this.clientEntityManager = clientEntityManager;
@@ -481,7 +612,7 @@ public class ClientEntityManagerTest extends TestCase {
 
     @Override
     public Set<Acks> getRequestedAcks() {
-      throw new UnsupportedOperationException();
+      return this.acks;
     }
 
     @Override
@@ -572,6 +703,7 @@ public class ClientEntityManagerTest extends TestCase {
       this.descriptor = entityDescriptor;
       this.extendedData = extendedData;
       this.requiresReplication = requiresReplication;
+      this.acks = acks;
     }
 
     @Override
@@ -585,6 +717,87 @@ public class ClientEntityManagerTest extends TestCase {
     }
   }
   
+  private static class TestBatchMessage implements NetworkVoltronEntityBatchMessage {
+    private final ClientEntityManager clientEntityManager;
+    private final byte[] resultObject;
+    private final boolean autoComplete;
+    private final List<VoltronEntityMessage> invokes = new ArrayList<VoltronEntityMessage>();
+    private EntityDescriptor descriptor;
+    // when set, must have been sent before this batch
+    private TestRequestBatchMessage sentAfter;
+
+    public TestBatchMessage(ClientEntityManager clientEntityManager, byte[] resultObject, boolean autoComplete) {
+      this.clientEntityManager = clientEntityManager;
+      this.resultObject = resultObject;
+      this.autoComplete = autoComplete;
+    }
+    @Override
+    public void setContents(ClientID clientID, EntityDescriptor entityDescriptor, TransactionID oldestTransactionPending) {
+      this.descriptor = entityDescriptor;
+    }
+    @Override
+    public VoltronEntityMessage addInvoke(TransactionID transactionID, boolean requiresReplication, byte[] extendedData, Set<Acks> acks) {
+      TestRequestBatchMessage invoke = new TestRequestBatchMessage(this.clientEntityManager, null, null, false);
+      invoke.setContents(null, transactionID, this.descriptor, VoltronEntityMessage.Type.INVOKE_ACTION, requiresReplication, extendedData, null, acks);
+      this.invokes.add(invoke);
+      return invoke;
+    }
+    @Override
+    public List<VoltronEntityMessage> getInvokes() {
+      return this.invokes;
+    }
+    boolean sent = false;
+    @Override
+    public boolean send() {
+      assertFalse(sent);
+      assertTrue(this.sentAfter == null || this.sentAfter.sent);
+      sent = true;
+      if (this.autoComplete) {
+        for (VoltronEntityMessage invoke : this.invokes) {
+          this.clientEntityManager.complete(invoke.getTransactionID(), this.resultObject);
+          this.clientEntityManager.retired(invoke.getTransactionID());
+        }
+      }
+      return sent;
+    }
+    @Override
+    public TCMessageType getMessageType() {
+      return TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE;
+    }
+    @Override
+    public void hydrate() throws IOException, UnknownNameException {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public void dehydrate() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public MessageChannel getChannel() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public NodeID getSourceNodeID() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public NodeID getDestinationNodeID() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public SessionID getLocalSessionID() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public int getTotalLength() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public void setMessageCodecSupplier(MessageCodecSupplier supplier) {
+      throw new UnsupportedOperationException();
+    }
+  }
+  
   private static class FakeSink implements Sink<Object> {
     
     private final EventHandler<Object> handle;
@@ -0,0 +1,181 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import com.tc.entity.NetworkVoltronEntityBatchMessage;
+import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.VoltronEntityMessage;
+import com.tc.entity.VoltronEntityMessage.Acks;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.object.tx.TransactionID;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class InvokeCoalescerTest {
+  private static final EntityDescriptor ENTITY = EntityDescriptor.createDescriptorForInvoke(new FetchID(1), new ClientInstanceID(1));
+  private static final EntityDescriptor OTHER_ENTITY = EntityDescriptor.createDescriptorForInvoke(new FetchID(2), new ClientInstanceID(2));
+
+  // what went out on the channel, in order: a transaction ID for a single message, the list of them for a batch
+  private final List<Object> sent = Collections.synchronizedList(new ArrayList<Object>());
+  private InvokeCoalescer coalescer;
+
+  @After
+  public void tearDown() {
+    if (coalescer != null) {
+      coalescer.shutdown();
+    }
+  }
+
+  @Test
+  public void testOnlyFireAndForgetInvokesAreCoalesced() {
+    assertTrue(InvokeCoalescer.isCoalescable(message(1, ENTITY, EnumSet.noneOf(Acks.class), 1)));
+    assertTrue(InvokeCoalescer.isCoalescable(message(1, ENTITY, EnumSet.of(Acks.SENT), 1)));
+    assertFalse(InvokeCoalescer.isCoalescable(message(1, ENTITY, EnumSet.of(Acks.RECEIVED), 1)));
+    assertFalse(InvokeCoalescer.isCoalescable(message(1, ENTITY, EnumSet.of(Acks.SENT, Acks.RETIRED), 1)));
+  }
+
+  @Test
+  public void testTimeWindowFlushesOneBatch() throws Exception {
+    coalescer = new InvokeCoalescer(LoggerFactory.getLogger(InvokeCoalescerTest.class), channel(), 20000, Integer.MAX_VALUE);
+    for (int i = 1; i <= 3; i++) {
+      coalescer.add(inFlight(i, ENTITY, 1));
+    }
+    long deadline = System.currentTimeMillis() + 10000;
+    while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(Collections.singletonList(Arrays.asList(1L, 2L, 3L)), sent);
+
+    Map<String, Long> stats = coalescer.getStats();
+    assertEquals(Long.valueOf(1), stats.get("batchSize.count"));
+    assertEquals(Long.valueOf(3), stats.get("batchSize.max"));
+    assertEquals(Long.valueOf(3), stats.get("addedLatencyNanos.count"));
+    assertTrue(stats.get("addedLatencyNanos.max") > 0);
+  }
+
+  @Test
+  public void testFlushesKeepSendOrder() {
+    // the time window never expires here, so everything is flushed by the calling thread
+    coalescer = new InvokeCoalescer(LoggerFactory.getLogger(InvokeCoalescerTest.class), channel(), 60000000, 10);
+    coalescer.add(inFlight(1, ENTITY, 4));
+    coalescer.add(inFlight(2, ENTITY, 4));
+    assertTrue(sent.isEmpty());
+    // anything sent directly goes out after what is pending
+    assertTrue(coalescer.send(new InFlightMessage(message(3, ENTITY, EnumSet.of(Acks.RECEIVED), 4), EnumSet.of(Acks.RECEIVED), false)));
+    assertEquals(Arrays.<Object>asList(Arrays.asList(1L, 2L), 3L), sent);
+
+    // the byte window
+    coalescer.add(inFlight(4, ENTITY, 4));
+    coalescer.add(inFlight(5, ENTITY, 4));
+    coalescer.add(inFlight(6, ENTITY, 4));
+    assertEquals(Arrays.asList(4L, 5L, 6L), sent.get(2));
+
+    // a batch only holds invokes for one entity, a single one goes out as is
+    coalescer.add(inFlight(7, ENTITY, 1));
+    coalescer.add(inFlight(8, OTHER_ENTITY, 1));
+    assertEquals(7L, sent.get(3));
+    assertEquals(4, sent.size());
+    coalescer.clear();
+    coalescer.send(new InFlightMessage(message(9, ENTITY, EnumSet.of(Acks.RECEIVED), 1), EnumSet.of(Acks.RECEIVED), false));
+    assertEquals(9L, sent.get(4));
+  }
+
+  private InFlightMessage inFlight(long tid, EntityDescriptor entity, int size) {
+    return new InFlightMessage(message(tid, entity, EnumSet.noneOf(Acks.class), size), EnumSet.noneOf(Acks.class), false);
+  }
+
+  private NetworkVoltronEntityMessage message(final long tid, final EntityDescriptor entity, final Set<Acks> acks, final int size) {
+    return (NetworkVoltronEntityMessage) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { NetworkVoltronEntityMessage.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("send")) {
+          sent.add(tid);
+          return true;
+        } else if (name.equals("getTransactionID")) {
+          return new TransactionID(tid);
+        } else if (name.equals("getOldestTransactionOnClient")) {
+          return new TransactionID(1);
+        } else if (name.equals("getSource")) {
+          return new ClientID(1);
+        } else if (name.equals("getEntityDescriptor")) {
+          return entity;
+        } else if (name.equals("getVoltronType")) {
+          return VoltronEntityMessage.Type.INVOKE_ACTION;
+        } else if (name.equals("getRequestedAcks")) {
+          return acks;
+        } else if (name.equals("getExtendedData")) {
+          return new byte[size];
+        } else if (name.equals("doesRequireReplication")) {
+          return true;
+        } else if (name.equals("toString")) {
+          return "message " + tid;
+        }
+        return null;
+      }
+    });
+  }
+
+  private MessageChannel channel() {
+    return (MessageChannel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { MessageChannel.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("createMessage")) {
+          return batch();
+        }
+        return null;
+      }
+    });
+  }
+
+  private NetworkVoltronEntityBatchMessage batch() {
+    final List<Long> invokes = new ArrayList<Long>();
+    return (NetworkVoltronEntityBatchMessage) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { NetworkVoltronEntityBatchMessage.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("addInvoke")) {
+          invokes.add(((TransactionID) args[0]).toLong());
+        } else if (method.getName().equals("send")) {
+          sent.add(invokes);
+          return true;
+        }
+        return null;
+      }
+    });
+  }
+}
@@ -27,6 +27,7 @@ import com.tc.util.State;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 
 public interface StateManager {
 
@@ -66,4 +67,10 @@ public interface StateManager {
   public NodeID getActiveNodeID();
 
   public void cleanupKnownServers();
+
+  /**
+   * A standby passive which drops off this active and comes back is normally zapped as dirty.  One the given test
+   * accepts is let back in as a standby instead, to ask for its replication stream to be resumed.
+   */
+  public void setResumableStandbys(Predicate<NodeID> resumable);
 }
@@ -46,6 +46,7 @@ import com.tc.util.State;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 
 public class StateManagerImpl implements StateManager {
@@ -77,6 +78,9 @@ public class StateManagerImpl implements StateManager {
   // Known servers from current election
   Set<NodeID> currKnownServers = new HashSet<>();
 
+  // Standby passives of this active which may rejoin and resume their stream rather than be zapped as dirty
+  private volatile Predicate<NodeID> resumableStandbys = node -> false;
+
   public StateManagerImpl(Logger consoleLogger, GroupManager<AbstractGroupMessage> groupManager,
                           Sink<StateChangedEvent> stateChangeSink, StageManager mgr, 
                           int expectedServers, int electionTimeInSec, WeightGeneratorFactory weightFactory,
@@ -483,12 +487,20 @@ public class StateManagerImpl implements StateManager {
     currKnownServers.addAll(nodeIDs);
   }
 
+  @Override
+  public void setResumableStandbys(Predicate<NodeID> resumable) {
+    this.resumableStandbys = resumable;
+  }
+
   private void validateResponse(NodeID nodeID, L2StateMessage response) throws GroupException {
     if (response == null || response.getType() != L2StateMessage.RESULT_AGREED) {
       String error = "Recd wrong response from : " + nodeID + " : msg = " + response + " while publishing Active State";
       logger.error(error);
       // throwing this exception will initiate a zap elsewhere
       throw new GroupException(error);
+    } else if (response.getState().equals(PASSIVE_STANDBY) && resumableStandbys.test(nodeID)) {
+      // a standby of this active coming back, it asks for its stream to be resumed and is zapped if that can't be done
+      info(nodeID + " rejoined as PASSIVE STANDBY, expecting it to resume replication");
     } else if (response.getState().equals(PASSIVE_STANDBY) && !currKnownServers.contains(nodeID)) {
       final String errMesg = "A Terracotta server tried to join the mirror group as PASSIVE STANDBY but with dirty db, "
         + " Zapping " +  nodeID + " to allow it to resync data from active";
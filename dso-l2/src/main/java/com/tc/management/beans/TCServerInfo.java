@@ -88,7 +88,7 @@ public class TCServerInfo extends AbstractTerracottaMBean implements TCServerInf
 
   @Override
   public void reset() {
-    // nothing to reset
+    resetStageLatencies();
   }
 
   @Override
@@ -289,6 +289,26 @@ public class TCServerInfo extends AbstractTerracottaMBean implements TCServerInf
     return map;
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencies() {
+    return server.getStageLatencies();
+  }
+
+  @Override
+  public void resetStageLatencies() {
+    server.resetStageLatencies();
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getReplicationWindows() {
+    return server.getReplicationWindows();
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getReplicationCompression() {
+    return server.getReplicationCompression();
+  }
+
   @Override
   public byte[] takeCompressedThreadDump(long requestMillis) {
     return ThreadDumpUtil.getCompressedThreadDump();
@@ -24,6 +24,7 @@ import com.tc.net.NodeID;
 import com.tc.net.ServerID;
 import com.tc.text.PrettyPrintable;
 
+import java.util.Map;
 import java.util.Set;
 
 public interface GroupManager<M extends GroupMessage> extends PrettyPrintable {
@@ -61,4 +62,9 @@ public interface GroupManager<M extends GroupMessage> extends PrettyPrintable {
   public boolean isServerConnected(String nodeName);
 
   public void closeMember(ServerID serverID);
+
+  /**
+   * @return For each member which negotiated compression, its message and byte counts and time spent compressing
+   */
+  public Map<String, Map<String, Long>> getCompressionStats();
 }
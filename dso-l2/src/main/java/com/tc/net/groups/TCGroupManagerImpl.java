@@ -1025,9 +1025,15 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
     private final HandshakeState     STATE_FAILURE        = new FailureState();
 
     private final static long        HANDSHAKE_TIMEOUT;
+    private final static boolean     COMPRESSION_ENABLED;
+    private final static int         COMPRESSION_MIN_SIZE;
     static {
       HANDSHAKE_TIMEOUT = TCPropertiesImpl.getProperties()
           .getLong(TCPropertiesConsts.L2_NHA_TCGROUPCOMM_HANDSHAKE_TIMEOUT);
+      COMPRESSION_ENABLED = TCPropertiesImpl.getProperties()
+          .getBoolean(TCPropertiesConsts.L2_NHA_TCGROUPCOMM_COMPRESSION_ENABLED);
+      COMPRESSION_MIN_SIZE = TCPropertiesImpl.getProperties()
+          .getInt(TCPropertiesConsts.L2_NHA_TCGROUPCOMM_COMPRESSION_MIN_SIZE);
     }
 
     private final TCGroupManagerImpl manager;
@@ -1038,6 +1044,7 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
 
     private HandshakeState           current;
     private ServerID                 peerNodeID;
+    private boolean                  peerOffersCompression;
     private TimerTask                timerTask;
     private TCGroupMember            member;
     private boolean                  stateTransitionInProgress;
@@ -1238,13 +1245,14 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
 
       void setPeerNodeID(TCGroupHandshakeMessage msg) {
         peerNodeID = msg.getNodeID();
+        peerOffersCompression = msg.isCompressionOffered();
         manager.receivedNodeID(channel, peerNodeID);
       }
 
       void writeNodeIDMessage() {
         TCGroupHandshakeMessage msg = (TCGroupHandshakeMessage) channel
             .createMessage(TCMessageType.GROUP_HANDSHAKE_MESSAGE);
-        msg.initializeNodeID(localNodeID, version, weightGeneratorFactory.generateWeightSequence());
+        msg.initializeNodeID(localNodeID, version, weightGeneratorFactory.generateWeightSequence(), COMPRESSION_ENABLED);
         if (isDebugLogging()) {
           debugInfo("Sending group nodeID message to " + channel);
         }
@@ -1319,7 +1327,10 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
       private void createMember() {
         Assert.assertNotNull(localNodeID);
         Assert.assertNotNull(peerNodeID);
-        member = new TCGroupMemberImpl(localNodeID, peerNodeID, channel);
+        // messages to the peer are only compressed if both ends offered it
+        GroupMessageCompression compression = (COMPRESSION_ENABLED && peerOffersCompression)
+            ? new GroupMessageCompression(COMPRESSION_MIN_SIZE) : null;
+        member = new TCGroupMemberImpl(localNodeID, peerNodeID, channel, compression);
       }
 
       private void signalToJoin(boolean ok) {
@@ -1433,6 +1444,17 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
     return this.discover.isServerConnected(nodeName);
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getCompressionStats() {
+    Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+    for (TCGroupMember member : members.values()) {
+      if (member.getCompression() != null) {
+        stats.put(member.getPeerNodeID().toString(), member.getCompression().getStats());
+      }
+    }
+    return stats;
+  }
+
   private static void debugInfo(String message) {
     L2DebugLogging.log(logger, LogLevel.INFO, message, null);
   }
@@ -29,6 +29,8 @@ public interface TCGroupMember {
 
   public MessageChannel getChannel();
 
+  public GroupMessageCompression getCompression();
+
   public void send(AbstractGroupMessage msg, Runnable sentCallback) throws GroupException;
   
   public void sendIgnoreNotReady(AbstractGroupMessage msg);
@@ -46,11 +46,18 @@ public class TCGroupMemberImpl implements TCGroupMember, ChannelEventListener {
   private final AtomicBoolean   ready        = new AtomicBoolean(false);
   private final AtomicBoolean   joined       = new AtomicBoolean(false);
   private volatile boolean      memberAdding = false;
+  // null unless both ends offered compression during the handshake
+  private final GroupMessageCompression compression;
 
   public TCGroupMemberImpl(ServerID localNodeID, ServerID peerNodeID, MessageChannel channel) {
+    this(localNodeID, peerNodeID, channel, null);
+  }
+
+  public TCGroupMemberImpl(ServerID localNodeID, ServerID peerNodeID, MessageChannel channel, GroupMessageCompression compression) {
     this.channel = channel;
     this.localNodeID = localNodeID;
     this.peerNodeID = peerNodeID;
+    this.compression = compression;
     this.channel.addListener(this);
   }
 
@@ -83,6 +90,7 @@ public class TCGroupMemberImpl implements TCGroupMember, ChannelEventListener {
   private void sendMessage(AbstractGroupMessage msg, Runnable sentCallback) {
     TCGroupMessageWrapper wrapper = (TCGroupMessageWrapper) channel.createMessage(TCMessageType.GROUP_WRAPPER_MESSAGE);
     wrapper.setGroupMessage(msg);
+    wrapper.setCompression(compression);
     if (null != sentCallback) {
       wrapper.setSentCallback(sentCallback);
     }
@@ -111,6 +119,11 @@ public class TCGroupMemberImpl implements TCGroupMember, ChannelEventListener {
     }
   }
 
+  @Override
+  public GroupMessageCompression getCompression() {
+    return compression;
+  }
+
   @Override
   public ServerID getLocalNodeID() {
     return localNodeID;
@@ -18,6 +18,7 @@
  */
 package com.tc.objectserver.core.impl;
 
+import com.tc.async.api.StageManager;
 import com.tc.management.RemoteManagement;
 import com.tc.net.protocol.transport.ConnectionPolicy;
 import com.tc.object.net.ChannelStats;
@@ -33,18 +34,21 @@ public class ServerManagementContext {
   private final ObjectInstanceMonitorMBean    instanceMonitor;
   private final ConnectionPolicy              connectionPolicy;
   private final RemoteManagement              remoteManagement;
+  private final StageManager                  stageManager;
 
   public ServerManagementContext(DSOChannelManagerMBean channelMgr,
                                  GlobalServerStats serverStats, ChannelStats channelStats,
                                  ObjectInstanceMonitorMBean instanceMonitor,
                                  ConnectionPolicy connectionPolicy,
-                                 RemoteManagement remoteManagement) {
+                                 RemoteManagement remoteManagement,
+                                 StageManager stageManager) {
     this.channelMgr = channelMgr;
     this.serverStats = serverStats;
     this.channelStats = channelStats;
     this.instanceMonitor = instanceMonitor;
     this.connectionPolicy = connectionPolicy;
     this.remoteManagement = remoteManagement;
+    this.stageManager = stageManager;
   }
 
   public DSOChannelManagerMBean getChannelManager() {
@@ -71,4 +75,8 @@ public class ServerManagementContext {
     return remoteManagement;
   }
 
+  public StageManager getStageManager() {
+    return stageManager;
+  }
+
 }
@@ -33,6 +33,7 @@ import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.handler.ProcessTransactionHandler;
 import com.tc.objectserver.handler.ReplicationSender;
 import com.tc.objectserver.persistence.EntityPersistor;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -42,11 +43,14 @@ import java.util.Collections;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 
@@ -59,6 +63,10 @@ import java.util.function.Consumer;
 public class ActiveToPassiveReplication implements PassiveReplicationBroker, GroupEventsListener {
   
   private static final Logger logger = LoggerFactory.getLogger(PassiveReplicationBroker.class);
+  private static final int DEFAULT_SYNC_PARALLELISM = 1;
+  // the replay log is off unless sized
+  private static final int DEFAULT_REPLAY_ENTRIES = 0;
+  private static final long DEFAULT_REPLAY_BYTES = 0;
   private final Iterable<NodeID> passives;
   private boolean activated = false;
   private final Set<NodeID> passiveNodes = new CopyOnWriteArraySet<>();
@@ -69,6 +77,15 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
   private final EntityPersistor persistor;
   private final GroupManager serverCheck;
   private final ProcessTransactionHandler snapshotter;
+  // how many entities are synced to a passive at once
+  private final int syncParallelism;
+  // recent activity, replayed to a standby passive which comes back after a short disconnect
+  private final ReplicationReplayLog replayLog;
+  // activity is only logged once there has been a passive to replicate to
+  private volatile boolean recording = false;
+  // passives which finished syncing, and those of them which dropped off and may still resume from the replay log
+  private final Set<NodeID> standbyPassives = ConcurrentHashMap.newKeySet();
+  private final Set<NodeID> departedStandbys = ConcurrentHashMap.newKeySet();
 
   public ActiveToPassiveReplication(ProcessTransactionHandler snapshotter, Iterable<NodeID> passives, EntityPersistor persistor, ReplicationSender replicationSender, GroupManager serverMatch) {
     this.replicationSender = replicationSender;
@@ -76,9 +93,24 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     this.persistor = persistor;
     this.serverCheck = serverMatch;
     this.snapshotter = snapshotter;
+    this.syncParallelism = Math.max(1, TCPropertiesImpl.getProperties().getInt("active-passive.sync.parallelism", DEFAULT_SYNC_PARALLELISM));
+    this.replayLog = createReplayLog();
     this.replicationSender.addFailedToSendListener(this::removeWaiters);
   }
 
+  private static ReplicationReplayLog createReplayLog() {
+    return new ReplicationReplayLog(TCPropertiesImpl.getProperties().getInt("active-passive.replay.entries", DEFAULT_REPLAY_ENTRIES), 
+        TCPropertiesImpl.getProperties().getLong("active-passive.replay.bytes", DEFAULT_REPLAY_BYTES));
+  }
+
+  /**
+   * @return true if the replay log is sized, then standby passives ask their active to resume their stream when it
+   *  comes back.  Both servers have to run with the same setting.
+   */
+  public static boolean isStandbyResumeEnabled() {
+    return createReplayLog().isEnabled();
+  }
+
   @Override
   public void zapAndWait(NodeID node) {
     synchronized(this.standByNodes) {
@@ -110,33 +142,81 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
   private void primePassives() {
     passives.forEach(i -> {
       if (prime(i)) {
-        passiveNodes.add(i);
+//  these were standbys of the previous active and carry on as standbys of this one
+        standbyPassives.add(i);
       }
     });
   }
 /**
- * prime the message channel to a node by setting the starting ordering id to zero.
+ * prime the message channel to a node by setting the starting ordering id to zero, and add it to the passives.  The
+ * start of the stream is marked in the replay log so the passive can resume from there if it takes nothing else in.
  */
   private boolean prime(NodeID node) {
-    if (!passiveNodes.contains(node)) {
-      logger.debug("Starting message sequence on " + node);
-      this.replicationSender.addPassive(node, SyncReplicationActivity.createStartMessage());
-      return true;
-    } else {
-      return false;
+    synchronized (this.replayLog) {
+      if (!passiveNodes.contains(node)) {
+        logger.debug("Starting message sequence on " + node);
+        this.recording = this.replayLog.isEnabled();
+        SyncReplicationActivity start = SyncReplicationActivity.createStartMessage();
+        this.replayLog.mark(start);
+        this.replicationSender.addPassive(node, start);
+        passiveNodes.add(node);
+        return true;
+      } else {
+        return false;
+      }
     }
   }
   
   public void startPassiveSync(NodeID newNode) {
     Assert.assertTrue(activated);
-    if (prime(newNode)) {
-      passiveNodes.add(newNode);
-    } else {
+    if (!prime(newNode)) {
       Assert.assertTrue("passive node unable to prime and not in the list of passives", passiveNodes.contains(newNode));
     }
     logger.info("Starting sync to " + newNode);
     executePassiveSync(newNode);
   }
+
+  /**
+   * @return true if the node is a standby passive which dropped off this active while the replay log was on, so it can
+   *  come back as a standby and ask for its stream to be resumed rather than be zapped as dirty.
+   */
+  public boolean isResumable(NodeID node) {
+    return this.replayLog.isEnabled() && this.departedStandbys.contains(node);
+  }
+
+  /**
+   * Picks the replication stream to a standby passive back up after a short disconnect, replaying the activities it
+   *  missed from the replay log.  If the log doesn't reach back to the last activity the passive took in, the passive
+   *  is zapped so it restarts with a clean database and goes through a full sync.
+   *
+   * The passive only gets here if this server is still the active it followed when it rejoins, if it won the election
+   *  it started when it lost this active it is an active itself by then.
+   */
+  public void resumePassiveSync(NodeID node, long lastActivityID) {
+    Assert.assertTrue(activated);
+    boolean departed = this.departedStandbys.remove(node);
+    synchronized (this.replayLog) {
+      List<SyncReplicationActivity> missed = departed ? this.replayLog.after(lastActivityID) : null;
+      if (null != missed && prime(node)) {
+        logger.info("Resuming replication to " + node + " with " + missed.size() + " missed activities " + this.replayLog.getStats());
+        for (SyncReplicationActivity activity : missed) {
+          this.replicationSender.replicateMessage(node, activity);
+        }
+        // activity logged from here on goes to this passive as well, after the replayed tail
+        standbyPassives.add(node);
+        return;
+      }
+    }
+    logger.warn("Unable to resume replication to " + node + " from activity " + lastActivityID + ", it needs a full sync " + getReplayLogStats());
+    this.serverCheck.zapNode(node, L2HAZapNodeRequestProcessor.NODE_JOINED_WITH_DIRTY_DB, "replication could not be resumed");
+  }
+
+  private Map<String, Long> getReplayLogStats() {
+    synchronized (this.replayLog) {
+      return this.replayLog.getStats();
+    }
+  }
+
   /**
    * Using an executor service here to sync multiple passives at once
    * @param newNode
@@ -166,18 +246,65 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
                             toArray(new SyncReplicationActivity.EntityCreationTuple[tuplesForCreation.size()])), Collections.singleton(newNode)).waitForCompleted();
           }}
         );
-        for (ManagedEntity entity : e) {
-          logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
-          entity.sync(newNode);
-          logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
-        }
+        syncEntities(newNode, e);
     //  passive sync done message.  causes passive to go into passive standby mode
         logger.debug("ending sync " + newNode);
+    //  a standby from the moment it takes the end in, whether or not the ack makes it back
+        if (passiveNodes.contains(newNode)) {
+          standbyPassives.add(newNode);
+        }
         replicateActivity(SyncReplicationActivity.createEndSyncMessage(replicateEntityPersistor()), Collections.singleton(newNode)).waitForCompleted();
       }
     });
   }
   
+  /**
+   * Syncs the entities to the passive, up to syncParallelism of them at once.  Each entity still goes through its
+   *  concurrency keys one after the other, so the sync ordering holds within every entity, and all of them have ended
+   *  by the time this returns.  Every payload waits to be received by the passive before the next one of its entity
+   *  goes out, so the entities syncing at once bound what is in flight.
+   */
+  private void syncEntities(NodeID newNode, Iterable<ManagedEntity> entities) {
+    if (syncParallelism == 1) {
+      for (ManagedEntity entity : entities) {
+        syncEntity(newNode, entity);
+      }
+      return;
+    }
+    Semaphore permits = new Semaphore(syncParallelism);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    for (ManagedEntity entity : entities) {
+      permits.acquireUninterruptibly();
+      if (failure.get() != null) {
+        permits.release();
+        break;
+      }
+      passiveSyncPool.execute(() -> {
+        try {
+          syncEntity(newNode, entity);
+        } catch (RuntimeException | Error t) {
+          failure.compareAndSet(null, t);
+        } finally {
+          permits.release();
+        }
+      });
+    }
+    // wait for the entities still syncing
+    permits.acquireUninterruptibly(syncParallelism);
+    Throwable t = failure.get();
+    if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw (RuntimeException) t;
+    }
+  }
+
+  private static void syncEntity(NodeID newNode, ManagedEntity entity) {
+    logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
+    entity.sync(newNode);
+    logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
+  }
+
   private byte[] replicateEntityPersistor() {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     try {
@@ -193,6 +320,10 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
 
   public void batchAckReceived(ReplicationMessageAck context) {
     NodeID messageFrom = context.messageFrom();
+    if (context.getReceivedReplicationID() >= 0) {
+      // The passive has taken in everything up to this batch so the window to it can move on.
+      this.replicationSender.acknowledged(messageFrom, context.getReceivedReplicationID());
+    }
     for (ReplicationAckTuple tuple : context.getBatch()) {
       if (ReplicationResultCode.RECEIVED == tuple.result) {
         ActivePassiveAckWaiter waiter = waiters.get(tuple.respondTo);
@@ -226,11 +357,30 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     return passiveNodes;
   }
 
+  @Override
+  public boolean isRecordingForReplay() {
+    return this.recording;
+  }
+
   @Override
   public ActivePassiveAckWaiter replicateActivity(SyncReplicationActivity activity, Set<NodeID> all) {
     Set<NodeID> copy = new HashSet<>(all); 
+    if (this.recording && ReplicationReplayLog.isLogged(activity)) {
+//  the passives are picked when the activity takes its place in the log, a passive resuming before that gets it in
+//  the replayed tail and one resuming after gets it here, never both.  Sending can wait until the lock is released
+//  since the request processor hands over activities one at a time.
+      synchronized (this.replayLog) {
+        this.replayLog.append(activity);
+        copy.retainAll(passives());
+      }
+    } else {
 // don't replicate to a passive that is no longer there
-    copy.retainAll(passives());
+      copy.retainAll(passives());
+    }
+    return replicateActivityTo(activity, copy);
+  }
+
+  private ActivePassiveAckWaiter replicateActivityTo(SyncReplicationActivity activity, Set<NodeID> copy) {
     ActivePassiveAckWaiter waiter = new ActivePassiveAckWaiter(copy, this);
     if (!copy.isEmpty()) {
       SyncReplicationActivity.ActivityID activityID = activity.getActivityID();
@@ -259,6 +409,9 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
 // first remove it from the list of passive nodes so that anything sending new messages 
 // will have to remove it from the list of nodes to send to
     passiveNodes.remove(nodeID);
+    if (standbyPassives.remove(nodeID)) {
+      departedStandbys.add(nodeID);
+    }
 //  acknowledge all the messages for this node because it is gone, this may result in 
 //  a double ack locally but that is ok.  acknowledge is loose and can tolerate it. 
     if (activated) {
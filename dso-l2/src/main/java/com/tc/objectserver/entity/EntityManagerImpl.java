@@ -133,9 +133,8 @@ public class EntityManagerImpl implements EntityManager {
         // issue-439: We need to sort these entities, ascending by consumerID.
         List<ManagedEntity> sortingList = new ArrayList<ManagedEntity>(this.entityIndex.values());
         Collections.sort(sortingList, this.consumerIdSorter);
-        for (ManagedEntity entity : sortingList) {
-          entity.promoteEntity();
-        }
+        // Entities of different types still promote in that order, those of one type in parallel.
+        new ParallelEntityLoader("Promotion").load(sortingList, entity -> entity.getID().getClassName(), ManagedEntity::promoteEntity);
       } catch (ConfigurationException ce) {
         LOGGER.warn("failure to promote all entities.  Server is crashing", ce);
         throw new TCShutdownServerException("failure to promote all entities.  Server is crashing");
@@ -51,6 +51,11 @@ public class NoReplicationBroker implements PassiveReplicationBroker {
     return NOOP_WAITER;
   }
 
+  @Override
+  public boolean isRecordingForReplay() {
+    return false;
+  }
+
   @Override
   public void zapAndWait(NodeID node) {
     //  do nothing
@@ -0,0 +1,175 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs one step of bringing existing entities back, such as reloading or promoting them, over a fork-join pool instead of
+ * one entity after the other.
+ * <p>
+ * The entities are given in the order they were created (ascending consumerID) and the only dependencies known are
+ * the ones that order implies: an entity may rely on any entity of another type created before it, while entities of
+ * one type are taken to be independent of each other.  The entities are split into levels accordingly, each entity
+ * going one level after the deepest entity of another type created before it, and the levels are run one after the
+ * other with the entities of a level running in parallel.  A parallelism of 1 runs everything on the calling thread in
+ * creation order.
+ */
+public class ParallelEntityLoader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelEntityLoader.class);
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  public interface EntityLoad<T, E extends Exception> {
+    void load(T entity) throws E;
+  }
+
+  private final String step;
+  private final int parallelism;
+
+  /**
+   * Uses the configured parallelism, one entity at a time if not configured.
+   */
+  public ParallelEntityLoader(String step) {
+    this(step, TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_ENTITY_RELOAD_PARALLELISM, 1));
+  }
+
+  public ParallelEntityLoader(String step, int parallelism) {
+    this.step = step;
+    this.parallelism = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Splits the entities, given in creation order, into the levels which can run in parallel.
+   */
+  static <T> List<List<T>> levels(List<T> ordered, Function<T, String> typeOf) {
+    List<List<T>> levels = new ArrayList<>();
+    Map<String, Integer> deepestOfType = new HashMap<>();
+    for (T entity : ordered) {
+      String type = typeOf.apply(entity);
+      int level = 0;
+      for (Map.Entry<String, Integer> deepest : deepestOfType.entrySet()) {
+        if (!deepest.getKey().equals(type)) {
+          level = Math.max(level, deepest.getValue() + 1);
+        }
+      }
+      deepestOfType.merge(type, level, Math::max);
+      while (levels.size() <= level) {
+        levels.add(new ArrayList<>());
+      }
+      levels.get(level).add(entity);
+    }
+    return levels;
+  }
+
+  /**
+   * Runs the load of every entity, returning once they are all done.  The first failure is thrown once the level it
+   * happened in has finished, and no further level is started.
+   */
+  @SuppressWarnings("unchecked")
+  public <T, E extends Exception> void load(List<T> ordered, Function<T, String> typeOf, EntityLoad<T, E> load) throws E {
+    int total = ordered.size();
+    long start = System.nanoTime();
+    if (this.parallelism == 1 || total < 2) {
+      for (T entity : ordered) {
+        load.load(entity);
+      }
+      LOGGER.info(this.step + " of " + total + " entities done in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+      return;
+    }
+    List<List<T>> levels = levels(ordered, typeOf);
+    LOGGER.info(this.step + " of " + total + " entities in " + levels.size() + " levels with parallelism " + this.parallelism);
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    ForkJoinPool pool = new ForkJoinPool(this.parallelism, forkJoinPool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+      thread.setName("Entity " + this.step.toLowerCase() + " - " + thread.getPoolIndex());
+      // entity services may look up their classes through it
+      thread.setContextClassLoader(loader);
+      return thread;
+    }, null, false);
+    AtomicInteger done = new AtomicInteger();
+    long[] lastReport = new long[] { start };
+    // kept aside rather than left to the futures, which would wrap checked exceptions
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    try {
+      for (List<T> level : levels) {
+        List<Future<?>> loads = new ArrayList<>(level.size());
+        for (T entity : level) {
+          loads.add(pool.submit(() -> {
+            try {
+              load.load(entity);
+              reportProgress(done.incrementAndGet(), total, start, lastReport);
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            }
+          }));
+        }
+        for (Future<?> one : loads) {
+          try {
+            one.get();
+          } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(this.step + " of entities interrupted", e);
+          }
+        }
+        Throwable first = failure.get();
+        if (first instanceof RuntimeException) {
+          throw (RuntimeException) first;
+        } else if (first instanceof Error) {
+          throw (Error) first;
+        } else if (null != first) {
+          throw (E) first;
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    LOGGER.info(this.step + " of " + total + " entities done in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+  }
+
+  private void reportProgress(int done, int total, long start, long[] lastReport) {
+    long now = System.nanoTime();
+    synchronized (lastReport) {
+      if (now - lastReport[0] < PROGRESS_INTERVAL_NANOS) {
+        return;
+      }
+      lastReport[0] = now;
+    }
+    LOGGER.info(this.step + " of entities: " + done + " of " + total + " (" + (done * 100 / total) + "%) after "
+        + TimeUnit.NANOSECONDS.toSeconds(now - start) + "s");
+  }
+}
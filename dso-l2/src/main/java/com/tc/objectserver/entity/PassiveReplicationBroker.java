@@ -28,4 +28,10 @@ public interface PassiveReplicationBroker {
   void zapAndWait(NodeID node);
   Set<NodeID> passives();
   void enterActiveState();
+  /**
+   * @return true if replicated activity is kept for passives which come back after a short disconnect, in which case
+   *  activity should be handed to {@link #replicateActivity(SyncReplicationActivity, Set)} even with no passive to
+   *  replicate it to.
+   */
+  boolean isRecordingForReplay();
 }
@@ -0,0 +1,144 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.l2.msg.SyncReplicationActivity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded log of the most recent activities replicated to the passives, in the order they went out.  A passive which
+ *  drops off and comes back while the activity it last took in is still logged gets the activities after it replayed
+ *  instead of going through a full sync.
+ *
+ * This is not thread safe, {@link ActiveToPassiveReplication} logs and replays under the lock of the log so that the
+ *  log and the stream to the passives keep the same order.
+ */
+class ReplicationReplayLog {
+  // rough per entry cost of the activity itself, on top of its payload
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final ArrayDeque<SyncReplicationActivity> entries = new ArrayDeque<>();
+  // position of every logged activity in the log, keyed by activity ID
+  private final Map<Long, Long> positions = new HashMap<>();
+  // position of the newest logged activity when the stream to a passive started, keyed by the ID of its start
+  private final Map<Long, Long> marks = new HashMap<>();
+  // position of the oldest logged activity
+  private long first = 0;
+  private long bytes = 0;
+  private long evicted = 0;
+  private long replays = 0;
+  private long replayedActivities = 0;
+
+  ReplicationReplayLog(int maxEntries, long maxBytes) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  boolean isEnabled() {
+    return maxEntries > 0 && maxBytes > 0;
+  }
+
+  /**
+   * @return true if the activity belongs in the log.  Sync activities are particular to the passive they go to and
+   *  local ones never leave this server.
+   */
+  static boolean isLogged(SyncReplicationActivity activity) {
+    SyncReplicationActivity.ActivityType type = activity.getActivityType();
+    return !activity.isSyncActivity()
+        && SyncReplicationActivity.ActivityType.FLUSH_LOCAL_PIPELINE != type
+        && SyncReplicationActivity.ActivityType.LOCAL_ENTITY_GC != type;
+  }
+
+  void append(SyncReplicationActivity activity) {
+    positions.put(activity.getSequenceID(), first + entries.size());
+    entries.addLast(activity);
+    bytes += sizeOf(activity);
+    while (entries.size() > maxEntries || (bytes > maxBytes && entries.size() > 1)) {
+      SyncReplicationActivity oldest = entries.removeFirst();
+      positions.remove(oldest.getSequenceID());
+      bytes -= sizeOf(oldest);
+      first += 1;
+      evicted += 1;
+    }
+    if (!marks.isEmpty()) {
+      // a mark is only good while the activity right after it is still logged
+      marks.values().removeIf(position -> position < first - 1);
+    }
+  }
+
+  /**
+   * Marks the start of the stream to a passive, which takes in everything logged from here on.  A passive which took
+   *  nothing else in since resumes from the mark.
+   */
+  void mark(SyncReplicationActivity start) {
+    if (isEnabled()) {
+      marks.put(start.getSequenceID(), first + entries.size() - 1);
+    }
+  }
+
+  /**
+   * @return the activities logged after the given one, oldest first, or null if that activity is not in the log any
+   *  more, in which case the passive has to be synced from scratch.
+   */
+  List<SyncReplicationActivity> after(long activityID) {
+    Long position = positions.get(activityID);
+    if (null == position) {
+      position = marks.get(activityID);
+      if (null == position) {
+        return null;
+      }
+    }
+    int skip = (int)(position - first) + 1;
+    List<SyncReplicationActivity> missed = new ArrayList<>(entries.size() - skip);
+    Iterator<SyncReplicationActivity> it = entries.iterator();
+    for (int i = 0; i < skip; i++) {
+      it.next();
+    }
+    while (it.hasNext()) {
+      missed.add(it.next());
+    }
+    replays += 1;
+    replayedActivities += missed.size();
+    return missed;
+  }
+
+  Map<String, Long> getStats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("entries", (long)entries.size());
+    stats.put("bytes", bytes);
+    stats.put("evicted", evicted);
+    stats.put("replays", replays);
+    stats.put("replayedActivities", replayedActivities);
+    return stats;
+  }
+
+  private static long sizeOf(SyncReplicationActivity activity) {
+    byte[] payload = activity.getExtendedData();
+    return ENTRY_OVERHEAD + (null != payload ? payload.length : 0);
+  }
+}
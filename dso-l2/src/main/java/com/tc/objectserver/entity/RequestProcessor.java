@@ -79,7 +79,8 @@ public class RequestProcessor {
         || (ServerEntityAction.MANAGED_ENTITY_GC == requestAction)
         || (ServerEntityAction.LOCAL_FLUSH_AND_SYNC == requestAction));
     // Unless this is a message type we allow to choose its own concurrency key, we will use management (default for all internal operations).
-    Set<NodeID> replicateTo = (isActive && isActionReplicated && passives != null) ? request.replicateTo(passives.passives()) : Collections.emptySet();
+    boolean isReplicated = isActive && isActionReplicated && passives != null;
+    Set<NodeID> replicateTo = isReplicated ? request.replicateTo(passives.passives()) : Collections.emptySet();
 //  if there is somewhere to replicate to but replication was not required
     if (!replicateTo.isEmpty() && !replicate) {
       if (request.requiresReceived()) {
@@ -95,6 +96,13 @@ public class RequestProcessor {
         ? passives.replicateActivity(createReplicationActivity(eid, version, fetchID, request.getNodeID(), requestAction, 
             request.getTransaction(), request.getOldestTransactionOnClient(), payload, concurrencyKey), replicateTo)
         : NoReplicationBroker.NOOP_WAITER;
+    if (replicateTo.isEmpty() && isReplicated && (replicate || request.requiresReceived()) && passives.isRecordingForReplay()) {
+//  nothing to replicate to right now but a passive coming back resumes from the replay log, so it has to be there, 
+//  as the placeholder a passive would have been sent if this is not replicated
+      ServerEntityAction loggedAction = replicate ? requestAction : ServerEntityAction.ORDER_PLACEHOLDER_ONLY;
+      passives.replicateActivity(createReplicationActivity(eid, version, fetchID, request.getNodeID(), loggedAction, 
+            request.getTransaction(), request.getOldestTransactionOnClient(), payload, concurrencyKey), Collections.emptySet());
+    }
     EntityRequest entityRequest =  new EntityRequest(eid, call, concurrencyKey);
     if (PLOGGER.isDebugEnabled()) {
       PLOGGER.debug("SCHEDULING:" + payload.getDebugId() + " on " + eid + ":" + concurrencyKey);
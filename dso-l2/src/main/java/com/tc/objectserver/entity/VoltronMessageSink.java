@@ -20,6 +20,8 @@ package com.tc.objectserver.entity;
 
 import com.tc.entity.MessageCodecSupplier;
 import com.tc.async.api.Sink;
+import com.tc.async.impl.NullSink;
+import com.tc.entity.NetworkVoltronEntityBatchMessage;
 import com.tc.entity.NetworkVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.net.protocol.tcm.HydrateContext;
@@ -30,6 +32,16 @@ public class VoltronMessageSink implements TCMessageSink {
   private final Sink<VoltronEntityMessage> destSink;
   private final Sink<HydrateContext> hydrateSink;
   private final MessageCodecSupplier codecSupplier;
+//  once hydrated, a batch is unpacked into the invocations it carries, in order.  They are all queued by the same
+//  hydrate thread, the one for the sending client, so they stay in order with the client's other messages.
+  private final Sink<NetworkVoltronEntityBatchMessage> batchSink = new NullSink<NetworkVoltronEntityBatchMessage>() {
+    @Override
+    public void addSingleThreaded(NetworkVoltronEntityBatchMessage batch) {
+      for (VoltronEntityMessage invoke : batch.getInvokes()) {
+        destSink.addSingleThreaded(invoke);
+      }
+    }
+  };
   
 
   public VoltronMessageSink(Sink<VoltronEntityMessage> destSink, Sink<HydrateContext> hydrateSink, MessageCodecSupplier codecSupplier) {
@@ -42,6 +54,10 @@ public class VoltronMessageSink implements TCMessageSink {
   public void putMessage(TCMessage message) { 
     if (message instanceof NetworkVoltronEntityMessage) {
       ((NetworkVoltronEntityMessage)message).setMessageCodecSupplier(codecSupplier);
+    } else if (message instanceof NetworkVoltronEntityBatchMessage) {
+      ((NetworkVoltronEntityBatchMessage)message).setMessageCodecSupplier(codecSupplier);
+      hydrateSink.addMultiThreaded(new HydrateContext<>(message, batchSink));
+      return;
     }
     HydrateContext<VoltronEntityMessage> context = new HydrateContext<>(message, destSink);
     hydrateSink.addMultiThreaded(context);
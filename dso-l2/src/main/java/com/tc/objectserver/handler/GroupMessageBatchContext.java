@@ -27,6 +27,9 @@ import com.tc.net.groups.AbstractGroupMessage;
 import com.tc.net.groups.GroupException;
 import com.tc.net.groups.GroupManager;
 
+import java.util.Map;
+import java.util.function.Consumer;
+
 
 public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
   private static final Logger LOGGER = LoggerFactory.getLogger(GroupMessageBatchContext.class);
@@ -37,19 +40,36 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
   private final int maximumBatchSize;
   private final int idealMessagesInFlight;
   private final Runnable networkDoneTarget;
+  // When set, batches are paced by the target's acknowledgements instead of by the network.
+  private final ReplicationWindow window;
   
   private int messagesInFlight;
   private M cachedMessage;
+  private long cachedMessageID;
   private long nextReplicationID;
 
 
   public GroupMessageBatchContext(IBatchableMessageFactory<M, E> messageFactory, GroupManager<AbstractGroupMessage> groupManager, NodeID target, int maximumBatchSize, int idealMessagesInFlight, Runnable networkDoneTarget) {
+    this(messageFactory, groupManager, target, maximumBatchSize, idealMessagesInFlight, networkDoneTarget, null);
+  }
+
+  /**
+   * Creates a context which keeps up to a window of batches outstanding until the target acknowledges them through
+   *  {@link #acknowledged(long)}, rather than keeping a fixed number of batches on the network.  The window starts at
+   *  idealMessagesInFlight and adapts between the given bounds to the round trip time of the acknowledgements.
+   */
+  public GroupMessageBatchContext(IBatchableMessageFactory<M, E> messageFactory, GroupManager<AbstractGroupMessage> groupManager, NodeID target, int maximumBatchSize, int idealMessagesInFlight, int minimumWindow, int maximumWindow, Runnable networkDoneTarget) {
+    this(messageFactory, groupManager, target, maximumBatchSize, idealMessagesInFlight, networkDoneTarget, new ReplicationWindow(idealMessagesInFlight, minimumWindow, maximumWindow));
+  }
+
+  private GroupMessageBatchContext(IBatchableMessageFactory<M, E> messageFactory, GroupManager<AbstractGroupMessage> groupManager, NodeID target, int maximumBatchSize, int idealMessagesInFlight, Runnable networkDoneTarget, ReplicationWindow window) {
     this.messageFactory = messageFactory;
     this.groupManager = groupManager;
     this.target = target;
     this.maximumBatchSize = maximumBatchSize;
     this.idealMessagesInFlight = idealMessagesInFlight;
     this.networkDoneTarget = networkDoneTarget;
+    this.window = window;
   }
 
   private final Runnable handleMessageSend = new Runnable() {
@@ -75,12 +95,31 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
       this.cachedMessage.addToBatch(activity);
     } else {
       // Create a new batch.
-      this.cachedMessage = this.messageFactory.createNewBatch(activity, this.nextReplicationID++);
+      this.cachedMessageID = this.nextReplicationID++;
+      this.cachedMessage = this.messageFactory.createNewBatch(activity, this.cachedMessageID);
       didCreateNewBatch = true;
     }
     return didCreateNewBatch;
   }
 
+  /**
+   * Applies an update to the batch which will be sent next, starting an empty batch if there isn't one.  This is for
+   *  state which rides along with a batch rather than being one of its elements.
+   * 
+   * @param update The change to make to the batch message.
+   * @return True if this required creating a new batch.
+   */
+  public synchronized boolean updateBatch(Consumer<M> update) {
+    boolean didCreateNewBatch = false;
+    if (null == this.cachedMessage) {
+      this.cachedMessageID = this.nextReplicationID++;
+      this.cachedMessage = this.messageFactory.createNewBatch(null, this.cachedMessageID);
+      didCreateNewBatch = true;
+    }
+    update.accept(this.cachedMessage);
+    return didCreateNewBatch;
+  }
+
   /**
    * Called by a thread which is expected to do the message serialization to determine if the current batch is ready to
    *  be flushed to the network.
@@ -94,13 +133,17 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
       // See if we have a batched message and are ready to send one.
       // Note that we will override the ideal number of in-flight messages if the batch is getting too large.
       if ((null != this.cachedMessage) && (
-          ((0 == this.idealMessagesInFlight) || (this.messagesInFlight < this.idealMessagesInFlight))
+          isReadyToSend()
           || (this.cachedMessage.getBatchSize() >= this.maximumBatchSize))
         ) {
         // There is a batched message so send it.
         messageToSend = this.cachedMessage;
         this.cachedMessage = null;
         this.messagesInFlight += 1;
+        if (null != this.window) {
+          // Recorded before the send so that an acknowledgement can't overtake it.
+          this.window.sent(this.cachedMessageID, System.nanoTime());
+        }
       }
     }
     
@@ -120,6 +163,38 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
     }
   }
 
+  private boolean isReadyToSend() {
+    if (null != this.window) {
+      return this.window.isOpen();
+    } else {
+      return (0 == this.idealMessagesInFlight) || (this.messagesInFlight < this.idealMessagesInFlight);
+    }
+  }
+
+  /**
+   * Called when the target acknowledges having received every batch up to and including the given ID.  This only
+   *  applies to contexts created with a window.
+   * 
+   * @param id The ID of the newest batch the target received.
+   */
+  public void acknowledged(long id) {
+    boolean didOpen;
+    synchronized (this) {
+      didOpen = (null != this.window) && this.window.acknowledged(id, System.nanoTime());
+    }
+    if (didOpen) {
+      // The window moved so our owner can schedule the next flush.
+      this.networkDoneTarget.run();
+    }
+  }
+
+  /**
+   * @return The size, acknowledgement lag and round trip times of the window, or null if this context has none.
+   */
+  public synchronized Map<String, Long> getWindowStats() {
+    return (null != this.window) ? this.window.getStats(System.nanoTime()) : null;
+  }
+
   public void handleNetworkDone() {
     synchronized (this) {
       this.messagesInFlight -= 1;
@@ -140,7 +215,7 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
     /**
      * Create a new batch message with the given id and containing an initial element.
      * 
-     * @param initialElement The first message to add to the batch.
+     * @param initialElement The first message to add to the batch, or null to start an empty batch (see updateBatch).
      * @param id The ID of the batch message.
      * @return The new batch, containing initialElement.
      */
@@ -49,6 +49,7 @@ import com.tc.objectserver.api.Retiree;
 import com.tc.objectserver.entity.ReconnectListener;
 import com.tc.objectserver.entity.ReferenceMessage;
 import com.tc.objectserver.entity.ServerEntityRequestResponse;
+import com.tc.objectserver.entity.ParallelEntityLoader;
 import com.tc.objectserver.persistence.EntityData;
 import com.tc.objectserver.persistence.Persistor;
 import com.tc.util.Assert;
@@ -437,7 +438,8 @@ public class ProcessTransactionHandler implements ReconnectListener {
             : -1;
       }});
     
-    for(EntityData.Value entityValue : sortingList) {
+    // Entities of different types still come back in that order, those of one type in parallel.
+    new ParallelEntityLoader("Reload").load(sortingList, entityValue -> entityValue.className, entityValue -> {
       Assert.assertTrue(entityValue.version > 0);
       Assert.assertTrue(entityValue.consumerID > 0);
       EntityID entityID = new EntityID(entityValue.className, entityValue.entityName);
@@ -447,7 +449,7 @@ public class ProcessTransactionHandler implements ReconnectListener {
         // We aren't expecting to fail loading anything from the existing set.
         throw new IllegalArgumentException(e);
       }
-    }
+    });
   }
   
   public void handleResentReferenceMessage(ReferenceMessage msg) {
@@ -23,6 +23,7 @@ import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.Sink;
+import com.tc.objectserver.entity.ActiveToPassiveReplication;
 import com.tc.objectserver.entity.MessagePayload;
 import com.tc.l2.msg.ReplicationAckTuple;
 import com.tc.l2.msg.ReplicationMessage;
@@ -35,6 +36,7 @@ import com.tc.net.ClientID;
 import com.tc.net.NodeID;
 import com.tc.net.ServerID;
 import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.net.groups.GroupEventsListener;
 import com.tc.net.groups.GroupException;
 import com.tc.net.groups.GroupManager;
 import com.tc.object.ClientInstanceID;
@@ -59,8 +61,10 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -72,7 +76,7 @@ import org.terracotta.entity.ConcurrencyStrategy;
 import org.terracotta.exception.EntityException;
 
 
-public class ReplicatedTransactionHandler {
+public class ReplicatedTransactionHandler implements GroupEventsListener {
   private static final int DEFAULT_BATCH_LIMIT = 64;
   private static final int DEFAULT_INFLIGHT_MESSAGES = 1;
   private static final Logger PLOGGER = LoggerFactory.getLogger(MessagePayload.class);
@@ -83,8 +87,18 @@ public class ReplicatedTransactionHandler {
   private final GroupManager<AbstractGroupMessage> groupManager;
   private final StateManager stateManager;
   private final ManagedEntity platform;
+  // when the active paces replication with an adaptive window, acks also report the newest batch taken in
+  private final boolean windowedAcks;
   
   private final SyncState state = new SyncState();
+  // The active this passive takes replicated activity in from, and the ID of the newest of it or of the start of the
+  //  stream.  If the passive drops off that same active for a moment once in standby, the active can pick the stream
+  //  back up from there.
+  private volatile ServerID resumeActive = ServerID.NULL_ID;
+  private volatile long resumeActivity = -1;
+  // set while a resume is requested, the active keeps the references of this passive when it resumes
+  private volatile boolean resuming = false;
+  private final boolean resumeEnabled;
   
   // This MUST be manipulated under lock - it is the batch of ack messages we are accumulating until the network is ready for another message.
   private NodeID cachedMessageAckFrom;
@@ -102,6 +116,8 @@ public class ReplicatedTransactionHandler {
     this.entityManager = manager;
     this.persistor = persistor;
     this.groupManager = groupManager;
+    this.windowedAcks = ReplicationSender.isAdaptiveWindowEnabled();
+    this.resumeEnabled = ActiveToPassiveReplication.isStandbyResumeEnabled();
     try {
       platform = entityManager.getEntity(EntityDescriptor.createDescriptorForLifecycle(PlatformEntity.PLATFORM_ID, PlatformEntity.VERSION)).get();
     } catch (EntityException ee) {
@@ -244,13 +260,19 @@ public class ReplicatedTransactionHandler {
           }
           replicatedActivityReceived(activeSender, activity);
         }
+        resumeActive = activeSender;
+        resumeActivity = activity.getSequenceID();
       }
     }
+    // Everything in this message has been taken in so tell the active it can move its replication window along.
+    if (this.windowedAcks && !activeSender.equals(ServerID.NULL_ID)) {
+      prepareReceivedAckForSend(activeSender, rep.getSequenceID());
+    }
   }
 
   private void syncBeginEntityListReceived(ServerID activeSender, SyncReplicationActivity activity) throws EntityException {
     ackReceived(activeSender, activity, null);
-    beforeSyncAction(activity);
+    beforeSyncAction(activeSender, activity);
     
     // In this case, we want to create all the provided entities.
     SyncReplicationActivity.EntityCreationTuple[] entityTuples = activity.getEntitiesToCreateForSync();
@@ -403,6 +425,34 @@ public class ReplicatedTransactionHandler {
     }
   }  
   
+  @Override
+  public void nodeJoined(NodeID nodeID) {
+//  a standby passive which lost the active for a moment asks it to resume the stream rather than sync all over again
+    if (resumeEnabled && nodeID.equals(resumeActive) && StateManager.PASSIVE_STANDBY.equals(stateManager.getCurrentState())) {
+      requestResume(resumeActive, resumeActivity);
+    }
+  }
+
+  @Override
+  public void nodeLeft(NodeID nodeID) {
+//  nothing to do until the active comes back
+  }
+
+  private void requestResume(ServerID active, long lastActivity) {
+    synchronized (this) {
+//  acks start over on the new channel
+      this.cachedMessageAckFrom = null;
+    }
+    resuming = true;
+    try {
+      LOGGER.info("Requesting " + active + " to resume replication after activity " + lastActivity);
+      groupManager.sendTo(active, ReplicationMessageAck.createResumeRequestMessage(lastActivity));
+    } catch (GroupException ge) {
+      resuming = false;
+      LOGGER.warn("can't request resume of replication", ge);
+    }
+  }
+
   private void syncActivityReceived(ServerID activeSender, SyncReplicationActivity activity) {
     Trace trace = new Trace(activity.getActivityID().toString(), "Sync");
     trace.start();
@@ -413,7 +463,7 @@ public class ReplicatedTransactionHandler {
     // This should have been handled in its own path.
     Assert.assertTrue(SyncReplicationActivity.ActivityType.SYNC_BEGIN != thisActivityType);
     
-    beforeSyncAction(activity);
+    beforeSyncAction(activeSender, activity);
     
     if ((SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN == thisActivityType) && !fetch.isNull()) {
       try {
@@ -531,10 +581,18 @@ public class ReplicatedTransactionHandler {
     return new BasicServerEntityRequest(decodeReplicationType(activityType), source, transactionID, oldestTransactionID);
   }
   
-  private void beforeSyncAction(SyncReplicationActivity activity) {
+  private void beforeSyncAction(ServerID activeSender, SyncReplicationActivity activity) {
     switch (activity.getActivityType()) {
       case SYNC_START:
-        establishNewPassive();
+        if (resuming) {
+//  same active picking up where this passive left off, the references it holds still stand
+          resuming = false;
+        } else {
+          establishNewPassive();
+//  the active marks where this stream starts in its replay log, a standby which took nothing in since resumes from here
+          resumeActive = activeSender;
+          resumeActivity = activity.getSequenceID();
+        }
         break;
       case SYNC_BEGIN:
         start();
@@ -580,6 +638,24 @@ public class ReplicatedTransactionHandler {
   }
 
   private synchronized void prepareAckForSend(NodeID sender, SyncReplicationActivity.ActivityID respondTo, ReplicationResultCode code) {
+    boolean didCreate = getBatchAckContext(sender).batchMessage(new ReplicationAckTuple(respondTo, code));
+
+    // If we created this message, enqueue the decision to flush it (the other case where we may flush is network
+    //  available).
+    if (didCreate) {
+      this.outgoingResponseSink.addSingleThreaded(this.selfMessageToken);
+    }
+  }
+
+  private synchronized void prepareReceivedAckForSend(NodeID sender, long replicationID) {
+    // This rides along with whatever batch of acks goes out next, starting one if need be.
+    boolean didCreate = getBatchAckContext(sender).updateBatch((message)->message.setReceivedReplicationID(replicationID));
+    if (didCreate) {
+      this.outgoingResponseSink.addSingleThreaded(this.selfMessageToken);
+    }
+  }
+
+  private GroupMessageBatchContext<ReplicationMessageAck, ReplicationAckTuple> getBatchAckContext(NodeID sender) {
     // The batch context is cached and constructed lazily when the sender changes.
     if (!sender.equals(this.cachedMessageAckFrom)) {
       int maximumBatchSize = TCPropertiesImpl.getProperties().getInt("passive-active.batchsize", DEFAULT_BATCH_LIMIT);
@@ -587,22 +663,17 @@ public class ReplicatedTransactionHandler {
       IBatchableMessageFactory<ReplicationMessageAck, ReplicationAckTuple> factory = new IBatchableMessageFactory<ReplicationMessageAck, ReplicationAckTuple>() {
         @Override
         public ReplicationMessageAck createNewBatch(ReplicationAckTuple initialActivity, long id) {
-          ReplicationMessageAck message = ReplicationMessageAck.createBatchAck();
-          message.addToBatch(initialActivity);
+          ReplicationMessageAck message = windowedAcks ? ReplicationMessageAck.createWindowBatchAck() : ReplicationMessageAck.createBatchAck();
+          if (null != initialActivity) {
+            message.addToBatch(initialActivity);
+          }
           return message;
         }
       };
       this.cachedMessageAckFrom = sender;
       this.cachedBatchAck = new GroupMessageBatchContext<>(factory, this.groupManager, this.cachedMessageAckFrom, maximumBatchSize, idealMessagesInFlight, this.handleMessageSend);
     }
-    
-    boolean didCreate = this.cachedBatchAck.batchMessage(new ReplicationAckTuple(respondTo, code));
-
-    // If we created this message, enqueue the decision to flush it (the other case where we may flush is network
-    //  available).
-    if (didCreate) {
-      this.outgoingResponseSink.addSingleThreaded(this.selfMessageToken);
-    }
+    return this.cachedBatchAck;
   }
 
   private static ServerEntityAction decodeReplicationType(SyncReplicationActivity.ActivityType networkType) {
@@ -646,13 +717,10 @@ public class ReplicatedTransactionHandler {
   }  
   
  private class SyncState {
-    private LinkedList<DeferredContainer> defer = new LinkedList<>();
  //  at this point, id based checking is legacy.  Everything should have a fetchid.  TODO: remove 
     private final Set<FetchID> syncdFetches = new HashSet<>();
-    private final Set<Integer> syncdKeys = new HashSet<>();
- //  at this point, id based checking is legacy.  Everything should have a fetchid 
-    private FetchID syncingFetch = FetchID.NULL_ID;
-    private int currentKey = -1;
+ //  the entities being synced right now, the active may sync several of them at once
+    private final Map<FetchID, EntitySync> syncing = new HashMap<>();
     private boolean finished = false;
     private boolean started = false;
     
@@ -662,42 +730,39 @@ public class ReplicatedTransactionHandler {
     
     private void startEntity(FetchID fetch) {
       assertStarted(null);
-      Assert.assertTrue(syncingFetch.isNull());
-      syncingFetch = fetch;
-// these keys are never sync'd only replicated so add them to the set
-      syncdKeys.add(ConcurrencyStrategy.MANAGEMENT_KEY);
-      syncdKeys.add(ConcurrencyStrategy.UNIVERSAL_KEY);
+      Assert.assertFalse(syncing.containsKey(fetch));
+      syncing.put(fetch, new EntitySync());
       LOGGER.debug("Starting " + fetch);
     }
     
     private void endEntity(FetchID fetch) {
       assertStarted(null);
-      Assert.assertEquals(syncingFetch, fetch);
+      Assert.assertNotNull(syncing.remove(fetch));
       syncdFetches.add(fetch);
-      syncdKeys.clear();
-      syncingFetch = FetchID.NULL_ID;
       LOGGER.debug("Ending " + fetch);
     }
     
     private void startConcurrency(FetchID fetch, int concurrency) {
       assertStarted(null);
-      Assert.assertEquals(syncingFetch, fetch);
-      currentKey = concurrency;
+      EntitySync entity = syncing.get(fetch);
+      Assert.assertNotNull(entity);
+      entity.currentKey = concurrency;
       if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("Starting " + fetch + "/" + currentKey);
+        LOGGER.debug("Starting " + fetch + "/" + concurrency);
       }
     }
     
     private Deque<DeferredContainer> endConcurrency(FetchID fetch, int concurrency) {
       assertStarted(null);
+      EntitySync entity = syncing.get(fetch);
+      Assert.assertNotNull(entity);
       try {
-        Assert.assertEquals(syncingFetch, fetch);
-        Assert.assertEquals(currentKey, concurrency);
-        syncdKeys.add(concurrency);
-        currentKey = -1;
-        return defer;
+        Assert.assertEquals(entity.currentKey, concurrency);
+        entity.syncdKeys.add(concurrency);
+        entity.currentKey = -1;
+        return entity.defer;
       } finally {
-        defer = new LinkedList<>();
+        entity.defer = new LinkedList<>();
       }
     }
     
@@ -734,9 +799,10 @@ public class ReplicatedTransactionHandler {
       
       SyncReplicationActivity.ActivityType activityType = activity.getActivityType();
 
-      if (fetch.equals(syncingFetch)) {
+      EntitySync entity = syncing.get(fetch);
+      if (null != entity) {
         int concurrencyKey = activity.getConcurrency();
-        if (syncdKeys.contains(concurrencyKey)) {
+        if (entity.syncdKeys.contains(concurrencyKey)) {
           return false;
         } else if (SyncReplicationActivity.ActivityType.CREATE_ENTITY == activityType) {
           return false;
@@ -746,8 +812,8 @@ public class ReplicatedTransactionHandler {
         } else if (SyncReplicationActivity.ActivityType.DESTROY_ENTITY == activityType) {
           Assert.fail("destroy received during a sync of an entity " + activity);
           return false;
-        } else if (currentKey == concurrencyKey) {
-          defer.add(new DeferredContainer(activeSender, activity));
+        } else if (entity.currentKey == concurrencyKey) {
+          entity.defer.add(new DeferredContainer(activeSender, activity));
           return true;
         }
       }
@@ -773,6 +839,22 @@ public class ReplicatedTransactionHandler {
     }
   }
  
+  /**
+   * The concurrency keys of an entity which have finished syncing, the one syncing now and the replicated activities
+   *  for it, deferred until its sync is done.
+   */
+  private static class EntitySync {
+    private final Set<Integer> syncdKeys = new HashSet<>();
+    private int currentKey = -1;
+    private LinkedList<DeferredContainer> defer = new LinkedList<>();
+
+    EntitySync() {
+// these keys are never sync'd only replicated so add them to the set
+      syncdKeys.add(ConcurrencyStrategy.MANAGEMENT_KEY);
+      syncdKeys.add(ConcurrencyStrategy.UNIVERSAL_KEY);
+    }
+  }
+ 
   public static class BasicServerEntityRequest implements ServerEntityRequest {
     private final ServerEntityAction action;
     private final ClientID source;
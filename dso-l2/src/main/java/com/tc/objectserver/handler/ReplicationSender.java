@@ -37,6 +37,8 @@ import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -51,11 +53,14 @@ import org.terracotta.entity.ConcurrencyStrategy;
 public class ReplicationSender extends AbstractEventHandler<NodeID> {
   private static final int DEFAULT_BATCH_LIMIT = 64;
   private static final int DEFAULT_INFLIGHT_MESSAGES = 1;
+  private static final int DEFAULT_MIN_WINDOW = 1;
+  private static final int DEFAULT_MAX_WINDOW = 256;
+  static final String ADAPTIVE_WINDOW = "active-passive.window.adaptive";
   
-  //  this is all single threaded.  If there is any attempt to make this multi-threaded,
-  //  control structures must be fixed
+  //  flushing is single threaded but replicateMessage is called by the request processor and by every entity syncing
+  //  to a passive.  Those calls serialize on the SyncState of the passive.
   private final GroupManager<AbstractGroupMessage> group;
-  private final Map<NodeID, SyncState> filtering = new HashMap<>();
+  private final Map<NodeID, SyncState> filtering = new ConcurrentHashMap<>();
   private static final Logger logger = LoggerFactory.getLogger(ReplicationSender.class);
   private static final Logger PLOGGER = LoggerFactory.getLogger(MessagePayload.class);
   private static final boolean debugLogging = logger.isDebugEnabled();
@@ -102,15 +107,26 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
 
   public boolean replicateMessage(NodeID dest, SyncReplicationActivity activity) {
     SyncState syncing = getSyncState(dest, activity);
+    if (null == syncing) {
+      return false;
+    }
     
     boolean didSend = false;
-    // See if the message needs to be filtered out of the stream.
-    boolean shouldRemoveFromStream = shouldRemoveActivityFromReplicationStream(activity, syncing);
+    boolean shouldRemoveFromStream;
+    boolean didCreateBatch = false;
+    // Entities sync in parallel and invokes come from the request processor, so the filtering decision and the
+    //  batching must happen together to keep the stream in the order the decisions were made.
+    synchronized (syncing) {
+      // See if the message needs to be filtered out of the stream.
+      shouldRemoveFromStream = shouldRemoveActivityFromReplicationStream(activity, syncing);
+      if (!shouldRemoveFromStream) {
+        // We want to send this message.
+        syncing.validateSending(activity);
+        didCreateBatch = doSendActivity(dest, activity);
+      }
+    }
     if (!shouldRemoveFromStream) {
-      // We want to send this message.
-      syncing.validateSending(activity);
-
-      if (doSendActivity(dest, activity)) {  
+      if (didCreateBatch) {  
         // We were able to add the message to the batch so try to flush it.
         this.selfSink.addSingleThreaded(dest);
       }
@@ -127,6 +143,31 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     return didSend;
   }
 
+  /**
+   * Called when a passive acknowledges having received every replication batch up to and including the given one,
+   *  which opens the replication window to that passive.  Only passives running with the adaptive window report this.
+   */
+  public void acknowledged(NodeID node, long replicationID) {
+    GroupMessageBatchContext<ReplicationMessage, SyncReplicationActivity> cxt = this.batchContexts.get(node);
+    if (cxt != null) {
+      cxt.acknowledged(replicationID);
+    }
+  }
+
+  /**
+   * @return The replication window size, acknowledgement lag and round trip times, keyed by passive.
+   */
+  public Map<String, Map<String, Long>> getWindowStats() {
+    Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+    this.batchContexts.forEach((node, cxt) -> {
+      Map<String, Long> window = cxt.getWindowStats();
+      if (null != window) {
+        stats.put(node.toString(), window);
+      }
+    });
+    return stats;
+  }
+
   @Override
   public void handleEvent(NodeID nodeToFlush) throws EventHandlerException {
     try {
@@ -142,6 +183,14 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     }
   }
 
+  @Override
+  public void handleEvents(Collection<NodeID> nodesToFlush) throws EventHandlerException {
+    // every batched activity and every completed network send queues a flush request, one flush per passive is enough
+    for (NodeID node : new LinkedHashSet<>(nodesToFlush)) {
+      handleEvent(node);
+    }
+  }
+
   private boolean shouldRemoveActivityFromReplicationStream(SyncReplicationActivity activity, SyncState syncing) {
     // By default, we want to filter out messages for which there is no syncing state.
     boolean shouldRemoveFromStream = true;
@@ -176,9 +225,16 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     // Find out how many messages we should keep in-flight and our maximum batch size.
     int maximumBatchSize = TCPropertiesImpl.getProperties().getInt("active-passive.batchsize", DEFAULT_BATCH_LIMIT);
     int idealMessagesInFlight = TCPropertiesImpl.getProperties().getInt("active-passive.inflight", DEFAULT_INFLIGHT_MESSAGES);
-    logger.info("Created batch context for passive " + nodeid + " with max batch size " + maximumBatchSize + " and ideal messages in flight " + idealMessagesInFlight);
-    // Create the runnable which will be called, on the network thread, to notify us when a message has been sent.  In
-    //  those cases, we want to incur a new flush operation into our internal thread.
+    // The in-flight count is where the window starts, it then adapts within these bounds.  Equal bounds pin it.
+    int minimumWindow = TCPropertiesImpl.getProperties().getInt("active-passive.window.min", DEFAULT_MIN_WINDOW);
+    int maximumWindow = TCPropertiesImpl.getProperties().getInt("active-passive.window.max", DEFAULT_MAX_WINDOW);
+    if (isAdaptiveWindowEnabled()) {
+      logger.info("Created batch context for passive " + nodeid + " with max batch size " + maximumBatchSize + " and a window of " + idealMessagesInFlight + " messages in flight, adapting from " + minimumWindow + " to " + maximumWindow);
+    } else {
+      logger.info("Created batch context for passive " + nodeid + " with max batch size " + maximumBatchSize + " and " + idealMessagesInFlight + " messages in flight");
+    }
+    // Create the runnable which will be called, on the network or ack thread, to notify us when a message has been sent
+    //  or acknowledged.  In those cases, we want to incur a new flush operation into our internal thread.
     Runnable networkDoneTarget = new Runnable() {
       @Override
       public void run() {
@@ -194,7 +250,20 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
         return message;
       }
     };
-    this.batchContexts.put(nodeid, new GroupMessageBatchContext<>(factory, this.group, nodeid, maximumBatchSize, idealMessagesInFlight, networkDoneTarget));
+    if (isAdaptiveWindowEnabled()) {
+      this.batchContexts.put(nodeid, new GroupMessageBatchContext<>(factory, this.group, nodeid, maximumBatchSize, idealMessagesInFlight, minimumWindow, maximumWindow, networkDoneTarget));
+    } else {
+      this.batchContexts.put(nodeid, new GroupMessageBatchContext<>(factory, this.group, nodeid, maximumBatchSize, idealMessagesInFlight, networkDoneTarget));
+    }
+  }
+
+  /**
+   * Whether replication to passives is paced by their acknowledgements through an adaptive window rather than by a
+   *  fixed number of batches on the network.  Passives have to run with the same setting since only then do their acks
+   *  report the batches they have taken in.
+   */
+  static boolean isAdaptiveWindowEnabled() {
+    return TCPropertiesImpl.getProperties().getBoolean(ADAPTIVE_WINDOW, false);
   }
 
   private SyncState getSyncState(NodeID nodeid, SyncReplicationActivity activity) {
@@ -229,19 +298,15 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
   private static class SyncState {
     // liveSet is the total set of entities which we believe have finished syncing and fully exist on the passive.
     private final Set<FetchID> liveFetch = new HashSet<>();
-    // syncdID is the set of concurrency keys, of the entity syncingID, which we believe have finished syncing and fully
-    //  exist on the passive.
-    private final Set<Integer> syncdID = new HashSet<>();
-    // syncingID is the entity currently being synced to this passive.
-    private FetchID syncingFetch = FetchID.NULL_ID;
-    // syncingConcurrency is the concurrency key we are currently syncing to syncingID, 0 if none is in progress.
-    private int syncingConcurrency = -1;
+    // syncing holds the entities currently being synced to this passive, several at once when sync runs in parallel.
+    private final Map<FetchID, EntitySync> syncing = new HashMap<>();
     // begun is true when we decide to start syncing to this passive node (triggered by SYNC_BEGIN).
     boolean begun = false;
     // complete is true when we decide that syncing to this node is now complete (triggered by SYNC_END).
     boolean complete = false;
-    private SyncReplicationActivity.ActivityType lastSeen;
-    private SyncReplicationActivity.ActivityType lastSent;
+    // the ordering of sync activities is checked for the stream as a whole and for each entity on its own.
+    private final SyncOrder seen = new SyncOrder();
+    private final SyncOrder sent = new SyncOrder();
     
     public boolean isSyncOccuring() {
       return (begun && !complete);
@@ -256,6 +321,7 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     }
     
     public boolean shouldMessageBeReplicated(SyncReplicationActivity activity) {
+        EntitySync entity = syncing.get(activity.getFetchID());
         switch (validateInput(activity)) {
           case SYNC_BEGIN:
             begun = true;
@@ -264,39 +330,32 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
             if (liveFetch.contains(activity.getFetchID())) {
               return false;
             } else {
-              syncingFetch = activity.getFetchID();
-              syncdID.clear();
-              syncdID.add(ConcurrencyStrategy.MANAGEMENT_KEY);
-              syncdID.add(ConcurrencyStrategy.UNIVERSAL_KEY);
-              syncingConcurrency = 0;
+              Assert.assertNull(entity);
+              syncing.put(activity.getFetchID(), new EntitySync());
               return true;
             }
           case SYNC_ENTITY_CONCURRENCY_BEGIN:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              Assert.assertEquals(syncingConcurrency, 0);
-              syncingConcurrency = activity.getConcurrency();
+            if (null != entity) {
+              Assert.assertEquals(entity.syncingConcurrency, 0);
+              entity.syncingConcurrency = activity.getConcurrency();
               return true;
             } else {
               return false;
             }
           case SYNC_ENTITY_CONCURRENCY_PAYLOAD:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              return true;
-            } else {
-              return false;
-            }
+            return (null != entity);
           case SYNC_ENTITY_CONCURRENCY_END:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              syncdID.add(syncingConcurrency);
-              syncingConcurrency = 0;
+            if (null != entity) {
+              entity.syncdID.add(entity.syncingConcurrency);
+              entity.syncingConcurrency = 0;
               return true;
             } else {
               return false;
             }
           case SYNC_ENTITY_END:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              liveFetch.add(syncingFetch);
-              syncingFetch = FetchID.NULL_ID;
+            if (null != entity) {
+              syncing.remove(activity.getFetchID());
+              liveFetch.add(activity.getFetchID());
               return true;
             } else {
               return false;
@@ -305,8 +364,7 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
  //  sync is complete, clear all collections and let everything pass
             complete = true;
             liveFetch.clear();
-            syncdID.clear();
-            syncingFetch = FetchID.NULL_ID;
+            syncing.clear();
             return true;
           case CREATE_ENTITY:
 // if this create came through, it is not part of the snapshot set so everything
@@ -323,13 +381,13 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
           case INVOKE_ACTION:
             if (liveFetch.contains(activity.getFetchID())) {
               return true;
-            } else if (syncingFetch.equals(activity.getFetchID())) {
+            } else if (null != entity) {
               int concurrencyKey = activity.getConcurrency();
-              if (syncingConcurrency == concurrencyKey) {
+              if (entity.syncingConcurrency == concurrencyKey) {
 //  special case.  passive will apply this after sync of the key is complete
                 return true;
               }
-              return syncdID.contains(concurrencyKey);
+              return entity.syncdID.contains(concurrencyKey);
             } else {
 // hasn't been sync'd yet.  state will be captured in sync
               return false;
@@ -349,24 +407,78 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     public SyncReplicationActivity.ActivityType validateInput(SyncReplicationActivity activity) {
       SyncReplicationActivity.ActivityType type = activity.getActivityType();
       if (activity.isSyncActivity()) {
-        lastSeen = validate(type, lastSeen);
+        seen.validate(activity);
       }
       return type;
     }
     
     public void validateSending(SyncReplicationActivity activity) {
       if (activity.isSyncActivity()) {
-        lastSent = validate(activity.getActivityType(), lastSent);
+        sent.validate(activity);
       }
     }
-    
-    private SyncReplicationActivity.ActivityType validate(SyncReplicationActivity.ActivityType type, SyncReplicationActivity.ActivityType compare) {
+  }
+
+  /**
+   * The sync state of one entity while it is being synced:  the concurrency keys which have finished syncing and the
+   *  one currently syncing, 0 if none is in progress.
+   */
+  private static class EntitySync {
+    private final Set<Integer> syncdID = new HashSet<>();
+    private int syncingConcurrency = 0;
+
+    EntitySync() {
+      // these keys are never sync'd, only replicated.
+      syncdID.add(ConcurrencyStrategy.MANAGEMENT_KEY);
+      syncdID.add(ConcurrencyStrategy.UNIVERSAL_KEY);
+    }
+  }
+
+  /**
+   * Checks that sync activities come in a valid order.  The stream as a whole goes from SYNC_BEGIN to SYNC_END, and
+   *  within it each entity goes through its own begin, concurrency keys and end, independently of the other entities
+   *  syncing at the same time.
+   */
+  private static class SyncOrder {
+    private SyncReplicationActivity.ActivityType stream;
+    private final Map<FetchID, SyncReplicationActivity.ActivityType> entities = new HashMap<>();
+
+    void validate(SyncReplicationActivity activity) {
+      SyncReplicationActivity.ActivityType type = activity.getActivityType();
       switch (type) {
         case SYNC_BEGIN:
-          Assert.assertNull(compare);
+          Assert.assertNull(stream);
+          stream = type;
+          break;
+        case SYNC_END:
+          Assert.assertTrue(type + " " + stream + " " + entities, SyncReplicationActivity.ActivityType.SYNC_BEGIN == stream && entities.isEmpty());
+          stream = type;
+          break;
+        case SYNC_ENTITY_BEGIN:
+        case SYNC_ENTITY_CONCURRENCY_BEGIN:
+        case SYNC_ENTITY_CONCURRENCY_PAYLOAD:
+        case SYNC_ENTITY_CONCURRENCY_END:
+        case SYNC_ENTITY_END:
+          Assert.assertTrue(type + " " + stream, SyncReplicationActivity.ActivityType.SYNC_BEGIN == stream);
+          FetchID fetch = activity.getFetchID();
+          validate(type, entities.get(fetch));
+          if (SyncReplicationActivity.ActivityType.SYNC_ENTITY_END == type) {
+            entities.remove(fetch);
+          } else {
+            entities.put(fetch, type);
+          }
           break;
+        case SYNC_START:
+          // SYNC_START shouldn't go down this path - it is handled, explicitly, at a higher level.
+        default:
+          throw new AssertionError("unexpected message type");
+      }
+    }
+
+    private static void validate(SyncReplicationActivity.ActivityType type, SyncReplicationActivity.ActivityType compare) {
+      switch (type) {
         case SYNC_ENTITY_BEGIN:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_END).contains(compare));
+          Assert.assertNull(type + " " + compare, compare);
           break;
         case SYNC_ENTITY_CONCURRENCY_BEGIN:
           Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END).contains(compare));
@@ -380,15 +492,9 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
         case SYNC_ENTITY_END:
           Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END).contains(compare));
           break;
-        case SYNC_END:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_END, SyncReplicationActivity.ActivityType.SYNC_BEGIN).contains(compare));
-          break;
-        case SYNC_START:
-          // SYNC_START shouldn't go down this path - it is handled, explicitly, at a higher level.
         default:
           throw new AssertionError("unexpected message type");
       }
-      return type;
     }
   }
 }
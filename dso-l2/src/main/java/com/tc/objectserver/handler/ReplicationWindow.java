@@ -0,0 +1,148 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Flow control for the replication stream to one passive: how many batches may be sent before the passive
+ * acknowledges them, adapted to the round trip times the acknowledgements show.
+ * <p>
+ * The passive acknowledges cumulatively, with the ID of the last batch it took in, and each acknowledgement gives a
+ * round trip sample for the newest batch it covers.  Once per round trip the window is resized in the style of TCP
+ * Vegas: the gap between the smoothed and the lowest round trip tells how many of the outstanding batches are merely
+ * queued somewhere.  The window grows by one batch while that is below {@link #QUEUED_LOW}, and shrinks by one while
+ * it is above {@link #QUEUED_HIGH}.
+ * <p>
+ * This isn't thread-safe, the owning {@link GroupMessageBatchContext} serializes access.
+ */
+class ReplicationWindow {
+  static final int QUEUED_LOW = 1;
+  static final int QUEUED_HIGH = 3;
+  // the lowest round trip is re-learned every so many samples, in case the route to the passive changes
+  private static final int BASE_RTT_SAMPLES = 1024;
+
+  private final int minimum;
+  private final int maximum;
+  private final ArrayDeque<Outstanding> outstanding = new ArrayDeque<>();
+  private int size;
+
+  private long smoothedRtt;
+  private long baseRtt = Long.MAX_VALUE;
+  private int samplesSinceBaseReset;
+  private long lastSentID = -1;
+  private long lastAckedID = -1;
+  private long resizeAfterID = -1;
+  private long sentBatches;
+  private long ackedBatches;
+
+  ReplicationWindow(int initial, int minimum, int maximum) {
+    if (minimum < 1 || maximum < minimum) {
+      throw new IllegalArgumentException("bad replication window bounds: " + minimum + " to " + maximum);
+    }
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.size = Math.min(Math.max(initial, minimum), maximum);
+  }
+
+  boolean isOpen() {
+    return outstanding.size() < size;
+  }
+
+  void sent(long id, long nanos) {
+    outstanding.addLast(new Outstanding(id, nanos));
+    lastSentID = id;
+    sentBatches += 1;
+  }
+
+  /**
+   * @return true if this acknowledged batches which were still outstanding
+   */
+  boolean acknowledged(long id, long nanos) {
+    Outstanding newest = null;
+    while (!outstanding.isEmpty() && outstanding.peekFirst().id <= id) {
+      newest = outstanding.removeFirst();
+      ackedBatches += 1;
+    }
+    if (null == newest) {
+      return false;
+    }
+    lastAckedID = newest.id;
+    sample(nanos - newest.sentNanos);
+    if (lastAckedID >= resizeAfterID) {
+      resize();
+      // the batches sent until now were sent with the old size, judge the new one on the ones after them
+      resizeAfterID = lastSentID + 1;
+    }
+    return true;
+  }
+
+  private void sample(long rtt) {
+    rtt = Math.max(rtt, 1);
+    smoothedRtt = (0 == smoothedRtt) ? rtt : (7 * smoothedRtt + rtt) / 8;
+    if (++samplesSinceBaseReset >= BASE_RTT_SAMPLES) {
+      samplesSinceBaseReset = 0;
+      baseRtt = smoothedRtt;
+    }
+    baseRtt = Math.min(baseRtt, rtt);
+  }
+
+  private void resize() {
+    double queued = size * (double) (smoothedRtt - baseRtt) / smoothedRtt;
+    if (queued < QUEUED_LOW) {
+      size = Math.min(size + 1, maximum);
+    } else if (queued > QUEUED_HIGH) {
+      size = Math.max(size - 1, minimum);
+    }
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  int getOutstanding() {
+    return outstanding.size();
+  }
+
+  Map<String, Long> getStats(long nanos) {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("windowSize", (long) size);
+    stats.put("outstandingBatches", (long) outstanding.size());
+    stats.put("ackLagBatches", lastSentID - lastAckedID);
+    stats.put("ackLagNanos", outstanding.isEmpty() ? 0L : nanos - outstanding.peekFirst().sentNanos);
+    stats.put("smoothedRttNanos", smoothedRtt);
+    stats.put("baseRttNanos", (Long.MAX_VALUE == baseRtt) ? 0L : baseRtt);
+    stats.put("sentBatches", sentBatches);
+    stats.put("ackedBatches", ackedBatches);
+    return stats;
+  }
+
+  private static class Outstanding {
+    private final long id;
+    private final long sentNanos;
+
+    Outstanding(long id, long sentNanos) {
+      this.id = id;
+      this.sentNanos = sentNanos;
+    }
+  }
+}
@@ -31,6 +31,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 /**
@@ -43,21 +46,34 @@ import java.util.stream.Collectors;
  * The side-effect of these 2 statements is that it is possible for a single message completion to result in the
  * retirement of a great number of other messages, as each message unblocked can similarly unblock 2 more.
  *
- * NOTE:  It may be possible to avoid the synchronization on most operations since we know that there is only one running
- * message, per key.
+ * Without any deferral, the graph is made of one independent chain per concurrency key, so the keys are striped and
+ * each stripe is only locked by the messages of its keys (messages of the UNIVERSAL_KEY, which are in no chain, lock
+ * nothing).  These operations only share the read side of deferralLock.  Once a deferral exists, the graph can cross
+ * keys so every operation takes the write side of deferralLock instead, until all the deferrals are resolved.
  */
 public class RetirementManager {
+  // Must be a power of 2.
+  private static final int KEY_STRIPES = 16;
+
   private final Map<EntityMessage, LogicalSequence> currentlyRunning;
   private final Map<EntityMessage, LogicalSequence> waitingForDeferredRegistration;
-  private final Map<Integer, LogicalSequence> mostRecentRegisteredToKey;
+  // Each stripe's map of mostRecentRegisteredToKey is guarded by its monitor, unless deferralLock is held for write.
+  private final KeyStripe[] keyStripes;
+  private final ReentrantReadWriteLock deferralLock;
+  // The number of deferrals whose later message hasn't yet completed (only changed under the write lock).
+  private volatile int outstandingDeferrals;
 
   public RetirementManager() {
-    this.currentlyRunning = new HashMap<EntityMessage, LogicalSequence>();
-    this.waitingForDeferredRegistration = new HashMap<EntityMessage, LogicalSequence>();
-    this.mostRecentRegisteredToKey = new HashMap<Integer, LogicalSequence>();
+    this.currentlyRunning = new ConcurrentHashMap<EntityMessage, LogicalSequence>();
+    this.waitingForDeferredRegistration = new ConcurrentHashMap<EntityMessage, LogicalSequence>();
+    this.keyStripes = new KeyStripe[KEY_STRIPES];
+    for (int i = 0; i < KEY_STRIPES; ++i) {
+      this.keyStripes[i] = new KeyStripe();
+    }
+    this.deferralLock = new ReentrantReadWriteLock();
   }
 
-  public synchronized void updateWithRetiree(EntityMessage invokeMessage, Retiree response) {
+  public void updateWithRetiree(EntityMessage invokeMessage, Retiree response) {
     LogicalSequence seq = this.currentlyRunning.get(invokeMessage);
     if (seq == null) {
       // already gone.  retire directly
@@ -67,27 +83,58 @@ public class RetirementManager {
     }
   }
 
-  public synchronized void registerWithMessage(EntityMessage invokeMessage, int concurrencyKey) {
-    LogicalSequence newWrapper = new LogicalSequence(invokeMessage);
-    // if concurrencyKey is UNIVERSAL_KEY, then current request doesn't need to wait for other requests running on
-    // UNIVERSAL_KEY
-    if(concurrencyKey != ConcurrencyStrategy.UNIVERSAL_KEY) {
-      // See if there is anything for this key
-      LogicalSequence lastInKey = this.mostRecentRegisteredToKey.remove(concurrencyKey);
-      if ((null != lastInKey) && (!lastInKey.isRetired)) {
-        lastInKey.nextInKey = newWrapper;
-        newWrapper.isWaitingForPreviousInKey = true;
+  public void registerWithMessage(EntityMessage invokeMessage, int concurrencyKey) {
+    LogicalSequence newWrapper = new LogicalSequence(invokeMessage, concurrencyKey);
+    Lock shared = this.deferralLock.readLock();
+    shared.lock();
+    try {
+      if (0 == this.outstandingDeferrals) {
+        // Nothing can be waiting for this message to be registered so only its key matters.
+        if (concurrencyKey != ConcurrencyStrategy.UNIVERSAL_KEY) {
+          KeyStripe stripe = stripeFor(concurrencyKey);
+          synchronized (stripe) {
+            linkIntoKey(stripe, newWrapper);
+          }
+        }
+        addRunning(invokeMessage, newWrapper);
+        return;
       }
-      newWrapper.concurrencyKey = concurrencyKey;
-      this.mostRecentRegisteredToKey.put(concurrencyKey, newWrapper);
+    } finally {
+      shared.unlock();
     }
 
-    LogicalSequence toUpdateWithReference = waitingForDeferredRegistration.remove(invokeMessage);
-    if (null != toUpdateWithReference) {
-      Assert.assertTrue(toUpdateWithReference.isWaitingForExplicitDeferOf(invokeMessage));
-      newWrapper.deferNotify = toUpdateWithReference;
+    Lock exclusive = this.deferralLock.writeLock();
+    exclusive.lock();
+    try {
+      // if concurrencyKey is UNIVERSAL_KEY, then current request doesn't need to wait for other requests running on
+      // UNIVERSAL_KEY
+      if (concurrencyKey != ConcurrencyStrategy.UNIVERSAL_KEY) {
+        linkIntoKey(stripeFor(concurrencyKey), newWrapper);
+      }
+
+      LogicalSequence toUpdateWithReference = waitingForDeferredRegistration.remove(invokeMessage);
+      if (null != toUpdateWithReference) {
+        Assert.assertTrue(toUpdateWithReference.isWaitingForExplicitDeferOf(invokeMessage));
+        newWrapper.deferNotify = toUpdateWithReference;
+      }
+
+      addRunning(invokeMessage, newWrapper);
+    } finally {
+      exclusive.unlock();
+    }
+  }
+
+  private void linkIntoKey(KeyStripe stripe, LogicalSequence newWrapper) {
+    // See if there is anything for this key
+    LogicalSequence lastInKey = stripe.mostRecentRegisteredToKey.remove(newWrapper.concurrencyKey);
+    if ((null != lastInKey) && (!lastInKey.isRetired)) {
+      lastInKey.nextInKey = newWrapper;
+      newWrapper.isWaitingForPreviousInKey = true;
     }
+    stripe.mostRecentRegisteredToKey.put(newWrapper.concurrencyKey, newWrapper);
+  }
 
+  private void addRunning(EntityMessage invokeMessage, LogicalSequence newWrapper) {
     LogicalSequence previous = this.currentlyRunning.put(invokeMessage, newWrapper);
     // We can't find something else there.
     Assert.assertNull(previous);
@@ -100,16 +147,69 @@ public class RetirementManager {
    * @param completedMessage
    * @return
    */
-  public synchronized List<Retiree> retireForCompletion(EntityMessage completedMessage) {
+  public List<Retiree> retireForCompletion(EntityMessage completedMessage) {
     List<Retiree> toRetire = new ArrayList<>();
 
+    Lock shared = this.deferralLock.readLock();
+    shared.lock();
+    try {
+      if (0 == this.outstandingDeferrals) {
+        LogicalSequence completedRequest = removeRunning(completedMessage);
+        if (completedRequest.concurrencyKey == ConcurrencyStrategy.UNIVERSAL_KEY) {
+          // Nothing precedes or follows it so it retires right away.
+          completedRequest.isCompleted = true;
+          toRetire.add(completedRequest.response);
+          completedRequest.isRetired = true;
+        } else {
+          KeyStripe stripe = stripeFor(completedRequest.concurrencyKey);
+          synchronized (stripe) {
+            completedRequest.isCompleted = true;
+            retireAlongKey(toRetire, stripe, completedRequest);
+          }
+        }
+        return toRetire;
+      }
+    } finally {
+      shared.unlock();
+    }
+
+    Lock exclusive = this.deferralLock.writeLock();
+    exclusive.lock();
+    try {
+      LogicalSequence completedRequest = removeRunning(completedMessage);
+      completedRequest.isCompleted = true;
+      traverseDependencyGraph(toRetire, completedRequest);
+    } finally {
+      exclusive.unlock();
+    }
+    return toRetire;
+  }
+
+  private LogicalSequence removeRunning(EntityMessage completedMessage) {
     LogicalSequence completedRequest = this.currentlyRunning.remove(completedMessage);
     Assert.assertNotNull(completedRequest);
-
     Assert.assertFalse(completedRequest.isCompleted);
-    completedRequest.isCompleted = true;
-    traverseDependencyGraph(toRetire, completedRequest);
-    return toRetire;
+    return completedRequest;
+  }
+
+  /**
+   * The dependency graph without any deferral:  retire the completed request and then each completed request after it
+   *  in its key, up to the first one still running.
+   */
+  private void retireAlongKey(List<Retiree> toRetire, KeyStripe stripe, LogicalSequence completedRequest) {
+    LogicalSequence currentRequest = completedRequest;
+    while ((null != currentRequest) && currentRequest.isCompleted && !currentRequest.isWaitingForPreviousInKey) {
+      Assert.assertFalse(currentRequest.isRetired);
+      toRetire.add(currentRequest.response);
+      currentRequest.isRetired = true;
+      stripe.mostRecentRegisteredToKey.remove(currentRequest.concurrencyKey, currentRequest);
+      LogicalSequence next = currentRequest.nextInKey;
+      currentRequest.nextInKey = null;
+      if (null != next) {
+        next.isWaitingForPreviousInKey = false;
+      }
+      currentRequest = next;
+    }
   }
 
   private void traverseDependencyGraph(List<Retiree> toRetire, LogicalSequence completedRequest) {
@@ -127,7 +227,9 @@ public class RetirementManager {
           // We can retire.
           toRetire.add(currentRequest.response);
           currentRequest.isRetired = true;
-          this.mostRecentRegisteredToKey.remove(currentRequest.concurrencyKey, currentRequest);
+          if (currentRequest.concurrencyKey != ConcurrencyStrategy.UNIVERSAL_KEY) {
+            stripeFor(currentRequest.concurrencyKey).mostRecentRegisteredToKey.remove(currentRequest.concurrencyKey, currentRequest);
+          }
           // since current request is retired, we can unblock next request on same concurrency key if any
           if (currentRequest.nextInKey != null) {
             currentRequest.nextInKey.isWaitingForPreviousInKey = false;
@@ -141,31 +243,39 @@ public class RetirementManager {
           currentRequest.deferNotify.entityMessageCompleted(currentRequest.entityMessage);
           requestStack.push(currentRequest.deferNotify);
           currentRequest.deferNotify = null;
+          this.outstandingDeferrals -= 1;
         }
       }
     }
   }
 
-  public synchronized void deferRetirement(EntityMessage invokeMessageToDefer, EntityMessage laterMessage) {
-    LogicalSequence myRequest = this.currentlyRunning.get(invokeMessageToDefer);
-    
-    if (myRequest == null) {
-      myRequest = this.waitingForDeferredRegistration.get(invokeMessageToDefer);
-      // We can only defer by currently running messages.
-      Assert.assertNotNull(myRequest);
-    }
+  public void deferRetirement(EntityMessage invokeMessageToDefer, EntityMessage laterMessage) {
+    Lock exclusive = this.deferralLock.writeLock();
+    exclusive.lock();
+    try {
+      LogicalSequence myRequest = this.currentlyRunning.get(invokeMessageToDefer);
 
-    myRequest.retirementDeferredBy(laterMessage);
+      if (myRequest == null) {
+        myRequest = this.waitingForDeferredRegistration.get(invokeMessageToDefer);
+        // We can only defer by currently running messages.
+        Assert.assertNotNull(myRequest);
+      }
 
-    LogicalSequence previous = this.waitingForDeferredRegistration.put(laterMessage, myRequest);
-    Assert.assertNull(previous);
+      myRequest.retirementDeferredBy(laterMessage);
+
+      LogicalSequence previous = this.waitingForDeferredRegistration.put(laterMessage, myRequest);
+      Assert.assertNull(previous);
+      this.outstandingDeferrals += 1;
+    } finally {
+      exclusive.unlock();
+    }
   }
 
   /**
    * This method purely exists for verifying that nothing has been lost (since anything remaining in this object when the
    *  entity is destroyed would indicate a serious bug and possibly hung clients).
    */
-  public synchronized void entityWasDestroyed() {
+  public void entityWasDestroyed() {
     Assert.assertTrue(this.currentlyRunning.isEmpty());
     // Note that we don't assert mostRecentRegisteredToKey is empty since it is fixed-size and always contains the most
     //  recent LogicalSequence, per-key (just so they aren't explicitly life-cycled from outside).
@@ -176,14 +286,31 @@ public class RetirementManager {
     Map<String, Object> map = new LinkedHashMap<>();
     map.put("running", this.currentlyRunning.entrySet().stream().collect(Collectors.toMap(entry->entry.getKey().toString(), entry->entry.getKey().toString(), (one, two)->one, LinkedHashMap::new)));
     map.put("waitingForDeferredRegistration", this.waitingForDeferredRegistration.entrySet().stream().collect(Collectors.toMap(entry->entry.getKey().toString(), entry->entry.getKey().toString(), (one, two)->one, LinkedHashMap::new)));
-    map.put("mostRecentRegisteredToKey", this.mostRecentRegisteredToKey.entrySet().stream().collect(Collectors.toMap(entry->entry.getKey().toString(), entry->entry.getKey().toString(), (one, two)->one, LinkedHashMap::new)));
+    Map<String, Object> mostRecentRegisteredToKey = new LinkedHashMap<>();
+    for (KeyStripe stripe : this.keyStripes) {
+      synchronized (stripe) {
+        for (Map.Entry<Integer, LogicalSequence> entry : stripe.mostRecentRegisteredToKey.entrySet()) {
+          mostRecentRegisteredToKey.putIfAbsent(entry.getKey().toString(), entry.getKey().toString());
+        }
+      }
+    }
+    map.put("mostRecentRegisteredToKey", mostRecentRegisteredToKey);
+    map.put("outstandingDeferrals", this.outstandingDeferrals);
     return map;
   }
 
+  private KeyStripe stripeFor(int concurrencyKey) {
+    return this.keyStripes[(concurrencyKey ^ (concurrencyKey >>> 16)) & (KEY_STRIPES - 1)];
+  }
+
+  private static class KeyStripe {
+    public final Map<Integer, LogicalSequence> mostRecentRegisteredToKey = new HashMap<Integer, LogicalSequence>();
+  }
+
   private static class LogicalSequence {
-    public int concurrencyKey;
+    public final int concurrencyKey;
     // The thing to be retired
-    public Retiree response;
+    public volatile Retiree response;
     // Corresponding entity message
     public final EntityMessage entityMessage;
     // The next message in the same key, which we will notify to retire when we retire.
@@ -199,8 +326,9 @@ public class RetirementManager {
 
     private Set<EntityMessage> entityMessagesDeferringRetirement = new HashSet<>();
 
-    public LogicalSequence(EntityMessage entityMessage) {
+    public LogicalSequence(EntityMessage entityMessage, int concurrencyKey) {
       this.entityMessage = entityMessage;
+      this.concurrencyKey = concurrencyKey;
     }
 
     public void updateWithRetiree(Retiree response) {
@@ -25,7 +25,7 @@ import com.tc.logging.TCLogging;
 import com.tc.objectserver.api.EntityManager;
 import com.tc.services.PlatformConfigurationImpl;
 import com.tc.services.PlatformServiceProvider;
-import com.tc.services.SingleThreadedTimer;
+import com.tc.services.TimingWheelTimer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +51,7 @@ import com.tc.config.schema.setup.ConfigurationSetupException;
 import com.tc.config.schema.setup.L2ConfigurationSetupManager;
 import com.tc.entity.DiagnosticMessageImpl;
 import com.tc.entity.DiagnosticResponseImpl;
+import com.tc.entity.NetworkVoltronEntityBatchMessageImpl;
 import com.tc.entity.NetworkVoltronEntityMessageImpl;
 import com.tc.entity.ServerEntityMessageImpl;
 import com.tc.entity.ServerEntityResponseMessage;
@@ -171,12 +172,14 @@ import com.tc.objectserver.handler.ProcessTransactionHandler;
 import com.tc.objectserver.handler.RequestLockUnLockHandler;
 import com.tc.objectserver.handler.RespondToRequestLockHandler;
 import com.tc.objectserver.handshakemanager.ServerClientHandshakeManager;
-import com.tc.objectserver.locks.LockManagerImpl;
+import com.tc.objectserver.locks.ShardedLockManager;
 import com.tc.objectserver.locks.LockResponseContext;
 import com.tc.objectserver.persistence.ClientStatePersistor;
 import com.tc.objectserver.persistence.Persistor;
 import com.tc.objectserver.persistence.NullPlatformStorageServiceProvider;
 import com.tc.objectserver.persistence.NullPlatformStorageProviderConfiguration;
+import com.tc.objectserver.persistence.SegmentedLogStorageProviderConfiguration;
+import com.tc.objectserver.persistence.SegmentedLogStorageServiceProvider;
 import com.tc.operatorevent.OperatorEventHistoryProviderImpl;
 import com.tc.operatorevent.TerracottaOperatorEventHistoryProvider;
 import com.tc.operatorevent.TerracottaOperatorEventLogging;
@@ -212,6 +215,7 @@ import com.tc.util.runtime.ThreadIDMap;
 import com.tc.util.startuplock.FileNotCreatedException;
 import com.tc.util.startuplock.LocationNotCreatedException;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
@@ -271,7 +275,7 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
   private CommunicationsManager                  communicationsManager;
   private ServerConfigurationContext             context;
   private CounterManager                         sampledCounterManager;
-  private LockManagerImpl                        lockManager;
+  private ShardedLockManager                     lockManager;
   private ServerManagementContext                managementContext;
   private Persistor                              persistor;
 
@@ -290,10 +294,11 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
   private Stage<HydrateContext>                                  hydrateStage;
   private StripeIDStateManagerImpl               stripeIDStateManager;
 
-  private final SingleThreadedTimer timer;
+  private final TimingWheelTimer timer;
   private final TerracottaServiceProviderRegistryImpl serviceRegistry;
   private WeightGeneratorFactory globalWeightGeneratorFactory;
   private EntityManager entityManager;
+  private ReplicationSender replicationSender;
 
   // used by a test
   public DistributedObjectServer(L2ConfigurationSetupManager configSetupManager, TCThreadGroup threadGroup,
@@ -318,7 +323,7 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     this.seda = seda;
     this.server = server;
     this.serverBuilder = createServerBuilder(this.haConfig, logger, server, configSetupManager.dsoL2Config());
-    this.timer = new SingleThreadedTimer(null);
+    this.timer = new TimingWheelTimer(null);
     this.timer.start();
     this.serviceRegistry = new TerracottaServiceProviderRegistryImpl();
   }
@@ -443,10 +448,25 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     
     // See if we need to add an in-memory service for IPlatformPersistence.
     if (!this.serviceRegistry.hasUserProvidedServiceProvider(IPlatformPersistence.class)) {
-      // In this case, we do still need to provide an implementation of IPlatformPersistence, backed by memory, so that entities can request a service which is as persistent as this server is.
-      NullPlatformStorageServiceProvider nullPlatformStorageServiceProvider = new NullPlatformStorageServiceProvider();
-      nullPlatformStorageServiceProvider.initialize(new NullPlatformStorageProviderConfiguration(), platformConfiguration);
-      serviceRegistry.registerExternal(nullPlatformStorageServiceProvider);
+      TCProperties persistenceProperties = TCPropertiesImpl.getProperties();
+      if (persistenceProperties.getBoolean(TCPropertiesConsts.L2_PERSISTENCE_SEGMENTED_LOG_ENABLED, false)) {
+        // The built-in restartable implementation was asked for instead, keeping everything in segment files on disk.
+        String directory = persistenceProperties.getProperty(TCPropertiesConsts.L2_PERSISTENCE_SEGMENTED_LOG_DIRECTORY, true);
+        File dataDirectory = (null != directory && !directory.trim().isEmpty()) ? new File(directory.trim())
+            : new File(this.configSetupManager.commonl2Config().logsPath().getAbsoluteFile().getParentFile(), "platform-data");
+        SegmentedLogStorageServiceProvider segmentedLogStorageServiceProvider = new SegmentedLogStorageServiceProvider();
+        if (!segmentedLogStorageServiceProvider.initialize(new SegmentedLogStorageProviderConfiguration(dataDirectory,
+            persistenceProperties.getInt(TCPropertiesConsts.L2_PERSISTENCE_SEGMENTED_LOG_SEGMENT_SIZE, 64 * 1024 * 1024),
+            persistenceProperties.getLong(TCPropertiesConsts.L2_PERSISTENCE_SEGMENTED_LOG_FSYNC_INTERVAL_MILLIS, 2L)), platformConfiguration)) {
+          throw new IOException("Cannot use " + dataDirectory + " for platform persistence");
+        }
+        serviceRegistry.registerExternal(segmentedLogStorageServiceProvider);
+      } else {
+        // In this case, we do still need to provide an implementation of IPlatformPersistence, backed by memory, so that entities can request a service which is as persistent as this server is.
+        NullPlatformStorageServiceProvider nullPlatformStorageServiceProvider = new NullPlatformStorageServiceProvider();
+        nullPlatformStorageServiceProvider.initialize(new NullPlatformStorageProviderConfiguration(), platformConfiguration);
+        serviceRegistry.registerExternal(nullPlatformStorageServiceProvider);
+      }
     }
     
     // We want to register our IMonitoringProducer shim.
@@ -599,7 +619,8 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
 
     // Creating a stage here so that the sink can be passed
     final Stage<LockResponseContext> respondToLockStage = stageManager.createStage(ServerConfigurationContext.RESPOND_TO_LOCK_REQUEST_STAGE, LockResponseContext.class, new RespondToRequestLockHandler(), 1, maxStageSize);
-    this.lockManager = new LockManagerImpl(respondToLockStage.getSink(), channelManager);
+    final int lockManagerShards = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_LOCKMANAGER_SHARDS, 4);
+    this.lockManager = new ShardedLockManager(respondToLockStage.getSink(), channelManager, lockManagerShards);
 
     final ObjectInstanceMonitorImpl instanceMonitor = new ObjectInstanceMonitorImpl();
 
@@ -679,7 +700,7 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     // If we are running in a restartable mode, instantiate any entities in storage.
     processTransactionHandler.loadExistingEntities();
 
-    final Stage<LockRequestMessage> requestLock = stageManager.createStage(ServerConfigurationContext.REQUEST_LOCK_STAGE, LockRequestMessage.class, new RequestLockUnLockHandler(), 1, maxStageSize);
+    final Stage<LockRequestMessage> requestLock = stageManager.createStage(ServerConfigurationContext.REQUEST_LOCK_STAGE, LockRequestMessage.class, new RequestLockUnLockHandler(), lockManagerShards, maxStageSize);
 
     final Stage<ClientHandshakeMessage> clientHandshake = stageManager.createStage(ServerConfigurationContext.CLIENT_HANDSHAKE_STAGE, ClientHandshakeMessage.class, createHandShakeHandler(entityManager, processTransactionHandler), 1, maxStageSize);
     this.hydrateStage = stageManager.createStage(ServerConfigurationContext.HYDRATE_MESSAGE_SINK, HydrateContext.class, new HydrateHandler(), stageWorkerThreadCount, maxStageSize);
@@ -688,6 +709,7 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     messageRouter.routeMessageType(TCMessageType.NOOP_MESSAGE, requestLock.getSink(), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.CLIENT_HANDSHAKE_MESSAGE, clientHandshake.getSink(), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MESSAGE, new VoltronMessageSink(voltronMessageSink, hydrateSink, entityManager));
+    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE, new VoltronMessageSink(voltronMessageSink, hydrateSink, entityManager));
     messageRouter.routeMessageType(TCMessageType.SERVER_ENTITY_RESPONSE_MESSAGE, communicatorResponseStage.getSink(), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.DIAGNOSTIC_REQUEST, new DiagnosticsHandler(this));    
 
@@ -732,12 +754,14 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
 
     connectServerStateToReplicatedState(state, l2Coordinator.getReplicatedClusterStateManager());
 // setup replication    
-    ReplicationSender replicationSender = new ReplicationSender(groupCommManager);
+    replicationSender = new ReplicationSender(groupCommManager);
     final Stage<NodeID> replicationSenderStage = stageManager.createStage(ServerConfigurationContext.ACTIVE_TO_PASSIVE_DRIVER_STAGE, NodeID.class, replicationSender, 1, maxStageSize);
     replicationSender.setSelfSink(replicationSenderStage.getSink());
     
     final ActiveToPassiveReplication passives = new ActiveToPassiveReplication(processTransactionHandler, l2Coordinator.getReplicatedClusterStateManager().getPassives(), this.persistor.getEntityPersistor(), replicationSender, this.getGroupManager());
     processor.setReplication(passives); 
+//  standbys which drop off and come back get to resume their stream instead of being zapped, if the replay log allows
+    l2Coordinator.getStateManager().setResumableStandbys(passives::isResumable);
 
     Stage<ReplicationMessageAck> replicationStageAck = stageManager.createStage(ServerConfigurationContext.PASSIVE_REPLICATION_ACK_STAGE, ReplicationMessageAck.class, 
         new AbstractEventHandler<ReplicationMessageAck>() {
@@ -745,11 +769,15 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
           public void handleEvent(ReplicationMessageAck context) throws EventHandlerException {
             switch (context.getType()) {
               case ReplicationMessageAck.BATCH:
+              case ReplicationMessageAck.WINDOW_BATCH:
                 passives.batchAckReceived(context);
                 break;
               case ReplicationMessageAck.START_SYNC:
                 passives.startPassiveSync(context.messageFrom());
                 break;
+              case ReplicationMessageAck.RESUME_SYNC:
+                passives.resumePassiveSync(context.messageFrom(), context.getResumeFrom());
+                break;
               default:
                 throw new AssertionError("bad message " + context);
           }
@@ -763,6 +791,7 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     GroupEventsDispatchHandler dispatchHandler = new GroupEventsDispatchHandler();
     dispatchHandler.addListener(this.l2Coordinator);  
     dispatchHandler.addListener(passives);
+    dispatchHandler.addListener(replicatedTransactionHandler);
     
     Stage<GroupEvent> groupEvents = stageManager.createStage(ServerConfigurationContext.GROUP_EVENTS_DISPATCH_STAGE, GroupEvent.class, dispatchHandler, 1, maxStageSize);
     this.groupCommManager.registerForGroupEvents(dispatchHandler.createDispatcher(groupEvents.getSink()));
@@ -824,7 +853,8 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     this.managementContext = new ServerManagementContext((DSOChannelManagerMBean) channelManager,
                                                          serverStats, channelStats, instanceMonitor,
                                                          connectionPolicy,
-                                                         remoteManagement);
+                                                         remoteManagement,
+                                                         stageManager);
 
     final CallbackOnExitHandler handler = new CallbackGroupExceptionHandler(logger, consoleLogger);
     this.threadGroup.addCallbackOnExitExceptionHandler(GroupException.class, handler);
@@ -1006,6 +1036,7 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     messageTypeClassMapping.put(TCMessageType.INVOKE_REGISTERED_SERVICE_MESSAGE, InvokeRegisteredServiceMessage.class);
     messageTypeClassMapping.put(TCMessageType.INVOKE_REGISTERED_SERVICE_RESPONSE_MESSAGE, InvokeRegisteredServiceResponseMessage.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_MESSAGE, NetworkVoltronEntityMessageImpl.class);
+    messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE, NetworkVoltronEntityBatchMessageImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_RECEIVED_RESPONSE, VoltronEntityReceivedResponseImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_COMPLETED_RESPONSE, VoltronEntityAppliedResponseImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_RETIRED_RESPONSE, VoltronEntityRetiredResponseImpl.class);
@@ -1158,6 +1189,14 @@ public class DistributedObjectServer implements TCDumper, ServerConnectionValida
     return this.operatorEventHistoryProvider;
   }
 
+  public ReplicationSender getReplicationSender() {
+    return this.replicationSender;
+  }
+
+  public Map<String, Map<String, Long>> getReplicationCompressionStats() {
+    return (this.groupCommManager != null) ? this.groupCommManager.getCompressionStats() : Collections.<String, Map<String, Long>>emptyMap();
+  }
+
   protected GroupManager<AbstractGroupMessage> getGroupManager() {
     return this.groupCommManager;
   }
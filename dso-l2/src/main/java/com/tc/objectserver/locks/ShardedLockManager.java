@@ -0,0 +1,164 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.async.api.Sink;
+import com.tc.net.ClientID;
+import com.tc.object.locks.ClientServerExchangeLockContext;
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.ServerLockLevel;
+import com.tc.object.locks.ThreadID;
+import com.tc.object.net.DSOChannelManager;
+import com.tc.objectserver.locks.ServerLock.NotifyAction;
+import com.tc.objectserver.locks.factory.ServerLockFactoryImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * LockManager which partitions the LockIDs across a fixed number of independent {@link LockManagerImpl} shards. Each
+ * shard has its own LockStore, pending request queue, status lock and lock timer so requests for locks in different
+ * shards never contend with each other. Every shard listens to the channel manager itself and clears the state of
+ * departed clients from its own locks.
+ */
+public class ShardedLockManager implements LockManager, LockManagerMBean {
+  private final LockManagerImpl[] shards;
+
+  public ShardedLockManager(Sink lockSink, DSOChannelManager channelManager, int shardCount) {
+    this(lockSink, channelManager, new ServerLockFactoryImpl(), shardCount);
+  }
+
+  public ShardedLockManager(Sink lockSink, DSOChannelManager channelManager, LockFactory factory, int shardCount) {
+    if (shardCount <= 0) throw new IllegalArgumentException("shard count must be positive: " + shardCount);
+
+    this.shards = new LockManagerImpl[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new LockManagerImpl(lockSink, channelManager, factory);
+    }
+  }
+
+  @Override
+  public void lock(LockID lid, ClientID cid, ThreadID tid, ServerLockLevel level) {
+    shardFor(lid).lock(lid, cid, tid, level);
+  }
+
+  @Override
+  public void tryLock(LockID lid, ClientID cid, ThreadID tid, ServerLockLevel level, long timeout) {
+    shardFor(lid).tryLock(lid, cid, tid, level, timeout);
+  }
+
+  @Override
+  public void unlock(LockID lid, ClientID cid, ThreadID tid) {
+    shardFor(lid).unlock(lid, cid, tid);
+  }
+
+  @Override
+  public void queryLock(LockID lid, ClientID cid, ThreadID tid) {
+    shardFor(lid).queryLock(lid, cid, tid);
+  }
+
+  @Override
+  public void interrupt(LockID lid, ClientID cid, ThreadID tid) {
+    shardFor(lid).interrupt(lid, cid, tid);
+  }
+
+  @Override
+  public void recallCommit(LockID lid, ClientID cid, Collection<ClientServerExchangeLockContext> serverLockContexts) {
+    shardFor(lid).recallCommit(lid, cid, serverLockContexts);
+  }
+
+  @Override
+  public NotifiedWaiters notify(LockID lid, ClientID cid, ThreadID tid, NotifyAction action,
+                                NotifiedWaiters addNotifiedWaitersTo) {
+    return shardFor(lid).notify(lid, cid, tid, action, addNotifiedWaitersTo);
+  }
+
+  @Override
+  public void wait(LockID lid, ClientID cid, ThreadID tid, long timeout) {
+    shardFor(lid).wait(lid, cid, tid, timeout);
+  }
+
+  @Override
+  public void reestablishState(ClientID cid, Collection<ClientServerExchangeLockContext> serverLockContexts) {
+    List<List<ClientServerExchangeLockContext>> perShard = new ArrayList<>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      perShard.add(new ArrayList<ClientServerExchangeLockContext>());
+    }
+    for (ClientServerExchangeLockContext cselc : serverLockContexts) {
+      perShard.get(indexFor(cselc.getLockID())).add(cselc);
+    }
+    for (int i = 0; i < shards.length; i++) {
+      shards[i].reestablishState(cid, perShard.get(i));
+    }
+  }
+
+  @Override
+  public void clearAllLocksFor(ClientID cid) {
+    for (LockManagerImpl shard : shards) {
+      shard.clearAllLocksFor(cid);
+    }
+  }
+
+  @Override
+  public LockMBean[] getAllLocks() {
+    List<LockMBean> beansList = new ArrayList<>();
+    for (LockManagerImpl shard : shards) {
+      beansList.addAll(Arrays.asList(shard.getAllLocks()));
+    }
+    return beansList.toArray(new LockMBean[beansList.size()]);
+  }
+
+  @Override
+  public void start() {
+    for (LockManagerImpl shard : shards) {
+      shard.start();
+    }
+  }
+
+  int indexFor(LockID lid) {
+    // LockStore takes its segment from the high bits of its own spread, so use the low bits here
+    int h = lid.hashCode();
+    h ^= (h >>> 16);
+    return (h & Integer.MAX_VALUE) % shards.length;
+  }
+
+  private LockManagerImpl shardFor(LockID lid) {
+    return shards[indexFor(lid)];
+  }
+
+  /**
+   * To be used only in tests
+   */
+  public int getLockCount() {
+    int size = 0;
+    for (LockManagerImpl shard : shards) {
+      size += shard.getLockCount();
+    }
+    return size;
+  }
+
+  /**
+   * To be used only in tests
+   */
+  LockManagerImpl getShard(LockID lid) {
+    return shardFor(lid);
+  }
+}
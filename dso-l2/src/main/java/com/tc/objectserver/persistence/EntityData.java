@@ -18,7 +18,10 @@
  */
 package com.tc.objectserver.persistence;
 
+import com.tc.net.ClientID;
+
 import java.io.Serializable;
+import java.util.List;
 
 import org.terracotta.exception.EntityException;
 
@@ -88,4 +91,37 @@ public class EntityData {
       return "JournalEntry{" + "operation=" + operation + ", transactionID=" + transactionID + '}';
     }
   }
+
+  public static enum ChangeType implements Serializable {
+    ENTITY_PUT,
+    ENTITY_REMOVE,
+    CLIENT_JOURNAL_PUT,
+    CLIENT_JOURNAL_REMOVE,
+    CLIENT_JOURNALS_CLEAR,
+    NEXT_CONSUMER_ID,
+    CLEAR,
+  }
+
+  /**
+   * One change to the persisted entity state, as appended to the entity journal between two snapshots.  A change sets
+   * its part of the state outright so replaying it on top of a later snapshot has no further effect.
+   */
+  public static class Change implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public ChangeType type;
+    // key is set for ENTITY_PUT and ENTITY_REMOVE, value only for ENTITY_PUT.
+    public Key key;
+    public Value value;
+    // client is set for CLIENT_JOURNAL_PUT and CLIENT_JOURNAL_REMOVE, journal only for CLIENT_JOURNAL_PUT.
+    public ClientID client;
+    public List<JournalEntry> journal;
+    // nextConsumerID is only used by NEXT_CONSUMER_ID.
+    public long nextConsumerID;
+
+    @Override
+    public String toString() {
+      return "Change{" + "type=" + type + '}';
+    }
+  }
 }
@@ -0,0 +1,190 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.persistence.IPlatformPersistence;
+
+
+/**
+ * Append-only log of the changes made to the entity state since its last snapshot.  Each change is stored as a data
+ * element of its own, serialized up front so that a CRC32 of its bytes can be kept with it, which makes a lifecycle
+ * operation cost the write of that change instead of a rewrite of everything the {@link EntityPersistor} holds.
+ * Replay stops at the first record which is missing or fails its checksum, since all that follows was written later.
+ * <p>
+ * Once enough records have been appended the owner writes a new snapshot and calls {@link #compacted()}, which moves
+ * the start of the log past everything the snapshot holds and deletes the records before it.
+ * <p>
+ * Not thread safe, the owner serializes access.
+ */
+class EntityJournal {
+  private static final Logger LOGGER = LoggerFactory.getLogger(EntityJournal.class);
+
+  private static final String STATE_FILE_NAME = "entity_journal_state.map";
+  private static final String STATE_FIRST_SEQUENCE = "firstSequence";
+  private static final String STATE_PREVIOUS_FIRST_SEQUENCE = "previousFirstSequence";
+  private static final String RECORD_FILE_PREFIX = "entity_journal_";
+  private static final String RECORD_FILE_SUFFIX = ".log";
+
+  private final IPlatformPersistence storageManager;
+  private final int compactionThreshold;
+  // The first record after the snapshot and the one the next change will be written to.
+  private long firstSequence;
+  private long nextSequence;
+  private long appended = 0;
+  private long compactions = 0;
+  private long replayed = 0;
+
+  @SuppressWarnings("unchecked")
+  EntityJournal(IPlatformPersistence storageManager, int compactionThreshold) throws IOException {
+    if (compactionThreshold < 1) {
+      throw new IllegalArgumentException("Compaction threshold must be positive: " + compactionThreshold);
+    }
+    this.storageManager = storageManager;
+    this.compactionThreshold = compactionThreshold;
+    HashMap<String, Long> state = (HashMap<String, Long>) this.storageManager.loadDataElement(STATE_FILE_NAME);
+    this.firstSequence = (null != state) ? state.get(STATE_FIRST_SEQUENCE) : 0L;
+    this.nextSequence = this.firstSequence;
+    if (null != state) {
+      // a compaction may have stopped before it deleted all the records the snapshot made useless
+      deleteRecords(state.get(STATE_PREVIOUS_FIRST_SEQUENCE), this.firstSequence);
+    }
+  }
+
+  /**
+   * Hands the changes logged since the snapshot to the target, in the order they were made.
+   *
+   * @return the number of changes replayed
+   */
+  int replay(Consumer<EntityData.Change> target) throws IOException {
+    long sequence = this.firstSequence;
+    while (true) {
+      Serializable element = this.storageManager.loadDataElement(recordName(sequence));
+      if (null == element) {
+        break;
+      }
+      Record record = (element instanceof Record) ? (Record) element : null;
+      if (null == record || record.sequence != sequence || record.checksum != checksum(record.payload)) {
+        LOGGER.warn("Entity journal record " + sequence + " is damaged, discarding it and the records after it");
+        long end = sequence;
+        while (null != this.storageManager.loadDataElement(recordName(end))) {
+          end += 1;
+        }
+        deleteRecords(sequence, end);
+        break;
+      }
+      target.accept(deserialize(record.payload));
+      sequence += 1;
+    }
+    int count = (int) (sequence - this.firstSequence);
+    this.replayed += count;
+    this.nextSequence = sequence;
+    return count;
+  }
+
+  /**
+   * Writes one change at the end of the log.
+   *
+   * @return true if enough records have piled up since the snapshot that the owner should compact
+   */
+  boolean append(EntityData.Change change) throws IOException {
+    Record record = new Record();
+    record.sequence = this.nextSequence;
+    record.payload = serialize(change);
+    record.checksum = checksum(record.payload);
+    this.storageManager.storeDataElement(recordName(record.sequence), record);
+    this.nextSequence += 1;
+    this.appended += 1;
+    return (this.nextSequence - this.firstSequence) >= this.compactionThreshold;
+  }
+
+  /**
+   * Called once the owner has stored a snapshot holding every change appended so far, so that those records are no
+   * longer replayed and can be deleted.
+   */
+  void compacted() throws IOException {
+    long previousFirst = this.firstSequence;
+    this.firstSequence = this.nextSequence;
+    HashMap<String, Long> state = new HashMap<>();
+    state.put(STATE_FIRST_SEQUENCE, this.firstSequence);
+    state.put(STATE_PREVIOUS_FIRST_SEQUENCE, previousFirst);
+    this.storageManager.storeDataElement(STATE_FILE_NAME, state);
+    deleteRecords(previousFirst, this.firstSequence);
+    this.compactions += 1;
+  }
+
+  void reportStateToMap(Map<String, Object> map) {
+    map.put("recordsSinceSnapshot", this.nextSequence - this.firstSequence);
+    map.put("appended", this.appended);
+    map.put("replayed", this.replayed);
+    map.put("compactions", this.compactions);
+  }
+
+  private void deleteRecords(long from, long to) throws IOException {
+    for (long sequence = from; sequence < to; ++sequence) {
+      this.storageManager.storeDataElement(recordName(sequence), null);
+    }
+  }
+
+  private static String recordName(long sequence) {
+    return RECORD_FILE_PREFIX + sequence + RECORD_FILE_SUFFIX;
+  }
+
+  private static long checksum(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    return crc.getValue();
+  }
+
+  private static byte[] serialize(EntityData.Change change) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(change);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static EntityData.Change deserialize(byte[] payload) throws IOException {
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+      return (EntityData.Change) input.readObject();
+    } catch (ClassNotFoundException cnf) {
+      throw new IOException(cnf);
+    }
+  }
+
+  private static class Record implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long sequence;
+    private long checksum;
+    private byte[] payload;
+  }
+}
@@ -29,7 +29,6 @@ import com.tc.util.Assert;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -47,6 +46,11 @@ import org.terracotta.persistence.IPlatformPersistence;
 
 /**
  * Stores the information relating to the entities currently alive on the platform into persistent storage.
+ * <p>
+ * The entities, the lifecycle journal of each client and the counters are stored as snapshots of the whole maps.  Each
+ * change made after a snapshot is appended to an {@link EntityJournal} instead of rewriting the map it touched, and the
+ * snapshot is only rewritten once the compaction threshold of changes has been reached.  On load the snapshot is read
+ * back and the changes appended since then are replayed on top of it.
  */
 public class EntityPersistor {
   private static final Logger LOGGER = LoggerFactory.getLogger(EntityPersistor.class);
@@ -55,14 +59,20 @@ public class EntityPersistor {
   private static final String JOURNAL_CONTAINER_FILE_NAME = "journal_container.map";
   private static final String COUNTERS_FILE_NAME = "counters.map";
   private static final String COUNTERS_CONSUMER_ID = "counters:consumerID";
+  public static final int DEFAULT_COMPACTION_THRESHOLD = 1024;
 
   private final IPlatformPersistence storageManager;
   private final HashMap<EntityData.Key, EntityData.Value> entities;
   private final HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal;
   private final HashMap<String, Long> counters;
+  private final EntityJournal journal;
 
-  @SuppressWarnings({ "unchecked" })
   public EntityPersistor(IPlatformPersistence storageManager) {
+    this(storageManager, DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  @SuppressWarnings({ "unchecked" })
+  public EntityPersistor(IPlatformPersistence storageManager, int compactionThreshold) {
     this.storageManager = storageManager;
     try {
       HashMap<EntityData.Key, EntityData.Value> entities = (HashMap<Key, Value>) this.storageManager.loadDataElement(ENTITIES_ALIVE_FILE_NAME);
@@ -75,6 +85,9 @@ public class EntityPersistor {
       if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
         this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
       }
+      this.journal = new EntityJournal(this.storageManager, compactionThreshold);
+      int replayed = this.journal.replay(this::applyChange);
+      LOGGER.debug("replayed " + replayed + " entity journal records");
     } catch (IOException e) {
       // We don't expect this during startup so just throw it as runtime.
       throw new RuntimeException("Failure reading EntityPersistor map files", e);
@@ -82,17 +95,12 @@ public class EntityPersistor {
   }
 
   public synchronized void clear() {
-    this.entities.clear();
-    this.entityLifeJournal.clear();
-    this.counters.clear();
-    if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
-      this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
-    }
-    // We can destroy the backing for these objects.
+    EntityData.Change change = newChange(EntityData.ChangeType.CLEAR);
+    applyChange(change);
+    // The clear is logged first so that it still happens on load if we stop before the empty snapshot is stored.
     try {
-      this.storageManager.storeDataElement(ENTITIES_ALIVE_FILE_NAME, null);
-      this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, null);
-      this.storageManager.storeDataElement(COUNTERS_FILE_NAME, null);
+      this.journal.append(change);
+      compact();
     } catch (IOException e) {
       // In general, we have no way of solving this problem so throw it.
       throw new RuntimeException("Failure storing EntityPersistor map files", e);
@@ -101,12 +109,7 @@ public class EntityPersistor {
   
   public synchronized void clearEntityClientJournal() {
     this.entityLifeJournal.clear();
-    try {
-      this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, null);
-    } catch (IOException e) {
-      // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map files", e);
-    }
+    record(newChange(EntityData.ChangeType.CLIENT_JOURNALS_CLEAR));
   }
 
   public synchronized Collection<EntityData.Value> loadEntityData() {
@@ -194,7 +197,9 @@ public class EntityPersistor {
     key.entityName = id.getEntityName();
     Assert.assertTrue(this.entities.containsKey(key));
     this.entities.remove(key);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    EntityData.Change change = newChange(EntityData.ChangeType.ENTITY_REMOVE);
+    change.key = key;
+    record(change);
     
     // Record this in the journal - null error on success.
     addToJournal(clientID, transactionID, oldestTransactionOnClient, EntityData.Operation.DESTROY, null, null);
@@ -239,7 +244,7 @@ public class EntityPersistor {
     Assert.assertEquals(version, val.version);
     
     this.entities.put(key, val);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    recordEntity(key, val);
     
     // Record this in the journal.
     addToJournal(clientID, transactionID, oldestTransactionOnClient, EntityData.Operation.RECONFIGURE, previousConfiguration, null);
@@ -251,7 +256,7 @@ public class EntityPersistor {
   public synchronized long getNextConsumerID() {
     long consumerID = this.counters.get(COUNTERS_CONSUMER_ID);
     this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
-    storeToDisk(COUNTERS_FILE_NAME, this.counters);
+    recordNextConsumerID();
     return consumerID;
   }
 
@@ -259,19 +264,19 @@ public class EntityPersistor {
     long checkID = this.counters.get(COUNTERS_CONSUMER_ID);
     if (consumerID >= checkID) {
       this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
-      storeToDisk(COUNTERS_FILE_NAME, this.counters);
+      recordNextConsumerID();
     }
   }
   
   public synchronized void addTrackingForClient(ClientID sourceNodeID) {
     if (this.entityLifeJournal.putIfAbsent(sourceNodeID, new ArrayList<>()) == null) {
-      storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+      recordClientJournal(sourceNodeID);
     }
   }
   
   public synchronized void removeTrackingForClient(ClientID sourceNodeID) {
     this.entityLifeJournal.remove(sourceNodeID);
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+    recordClientJournal(sourceNodeID);
   }
 
   public void reportStateToMap(Map<String, Object> map) {
@@ -297,6 +302,12 @@ public class EntityPersistor {
     }
 
     map.put("nextConsumerID", this.counters.get(COUNTERS_CONSUMER_ID));
+
+    Map<String, Object> journalState = new LinkedHashMap<>();
+    map.put("changeJournal", journalState);
+    synchronized (this) {
+      this.journal.reportStateToMap(journalState);
+    }
   }
   
   private List<JournalEntry> filterJournal(List<JournalEntry> list, long oldestTransactionOnClient) {
@@ -322,7 +333,7 @@ public class EntityPersistor {
       newEntry.reconfigureResponse = reconfigureResult;
       clientJournal.add(newEntry);
       this.entityLifeJournal.put(clientID, clientJournal);
-      storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+      recordClientJournal(clientID);
     }
   }
 
@@ -357,12 +368,20 @@ public class EntityPersistor {
     value.entityName = entityName;
     value.configuration = configuration;
     this.entities.put(key, value);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    recordEntity(key, value);
   }
   
   public synchronized void removeOrphanedClientsFromJournal(Set<ClientID> connectedClients) {
-    this.entityLifeJournal.entrySet().removeIf(e->!connectedClients.contains(e.getKey()));
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+    List<ClientID> orphans = new ArrayList<>();
+    for (ClientID client : this.entityLifeJournal.keySet()) {
+      if (!connectedClients.contains(client)) {
+        orphans.add(client);
+      }
+    }
+    for (ClientID orphan : orphans) {
+      this.entityLifeJournal.remove(orphan);
+      recordClientJournal(orphan);
+    }
   }
   
   public synchronized void serialize(ObjectOutput bucket) throws IOException {
@@ -387,6 +406,7 @@ public class EntityPersistor {
         List<EntityData.JournalEntry> check = (List<EntityData.JournalEntry>)this.entityLifeJournal.get(key);
         if (check == null) {
           this.entityLifeJournal.put(key, journal);
+          recordClientJournal(key);
           LOGGER.debug(key + " putting " + journal);
         } else {
           int pos = 0;
@@ -400,23 +420,96 @@ public class EntityPersistor {
           }
           LOGGER.debug(key + " layering " + journal + " " + check);
           this.entityLifeJournal.put(key, check);
+          recordClientJournal(key);
         }
       }
     } catch (ClassNotFoundException cnf) {
       throw new IOException(cnf);
     }
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
     long nextConsumer = bucket.readLong();
     this.counters.put(COUNTERS_CONSUMER_ID, nextConsumer);
-    storeToDisk(COUNTERS_FILE_NAME, this.counters);
+    recordNextConsumerID();
+  }
+
+  private static EntityData.Change newChange(EntityData.ChangeType type) {
+    EntityData.Change change = new EntityData.Change();
+    change.type = type;
+    return change;
   }
 
-  private void storeToDisk(String dataName, Serializable dataElement) {
+  private void recordEntity(EntityData.Key key, EntityData.Value value) {
+    EntityData.Change change = newChange(EntityData.ChangeType.ENTITY_PUT);
+    change.key = key;
+    change.value = value;
+    record(change);
+  }
+
+  /**
+   * Logs the journal currently held for the client, or its removal if there is none.
+   */
+  private void recordClientJournal(ClientID client) {
+    List<EntityData.JournalEntry> clientJournal = this.entityLifeJournal.get(client);
+    EntityData.Change change = newChange((null != clientJournal) ? EntityData.ChangeType.CLIENT_JOURNAL_PUT : EntityData.ChangeType.CLIENT_JOURNAL_REMOVE);
+    change.client = client;
+    change.journal = clientJournal;
+    record(change);
+  }
+
+  private void recordNextConsumerID() {
+    EntityData.Change change = newChange(EntityData.ChangeType.NEXT_CONSUMER_ID);
+    change.nextConsumerID = this.counters.get(COUNTERS_CONSUMER_ID);
+    record(change);
+  }
+
+  private void record(EntityData.Change change) {
     try {
-      this.storageManager.storeDataElement(dataName, dataElement);
+      if (this.journal.append(change)) {
+        compact();
+      }
     } catch (IOException e) {
       // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map file", e);
+      throw new RuntimeException("Failure storing EntityPersistor journal", e);
+    }
+  }
+
+  /**
+   * Stores a snapshot of all the maps, which holds every change logged so far, and lets the journal drop those changes.
+   */
+  private void compact() throws IOException {
+    this.storageManager.storeDataElement(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+    this.storageManager.storeDataElement(COUNTERS_FILE_NAME, this.counters);
+    this.journal.compacted();
+  }
+
+  private void applyChange(EntityData.Change change) {
+    switch (change.type) {
+      case ENTITY_PUT:
+        this.entities.put(change.key, change.value);
+        break;
+      case ENTITY_REMOVE:
+        this.entities.remove(change.key);
+        break;
+      case CLIENT_JOURNAL_PUT:
+        this.entityLifeJournal.put(change.client, change.journal);
+        break;
+      case CLIENT_JOURNAL_REMOVE:
+        this.entityLifeJournal.remove(change.client);
+        break;
+      case CLIENT_JOURNALS_CLEAR:
+        this.entityLifeJournal.clear();
+        break;
+      case NEXT_CONSUMER_ID:
+        this.counters.put(COUNTERS_CONSUMER_ID, change.nextConsumerID);
+        break;
+      case CLEAR:
+        this.entities.clear();
+        this.entityLifeJournal.clear();
+        this.counters.clear();
+        this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
+        break;
+      default:
+        Assert.fail("Unexpected change " + change);
     }
   }
 }
@@ -20,11 +20,15 @@ package com.tc.objectserver.persistence;
 
 import com.tc.net.ClientID;
 import com.tc.objectserver.api.ClientNotFoundException;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.text.PrettyPrintable;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.ProductID;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.terracotta.persistence.IPlatformPersistence;
 
@@ -44,12 +48,16 @@ public class Persistor implements PrettyPrintable {
   public Persistor(IPlatformPersistence persistentStorage) {
     this.persistentStorage = persistentStorage;
     this.clusterStatePersistor = new ClusterStatePersistor(persistentStorage);
-    this.entityPersistor = new EntityPersistor(persistentStorage);
+    this.entityPersistor = new EntityPersistor(persistentStorage, TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.L2_ENTITY_PERSISTOR_JOURNAL_COMPACTION_THRESHOLD, EntityPersistor.DEFAULT_COMPACTION_THRESHOLD));
   }
 
   public boolean start(boolean trackClients) {
     clientStatePersistor = new ClientStatePersistor(persistentStorage);
-    this.transactionOrderPersistor = new TransactionOrderPersistor(persistentStorage, this.clientStatePersistor.loadPermanentClientIDs());
+    TCProperties properties = TCPropertiesImpl.getProperties();
+    this.transactionOrderPersistor = new TransactionOrderPersistor(persistentStorage, this.clientStatePersistor.loadPermanentClientIDs(),
+        properties.getBoolean(TCPropertiesConsts.L2_TRANSACTION_ORDER_GROUP_COMMIT_ENABLED, true),
+        TimeUnit.MICROSECONDS.toNanos(properties.getLong(TCPropertiesConsts.L2_TRANSACTION_ORDER_GROUP_COMMIT_WINDOW_MICROS, 0L)));
     for (ClientID orphan : clientStatePersistor.loadOrphanClientIDs()) {
       try {
         removeClientState(orphan);
@@ -67,6 +75,9 @@ public class Persistor implements PrettyPrintable {
   }
 
   public void close() {
+    if (transactionOrderPersistor != null) {
+      transactionOrderPersistor.close();
+    }
   }
   
   public void addClientState(ClientID node, ProductID product) {
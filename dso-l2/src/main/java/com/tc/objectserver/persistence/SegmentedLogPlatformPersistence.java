@@ -0,0 +1,757 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.entity.StateDumpCollector;
+import org.terracotta.entity.StateDumpable;
+import org.terracotta.persistence.IPlatformPersistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+
+/**
+ * Restartable {@link IPlatformPersistence} which keeps everything in a log of memory-mapped segment files within one
+ * directory.  Data elements and sequence updates are appended as checksummed records and applied to an in-memory view,
+ * which is what loads are served from, so a write costs the size of its own record.
+ * <p>
+ * Writes are made durable in batches: a flusher thread forces the current segment at most once per fsync interval and
+ * completes the future shared by every record appended since the previous force.  A segment is forced as soon as the
+ * log rolls over to the next one.  {@link #storeDataElement(String, Serializable)} and
+ * {@link #deleteSequence(long)} wait for their batch while {@link #fastStoreSequence(long, SequenceTuple, long)} hands
+ * the future back to the caller.
+ * <p>
+ * On open the segments are replayed in order up to the first record which is cut short or fails its checksum, and the
+ * log carries on from there.  Once the log spans several segments and has grown well past the live data, the log rolls
+ * over past a segment kept aside for a checkpoint.  A compactor thread writes a snapshot of the live data, as of the
+ * roll, into that segment while appends carry on after it, then the segments before it are deleted.  A checkpoint only
+ * replaces what came before it once its end record has been written, one which was cut short is discarded on its own.
+ */
+public class SegmentedLogPlatformPersistence implements IPlatformPersistence, StateDumpable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedLogPlatformPersistence.class);
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  // length and CRC32 of the record body, a length of 0 marks the end of the records of a segment
+  private static final int HEADER_SIZE = 8;
+
+  private static final byte DATA = 1;
+  private static final byte SEQUENCE = 2;
+  private static final byte SEQUENCE_DELETE = 3;
+  private static final byte CHECKPOINT_BEGIN = 4;
+  private static final byte CHECKPOINT_END = 5;
+
+  // compaction waits for the log to span this many segments and to be this many times the size of the live data
+  private static final int COMPACTION_MIN_SEGMENTS = 4;
+  private static final int COMPACTION_RATIO = 2;
+
+  private final File directory;
+  private final int segmentSize;
+  private final long fsyncIntervalMillis;
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  private final Thread flusher;
+  private Thread compactor;
+  private State state;
+  private Segment current;
+  private long nextSegmentIndex;
+  // completed by the next force, shared by every record appended since the previous one, null if there are none
+  private CompletableFuture<Void> unforced;
+  // the segment the flusher is forcing outside the lock, which can't be unmapped until it is done
+  private Segment forcing;
+  private boolean compacting = false;
+  private boolean closed = false;
+
+  private long appendedRecords = 0;
+  private long appendedBytes = 0;
+  private long forces = 0;
+  private long compactions = 0;
+  private long recoveredRecords = 0;
+
+  public SegmentedLogPlatformPersistence(File directory, int segmentSize, long fsyncIntervalMillis) throws IOException {
+    if (segmentSize <= HEADER_SIZE) {
+      throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.fsyncIntervalMillis = fsyncIntervalMillis;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create persistence directory " + directory);
+    }
+    recover();
+    this.flusher = new Thread(this::runFlusher, "SegmentedLogPlatformPersistence flusher - " + directory.getName());
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  @Override
+  public synchronized Serializable loadDataElement(String name) throws IOException {
+    return deserialize(this.state.elements.get(name), null);
+  }
+
+  @Override
+  public synchronized Serializable loadDataElementInLoader(String name, ClassLoader loader) throws IOException {
+    return deserialize(this.state.elements.get(name), loader);
+  }
+
+  @Override
+  public void storeDataElement(String name, Serializable element) throws IOException {
+    byte[] value = (null != element) ? serialize(element) : null;
+    Future<Void> durable;
+    synchronized (this) {
+      durable = append(dataRecord(name, value));
+      this.state.store(name, value);
+    }
+    waitFor(durable);
+  }
+
+  @Override
+  public Future<Void> fastStoreSequence(long sequenceIndex, SequenceTuple newEntry, long oldestValidSequenceID) {
+    synchronized (this) {
+      try {
+        Future<Void> durable = append(sequenceRecord(sequenceIndex, newEntry.localSequenceID, newEntry.globalSequenceID, oldestValidSequenceID));
+        this.state.addTuple(sequenceIndex, newEntry.localSequenceID, newEntry.globalSequenceID, oldestValidSequenceID);
+        return durable;
+      } catch (IOException e) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+      }
+    }
+  }
+
+  @Override
+  public synchronized List<SequenceTuple> loadSequence(long sequenceIndex) throws IOException {
+    LinkedList<SequenceTuple> sequence = this.state.sequences.get(sequenceIndex);
+    if (null == sequence) {
+      return null;
+    }
+    List<SequenceTuple> copy = new ArrayList<>(sequence.size());
+    for (SequenceTuple tuple : sequence) {
+      SequenceTuple one = new SequenceTuple();
+      one.localSequenceID = tuple.localSequenceID;
+      one.globalSequenceID = tuple.globalSequenceID;
+      copy.add(one);
+    }
+    return copy;
+  }
+
+  @Override
+  public void deleteSequence(long sequenceIndex) throws IOException {
+    Future<Void> durable;
+    synchronized (this) {
+      durable = append(sequenceDeleteRecord(sequenceIndex));
+      this.state.sequences.remove(sequenceIndex);
+    }
+    waitFor(durable);
+  }
+
+  /**
+   * Makes whatever was appended durable and releases the segments.  Any further write fails.
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      this.notifyAll();
+    }
+    try {
+      this.flusher.join();
+      Thread running;
+      synchronized (this) {
+        running = this.compactor;
+      }
+      if (null != running) {
+        running.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      if (null != this.unforced) {
+        this.current.buffer.force();
+        this.unforced.complete(null);
+        this.unforced = null;
+      }
+      for (Segment segment : this.segments.values()) {
+        segment.close();
+      }
+      this.segments.clear();
+    }
+  }
+
+  /**
+   * Closes this and deletes all of its files, used when the server has to start over from an empty state.
+   */
+  public void destroy() throws IOException {
+    close();
+    File[] files = this.directory.listFiles();
+    if (null != files) {
+      for (File file : files) {
+        if (!file.delete()) {
+          throw new IOException("Cannot delete " + file);
+        }
+      }
+    }
+    if (!this.directory.delete()) {
+      throw new IOException("Cannot delete " + this.directory);
+    }
+  }
+
+  @Override
+  public synchronized void addStateTo(StateDumpCollector stateDumpCollector) {
+    stateDumpCollector.addState("directory", this.directory.getAbsolutePath());
+    stateDumpCollector.addState("segments", this.segments.size());
+    stateDumpCollector.addState("appendedRecords", this.appendedRecords);
+    stateDumpCollector.addState("appendedBytes", this.appendedBytes);
+    stateDumpCollector.addState("recoveredRecords", this.recoveredRecords);
+    stateDumpCollector.addState("forces", this.forces);
+    stateDumpCollector.addState("compactions", this.compactions);
+    for (String name : this.state.elements.keySet()) {
+      stateDumpCollector.addState("key", name);
+    }
+  }
+
+  private void recover() throws IOException {
+    File[] files = this.directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+    TreeMap<Long, File> found = new TreeMap<>();
+    if (null != files) {
+      for (File file : files) {
+        String name = file.getName();
+        try {
+          found.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+        } catch (NumberFormatException e) {
+          LOGGER.warn("Ignoring unexpected file " + file);
+        }
+      }
+    }
+    this.nextSegmentIndex = found.isEmpty() ? 0 : found.lastKey() + 1;
+
+    State replayed = new State();
+    State checkpoint = null;
+    long firstLiveSegment = found.isEmpty() ? 0 : found.firstKey();
+    boolean damaged = false;
+    for (Map.Entry<Long, File> entry : found.entrySet()) {
+      if (damaged) {
+        // everything after a damaged record was written later than it, so none of it can be trusted
+        deleteFile(entry.getValue());
+        continue;
+      }
+      Segment segment = new Segment(entry.getKey(), entry.getValue(), 0);
+      this.segments.put(entry.getKey(), segment);
+      MappedByteBuffer buffer = segment.buffer;
+      while (buffer.remaining() >= HEADER_SIZE) {
+        int start = buffer.position();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (0 == length) {
+          buffer.position(start);
+          break;
+        }
+        byte[] body = (length > 0 && length <= buffer.remaining()) ? new byte[length] : null;
+        if (null != body) {
+          buffer.get(body);
+        }
+        if (null == body || checksum != checksum(body)) {
+          buffer.position(start);
+          if (null == checkpoint) {
+            LOGGER.warn("Damaged record at " + start + " of " + entry.getValue() + ", discarding it and what follows");
+            damaged = true;
+          }
+          break;
+        }
+        this.recoveredRecords += 1;
+        if (CHECKPOINT_BEGIN == body[0]) {
+          checkpoint = new State();
+        } else if (CHECKPOINT_END == body[0]) {
+          if (null != checkpoint) {
+            replayed = checkpoint;
+            firstLiveSegment = entry.getKey();
+            checkpoint = null;
+          }
+        } else {
+          ((null != checkpoint) ? checkpoint : replayed).apply(body);
+        }
+      }
+      if (null != checkpoint) {
+        // a checkpoint has a segment of its own, the records before and after it still hold everything
+        LOGGER.warn("Discarding unfinished checkpoint in segment " + entry.getValue());
+        checkpoint = null;
+        deleteSegments(this.segments.subMap(entry.getKey(), true, entry.getKey(), true));
+      } else if (damaged) {
+        segment.clearFrom(buffer.position());
+      }
+    }
+    // segments a finished checkpoint made useless, the compaction stopped before deleting them
+    deleteSegments(this.segments.headMap(firstLiveSegment, false));
+    this.state = replayed;
+    if (this.segments.isEmpty()) {
+      startSegment(this.segmentSize);
+    } else {
+      this.current = this.segments.lastEntry().getValue();
+    }
+    LOGGER.info("Recovered " + this.recoveredRecords + " records from " + this.segments.size() + " segments in " + this.directory);
+  }
+
+  private CompletableFuture<Void> append(byte[] body) throws IOException {
+    if (this.closed) {
+      throw new IOException("Persistence in " + this.directory + " is closed");
+    }
+    int needed = HEADER_SIZE + body.length;
+    while (this.current.buffer.remaining() < needed) {
+      roll(needed);
+    }
+    this.current.buffer.putInt(body.length);
+    this.current.buffer.putInt(checksum(body));
+    this.current.buffer.put(body);
+    this.appendedRecords += 1;
+    this.appendedBytes += needed;
+    if (null == this.unforced) {
+      this.unforced = new CompletableFuture<>();
+      this.notifyAll();
+    }
+    return this.unforced;
+  }
+
+  private void roll(int needed) throws IOException {
+    State snapshot = null;
+    long checkpointSegment = -1;
+    if (!this.compacting && this.segments.size() >= COMPACTION_MIN_SEGMENTS && logBytes() > COMPACTION_RATIO * this.state.liveBytes()) {
+      // the checkpoint goes right before the segment rolled over to, so the records appended from here on apply after it
+      snapshot = this.state.copy();
+      checkpointSegment = this.nextSegmentIndex++;
+    }
+    startSegment(Math.max(this.segmentSize, needed + HEADER_SIZE));
+    if (null != snapshot) {
+      this.compacting = true;
+      State checkpoint = snapshot;
+      long index = checkpointSegment;
+      this.compactor = new Thread(() -> compact(checkpoint, index), "SegmentedLogPlatformPersistence compactor - " + this.directory.getName());
+      this.compactor.setDaemon(true);
+      this.compactor.start();
+    }
+  }
+
+  private void startSegment(int size) throws IOException {
+    if (null != this.current) {
+      // what the new segment is appended after must already be durable
+      this.current.buffer.force();
+    }
+    long index = this.nextSegmentIndex++;
+    Segment segment = new Segment(index, segmentFile(index), size);
+    this.segments.put(index, segment);
+    this.current = segment;
+  }
+
+  /**
+   * Writes the snapshot out as a checkpoint in the segment kept aside for it and deletes every segment before that one.
+   *  Runs on the compactor thread, the lock is only taken to swap the segments.
+   */
+  private void compact(State snapshot, long checkpointSegment) {
+    File file = segmentFile(checkpointSegment);
+    Segment checkpoint = null;
+    boolean swapped = false;
+    try {
+      ByteArrayOutputStream records = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(records);
+      writeRecord(output, new byte[] { CHECKPOINT_BEGIN });
+      for (Map.Entry<String, byte[]> element : snapshot.elements.entrySet()) {
+        writeRecord(output, dataRecord(element.getKey(), element.getValue()));
+      }
+      for (Map.Entry<Long, LinkedList<SequenceTuple>> sequence : snapshot.sequences.entrySet()) {
+        for (SequenceTuple tuple : sequence.getValue()) {
+          writeRecord(output, sequenceRecord(sequence.getKey(), tuple.localSequenceID, tuple.globalSequenceID, Long.MIN_VALUE));
+        }
+      }
+      writeRecord(output, new byte[] { CHECKPOINT_END });
+      // nothing is ever appended to a checkpoint, it only needs room for the zero length which ends the records
+      checkpoint = new Segment(checkpointSegment, file, records.size() + HEADER_SIZE);
+      checkpoint.buffer.put(records.toByteArray());
+      checkpoint.buffer.force();
+      List<Segment> doomed;
+      synchronized (this) {
+        // the flusher may still be forcing a segment from before the checkpoint, it can't be unmapped under it
+        while (null != this.forcing && this.forcing.index < checkpointSegment) {
+          this.wait();
+        }
+        this.segments.put(checkpointSegment, checkpoint);
+        Map<Long, Segment> before = this.segments.headMap(checkpointSegment, false);
+        doomed = new ArrayList<>(before.values());
+        before.clear();
+        swapped = true;
+        this.compactions += 1;
+      }
+      deleteSegments(doomed);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Compaction of " + this.directory + " failed", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (!swapped) {
+        // what came before still holds everything, the next compaction starts over
+        if (null != checkpoint) {
+          checkpoint.closeQuietly();
+        }
+        file.delete();
+      }
+      synchronized (this) {
+        this.compacting = false;
+        this.compactor = null;
+      }
+    }
+  }
+
+  private static void writeRecord(DataOutputStream output, byte[] body) throws IOException {
+    output.writeInt(body.length);
+    output.writeInt(checksum(body));
+    output.write(body);
+  }
+
+  private static void deleteSegments(Map<Long, Segment> doomed) throws IOException {
+    deleteSegments(new ArrayList<>(doomed.values()));
+    doomed.clear();
+  }
+
+  private static void deleteSegments(Collection<Segment> doomed) throws IOException {
+    for (Segment segment : doomed) {
+      // unmapped first, the space of a file only goes once nothing maps it and some platforms refuse the delete
+      segment.close();
+      deleteFile(segment.file);
+    }
+  }
+
+  private File segmentFile(long index) {
+    return new File(this.directory, SEGMENT_PREFIX + String.format("%016d", index) + SEGMENT_SUFFIX);
+  }
+
+  private long logBytes() {
+    long bytes = 0;
+    for (Segment segment : this.segments.values()) {
+      bytes += segment.buffer.capacity();
+    }
+    return bytes;
+  }
+
+  private void runFlusher() {
+    while (true) {
+      synchronized (this) {
+        while (null == this.unforced && !this.closed) {
+          try {
+            this.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (null == this.unforced) {
+          return;
+        }
+      }
+      if (this.fsyncIntervalMillis > 0) {
+        // let more writes join this force
+        try {
+          Thread.sleep(this.fsyncIntervalMillis);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      CompletableFuture<Void> flushing;
+      Segment segment;
+      synchronized (this) {
+        flushing = this.unforced;
+        this.unforced = null;
+        segment = this.current;
+        this.forcing = segment;
+        this.forces += 1;
+      }
+      try {
+        segment.buffer.force();
+        flushing.complete(null);
+      } catch (RuntimeException e) {
+        flushing.completeExceptionally(e);
+      } finally {
+        synchronized (this) {
+          this.forcing = null;
+          this.notifyAll();
+        }
+      }
+    }
+  }
+
+  private static void waitFor(Future<Void> durable) throws IOException {
+    try {
+      durable.get();
+    } catch (ExecutionException e) {
+      throw new IOException("Failure making write durable", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private static void deleteFile(File file) throws IOException {
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Cannot delete " + file);
+    }
+  }
+
+  private static int checksum(byte[] body) {
+    CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    return (int) crc.getValue();
+  }
+
+  private static byte[] dataRecord(String name, byte[] value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeByte(DATA);
+    output.writeUTF(name);
+    if (null != value) {
+      output.writeInt(value.length);
+      output.write(value);
+    } else {
+      output.writeInt(-1);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] sequenceRecord(long sequenceIndex, long localID, long globalID, long oldestValidID) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(33);
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeByte(SEQUENCE);
+    output.writeLong(sequenceIndex);
+    output.writeLong(localID);
+    output.writeLong(globalID);
+    output.writeLong(oldestValidID);
+    return bytes.toByteArray();
+  }
+
+  private static byte[] sequenceDeleteRecord(long sequenceIndex) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeByte(SEQUENCE_DELETE);
+    output.writeLong(sequenceIndex);
+    return bytes.toByteArray();
+  }
+
+  private static byte[] serialize(Serializable element) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(element);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Serializable deserialize(byte[] value, ClassLoader loader) throws IOException {
+    if (null == value) {
+      return null;
+    }
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(value)) {
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        return (null != loader) ? Class.forName(desc.getName(), false, loader) : super.resolveClass(desc);
+      }
+    }) {
+      return (Serializable) input.readObject();
+    } catch (ClassNotFoundException cnf) {
+      throw new IOException(cnf);
+    }
+  }
+
+  /**
+   * What the records replayed so far add up to.
+   */
+  private static class State {
+    private final Map<String, byte[]> elements = new HashMap<>();
+    private final Map<Long, LinkedList<SequenceTuple>> sequences = new HashMap<>();
+
+    /**
+     * @return a copy which later changes to this don't show in, the values themselves are never changed
+     */
+    State copy() {
+      State copy = new State();
+      copy.elements.putAll(this.elements);
+      for (Map.Entry<Long, LinkedList<SequenceTuple>> sequence : this.sequences.entrySet()) {
+        copy.sequences.put(sequence.getKey(), new LinkedList<>(sequence.getValue()));
+      }
+      return copy;
+    }
+
+    void store(String name, byte[] value) {
+      if (null != value) {
+        this.elements.put(name, value);
+      } else {
+        this.elements.remove(name);
+      }
+    }
+
+    void addTuple(long sequenceIndex, long localID, long globalID, long oldestValidID) {
+      LinkedList<SequenceTuple> sequence = this.sequences.computeIfAbsent(sequenceIndex, index -> new LinkedList<>());
+//  exploiting the knowledge that sequences are always updated in an increasing fashion, as soon as the first
+//  cleaning function fails, bail on the iteration
+      while (!sequence.isEmpty() && sequence.getFirst().localSequenceID < oldestValidID) {
+        sequence.removeFirst();
+      }
+      SequenceTuple tuple = new SequenceTuple();
+      tuple.localSequenceID = localID;
+      tuple.globalSequenceID = globalID;
+      sequence.add(tuple);
+    }
+
+    void apply(byte[] body) throws IOException {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(body, 1, body.length - 1));
+      switch (body[0]) {
+        case DATA: {
+          String name = input.readUTF();
+          int length = input.readInt();
+          byte[] value = null;
+          if (length >= 0) {
+            value = new byte[length];
+            input.readFully(value);
+          }
+          store(name, value);
+          break;
+        }
+        case SEQUENCE:
+          addTuple(input.readLong(), input.readLong(), input.readLong(), input.readLong());
+          break;
+        case SEQUENCE_DELETE:
+          this.sequences.remove(input.readLong());
+          break;
+        default:
+          throw new IOException("Unknown record type " + body[0]);
+      }
+    }
+
+    /**
+     * @return roughly how many bytes of records a checkpoint of this takes
+     */
+    long liveBytes() {
+      long bytes = 0;
+      for (Map.Entry<String, byte[]> element : this.elements.entrySet()) {
+        bytes += HEADER_SIZE + 7 + element.getKey().length() + element.getValue().length;
+      }
+      for (LinkedList<SequenceTuple> sequence : this.sequences.values()) {
+        bytes += (HEADER_SIZE + 33) * sequence.size();
+      }
+      return bytes;
+    }
+  }
+
+  private static class Segment {
+    private final long index;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Maps the segment in the given file, creating it with the given size if the size isn't 0.
+     */
+    Segment(long index, File file, int size) throws IOException {
+      this.index = index;
+      this.file = file;
+      this.raf = new RandomAccessFile(file, "rw");
+      if (size > 0) {
+        this.raf.setLength(size);
+      }
+      this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.raf.length());
+    }
+
+    /**
+     * Zeroes the segment from the given position on, so that appending there cannot run into stale records.
+     */
+    void clearFrom(int position) {
+      for (int i = position; i < this.buffer.limit(); ++i) {
+        this.buffer.put(i, (byte) 0);
+      }
+      this.buffer.position(position);
+    }
+
+    /**
+     * Unmaps the segment and closes its file, nothing may touch the buffer from here on.
+     */
+    void close() throws IOException {
+      unmap(this.buffer);
+      this.raf.close();
+    }
+
+    void closeQuietly() {
+      try {
+        close();
+      } catch (IOException e) {
+        LOGGER.debug("Cannot close " + this.file, e);
+      }
+    }
+  }
+
+  /**
+   * Releases the mapping right away rather than whenever the buffer is collected.  There is no public API for this so
+   *  it goes through the cleaner of the buffer, and if that isn't reachable the mapping is left to the collector.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException java8) {
+        Method cleanerOf = buffer.getClass().getMethod("cleaner");
+        cleanerOf.setAccessible(true);
+        Object cleaner = cleanerOf.invoke(buffer);
+        if (null != cleaner) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOGGER.debug("Cannot unmap segment, leaving it to the collector", e);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.entity.ServiceProvider;
+import org.terracotta.entity.ServiceProviderConfiguration;
+
+import java.io.File;
+
+
+public class SegmentedLogStorageProviderConfiguration implements ServiceProviderConfiguration {
+  private final File directory;
+  private final int segmentSize;
+  private final long fsyncIntervalMillis;
+
+  public SegmentedLogStorageProviderConfiguration(File directory, int segmentSize, long fsyncIntervalMillis) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.fsyncIntervalMillis = fsyncIntervalMillis;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  public long getFsyncIntervalMillis() {
+    return fsyncIntervalMillis;
+  }
+
+  @Override
+  public Class<? extends ServiceProvider> getServiceProviderType() {
+    return SegmentedLogStorageServiceProvider.class;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.entity.PlatformConfiguration;
+import org.terracotta.entity.ServiceConfiguration;
+import org.terracotta.entity.ServiceProvider;
+import org.terracotta.entity.ServiceProviderCleanupException;
+import org.terracotta.entity.ServiceProviderConfiguration;
+import org.terracotta.entity.StateDumpCollector;
+import org.terracotta.entity.StateDumpable;
+import org.terracotta.persistence.IPlatformPersistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Built-in restartable provider of {@link IPlatformPersistence}, giving each consumer a
+ * {@link SegmentedLogPlatformPersistence} in a directory of its own under the configured one.
+ */
+public class SegmentedLogStorageServiceProvider implements ServiceProvider, StateDumpable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedLogStorageServiceProvider.class);
+
+  private final Map<Long, SegmentedLogPlatformPersistence> providers = new ConcurrentHashMap<>();
+  private SegmentedLogStorageProviderConfiguration configuration;
+
+  @Override
+  public boolean initialize(ServiceProviderConfiguration serviceProviderConfiguration, PlatformConfiguration platformConfiguration) {
+    this.configuration = (SegmentedLogStorageProviderConfiguration) serviceProviderConfiguration;
+    File directory = this.configuration.getDirectory();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOGGER.error("Cannot create platform persistence directory " + directory);
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public <T> T getService(long entityID, ServiceConfiguration<T> serviceConfiguration) {
+    SegmentedLogPlatformPersistence persistence = providers.computeIfAbsent(entityID, id -> {
+      File directory = new File(this.configuration.getDirectory(), String.valueOf(id));
+      try {
+        return new SegmentedLogPlatformPersistence(directory, this.configuration.getSegmentSize(), this.configuration.getFsyncIntervalMillis());
+      } catch (IOException e) {
+        // We can't serve anything without our storage so just throw it as runtime.
+        throw new RuntimeException("Failure opening platform persistence in " + directory, e);
+      }
+    });
+    return serviceConfiguration.getServiceType().cast(persistence);
+  }
+
+  @Override
+  public Collection<Class<?>> getProvidedServiceTypes() {
+    return Collections.singleton(IPlatformPersistence.class);
+  }
+
+  public void close() throws IOException {
+    for (SegmentedLogPlatformPersistence persistence : providers.values()) {
+      persistence.close();
+    }
+    providers.clear();
+  }
+
+  @Override
+  public void prepareForSynchronization() throws ServiceProviderCleanupException {
+    // a passive is synced from scratch, so whatever it stored before has to go, even for consumers not seen yet
+    for (SegmentedLogPlatformPersistence persistence : providers.values()) {
+      try {
+        persistence.destroy();
+      } catch (IOException e) {
+        LOGGER.warn("Failure deleting platform persistence", e);
+      }
+    }
+    providers.clear();
+    File[] consumers = this.configuration.getDirectory().listFiles(File::isDirectory);
+    if (null != consumers) {
+      for (File consumer : consumers) {
+        File[] files = consumer.listFiles();
+        if (null != files) {
+          for (File file : files) {
+            if (!file.delete()) {
+              LOGGER.warn("Cannot delete " + file);
+            }
+          }
+        }
+        if (!consumer.delete()) {
+          LOGGER.warn("Cannot delete " + consumer);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void addStateTo(StateDumpCollector stateDumpCollector) {
+    for (Map.Entry<Long, SegmentedLogPlatformPersistence> entry : providers.entrySet()) {
+      entry.getValue().addStateTo(stateDumpCollector.subStateDumpCollector(String.valueOf(entry.getKey())));
+    }
+  }
+}
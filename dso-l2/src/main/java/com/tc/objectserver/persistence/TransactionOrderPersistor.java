@@ -29,38 +29,94 @@ import com.tc.util.ProductID;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
  * Stores the information mapping the client-local TransactionIDs of in-flight transactions into a global order.
  * This is persisted because reconnect on restart needs to ensure that the transactions being replayed are done so in
  * the same order as their original order.
+ * <p>
+ * There is no lock across clients: each client keeps its in-flight transactions in its own ring and only that ring is
+ * locked while the client is updated, the global IDs coming from a shared counter.  Since the global IDs of a client
+ * only grow, the place of a transaction in the global order is the number of transactions each client received before
+ * it, which is counted from the rings as it is asked for instead of keeping a global list up to date.  The rings of
+ * permanent clients mirror what is persisted for them and are loaded from storage on start.
+ * <p>
+ * With group commit, the sequence updates of permanent clients are not stored on the calling thread.  They pile up
+ * while the previous group is being stored and are then stored together, dropping those a later update of the same
+ * client already shows as complete, and the futures of the whole group complete at once.
  */
 public class TransactionOrderPersistor {
   private final IPlatformPersistence storageManager;
-  private Long receivedTransactionCount = new Long(0L);
-    
-  private List<ClientTransaction> globalList = null;
-  private final Set<ClientID> permNodeIDs = new HashSet<>();
-  private final Map<ClientID, List<ClientTransaction>> fastSequenceCache = new HashMap<>();
+  private final AtomicLong receivedTransactionCount = new AtomicLong();
+
+  private final Map<ClientID, ClientTransactions> clients = new ConcurrentHashMap<>();
+
+  // Sequence updates waiting for the next group commit, in the order they came in.  Null without group commit.
+  private final ConcurrentLinkedQueue<PendingSequence> pendingSequences;
+  // Held while a group is stored so groups reach storage in the order they were gathered.
+  private final Object commitLock = new Object();
+  private final long groupCommitWindowNanos;
+  private final Thread committer;
+  // Raised while the committer is parked with nothing to store, the update that lowers it wakes the committer up.
+  private final AtomicBoolean committerIdle = new AtomicBoolean();
+  private volatile boolean stopped = false;
+  private long groupCommits = 0;
+  private long groupedSequences = 0;
+  private long skippedSequences = 0;
   
   public TransactionOrderPersistor(IPlatformPersistence storageManager, Set<ClientID> clients) {
+    this(storageManager, clients, false, 0L);
+  }
+
+  public TransactionOrderPersistor(IPlatformPersistence storageManager, Set<ClientID> clients, boolean groupCommit, long groupCommitWindowNanos) {
     this.storageManager = storageManager;
     
+    long lastGlobalID = 0L;
     for (ClientID oneClient : clients) {
-      this.permNodeIDs.add(oneClient);
+      ClientTransactions transactions = new ClientTransactions(true);
+      List<IPlatformPersistence.SequenceTuple> sequence = null;
+      try {
+        sequence = this.storageManager.loadSequence(oneClient.toLong());
+      } catch (IOException e) {
+        Assert.fail(e.getLocalizedMessage());
+      }
+      if (sequence != null) {
+        List<IPlatformPersistence.SequenceTuple> sorted = new ArrayList<>(sequence);
+        sorted.sort(Comparator.comparingLong(tuple -> tuple.globalSequenceID));
+        for (IPlatformPersistence.SequenceTuple tuple : sorted) {
+          transactions.add(tuple.localSequenceID, tuple.globalSequenceID, Long.MIN_VALUE);
+          lastGlobalID = Math.max(lastGlobalID, tuple.globalSequenceID);
+        }
+      }
+      this.clients.put(oneClient, transactions);
+    }
+    // carry on numbering after the transactions which are still waiting to be replayed
+    this.receivedTransactionCount.set(lastGlobalID);
+    this.groupCommitWindowNanos = groupCommitWindowNanos;
+    if (groupCommit) {
+      this.pendingSequences = new ConcurrentLinkedQueue<>();
+      this.committer = new Thread(this::runGroupCommits, "TransactionOrderPersistor group commit");
+      this.committer.setDaemon(true);
+      this.committer.start();
+    } else {
+      this.pendingSequences = null;
+      this.committer = null;
     }
   }
 
@@ -69,7 +125,7 @@ public class TransactionOrderPersistor {
    * This new transactionID will be enqueued as the most recent transaction for the given source but also globally.
    * Any transactions for this source which are older than oldestTransactionOnClient will be removed from persistence.
    */
-  public synchronized Future<Void> updateWithNewMessage(ClientID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
+  public Future<Void> updateWithNewMessage(ClientID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
     // We need to ensure that the arguments are sane.
     if ((null == oldestTransactionOnClient) || (null == transactionID)) {
       throw new IllegalArgumentException("Transactions cannot be null");
@@ -78,138 +134,253 @@ public class TransactionOrderPersistor {
       throw new IllegalArgumentException("Oldest transaction cannot come after new transaction");
     }
     
-    // This operation requires that the globalList be rebuilt.
-    this.globalList = null;
-    
-    // Increment the number of received transactions.
-    this.receivedTransactionCount += 1;
-    
-    // We now pass this straight into the underlying storage.
-    if (this.permNodeIDs.contains(source)) {
-      // Create the new pair.
+    ClientTransactions transactions = this.clients.get(source);
+    if (null == transactions) {
+      // must be a client that will not reconnect
+      this.receivedTransactionCount.incrementAndGet();
+      return CompletableFuture.completedFuture(null);
+    }
+    // The global ID is taken under the client's lock so that the ring of every client stays in global order.
+    synchronized (transactions) {
+      long globalID = this.receivedTransactionCount.incrementAndGet();
+      transactions.add(transactionID.toLong(), globalID, oldestTransactionOnClient.toLong());
+      if (!transactions.permanent) {
+        return CompletableFuture.completedFuture(null);
+      }
+      // We now pass this straight into the underlying storage.
       IPlatformPersistence.SequenceTuple transaction = new IPlatformPersistence.SequenceTuple();
       transaction.localSequenceID = transactionID.toLong();
-      transaction.globalSequenceID = this.receivedTransactionCount;
+      transaction.globalSequenceID = globalID;
     
+      if (null != this.pendingSequences && !this.stopped) {
+        PendingSequence update = new PendingSequence(source.toLong(), transaction, oldestTransactionOnClient.toLong());
+        this.pendingSequences.add(update);
+        if (this.stopped) {
+          // close() may have already stored what was waiting, so nobody else is going to store this one
+          commitPendingSequences();
+        } else if (this.committerIdle.compareAndSet(true, false)) {
+          LockSupport.unpark(this.committer);
+        }
+        return update.stored;
+      }
       return this.storageManager.fastStoreSequence(source.toLong(), transaction, oldestTransactionOnClient.toLong());
-    } else {
-      ClientTransaction transaction = new ClientTransaction();
-      transaction.localTransactionID = transactionID.toLong();
-      transaction.globalTransactionID = this.receivedTransactionCount;
-      return fastStoreSequence(source, new ClientTransaction(), 0);
     }
   }
   
-  synchronized void addTrackingForClient(ClientID source, ProductID product) {
+  void addTrackingForClient(ClientID source, ProductID product) {
     // Make sure we have tracking for this client.
-    if (product.isPermanent()) {
-      this.permNodeIDs.add(source);
-    } else {
-      this.fastSequenceCache.put(source, new LinkedList<>());
-    }
+    this.clients.putIfAbsent(source, new ClientTransactions(product.isPermanent()));
   }
 
   /**
    * Called when we no longer need to track transaction ordering information from source (presumably due to a disconnect).
    */
-  synchronized void removeTrackingForClient(ClientID source) {
-    long sourceID = source.toLong();
-    try {
-      if (this.permNodeIDs.remove(source)) {
-        this.storageManager.deleteSequence(sourceID);
-      } else {
-        fastSequenceCache.remove(source);
+  void removeTrackingForClient(ClientID source) {
+    ClientTransactions transactions = this.clients.remove(source);
+    if (null != transactions && transactions.permanent) {
+      synchronized (transactions) {
+        // whatever of this client is still waiting for a group commit has to be stored before its sequence is deleted
+        commitPendingSequences();
+        try {
+          this.storageManager.deleteSequence(source.toLong());
+        } catch (IOException e) {
+          Assert.fail(e.getLocalizedMessage());
+        }
       }
-    } catch (IOException e) {
-      Assert.fail(e.getLocalizedMessage());
     }
   }
 
-  private Future<Void> fastStoreSequence(ClientID sequenceIndex, ClientTransaction newEntry, long oldestValidSequenceID) {
-    List<ClientTransaction> sequence = fastSequenceCache.get(sequenceIndex);
-    if (sequence != null) {
-      if (!sequence.isEmpty()) {
-  //  exploiting the knowledge that sequences are always updated in an increasing fashion, as soon as the first
-  //  cleaning function fails, bail on the iteration
-        Iterator<ClientTransaction> tuple = sequence.iterator();
-        while (tuple.hasNext()) {
-          if (tuple.next().localTransactionID < oldestValidSequenceID) {
-            tuple.remove();
-          } else {
-            break;
-          }
+  /**
+   * Stops group commit once what is already waiting has been stored.
+   */
+  public void close() {
+    this.stopped = true;
+    if (null != this.committer) {
+      LockSupport.unpark(this.committer);
+    }
+    commitPendingSequences();
+  }
+
+  private void runGroupCommits() {
+    while (!this.stopped) {
+      if (this.pendingSequences.isEmpty()) {
+        this.committerIdle.set(true);
+        // an update which came in before the flag was raised did not wake us up, so look again before parking
+        if (this.pendingSequences.isEmpty() && !this.stopped) {
+          LockSupport.park(this);
         }
+        this.committerIdle.set(false);
+        if (Thread.interrupted()) {
+          this.stopped = true;
+        }
+        continue;
       }
-      sequence.add(newEntry);
-    } else {
-      // must be a client that will not reconnect
+      if (this.groupCommitWindowNanos > 0) {
+        // give other clients the chance to join this group
+        LockSupport.parkNanos(this.groupCommitWindowNanos);
+      }
+      commitPendingSequences();
     }
-    return CompletableFuture.completedFuture(null);
   }
-    
-  private static class ClientTransaction {
-    public long clientID;
-    public long localTransactionID;
-    public long globalTransactionID;
 
-    @Override
-    public int hashCode() {
-      return (int) ((7 * clientID)
-          ^ (5 * localTransactionID)
-          ^ globalTransactionID);
+  /**
+   * Stores all the sequence updates gathered so far and completes their futures, on the calling thread.
+   */
+  private void commitPendingSequences() {
+    if (null == this.pendingSequences) {
+      return;
     }
-    @Override
-    public boolean equals(Object obj) {
-      boolean isEqual = (obj == this);
-      if (!isEqual && (obj instanceof ClientTransaction)) {
-        ClientTransaction other = (ClientTransaction) obj;
-        isEqual = (this.clientID == other.clientID)
-            && (this.localTransactionID == other.localTransactionID)
-            && (this.globalTransactionID == other.globalTransactionID);
+    synchronized (this.commitLock) {
+      List<PendingSequence> group = new ArrayList<>();
+      for (PendingSequence update = this.pendingSequences.poll(); null != update; update = this.pendingSequences.poll()) {
+        group.add(update);
+      }
+      if (group.isEmpty()) {
+        return;
+      }
+      // the newest oldest transaction of each client, anything before it is already complete on that client
+      Map<Long, Long> oldest = new HashMap<>();
+      for (PendingSequence update : group) {
+        oldest.merge(update.client, update.oldest, Math::max);
+      }
+      List<Future<Void>> writes = new ArrayList<>(group.size());
+      int skipped = 0;
+      Throwable failure = null;
+      try {
+        for (PendingSequence update : group) {
+          long clientOldest = oldest.get(update.client);
+          if (update.tuple.localSequenceID >= clientOldest) {
+            writes.add(this.storageManager.fastStoreSequence(update.client, update.tuple, clientOldest));
+          } else {
+            skipped += 1;
+          }
+        }
+        for (Future<Void> write : writes) {
+          write.get();
+        }
+      } catch (ExecutionException e) {
+        failure = e.getCause();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure = e;
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+      this.groupCommits += 1;
+      this.groupedSequences += group.size();
+      this.skippedSequences += skipped;
+      for (PendingSequence update : group) {
+        if (null == failure) {
+          update.stored.complete(null);
+        } else {
+          update.stored.completeExceptionally(failure);
+        }
       }
-      return isEqual;
     }
+  }
 
-    @Override
-    public String toString() {
-      return "{clientID=" + clientID +
-             ", localTransactionID=" + localTransactionID +
-             ", globalTransactionID=" + globalTransactionID +
-             '}';
+  /**
+   * The in-flight transactions of one client, oldest first, as (local, global) pairs kept in a ring of primitives.
+   * Both IDs only grow within a client so transactions complete from the head of the ring and the global IDs can be
+   * binary searched.  Callers lock the instance itself.
+   */
+  private static class ClientTransactions {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean permanent;
+    private long[] localIDs = new long[INITIAL_CAPACITY];
+    private long[] globalIDs = new long[INITIAL_CAPACITY];
+    private int head = 0;
+    private int size = 0;
+
+    ClientTransactions(boolean permanent) {
+      this.permanent = permanent;
     }
-  }
-  
-  private List<ClientTransaction> buildGlobalListIfNecessary() {
-    if (null == this.globalList) {
-      TreeMap<Long, ClientTransaction> sortMap = new TreeMap<>();
-      for (ClientID clientID : this.permNodeIDs) {
-        List<IPlatformPersistence.SequenceTuple> transactions = null;
-        try {
-          transactions = this.storageManager.loadSequence(clientID.toLong());
-        } catch (IOException e) {
-          Assert.fail(e.getLocalizedMessage());
+
+    private int slot(int index) {
+      return (this.head + index) & (this.localIDs.length - 1);
+    }
+
+    synchronized void add(long localID, long globalID, long oldestValidLocalID) {
+  //  exploiting the knowledge that sequences are always updated in an increasing fashion, as soon as the first
+  //  cleaning function fails, bail on the iteration
+      while (this.size > 0 && this.localIDs[this.head] < oldestValidLocalID) {
+        this.head = slot(1);
+        this.size -= 1;
+      }
+      if (this.size == this.localIDs.length) {
+        long[] locals = new long[this.size * 2];
+        long[] globals = new long[this.size * 2];
+        for (int i = 0; i < this.size; ++i) {
+          locals[i] = this.localIDs[slot(i)];
+          globals[i] = this.globalIDs[slot(i)];
         }
-        if (transactions != null) {
-          for (IPlatformPersistence.SequenceTuple tuple : transactions) {
-            ClientTransaction transaction = new ClientTransaction();
-            transaction.clientID = clientID.toLong();
-            transaction.localTransactionID = tuple.localSequenceID;
-            transaction.globalTransactionID = tuple.globalSequenceID;
-            sortMap.put(tuple.globalSequenceID, transaction);
-          }
+        this.localIDs = locals;
+        this.globalIDs = globals;
+        this.head = 0;
+      }
+      int tail = slot(this.size);
+      this.localIDs[tail] = localID;
+      this.globalIDs[tail] = globalID;
+      this.size += 1;
+    }
+
+    /**
+     * @return the global ID of the oldest in-flight transaction with this local ID, -1 if there is none
+     */
+    synchronized long globalIDOf(long localID) {
+      for (int i = 0; i < this.size; ++i) {
+        int slot = slot(i);
+        if (this.localIDs[slot] == localID) {
+          return this.globalIDs[slot];
         }
       }
-      for (List<ClientTransaction> all : this.fastSequenceCache.values()) {
-        if (all != null) {
-          for (ClientTransaction t : all) {
-            sortMap.put(t.globalTransactionID, t);
-          }
+      return -1L;
+    }
+
+    /**
+     * @return how many of the in-flight transactions were received before the given global ID
+     */
+    synchronized int countBefore(long globalID) {
+      int low = 0;
+      int high = this.size;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (this.globalIDs[slot(middle)] < globalID) {
+          low = middle + 1;
+        } else {
+          high = middle;
         }
       }
-      globalList = Collections.unmodifiableList(new ArrayList<>(sortMap.values()));
-      receivedTransactionCount = !sortMap.isEmpty() ? sortMap.lastKey() : 0L;
+      return low;
+    }
+
+    synchronized void clear() {
+      this.head = 0;
+      this.size = 0;
+    }
+
+    synchronized List<String> describe() {
+      List<String> trans = new ArrayList<>(this.size);
+      for (int i = 0; i < this.size; ++i) {
+        int slot = slot(i);
+        trans.add("Global seq Id = " + this.globalIDs[slot] + ", local seq id = " + this.localIDs[slot]);
+      }
+      return trans;
+    }
+  }
+  
+  private static class PendingSequence {
+    private final long client;
+    private final IPlatformPersistence.SequenceTuple tuple;
+    private final long oldest;
+    private final CompletableFuture<Void> stored = new CompletableFuture<>();
+
+    PendingSequence(long client, IPlatformPersistence.SequenceTuple tuple, long oldest) {
+      this.client = client;
+      this.tuple = tuple;
+      this.oldest = oldest;
     }
-    return globalList;
   }
 
   /**
@@ -217,18 +388,17 @@ public class TransactionOrderPersistor {
    * Returns the index or -1 if it isn't known.
    */
   public int getIndexToReplay(ClientID source, TransactionID transaction) {
-    long sourceID = source.toLong();
-    long transactionID = transaction.toLong();
-    
-    int index = -1;
-    List<ClientTransaction> list = buildGlobalListIfNecessary();
-    int seek = 0;
-    for (ClientTransaction oneTransaction : list) {
-      if ((oneTransaction.clientID == sourceID) && (oneTransaction.localTransactionID == transactionID)) {
-        index = seek;
-        break;
-      }
-      seek += 1;
+    ClientTransactions transactions = this.clients.get(source);
+    if (null == transactions) {
+      return -1;
+    }
+    long globalID = transactions.globalIDOf(transaction.toLong());
+    if (globalID < 0) {
+      return -1;
+    }
+    int index = 0;
+    for (ClientTransactions oneClient : this.clients.values()) {
+      index += oneClient.countBefore(globalID);
     }
     return index;
   }
@@ -236,58 +406,51 @@ public class TransactionOrderPersistor {
   /**
    * Clears all internal state.
    */
-  public synchronized  void clearAllRecords() {
-    this.globalList = null;
-    for (ClientID nodeID : this.permNodeIDs) {
-      try {
-        this.storageManager.deleteSequence(nodeID.toLong());
-      } catch (IOException e) {
-        Assert.fail(e.getLocalizedMessage());
+  public void clearAllRecords() {
+    Iterator<Map.Entry<ClientID, ClientTransactions>> entries = this.clients.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<ClientID, ClientTransactions> entry = entries.next();
+      ClientTransactions transactions = entry.getValue();
+      if (transactions.permanent) {
+        synchronized (transactions) {
+          commitPendingSequences();
+          try {
+            this.storageManager.deleteSequence(entry.getKey().toLong());
+          } catch (IOException e) {
+            Assert.fail(e.getLocalizedMessage());
+          }
+          transactions.clear();
+        }
+      } else {
+        entries.remove();
       }
     }
-    this.fastSequenceCache.clear();
   }
 
   /**
    * @return The number of transactions which have been observed by the persistor (NOT the number persisted).
    */
   public long getReceivedTransactionCount() {
-    return this.receivedTransactionCount;
+    return this.receivedTransactionCount.get();
   }
   
   public Map<String, Object> reportStateToMap(Map<String, Object> map) {
     map.put("className", this.getClass().getName());
     map.put("receivedTransactions", getReceivedTransactionCount());
-    if(this.permNodeIDs != null && storageManager != null) {
-      Map<String, Object> clientMap = new LinkedHashMap<>();
-      map.put("permanentClients", clientMap);
-      for (ClientID clientNodeID : permNodeIDs) {
-        List<IPlatformPersistence.SequenceTuple> transactions = null;
-        try {
-          transactions = this.storageManager.loadSequence(clientNodeID.toLong());
-        } catch (IOException e) {
-          Assert.fail(e.getLocalizedMessage());
-        }
-        List<String> trans = new ArrayList<>();
-        if (transactions != null) {
-          for (IPlatformPersistence.SequenceTuple transaction : transactions) {
-            trans.add("Global seq Id = " + transaction.globalSequenceID + ", local seq id = " + transaction.localSequenceID);
-          }
-          clientMap.put(clientNodeID.toString(), trans);
-        }
+    if (null != this.pendingSequences) {
+      synchronized (this.commitLock) {
+        map.put("groupCommits", this.groupCommits);
+        map.put("groupedSequences", this.groupedSequences);
+        map.put("skippedSequences", this.skippedSequences);
       }
     }
-
-    Map<String, Object> clientMap = new LinkedHashMap<>();
-    map.put("regularClients", clientMap);
-    for (Map.Entry<ClientID, List<ClientTransaction>> entry : fastSequenceCache.entrySet()) {
-      List<String> trans = new ArrayList<>();
-      if (entry.getValue() != null) {
-        clientMap.put(entry.getKey().toString(), trans);
-        for (ClientTransaction transaction : entry.getValue()) {
-          trans.add("Global seq Id = " + transaction.globalTransactionID + ", local seq id = " + transaction.localTransactionID);
-        }
-      }
+    Map<String, Object> permanentMap = new LinkedHashMap<>();
+    Map<String, Object> regularMap = new LinkedHashMap<>();
+    map.put("permanentClients", permanentMap);
+    map.put("regularClients", regularMap);
+    for (Map.Entry<ClientID, ClientTransactions> entry : this.clients.entrySet()) {
+      ClientTransactions transactions = entry.getValue();
+      (transactions.permanent ? permanentMap : regularMap).put(entry.getKey().toString(), transactions.describe());
     }
     return map;
   }
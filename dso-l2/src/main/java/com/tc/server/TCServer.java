@@ -24,6 +24,8 @@ import com.tc.config.schema.setup.ConfigurationSetupException;
 import com.tc.l2.state.StateChangeListener;
 import com.tc.util.State;
 
+import java.util.Map;
+
 
 public interface TCServer extends StateChangeListener {
   String[] processArguments();
@@ -82,4 +84,12 @@ public interface TCServer extends StateChangeListener {
 
   String getResourceState();
 
+  Map<String, Map<String, Long>> getStageLatencies();
+
+  void resetStageLatencies();
+
+  Map<String, Map<String, Long>> getReplicationWindows();
+
+  Map<String, Map<String, Long>> getReplicationCompression();
+
 }
@@ -62,8 +62,10 @@ import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanRegistrationException;
@@ -486,6 +488,32 @@ public class TCServerImpl extends SEDA<HttpConnectionContext> implements TCServe
     return "";
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencies() {
+    return getStageManager().getLatencyStats();
+  }
+
+  @Override
+  public void resetStageLatencies() {
+    getStageManager().resetLatencyStats();
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getReplicationWindows() {
+    if (this.dsoServer != null && this.dsoServer.getReplicationSender() != null) {
+      return this.dsoServer.getReplicationSender().getWindowStats();
+    }
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getReplicationCompression() {
+    if (this.dsoServer != null) {
+      return this.dsoServer.getReplicationCompressionStats();
+    }
+    return Collections.emptyMap();
+  }
+
   @Override
   public void l2StateChanged(StateChangedEvent sce) {
     synchronized (this.stateLock) {
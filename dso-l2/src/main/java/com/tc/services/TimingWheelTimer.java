@@ -0,0 +1,516 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.util.Assert;
+import com.tc.util.concurrent.NamedThreadFactory;
+
+
+/**
+ * An {@link ISimpleTimer} built on a hashed hierarchical timing wheel, for servers where entities schedule many
+ *  concurrent delayed and periodic tasks.
+ * Each wheel is a ring of buckets, each bucket covering one tick of that wheel, and tasks too far in the future for a
+ *  wheel go to the next, coarser, one which is created on demand.  As the wheels turn, the buckets of the coarser
+ *  wheels are re-inserted into the finer ones until their tasks come due.  This makes scheduling and cancelling O(1):
+ *  scheduling only locks the one bucket it lands in and cancelling unlinks the task from its bucket through the id map.
+ * A single tick thread turns the wheels and hands the tasks which have come due, in start time order and then in the
+ *  order they were added, to the worker threads.  Tasks which are already due when scheduled also wait for the tick
+ *  thread, in the bucket of the current tick, so that they are ordered with everything else due on that pass.  With the default of one worker, this keeps the guarantee of
+ *  {@link SingleThreadedTimer} that tasks run one at a time in start time order, which callers such as the delayed
+ *  self-messages of entities depend on.  More workers let different tasks run concurrently, and so out of order, with
+ *  each other.  A periodic task is only rescheduled once its run completes, so it never runs concurrently with itself.
+ * NOTE:  Tasks run on the first pass of the tick thread at or after their start time, which is at most a tick late.
+ */
+public class TimingWheelTimer implements ISimpleTimer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheelTimer.class);
+  // The order SingleThreadedTimer runs tasks in:  by start time, then by the order they were added.
+  private static final Comparator<Task> START_ORDER = new Comparator<Task>() {
+    @Override
+    public int compare(Task o1, Task o2) {
+      int byStart = Long.compare(o1.startTimeMillis, o2.startTimeMillis);
+      return (0 != byStart) ? byStart : Long.compare(o1.id, o2.id);
+    }
+  };
+
+  private final SingleThreadedTimer.TimeSource timeSource;
+  private final long tickMillis;
+  private final int wheelSize;
+  private final int wheelMask;
+  private final ReentrantReadWriteLock wheelLock = new ReentrantReadWriteLock();
+  // The wheels and observedNowMillis are only read under the wheel read lock and only changed under the write lock.
+  private final Wheel wheel;
+  private long observedNowMillis;
+  private final Map<Long, Task> tasks = new ConcurrentHashMap<>();
+  private final AtomicLong nextId = new AtomicLong(1L);
+  private final ExecutorService workers;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // Set when a task is scheduled which is already due, so the tick thread makes another pass instead of waiting.
+  private volatile boolean hasDueTasks = false;
+  private final Thread tickThread = new Thread() {
+    @Override
+    public void run() {
+      while (TimingWheelTimer.this.awaitNextTick()) {
+        TimingWheelTimer.this.advanceClock();
+      }
+    }};
+  // The remaining state is guarded by the instance monitor.
+  private boolean threadIsRunning = false;
+  private volatile boolean tickThreadIsIdle = false;
+  private volatile boolean isWaitingForWorkers = false;
+  private long pokesRequested = 0;
+  private long pokesInPass = 0;
+  private long pokesServed = 0;
+
+  public TimingWheelTimer(SingleThreadedTimer.TimeSource source) {
+    this(source, TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L2_TIMER_TICK_MILLIS, 10L),
+        TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_TIMER_WHEEL_SIZE, 512),
+        TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_TIMER_WORKER_THREADS, 1));
+  }
+
+  public TimingWheelTimer(SingleThreadedTimer.TimeSource source, long tickMillis, int wheelSize, int workerThreads) {
+    Assert.assertTrue(tickMillis > 0);
+    Assert.assertTrue(wheelSize > 1 && Integer.bitCount(wheelSize) == 1);
+    Assert.assertTrue(workerThreads > 0);
+    this.timeSource = (null != source) ? source : new SingleThreadedTimer.TimeSource() {
+      @Override
+      public long currentTimeMillis() {
+        return System.currentTimeMillis();
+      }
+    };
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+    this.wheelMask = wheelSize - 1;
+    this.observedNowMillis = this.timeSource.currentTimeMillis();
+    this.wheel = new Wheel(tickMillis, this.observedNowMillis);
+    this.workers = Executors.newFixedThreadPool(workerThreads, new NamedThreadFactory("TimingWheelTimer worker"));
+    this.tickThread.setName("TimingWheelTimer");
+  }
+
+  @Override
+  public synchronized void start() {
+    this.threadIsRunning = true;
+    this.tickThread.start();
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    synchronized (this) {
+      this.threadIsRunning = false;
+      this.notifyAll();
+    }
+    this.tickThread.join();
+    this.workers.shutdown();
+    this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Used by tests:  returns once the tick thread has caught up with the time source and every task it found due, as
+   *  well as any periodic runs those caused, has completed.
+   */
+  public synchronized void poke() {
+    long request = ++this.pokesRequested;
+    this.notifyAll();
+    while (this.pokesServed < request) {
+      try {
+        this.wait();
+      } catch (InterruptedException e) {
+        // Not currently expected.
+        Assert.fail(e.getLocalizedMessage());
+      }
+    }
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return this.timeSource.currentTimeMillis();
+  }
+
+  @Override
+  public long addDelayed(Runnable toRun, long startTimeMillis) {
+    Assert.assertNotNull(toRun);
+    return addNewTask(toRun, startTimeMillis, 0L);
+  }
+
+  @Override
+  public long addPeriodic(Runnable toRun, long startTimeMillis, long repeatPeriodMillis) {
+    Assert.assertNotNull(toRun);
+    Assert.assertTrue(repeatPeriodMillis > 0);
+    return addNewTask(toRun, startTimeMillis, repeatPeriodMillis);
+  }
+
+  @Override
+  public boolean cancel(long id) {
+    Task task = this.tasks.remove(id);
+    boolean didCancel = (null != task);
+    if (didCancel) {
+      task.cancel();
+    }
+    return didCancel;
+  }
+
+  public void cancelAll() {
+    for (Long id : this.tasks.keySet()) {
+      cancel(id);
+    }
+  }
+
+
+  private long addNewTask(Runnable toRun, long startTimeMillis, long repeatPeriodMillis) {
+    long id = this.nextId.getAndIncrement();
+    Task task = new Task(id, toRun, startTimeMillis, repeatPeriodMillis);
+    this.tasks.put(id, task);
+    schedule(task);
+    return id;
+  }
+
+  private void schedule(Task task) {
+    boolean isDue;
+    this.wheelLock.readLock().lock();
+    try {
+      // Even a task which is already due goes through the wheel, rather than straight to the workers, so that it can't
+      //  overtake the tasks the tick thread is about to hand over.
+      isDue = (task.startTimeMillis <= this.observedNowMillis);
+      link(task);
+    } finally {
+      this.wheelLock.readLock().unlock();
+    }
+    if (isDue) {
+      this.hasDueTasks = true;
+    }
+    if (isDue || this.tickThreadIsIdle) {
+      synchronized (this) {
+        this.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Puts the task in its bucket, returning false if it is already due, instead.
+   * NOTE:  This must be called under the wheel lock, either read or write.
+   */
+  private boolean insert(Task task) {
+    if (task.startTimeMillis <= this.observedNowMillis) {
+      return false;
+    }
+    link(task);
+    return true;
+  }
+
+  /**
+   * NOTE:  This must be called under the wheel lock, either read or write.
+   */
+  private void link(Task task) {
+    this.wheel.add(task);
+    // A cancel racing with this may have missed the bucket so make sure it isn't left behind.
+    if (task.isCancelled) {
+      task.unlink();
+    }
+  }
+
+  /**
+   * Only called by the tick thread, so each batch is handed over whole and after the one before it.
+   */
+  private void dispatchInOrder(List<Task> due) {
+    // The buckets are only ordered by tick so restore the order of the start times within them.
+    Collections.sort(due, START_ORDER);
+    for (Task task : due) {
+      submit(task);
+    }
+  }
+
+  private void submit(Task task) {
+    this.inFlight.incrementAndGet();
+    try {
+      this.workers.execute(task);
+    } catch (RejectedExecutionException e) {
+      // We are stopping so the task is dropped.
+      finished();
+    }
+  }
+
+  private void finished() {
+    if ((0 == this.inFlight.decrementAndGet()) && this.isWaitingForWorkers) {
+      synchronized (this) {
+        this.notifyAll();
+      }
+    }
+  }
+
+  private void advanceClock() {
+    long now = this.timeSource.currentTimeMillis();
+    List<Task> due = new ArrayList<>();
+    // Cleared before draining so a task which comes due after the drain sets it again.
+    this.hasDueTasks = false;
+    this.wheelLock.writeLock().lock();
+    try {
+      // Even within the same millisecond, the current bucket may hold tasks which were already due when scheduled.
+      if (now >= this.observedNowMillis) {
+        this.observedNowMillis = now;
+        List<Task> drained = new ArrayList<>();
+        this.wheel.advance(now, drained);
+        for (Task task : drained) {
+          if (!task.isCancelled && !insert(task)) {
+            due.add(task);
+          }
+        }
+      }
+    } finally {
+      this.wheelLock.writeLock().unlock();
+    }
+    if (!due.isEmpty()) {
+      dispatchInOrder(due);
+    }
+  }
+
+  private synchronized boolean awaitNextTick() {
+    try {
+      if (this.pokesServed < this.pokesInPass) {
+        // The pass this poke was waiting for is done so wait for the tasks it dispatched.
+        this.isWaitingForWorkers = true;
+        try {
+          while (this.inFlight.get() > 0) {
+            this.wait();
+          }
+        } finally {
+          this.isWaitingForWorkers = false;
+        }
+        // A periodic run rescheduled as already due belongs to this pass so the poke waits for the next one.
+        if (!this.hasDueTasks) {
+          this.pokesServed = this.pokesInPass;
+          this.notifyAll();
+        }
+      }
+      if (this.threadIsRunning && (this.pokesRequested == this.pokesInPass) && !this.hasDueTasks) {
+        if (this.tasks.isEmpty()) {
+          // Nothing to tick for so sleep until something is scheduled.
+          this.tickThreadIsIdle = true;
+          if (this.tasks.isEmpty()) {
+            this.wait();
+          }
+          this.tickThreadIsIdle = false;
+        } else {
+          this.wait(this.tickMillis);
+        }
+      }
+    } catch (InterruptedException e) {
+      // The tick thread is private to the timer and only stop() ends it:  exiting here would silently drop every timed
+      //  event.  The interrupt is consumed, rather than restored, since restoring it would fail every later wait and
+      //  spin this loop.  A poke this pass was serving is served on the next one.
+      LOGGER.warn("Ignoring interruption of the timer tick thread", e);
+    }
+    this.pokesInPass = this.pokesRequested;
+    return this.threadIsRunning;
+  }
+
+
+  /**
+   * One level of the hierarchy:  a ring of wheelSize buckets of tickMillis each.
+   */
+  private class Wheel {
+    private final long tickMillis;
+    private final long intervalMillis;
+    private final Bucket[] buckets;
+    // The start of the tick this wheel is on:  its buckets hold this tick and the following ones.
+    private long currentTimeMillis;
+    private volatile Wheel overflow;
+
+    public Wheel(long tickMillis, long startTimeMillis) {
+      this.tickMillis = tickMillis;
+      this.intervalMillis = tickMillis * TimingWheelTimer.this.wheelSize;
+      this.buckets = new Bucket[TimingWheelTimer.this.wheelSize];
+      for (int i = 0; i < this.buckets.length; ++i) {
+        this.buckets[i] = new Bucket();
+      }
+      this.currentTimeMillis = startTimeMillis - (startTimeMillis % tickMillis);
+    }
+
+    public void add(Task task) {
+      if (task.startTimeMillis < this.currentTimeMillis + this.intervalMillis) {
+        // The bucket of the current tick is drained on every pass so it also holds anything not yet due within it.
+        long tick = Math.max(task.startTimeMillis / this.tickMillis, this.currentTimeMillis / this.tickMillis);
+        this.buckets[(int) (tick & TimingWheelTimer.this.wheelMask)].add(task);
+      } else {
+        getOverflow().add(task);
+      }
+    }
+
+    /**
+     * Moves this wheel, and the coarser ones, to the tick of nowMillis, draining the current bucket and every bucket
+     *  passed on the way.
+     */
+    public void advance(long nowMillis, List<Task> drained) {
+      long target = nowMillis - (nowMillis % this.tickMillis);
+      // A jump of a whole revolution or more passes every bucket.
+      long steps = Math.min(TimingWheelTimer.this.wheelSize, (target - this.currentTimeMillis) / this.tickMillis + 1);
+      long firstTick = this.currentTimeMillis / this.tickMillis;
+      for (long i = 0; i < steps; ++i) {
+        this.buckets[(int) ((firstTick + i) & TimingWheelTimer.this.wheelMask)].drainTo(drained);
+      }
+      this.currentTimeMillis = target;
+      Wheel next = this.overflow;
+      if (null != next) {
+        next.advance(nowMillis, drained);
+      }
+    }
+
+    private Wheel getOverflow() {
+      Wheel next = this.overflow;
+      if (null == next) {
+        synchronized (this) {
+          next = this.overflow;
+          if (null == next) {
+            next = new Wheel(this.intervalMillis, this.currentTimeMillis);
+            this.overflow = next;
+          }
+        }
+      }
+      return next;
+    }
+  }
+
+
+  /**
+   * A doubly-linked list of tasks, in the order they were added, so that any task can be unlinked in constant time.
+   */
+  private static class Bucket {
+    private Task head;
+    private Task tail;
+
+    public synchronized void add(Task task) {
+      task.bucket = this;
+      task.previous = this.tail;
+      task.next = null;
+      if (null != this.tail) {
+        this.tail.next = task;
+      } else {
+        this.head = task;
+      }
+      this.tail = task;
+    }
+
+    public synchronized boolean remove(Task task) {
+      boolean didRemove = (task.bucket == this);
+      if (didRemove) {
+        if (null != task.previous) {
+          task.previous.next = task.next;
+        } else {
+          this.head = task.next;
+        }
+        if (null != task.next) {
+          task.next.previous = task.previous;
+        } else {
+          this.tail = task.previous;
+        }
+        task.bucket = null;
+        task.previous = null;
+        task.next = null;
+      }
+      return didRemove;
+    }
+
+    public synchronized void drainTo(List<Task> drained) {
+      Task task = this.head;
+      while (null != task) {
+        Task next = task.next;
+        task.bucket = null;
+        task.previous = null;
+        task.next = null;
+        drained.add(task);
+        task = next;
+      }
+      this.head = null;
+      this.tail = null;
+    }
+  }
+
+
+  private class Task implements Runnable {
+    public final long id;
+    public final Runnable toRun;
+    public final long periodTimeMillis;
+    // Only changed when the task is in no bucket, so readers under the wheel lock see the current value.
+    public volatile long startTimeMillis;
+    public volatile boolean isCancelled;
+    // The links are guarded by the monitor of the bucket the task is in.
+    public volatile Bucket bucket;
+    public Task previous;
+    public Task next;
+
+    public Task(long id, Runnable toRun, long startTimeMillis, long periodTimeMillis) {
+      this.id = id;
+      this.toRun = toRun;
+      this.startTimeMillis = startTimeMillis;
+      this.periodTimeMillis = periodTimeMillis;
+    }
+
+    public void cancel() {
+      this.isCancelled = true;
+      unlink();
+    }
+
+    public void unlink() {
+      Bucket current = this.bucket;
+      // The tick thread may be moving the task to another bucket so follow it until it is out.
+      while ((null != current) && !current.remove(this)) {
+        current = this.bucket;
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (!this.isCancelled) {
+          if (0 == this.periodTimeMillis) {
+            TimingWheelTimer.this.tasks.remove(this.id, this);
+          }
+          try {
+            this.toRun.run();
+          } catch (Throwable t) {
+            LOGGER.error("Unexpected exception in timer (timed events may be dropped)", t);
+          }
+          if ((this.periodTimeMillis > 0) && !this.isCancelled) {
+            this.startTimeMillis += this.periodTimeMillis;
+            TimingWheelTimer.this.schedule(this);
+          }
+        }
+      } finally {
+        TimingWheelTimer.this.finished();
+      }
+    }
+  }
+}
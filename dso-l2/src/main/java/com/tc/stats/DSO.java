@@ -21,6 +21,8 @@ package com.tc.stats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tc.async.api.StageManager;
+import com.tc.bytes.TCByteBufferFactory;
 import com.tc.management.RemoteManagement;
 import com.tc.management.TerracottaManagement;
 import com.tc.management.beans.L2MBeanNames;
@@ -86,6 +88,7 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
   private final TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider;
   private final ConnectionPolicy                       connectionPolicy;
   private final RemoteManagement                       remoteManagement;
+  private final StageManager                           stageManager;
 
   public DSO(ServerManagementContext managementContext, ServerConfigurationContext configContext,
              MBeanServer mbeanServer,
@@ -104,6 +107,7 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     this.operatorEventHistoryProvider = operatorEventHistoryProvider;
     this.connectionPolicy = managementContext.getConnectionPolicy();
     this.remoteManagement = managementContext.getRemoteManagement();
+    this.stageManager = managementContext.getStageManager();
 
     // add various listeners (do this before the setupXXX() methods below so we don't ever miss anything)
     channelMgr.addEventListener(new ChannelManagerListener());
@@ -113,7 +117,17 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
 
   @Override
   public void reset() {
-    // TODO: implement this?
+    stageManager.resetLatencyStats();
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencies() {
+    return stageManager.getLatencyStats();
+  }
+
+  @Override
+  public Map<String, Long> getBufferPoolStats() {
+    return TCByteBufferFactory.getPoolStats();
   }
 
   @Override
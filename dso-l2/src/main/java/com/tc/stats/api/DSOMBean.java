@@ -60,6 +60,17 @@ public interface DSOMBean extends Stats, TerracottaMBean {
 
   Map<ObjectName, Integer> getClientLiveObjectCount();
 
+  /**
+   * Queue wait and handler execution latency percentiles, in nanoseconds, for each SEDA stage. {@link #reset()} starts a
+   * fresh measurement period.
+   */
+  Map<String, Map<String, Long>> getStageLatencies();
+
+  /**
+   * Hit, miss and occupancy counters of the direct and heap byte buffer pools, empty when pooling is disabled.
+   */
+  Map<String, Long> getBufferPoolStats();
+
   List<TerracottaOperatorEvent> getOperatorEvents();
 
   /**
@@ -9,6 +9,7 @@ import com.tc.config.NodesStore;
 import com.tc.config.NodesStoreImpl;
 import com.tc.l2.api.L2Coordinator;
 import com.tc.l2.context.StateChangedEvent;
+import com.tc.l2.ha.L2HAZapNodeRequestProcessor;
 import com.tc.l2.ha.RandomWeightGenerator;
 import com.tc.l2.ha.WeightGeneratorFactory;
 import com.tc.l2.handler.L2StateMessageHandler;
@@ -41,9 +42,12 @@ import java.util.concurrent.TimeUnit;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -171,6 +175,63 @@ public class StateManagerImplTest {
     Assert.assertEquals(node, state.getActiveNodeID());
   }
   
+  @Test
+  public void testResumableStandbyIsNotZapped() throws Exception {
+    Logger logger = mock(Logger.class);
+    GroupManager grp = mock(GroupManager.class);
+    
+    Sink stageChangeSinkMock = mock(Sink.class);
+    StageManager stageManager = mock(StageManager.class);
+    WeightGeneratorFactory weightGeneratorFactory = RandomWeightGenerator.createTestingFactory(2);
+    ClusterStatePersistor statePersistor = mock(ClusterStatePersistor.class);
+    when(statePersistor.getInitialState()).thenReturn(new State("PASSIVE-STANDBY"));
+
+    NodeID node = mock(NodeID.class);
+    when(grp.getLocalNodeID()).thenReturn(node);
+    when(grp.sendAllAndWaitForResponse(any())).thenReturn(new GroupResponse() {
+      @Override
+      public List getResponses() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public GroupMessage getResponse(NodeID nodeID) {
+        throw new UnsupportedOperationException("Not supported yet.");
+      }
+    });
+    when(stageManager.createStage(anyString(), any(Class.class), any(EventHandler.class), anyInt(), anyInt()))
+        .then((invoke)->{
+          Stage election = mock(Stage.class);
+          Sink electionSink = mock(Sink.class);
+          doAnswer((invoke2)-> {
+            ((EventHandler)invoke.getArguments()[2]).handleEvent(invoke2.getArguments()[0]);
+            return null;
+          }).when(electionSink).addSingleThreaded(any());
+          when(election.getSink()).thenReturn(electionSink);
+          return election;
+        });
+    
+    StateManagerImpl state = new StateManagerImpl(logger, grp, stageChangeSinkMock, stageManager, 1, 5, weightGeneratorFactory,
+          statePersistor);
+    state.initializeAndStartElection();
+    state.startElectionIfNecessary(mock(NodeID.class));
+    Assert.assertTrue(state.isActiveCoordinator());
+
+    // a standby this active doesn't know from the current election joins
+    NodeID standby = mock(NodeID.class);
+    L2StateMessage won = L2StateMessage.createElectionWonAlreadyMessage(EnrollmentFactory.createTrumpEnrollment(node, weightGeneratorFactory), StateManager.ACTIVE_COORDINATOR);
+    when(grp.sendToAndWaitForResponse(eq(standby), any())).thenReturn(L2StateMessage.createResultAgreedMessage(won, 
+        EnrollmentFactory.createTrumpEnrollment(standby, weightGeneratorFactory), StateManager.PASSIVE_STANDBY));
+    // it can resume its stream so it is let back in
+    state.setResumableStandbys(standby::equals);
+    state.publishActiveState(standby);
+    verify(grp, never()).zapNode(any(NodeID.class), anyInt(), anyString());
+    // otherwise its database is dirty
+    state.setResumableStandbys(n -> false);
+    state.publishActiveState(standby);
+    verify(grp).zapNode(eq(standby), eq(L2HAZapNodeRequestProcessor.NODE_JOINED_WITH_DIRTY_DB), anyString());
+  }
+  
   @Test
   public void testElectionWithNodeJoiningLater() throws Exception {
 
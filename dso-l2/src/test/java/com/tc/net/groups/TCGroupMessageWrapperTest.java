@@ -21,6 +21,8 @@ package com.tc.net.groups;
 import com.tc.l2.ha.L2HAZapNodeRequestProcessor;
 import com.tc.l2.msg.ClusterStateMessage;
 import com.tc.l2.msg.L2StateMessage;
+import com.tc.l2.msg.ReplicationMessage;
+import com.tc.l2.msg.SyncReplicationActivity;
 import com.tc.l2.state.Enrollment;
 import com.tc.net.ClientID;
 import com.tc.net.ServerID;
@@ -47,13 +49,17 @@ import com.tc.net.protocol.transport.DefaultConnectionIdFactory;
 import com.tc.net.protocol.transport.DisabledHealthCheckerConfigImpl;
 import com.tc.net.protocol.transport.NullConnectionPolicy;
 import com.tc.net.protocol.transport.TransportHandshakeErrorNullHandler;
+import com.tc.object.FetchID;
+import com.tc.object.tx.TransactionID;
 import com.tc.object.session.NullSessionManager;
 import com.tc.util.ProductID;
 import com.tc.util.State;
 import com.tc.util.UUID;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -164,6 +170,10 @@ public class TCGroupMessageWrapperTest extends TestCase {
   }
 
   private GroupMessage sendGroupMessage(AbstractGroupMessage sendMesg) throws Exception {
+    return sendGroupMessage(sendMesg, null);
+  }
+
+  private GroupMessage sendGroupMessage(AbstractGroupMessage sendMesg, GroupMessageCompression compression) throws Exception {
     NetworkListener lsnr = initServer();
     channelManager = lsnr.getChannelManager();
     assertEquals(0, channelManager.getChannels().length);
@@ -172,6 +182,7 @@ public class TCGroupMessageWrapperTest extends TestCase {
 
     TCGroupMessageWrapper wrapper = (TCGroupMessageWrapper) channel.createMessage(TCMessageType.GROUP_WRAPPER_MESSAGE);
     wrapper.setGroupMessage(sendMesg);
+    wrapper.setCompression(compression);
     wrapper.send();
     GroupMessage receivedMesg = queue.poll(timeout, unit);
     assertNotNull(receivedMesg);
@@ -198,6 +209,35 @@ public class TCGroupMessageWrapperTest extends TestCase {
     sendGroupMessage(sendMesg);
   }
 
+  public void testCompressedReplicationMessage() throws Exception {
+    byte[] payload = new byte[16 * 1024];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) (i % 7);
+    }
+    ReplicationMessage sendMesg = ReplicationMessage.createActivityContainer(createInvoke(1, payload));
+    sendMesg.addToBatch(createInvoke(2, payload));
+    sendMesg.setReplicationID(5);
+    GroupMessageCompression compression = new GroupMessageCompression(1024);
+
+    ReplicationMessage receivedMesg = (ReplicationMessage) sendGroupMessage(sendMesg, compression);
+    assertEquals(5, receivedMesg.getSequenceID());
+    assertEquals(2, receivedMesg.getActivities().size());
+    for (SyncReplicationActivity activity : receivedMesg.getActivities()) {
+      assertTrue(Arrays.equals(payload, activity.getExtendedData()));
+    }
+    Map<String, Long> stats = compression.getStats();
+    assertEquals(Long.valueOf(1), stats.get("compressedMessages"));
+    // the second payload repeats the first within the same batch
+    assertTrue(stats.get("compressedBytes") * 10 < stats.get("uncompressedBytes"));
+  }
+
+  private static SyncReplicationActivity createInvoke(long tid, byte[] payload) {
+    return SyncReplicationActivity.createInvokeMessage(new FetchID(1), new ClientID(1), new TransactionID(tid),
+                                                       TransactionID.NULL_ID,
+                                                       SyncReplicationActivity.ActivityType.INVOKE_ACTION, payload, 0,
+                                                       "");
+  }
+
   private ServerID makeNodeID(String name) {
     return (new ServerID(name, UUID.getUUID().toString().getBytes()));
   }
@@ -26,6 +26,7 @@ import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 import com.tc.util.UUID;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -182,6 +183,11 @@ public class TestActiveGroupManager implements GroupManager<GroupMessage> {
     //
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getCompressionStats() {
+    return Collections.emptyMap();
+  }
+
   @Override
   public PrettyPrinter prettyPrint(PrettyPrinter out) {
     throw new UnsupportedOperationException();
@@ -26,6 +26,7 @@ import com.tc.net.NodeID;
 import com.tc.util.State;
 
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 
 public class TestStateManager implements StateManager {
@@ -59,6 +60,11 @@ public class TestStateManager implements StateManager {
 
   }
 
+  @Override
+  public void setResumableStandbys(Predicate<NodeID> resumable) {
+
+  }
+
   @Override
   public void handleClusterStateMessage(L2StateMessage clusterMsg) {
     throw new UnsupportedOperationException();
@@ -20,26 +20,45 @@ package com.tc.objectserver.entity;
 
 import com.tc.l2.msg.SyncReplicationActivity;
 import com.tc.net.ServerID;
+import com.tc.net.NodeID;
 import com.tc.net.groups.GroupManager;
+import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.handler.ProcessTransactionHandler;
 import com.tc.objectserver.handler.ReplicationSender;
 import com.tc.objectserver.persistence.EntityPersistor;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
 public class ActiveToPassiveReplicationTest {
+  private static final String SYNC_PARALLELISM = "active-passive.sync.parallelism";
   
   ServerID passive;
   private ActiveToPassiveReplication replication;
+  private boolean parallelismOverridden;
+  private String originalParallelism;
   
   
   public ActiveToPassiveReplicationTest() {
@@ -81,8 +100,134 @@ public class ActiveToPassiveReplicationTest {
     Assert.assertTrue(ack.isCompleted());
   }
   
+  @Test(timeout = 10000)
+  public void testEntitiesSyncInParallel() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    // each entity only finishes once another one is syncing alongside it
+    CyclicBarrier pair = new CyclicBarrier(2);
+    List<ManagedEntity> entities = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      ManagedEntity entity = mock(ManagedEntity.class);
+      doAnswer(invocation -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          pair.await(10, TimeUnit.SECONDS);
+        } finally {
+          running.decrementAndGet();
+        }
+        return null;
+      }).when(entity).sync(any(NodeID.class));
+      entities.add(entity);
+    }
+    List<SyncReplicationActivity.ActivityType> sent = new CopyOnWriteArrayList<>();
+    CountDownLatch ended = new CountDownLatch(1);
+    ReplicationSender sender = recordingSender(sent, ended);
+    ActiveToPassiveReplication parallel = createWithSyncParallelism(2, sender, snapshotOf(entities, new AtomicReference<>()));
+    parallel.enterActiveState();
+    parallel.startPassiveSync(passive);
+    // the sync only ends once every entity is done
+    ended.await();
+    for (ManagedEntity entity : entities) {
+      verify(entity).sync(passive);
+    }
+    Assert.assertEquals(2, maxRunning.get());
+    Assert.assertEquals(0, running.get());
+  }
+
+  @Test(timeout = 10000)
+  public void testEntitySyncFailureWaitsForTheEntitiesStillSyncing() throws Exception {
+    CountDownLatch failed = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    List<ManagedEntity> entities = new ArrayList<>();
+    // still syncing when the next entity fails
+    ManagedEntity slow = mock(ManagedEntity.class);
+    doAnswer(invocation -> {
+      running.incrementAndGet();
+      try {
+        failed.await();
+        TimeUnit.MILLISECONDS.sleep(200);
+      } finally {
+        running.decrementAndGet();
+      }
+      return null;
+    }).when(slow).sync(any(NodeID.class));
+    entities.add(slow);
+    ManagedEntity failing = mock(ManagedEntity.class);
+    doAnswer(invocation -> {
+      failed.countDown();
+      throw new RuntimeException("sync failed");
+    }).when(failing).sync(any(NodeID.class));
+    entities.add(failing);
+    List<ManagedEntity> after = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      after.add(mock(ManagedEntity.class));
+    }
+    entities.addAll(after);
+    List<SyncReplicationActivity.ActivityType> sent = new CopyOnWriteArrayList<>();
+    ReplicationSender sender = recordingSender(sent, new CountDownLatch(1));
+    AtomicReference<Thread> syncThread = new AtomicReference<>();
+    ActiveToPassiveReplication parallel = createWithSyncParallelism(2, sender, snapshotOf(entities, syncThread));
+    parallel.enterActiveState();
+    parallel.startPassiveSync(passive);
+    while (syncThread.get() == null) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    // the failure takes down the thread running the sync, but only once the entity still syncing has finished
+    syncThread.get().join();
+    Assert.assertEquals(0, running.get());
+    verify(slow).sync(passive);
+    for (ManagedEntity entity : after) {
+      verify(entity, never()).sync(any(NodeID.class));
+    }
+    Assert.assertFalse(sent.contains(SyncReplicationActivity.ActivityType.SYNC_END));
+  }
+
+  /**
+   * A sender which records the type of every activity and counts down {@code ended} on SYNC_END.
+   */
+  private static ReplicationSender recordingSender(List<SyncReplicationActivity.ActivityType> sent, CountDownLatch ended) {
+    ReplicationSender sender = mock(ReplicationSender.class);
+    doAnswer(invocation -> {
+      SyncReplicationActivity.ActivityType type = ((SyncReplicationActivity) invocation.getArguments()[1]).getActivityType();
+      sent.add(type);
+      if (type == SyncReplicationActivity.ActivityType.SYNC_END) {
+        ended.countDown();
+      }
+      // not sent so the waiter completes right away
+      return false;
+    }).when(sender).replicateMessage(any(NodeID.class), any(SyncReplicationActivity.class));
+    return sender;
+  }
+
+  /**
+   * A snapshot of the given entities which records the thread running the sync.
+   */
+  @SuppressWarnings("unchecked")
+  private static ProcessTransactionHandler snapshotOf(List<ManagedEntity> entities, AtomicReference<Thread> syncThread) {
+    ProcessTransactionHandler snapshotter = mock(ProcessTransactionHandler.class);
+    when(snapshotter.snapshotEntityList(any(Consumer.class))).then(invocation -> {
+      syncThread.set(Thread.currentThread());
+      ((Consumer<List<ManagedEntity>>) invocation.getArguments()[0]).accept(Collections.<ManagedEntity>emptyList());
+      return entities;
+    });
+    return snapshotter;
+  }
+
+  private ActiveToPassiveReplication createWithSyncParallelism(int parallelism, ReplicationSender sender, ProcessTransactionHandler snapshotter) {
+    TCProperties properties = TCPropertiesImpl.getProperties();
+    parallelismOverridden = true;
+    originalParallelism = properties.getProperty(SYNC_PARALLELISM, true);
+    properties.setProperty(SYNC_PARALLELISM, Integer.toString(parallelism));
+    return new ActiveToPassiveReplication(snapshotter, Collections.singleton(passive), mock(EntityPersistor.class), sender, mock(GroupManager.class));
+  }
+  
   @After
   public void tearDown() {
+    if (parallelismOverridden) {
+      // there is no removing a property so put back the default when it wasn't set
+      TCPropertiesImpl.getProperties().setProperty(SYNC_PARALLELISM, (originalParallelism != null) ? originalParallelism : "1");
+    }
   }
 
   // TODO add test methods here.
@@ -0,0 +1,86 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelEntityLoaderTest {
+
+  @Test
+  public void testLevelsFollowCreationOrderAcrossTypes() {
+    List<String> ordered = Arrays.asList("a1", "a2", "b1", "a3", "b2", "c1");
+    List<List<String>> levels = ParallelEntityLoader.levels(ordered, entity -> entity.substring(0, 1));
+    assertEquals(Arrays.asList(Arrays.asList("a1", "a2"), Arrays.asList("b1"), Arrays.asList("a3"), Arrays.asList("b2"),
+                               Arrays.asList("c1")), levels);
+    assertEquals(Collections.singletonList(ordered), ParallelEntityLoader.levels(ordered, entity -> "same"));
+  }
+
+  @Test
+  public void testEntitiesOfOneTypeLoadInParallel() throws Exception {
+    CyclicBarrier bothStarted = new CyclicBarrier(2);
+    List<String> loaded = new CopyOnWriteArrayList<>();
+    new ParallelEntityLoader("Test", 2).load(Arrays.asList("a1", "a2", "b1"), entity -> entity.substring(0, 1), entity -> {
+      if (entity.startsWith("a")) {
+        // only returns if the other one of the type is loading at the same time
+        bothStarted.await(10, TimeUnit.SECONDS);
+      }
+      loaded.add(entity);
+    });
+    assertEquals(3, loaded.size());
+    // the other type waits for the ones created before it
+    assertEquals("b1", loaded.get(2));
+  }
+
+  @Test
+  public void testFailureStopsLaterLevels() {
+    List<String> loaded = new CopyOnWriteArrayList<>();
+    try {
+      new ParallelEntityLoader("Test", 4).load(Arrays.asList("a1", "a2", "b1"), entity -> entity.substring(0, 1), entity -> {
+        if (entity.equals("a2")) {
+          throw new Exception("failed " + entity);
+        }
+        loaded.add(entity);
+      });
+      fail();
+    } catch (Exception e) {
+      assertEquals("failed a2", e.getMessage());
+    }
+    assertEquals(Collections.singletonList("a1"), loaded);
+  }
+
+  @Test
+  public void testSerialLoadKeepsCreationOrder() {
+    List<String> loaded = new CopyOnWriteArrayList<>();
+    List<String> ordered = Arrays.asList("a1", "b1", "a2", "b2");
+    new ParallelEntityLoader("Test", 1).load(ordered, entity -> entity.substring(0, 1), loaded::add);
+    assertEquals(ordered, loaded);
+    assertTrue(Thread.currentThread().getName().indexOf("Entity") < 0);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.l2.msg.SyncReplicationActivity;
+import com.tc.net.ClientID;
+import com.tc.object.FetchID;
+import com.tc.object.tx.TransactionID;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationReplayLogTest {
+
+  @Test
+  public void testReplaysTailAfterActivity() {
+    ReplicationReplayLog log = new ReplicationReplayLog(10, 1024 * 1024);
+    SyncReplicationActivity[] activities = new SyncReplicationActivity[5];
+    for (int i = 0; i < activities.length; i++) {
+      activities[i] = invoke(16);
+      log.append(activities[i]);
+    }
+    List<SyncReplicationActivity> missed = log.after(activities[1].getSequenceID());
+    assertEquals(3, missed.size());
+    assertSame(activities[2], missed.get(0));
+    assertSame(activities[4], missed.get(2));
+    assertTrue(log.after(activities[4].getSequenceID()).isEmpty());
+    assertNull(log.after(-1));
+    assertEquals(Long.valueOf(2), log.getStats().get("replays"));
+    assertEquals(Long.valueOf(3), log.getStats().get("replayedActivities"));
+  }
+
+  @Test
+  public void testOldestEntriesAreEvicted() {
+    ReplicationReplayLog log = new ReplicationReplayLog(3, 1024 * 1024);
+    SyncReplicationActivity first = invoke(16);
+    log.append(first);
+    SyncReplicationActivity second = invoke(16);
+    log.append(second);
+    log.append(invoke(16));
+    log.append(invoke(16));
+    // the first one is gone so a passive which stopped there has to sync from scratch
+    assertNull(log.after(first.getSequenceID()));
+    assertEquals(2, log.after(second.getSequenceID()).size());
+    assertEquals(Long.valueOf(3), log.getStats().get("entries"));
+    assertEquals(Long.valueOf(1), log.getStats().get("evicted"));
+
+    // the byte bound applies as well, but always keeps the newest
+    ReplicationReplayLog small = new ReplicationReplayLog(100, 1000);
+    SyncReplicationActivity big = invoke(600);
+    small.append(invoke(600));
+    small.append(big);
+    assertEquals(Long.valueOf(1), small.getStats().get("entries"));
+    assertTrue(small.after(big.getSequenceID()).isEmpty());
+  }
+
+  @Test
+  public void testResumeFromTheStartOfTheStream() {
+    ReplicationReplayLog log = new ReplicationReplayLog(3, 1024 * 1024);
+    log.append(invoke(16));
+    SyncReplicationActivity start = SyncReplicationActivity.createStartMessage();
+    log.mark(start);
+    // nothing since the start so nothing to replay
+    assertTrue(log.after(start.getSequenceID()).isEmpty());
+    SyncReplicationActivity next = invoke(16);
+    log.append(next);
+    log.append(invoke(16));
+    List<SyncReplicationActivity> missed = log.after(start.getSequenceID());
+    assertEquals(2, missed.size());
+    assertSame(next, missed.get(0));
+    // the mark stays good until the first activity after it is evicted
+    log.append(invoke(16));
+    assertEquals(3, log.after(start.getSequenceID()).size());
+    log.append(invoke(16));
+    assertNull(log.after(start.getSequenceID()));
+  }
+
+  @Test
+  public void testOnlyStreamActivityIsLogged() {
+    assertTrue(ReplicationReplayLog.isLogged(invoke(0)));
+    assertFalse(ReplicationReplayLog.isLogged(SyncReplicationActivity.createStartMessage()));
+    assertFalse(ReplicationReplayLog.isLogged(SyncReplicationActivity.createFlushLocalPipelineMessage(new FetchID(1), false)));
+    assertFalse(new ReplicationReplayLog(0, 1000).isEnabled());
+  }
+
+  private static SyncReplicationActivity invoke(int size) {
+    return SyncReplicationActivity.createInvokeMessage(new FetchID(1), new ClientID(1), new TransactionID(1), new TransactionID(1),
+        SyncReplicationActivity.ActivityType.INVOKE_ACTION, new byte[size], 1, "");
+  }
+}
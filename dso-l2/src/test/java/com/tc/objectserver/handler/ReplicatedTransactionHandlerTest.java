@@ -58,7 +58,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.function.Consumer;
@@ -342,6 +347,127 @@ public class ReplicatedTransactionHandlerTest {
     mockPassiveSync(rth);
   }
   
+  @Test
+  public void testInterleavedEntitySyncDefersPerEntity() throws Exception {
+    EntityID firstID = new EntityID("foo", "first");
+    EntityID secondID = new EntityID("foo", "second");
+    FetchID first = new FetchID(10L);
+    FetchID second = new FetchID(20L);
+    List<String> applied = new ArrayList<>();
+    mockSyncedEntities(applied, firstID, first, secondID, second);
+    byte[] config = new byte[0];
+    send(SyncReplicationActivity.createStartSyncMessage(new SyncReplicationActivity.EntityCreationTuple[] {
+        new SyncReplicationActivity.EntityCreationTuple(firstID, 1, 10L, config, true),
+        new SyncReplicationActivity.EntityCreationTuple(secondID, 1, 20L, config, true)
+    }));
+    send(SyncReplicationActivity.createStartEntityMessage(firstID, 1, first, config, 0));
+    send(SyncReplicationActivity.createStartEntityMessage(secondID, 1, second, config, 0));
+    send(SyncReplicationActivity.createStartEntityKeyMessage(firstID, 1, first, 1));
+    send(SyncReplicationActivity.createStartEntityKeyMessage(secondID, 1, second, 1));
+//  both entities are syncing key 1 so these wait for the sync of the key of their own entity
+    send(createMockReplicationMessage(first, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(1).array(), 1));
+    send(createMockReplicationMessage(second, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(1).array(), 1));
+    send(SyncReplicationActivity.createPayloadMessage(firstID, 1, first, 1, config, ""));
+    send(SyncReplicationActivity.createEndEntityKeyMessage(firstID, 1, first, 1));
+    Assert.assertTrue(applied.toString(), applied.contains("first INVOKE_ACTION 1"));
+    Assert.assertFalse(applied.toString(), applied.contains("second INVOKE_ACTION 1"));
+    send(SyncReplicationActivity.createPayloadMessage(secondID, 1, second, 1, config, ""));
+    send(createMockReplicationMessage(second, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(2).array(), 1));
+//  the first entity has synced key 1 so this one is applied right away
+    send(createMockReplicationMessage(first, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(2).array(), 1));
+    send(SyncReplicationActivity.createEndEntityKeyMessage(secondID, 1, second, 1));
+    send(SyncReplicationActivity.createEndEntityMessage(firstID, 1, first));
+    send(SyncReplicationActivity.createEndEntityMessage(secondID, 1, second));
+
+    Assert.assertEquals(Arrays.asList(
+        "first RECEIVE_SYNC_CREATE_ENTITY 0",
+        "first RECEIVE_SYNC_ENTITY_START_SYNCING 0",
+        "second RECEIVE_SYNC_CREATE_ENTITY 0",
+        "second RECEIVE_SYNC_ENTITY_START_SYNCING 0",
+        "first RECEIVE_SYNC_ENTITY_KEY_START 1",
+        "second RECEIVE_SYNC_ENTITY_KEY_START 1",
+        "first RECEIVE_SYNC_PAYLOAD 1",
+        "first INVOKE_ACTION 1",
+        "first RECEIVE_SYNC_ENTITY_KEY_END 1",
+        "second RECEIVE_SYNC_PAYLOAD 1",
+        "first INVOKE_ACTION 2",
+        "second INVOKE_ACTION 1",
+        "second INVOKE_ACTION 2",
+        "second RECEIVE_SYNC_ENTITY_KEY_END 1",
+        "first RECEIVE_SYNC_ENTITY_END 0",
+        "second RECEIVE_SYNC_ENTITY_END 0"), applied);
+  }
+
+  @Test
+  public void testOutOfOrderEntitySyncIsRejected() throws Exception {
+    EntityID firstID = new EntityID("foo", "first");
+    EntityID secondID = new EntityID("foo", "second");
+    FetchID first = new FetchID(10L);
+    FetchID second = new FetchID(20L);
+    mockSyncedEntities(new ArrayList<>(), firstID, first, secondID, second);
+    byte[] config = new byte[0];
+    send(SyncReplicationActivity.createStartSyncMessage(new SyncReplicationActivity.EntityCreationTuple[] {
+        new SyncReplicationActivity.EntityCreationTuple(firstID, 1, 10L, config, true),
+        new SyncReplicationActivity.EntityCreationTuple(secondID, 1, 20L, config, true)
+    }));
+    send(SyncReplicationActivity.createStartEntityMessage(firstID, 1, first, config, 0));
+    send(SyncReplicationActivity.createStartEntityKeyMessage(firstID, 1, first, 1));
+//  the second entity has not begun syncing
+    assertRejected(SyncReplicationActivity.createStartEntityKeyMessage(secondID, 1, second, 1));
+    assertRejected(SyncReplicationActivity.createEndEntityMessage(secondID, 1, second));
+//  nor can a key end which is not the one syncing
+    assertRejected(SyncReplicationActivity.createEndEntityKeyMessage(firstID, 1, first, 2));
+  }
+
+  /**
+   * Two entities, created by the sync, which record the requests applied to them as "name action key", the key of an
+   *  invoke being replaced by the sequence number in its payload.
+   */
+  private void mockSyncedEntities(List<String> applied, EntityID firstID, FetchID first, EntityID secondID, FetchID second) throws Exception {
+    Map<EntityID, ManagedEntity> created = new HashMap<>();
+    Map<EntityID, FetchID> fetches = new HashMap<>();
+    fetches.put(firstID, first);
+    fetches.put(secondID, second);
+    MessageCodec codec = mock(MessageCodec.class);
+    when(this.entityManager.getMessageCodec(Matchers.any())).thenReturn(codec);
+    when(this.entityManager.getEntity(Matchers.any())).then(invoke->{
+      EntityDescriptor desp = (EntityDescriptor)invoke.getArguments()[0];
+      for (Map.Entry<EntityID, ManagedEntity> entry : created.entrySet()) {
+        if (desp.isIndexed() ? desp.getFetchID().equals(fetches.get(entry.getKey())) : desp.getEntityID().equals(entry.getKey())) {
+          return Optional.of(entry.getValue());
+        }
+      }
+      return Optional.empty();
+    });
+    when(this.entityManager.createEntity(Matchers.any(), anyLong(), anyLong(), anyBoolean())).then(invoke->{
+      EntityID eid = (EntityID)invoke.getArguments()[0];
+      ManagedEntity entity = mock(ManagedEntity.class);
+      when(entity.getCodec()).thenReturn(codec);
+      Mockito.doAnswer(invocation->{
+        ServerEntityRequest req = (ServerEntityRequest)invocation.getArguments()[0];
+        MessagePayload payload = (MessagePayload)invocation.getArguments()[1];
+        int key = (null != payload) ? payload.getConcurrency() : 0;
+        if (ServerEntityAction.INVOKE_ACTION == req.getAction()) {
+          key = ByteBuffer.wrap(payload.getRawPayload()).getInt();
+        }
+        applied.add(eid.getEntityName() + " " + req.getAction() + " " + key);
+        return null;
+      }).when(entity).addRequestMessage(Matchers.any(), Matchers.any(), Matchers.any(), Matchers.any(), Matchers.any());
+      created.put(eid, entity);
+      return entity;
+    });
+  }
+
+  private void assertRejected(SyncReplicationActivity activity) throws EventHandlerException {
+    boolean rejected = false;
+    try {
+      send(activity);
+    } catch (AssertionError e) {
+      rejected = true;
+    }
+    Assert.assertTrue(activity, rejected);
+  }
+  
   private ServerEntityRequest last;
   private int lastSid = 0;
   private int concurrency = 0;
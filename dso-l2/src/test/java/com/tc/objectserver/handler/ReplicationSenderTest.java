@@ -41,6 +41,7 @@ import com.tc.util.Assert;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -341,6 +342,126 @@ public class ReplicationSenderTest {
     validateCollector(validation);
   }
   
+  @Test
+  public void interleavedEntitySync() throws Exception {
+    entity = new EntityID("TEST", "test");
+    FetchID first = new FetchID(1L);
+    FetchID second = new FetchID(2L);
+    sendAndAcknowledge();
+    List<SyncReplicationActivity> origin = new LinkedList<>();
+    List<SyncReplicationActivity> validation = new LinkedList<>();
+    buildTest(origin, validation, makeMessage(SyncReplicationActivity.ActivityType.SYNC_BEGIN), false);
+    buildTest(origin, validation, SyncReplicationActivity.createStartEntityMessage(entity, 1, first, new byte[0], 0), false);
+    buildTest(origin, validation, SyncReplicationActivity.createStartEntityMessage(entity, 1, second, new byte[0], 0), false);
+    buildTest(origin, validation, SyncReplicationActivity.createStartEntityKeyMessage(entity, 1, first, 1), false);
+    buildTest(origin, validation, SyncReplicationActivity.createStartEntityKeyMessage(entity, 1, second, 1), false);
+    buildTest(origin, validation, SyncReplicationActivity.createPayloadMessage(entity, 1, first, 1, new byte[0], ""), false);
+    // the key syncing for this entity goes through, the passive applies it once the key has synced
+    buildTest(origin, validation, makeInvoke(first, 1), false);
+    // this key of the other entity is not synced yet so its state will come with the sync
+    buildTest(origin, validation, makeInvoke(second, 2), true);
+    buildTest(origin, validation, SyncReplicationActivity.createPayloadMessage(entity, 1, second, 1, new byte[0], ""), false);
+    buildTest(origin, validation, SyncReplicationActivity.createEndEntityKeyMessage(entity, 1, first, 1), false);
+    buildTest(origin, validation, makeInvoke(first, 1), false);
+    buildTest(origin, validation, makeInvoke(second, 2), true);
+    buildTest(origin, validation, SyncReplicationActivity.createEndEntityMessage(entity, 1, first), false);
+    // the first entity is live while the second one is still syncing
+    buildTest(origin, validation, makeInvoke(first, 2), false);
+    buildTest(origin, validation, SyncReplicationActivity.createEndEntityKeyMessage(entity, 1, second, 1), false);
+    buildTest(origin, validation, SyncReplicationActivity.createEndEntityMessage(entity, 1, second), false);
+    buildTest(origin, validation, makeMessage(SyncReplicationActivity.ActivityType.SYNC_END), false);
+    buildTest(origin, validation, makeInvoke(second, 2), false);
+
+    this.testSender.addPassive(node, SyncReplicationActivity.createStartMessage());
+    for (SyncReplicationActivity activity : origin) {
+      Assert.assertEquals(activity, validation.contains(activity), this.testSender.replicateMessage(node, activity));
+    }
+    Assert.assertFalse(this.testSender.isSyncOccuring(node));
+
+    List<SyncReplicationActivity> sent = new ArrayList<>();
+    for (ReplicationMessage msg : collector) {
+      for (SyncReplicationActivity activity : msg.getActivities()) {
+        if (activity.getActivityType() != SyncReplicationActivity.ActivityType.SYNC_START) {
+          sent.add(activity);
+        }
+      }
+    }
+    Assert.assertEquals(validation.size(), sent.size());
+    Iterator<SyncReplicationActivity> expected = validation.iterator();
+    for (SyncReplicationActivity activity : sent) {
+      SyncReplicationActivity next = expected.next();
+      Assert.assertEquals(next.getActivityType(), activity.getActivityType());
+      Assert.assertEquals(next.getFetchID(), activity.getFetchID());
+      // these carry no concurrency key
+      if (SyncReplicationActivity.ActivityType.SYNC_BEGIN != next.getActivityType() && SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN != next.getActivityType()) {
+        Assert.assertEquals(next.getConcurrency(), activity.getConcurrency());
+      }
+    }
+  }
+
+  @Test
+  public void rejectOutOfOrderEntitySync() throws Exception {
+    entity = new EntityID("TEST", "test");
+    FetchID first = new FetchID(1L);
+    FetchID second = new FetchID(2L);
+    sendAndAcknowledge();
+    this.testSender.addPassive(node, SyncReplicationActivity.createStartMessage());
+    this.testSender.replicateMessage(node, makeMessage(SyncReplicationActivity.ActivityType.SYNC_BEGIN));
+    this.testSender.replicateMessage(node, SyncReplicationActivity.createStartEntityMessage(entity, 1, first, new byte[0], 0));
+    this.testSender.replicateMessage(node, SyncReplicationActivity.createStartEntityMessage(entity, 1, second, new byte[0], 0));
+    this.testSender.replicateMessage(node, SyncReplicationActivity.createStartEntityKeyMessage(entity, 1, first, 1));
+    // a key of one entity being open says nothing of the other
+    assertRejected(SyncReplicationActivity.createPayloadMessage(entity, 1, second, 1, new byte[0], ""));
+    // nor can an entity be started again while it is syncing
+    assertRejected(SyncReplicationActivity.createStartEntityMessage(entity, 1, first, new byte[0], 0));
+  }
+
+  @Test
+  public void rejectSyncEndBeforeEveryEntityEnded() throws Exception {
+    entity = new EntityID("TEST", "test");
+    FetchID first = new FetchID(1L);
+    FetchID second = new FetchID(2L);
+    sendAndAcknowledge();
+    this.testSender.addPassive(node, SyncReplicationActivity.createStartMessage());
+    this.testSender.replicateMessage(node, makeMessage(SyncReplicationActivity.ActivityType.SYNC_BEGIN));
+    this.testSender.replicateMessage(node, SyncReplicationActivity.createStartEntityMessage(entity, 1, first, new byte[0], 0));
+    this.testSender.replicateMessage(node, SyncReplicationActivity.createStartEntityMessage(entity, 1, second, new byte[0], 0));
+    this.testSender.replicateMessage(node, SyncReplicationActivity.createEndEntityMessage(entity, 1, first));
+    assertRejected(makeMessage(SyncReplicationActivity.ActivityType.SYNC_END));
+  }
+
+  /**
+   * Emulates the network and the passive:  every batch is collected once serialized and acknowledged right away so the
+   *  replication window never closes.
+   */
+  private void sendAndAcknowledge() throws Exception {
+    doAnswer((invoke)-> {
+      ReplicationMessage sending = (ReplicationMessage)invoke.getArguments()[1];
+      TCByteBufferOutput output = new TCByteBufferOutputStream();
+      sending.serializeTo(output);
+      ReplicationMessage receiving = new ReplicationMessage();
+      receiving.deserializeFrom(new TCByteBufferInputStream(output.toArray()));
+      collector.add(receiving);
+      ((Runnable)invoke.getArguments()[2]).run();
+      this.testSender.acknowledged(node, sending.getSequenceID());
+      return null;
+    }).when(groupMgr).sendToWithSentCallback(Matchers.any(NodeID.class), Matchers.any(ReplicationMessage.class), Matchers.any(Runnable.class));
+  }
+
+  private void assertRejected(SyncReplicationActivity activity) {
+    boolean rejected = false;
+    try {
+      this.testSender.replicateMessage(node, activity);
+    } catch (AssertionError e) {
+      rejected = true;
+    }
+    Assert.assertTrue(activity, rejected);
+  }
+
+  private SyncReplicationActivity makeInvoke(FetchID fetchID, int key) {
+    return SyncReplicationActivity.createInvokeMessage(fetchID, new ClientID(1), TransactionID.NULL_ID, TransactionID.NULL_ID, SyncReplicationActivity.ActivityType.INVOKE_ACTION, new byte[0], key, "");
+  }
+  
   private void validateCollector(Collection<SyncReplicationActivity> valid) {
     Iterator<SyncReplicationActivity> next = valid.iterator();
     collector.stream().forEach(msg->{
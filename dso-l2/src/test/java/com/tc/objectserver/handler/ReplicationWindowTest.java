@@ -0,0 +1,109 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ReplicationWindowTest {
+
+  @Test
+  public void testWindowBoundsOutstandingBatches() {
+    ReplicationWindow window = new ReplicationWindow(2, 2, 2);
+    assertTrue(window.isOpen());
+    window.sent(0, 0);
+    window.sent(1, 0);
+    assertFalse(window.isOpen());
+    // acknowledgements are cumulative and stale ones change nothing
+    assertTrue(window.acknowledged(0, 100));
+    assertTrue(window.isOpen());
+    assertFalse(window.acknowledged(0, 200));
+    window.sent(2, 200);
+    assertTrue(window.acknowledged(2, 300));
+    assertEquals(0, window.getOutstanding());
+    assertEquals(2, window.getSize());
+  }
+
+  @Test
+  public void testWindowGrowsWhileRoundTripIsSteady() {
+    ReplicationWindow window = new ReplicationWindow(1, 1, 4);
+    long now = 0;
+    long id = 0;
+    for (int round = 0; round < 10; ++round) {
+      int size = window.getSize();
+      for (int i = 0; i < size; ++i) {
+        window.sent(id++, now);
+      }
+      now += 1000;
+      window.acknowledged(id - 1, now);
+    }
+    assertEquals(4, window.getSize());
+  }
+
+  @Test
+  public void testWindowShrinksWhenBatchesQueue() {
+    ReplicationWindow window = new ReplicationWindow(8, 1, 8);
+    long now = 0;
+    long id = 0;
+    // learn the base round trip with an idle passive
+    window.sent(id++, now);
+    now += 1000;
+    window.acknowledged(id - 1, now);
+    int before = window.getSize();
+    for (int round = 0; round < 20; ++round) {
+      int size = window.getSize();
+      for (int i = 0; i < size; ++i) {
+        window.sent(id++, now);
+      }
+      // the passive now takes a base round trip per batch, so the whole window queues up
+      now += 1000L * size;
+      window.acknowledged(id - 1, now);
+    }
+    assertTrue(window.getSize() < before);
+    assertTrue(window.getSize() <= 4);
+  }
+
+  @Test
+  public void testStats() {
+    ReplicationWindow window = new ReplicationWindow(4, 1, 8);
+    window.sent(0, 0);
+    window.sent(1, 10);
+    window.sent(2, 20);
+    window.acknowledged(0, 100);
+    Map<String, Long> stats = window.getStats(150);
+    assertEquals(Long.valueOf(2), stats.get("outstandingBatches"));
+    assertEquals(Long.valueOf(2), stats.get("ackLagBatches"));
+    assertEquals(Long.valueOf(140), stats.get("ackLagNanos"));
+    assertEquals(Long.valueOf(100), stats.get("smoothedRttNanos"));
+    assertEquals(Long.valueOf(100), stats.get("baseRttNanos"));
+    assertEquals(Long.valueOf(3), stats.get("sentBatches"));
+    assertEquals(Long.valueOf(1), stats.get("ackedBatches"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadBounds() {
+    new ReplicationWindow(1, 4, 2);
+  }
+}
@@ -29,6 +29,8 @@ import org.terracotta.entity.EntityMessage;
 import com.tc.objectserver.api.Retiree;
 import org.junit.Assert;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -424,6 +426,63 @@ public class RetirementManagerTest {
     Assert.assertThat(toRetire, IsIterableContainingInOrder.contains(invokeRequest1));
   }
 
+  @Test
+  public void testKeysRetireConcurrently() throws Exception {
+    int threadCount = 8;
+    int iterations = 1000;
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < threadCount; ++i) {
+      int concurrencyKey = i + 1;
+      Thread thread = new Thread(() -> {
+        try {
+          for (int j = 0; j < iterations; ++j) {
+            // the second message completes first but still retires after the first one
+            Retiree first = makeResponse();
+            EntityMessage firstMessage = mock(EntityMessage.class);
+            registerWithMessage(first, firstMessage, concurrencyKey);
+            Retiree second = makeResponse();
+            EntityMessage secondMessage = mock(EntityMessage.class);
+            registerWithMessage(second, secondMessage, concurrencyKey);
+
+            Assert.assertEquals(0, this.retirementManager.retireForCompletion(secondMessage).size());
+            Assert.assertThat(this.retirementManager.retireForCompletion(firstMessage), IsIterableContainingInOrder.contains(first, second));
+          }
+        } catch (Throwable t) {
+          failures.add(t);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(Collections.emptyList(), failures);
+    this.retirementManager.entityWasDestroyed();
+  }
+
+  @Test
+  public void testResolvedDeferralLeavesNothingOutstanding() throws Exception {
+    Retiree request = makeResponse();
+    EntityMessage invokeMessage = mock(EntityMessage.class);
+    registerWithMessage(request, invokeMessage, 1);
+    Retiree deferRequest = makeResponse();
+    EntityMessage deferMessage = mock(EntityMessage.class);
+    this.retirementManager.deferRetirement(invokeMessage, deferMessage);
+    Assert.assertEquals(1, this.retirementManager.getState().get("outstandingDeferrals"));
+    registerWithMessage(deferRequest, deferMessage, 2);
+
+    Assert.assertEquals(0, this.retirementManager.retireForCompletion(invokeMessage).size());
+    Assert.assertThat(this.retirementManager.retireForCompletion(deferMessage), IsIterableContainingInOrder.contains(deferRequest, request));
+    Assert.assertEquals(0, this.retirementManager.getState().get("outstandingDeferrals"));
+
+    // and later messages go back to retiring along their key alone
+    sendNormalMessage(1);
+    sendNormalMessage(2);
+    this.retirementManager.entityWasDestroyed();
+  }
+
   private Retiree makeResponse() {
     Retiree request = mock(Retiree.class);
     return request;
@@ -0,0 +1,327 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.async.api.Sink;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.l2.ha.L2HAZapNodeRequestProcessor;
+import com.tc.l2.msg.ReplicationAckTuple;
+import com.tc.l2.msg.ReplicationMessage;
+import com.tc.l2.msg.ReplicationMessageAck;
+import com.tc.l2.msg.ReplicationResultCode;
+import com.tc.l2.msg.SyncReplicationActivity;
+import com.tc.l2.state.StateManager;
+import com.tc.net.ClientID;
+import com.tc.net.NodeID;
+import com.tc.net.ServerID;
+import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.net.groups.GroupManager;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.FetchID;
+import com.tc.object.tx.TransactionID;
+import com.tc.objectserver.api.EntityManager;
+import com.tc.objectserver.api.ManagedEntity;
+import com.tc.objectserver.api.ServerEntityRequest;
+import com.tc.objectserver.entity.ActiveToPassiveReplication;
+import com.tc.objectserver.entity.MessagePayload;
+import com.tc.objectserver.entity.PlatformEntity;
+import com.tc.objectserver.persistence.EntityPersistor;
+import com.tc.objectserver.persistence.Persistor;
+import com.tc.objectserver.persistence.TransactionOrderPersistor;
+import com.tc.properties.TCPropertiesImpl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs a standby passive against its active over a loopback network, drops the connection between them and brings
+ *  it back, to check the passive picks its stream back up from the replay log of the active.
+ */
+public class StandbyPassiveResumeTest {
+  private static final String REPLAY_ENTRIES = "active-passive.replay.entries";
+  private static final String REPLAY_BYTES = "active-passive.replay.bytes";
+
+  private final ServerID active = new ServerID("active", "active".getBytes());
+  private final ServerID passive = new ServerID("passive", "passive".getBytes());
+  private final FetchID fetch = new FetchID(10L);
+  // everything on the network, and the stages of both servers, runs in order on this one thread
+  private final ExecutorService network = Executors.newSingleThreadExecutor();
+  private final AtomicLong queued = new AtomicLong();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private volatile boolean connected = true;
+  // the result of every activity the passive acked as completed
+  private final Map<SyncReplicationActivity.ActivityID, ReplicationResultCode> completed = new ConcurrentHashMap<>();
+
+  private GroupManager<AbstractGroupMessage> activeGroup;
+  private EntityManager entityManager;
+  private StateManager stateManager;
+  private ActiveToPassiveReplication replication;
+  private ReplicatedTransactionHandler rth;
+
+  @Before
+  public void setUp() {
+    TCPropertiesImpl.getProperties().setProperty(REPLAY_BYTES, Integer.toString(1024 * 1024));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    // there is no removing a property so put back the defaults, which turn the replay log off
+    TCPropertiesImpl.getProperties().setProperty(REPLAY_ENTRIES, "0");
+    TCPropertiesImpl.getProperties().setProperty(REPLAY_BYTES, "0");
+    network.shutdownNow();
+  }
+
+  @Test(timeout = 30000)
+  public void testStandbyResumesAfterDisconnect() throws Exception {
+    createServers(16);
+    syncPassive();
+    SyncReplicationActivity live = placeholder();
+    replication.replicateActivity(live, replication.passives()).waitForCompleted();
+    Assert.assertEquals(ReplicationResultCode.SUCCESS, completed.get(live.getActivityID()));
+
+    disconnect();
+    Assert.assertTrue(replication.isResumable(passive));
+    List<SyncReplicationActivity> missed = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      SyncReplicationActivity activity = placeholder();
+      missed.add(activity);
+      replication.replicateActivity(activity, replication.passives()).waitForCompleted();
+    }
+
+    reconnect();
+    // the passive took in everything it missed, without going through a sync
+    for (SyncReplicationActivity activity : missed) {
+      Assert.assertEquals(ReplicationResultCode.SUCCESS, completed.get(activity.getActivityID()));
+    }
+    verify(entityManager, times(1)).resetReferences();
+    verify(activeGroup, never()).zapNode(any(NodeID.class), anyInt(), anyString());
+    Assert.assertFalse(replication.isResumable(passive));
+    // and carries on with the live stream
+    SyncReplicationActivity after = placeholder();
+    replication.replicateActivity(after, replication.passives()).waitForCompleted();
+    Assert.assertEquals(ReplicationResultCode.SUCCESS, completed.get(after.getActivityID()));
+    Assert.assertNull(failure.get());
+  }
+
+  @Test(timeout = 30000)
+  public void testStandbyWhichTookNothingInSinceTheSyncResumes() throws Exception {
+    createServers(16);
+    syncPassive();
+    disconnect();
+    SyncReplicationActivity missed = placeholder();
+    replication.replicateActivity(missed, replication.passives()).waitForCompleted();
+
+    reconnect();
+    Assert.assertEquals(ReplicationResultCode.SUCCESS, completed.get(missed.getActivityID()));
+    verify(activeGroup, never()).zapNode(any(NodeID.class), anyInt(), anyString());
+    Assert.assertNull(failure.get());
+  }
+
+  @Test(timeout = 30000)
+  public void testStandbyIsZappedWhenTheLogDoesNotReachBack() throws Exception {
+    createServers(2);
+    syncPassive();
+    disconnect();
+    for (int i = 0; i < 3; ++i) {
+      replication.replicateActivity(placeholder(), replication.passives()).waitForCompleted();
+    }
+
+    reconnect();
+    verify(activeGroup).zapNode(eq(passive), eq(L2HAZapNodeRequestProcessor.NODE_JOINED_WITH_DIRTY_DB), anyString());
+    Assert.assertFalse(replication.passives().contains(passive));
+    Assert.assertNull(failure.get());
+  }
+
+  @SuppressWarnings("unchecked")
+  private void createServers(int replayEntries) throws Exception {
+    TCPropertiesImpl.getProperties().setProperty(REPLAY_ENTRIES, Integer.toString(replayEntries));
+    // the active side
+    this.activeGroup = mock(GroupManager.class);
+    doAnswer(invocation -> {
+      ReplicationMessage message = roundTrip((ReplicationMessage)invocation.getArguments()[1], new ReplicationMessage(), active);
+      deliver(() -> rth.getEventHandler().handleEvent(message));
+      ((Runnable)invocation.getArguments()[2]).run();
+      return null;
+    }).when(activeGroup).sendToWithSentCallback(eq(passive), any(), any());
+    ReplicationSender sender = new ReplicationSender(activeGroup);
+    Sink<NodeID> senderSink = mock(Sink.class);
+    doAnswer(invocation -> {
+      NodeID node = (NodeID)invocation.getArguments()[0];
+      run(() -> sender.handleEvent(node));
+      return null;
+    }).when(senderSink).addSingleThreaded(any());
+    sender.setSelfSink(senderSink);
+    ProcessTransactionHandler snapshotter = mock(ProcessTransactionHandler.class);
+    when(snapshotter.snapshotEntityList(any(Consumer.class))).then(invocation -> {
+      ((Consumer<List<ManagedEntity>>)invocation.getArguments()[0]).accept(Collections.<ManagedEntity>emptyList());
+      return Collections.emptyList();
+    });
+    this.replication = new ActiveToPassiveReplication(snapshotter, Collections.<NodeID>emptyList(), mock(EntityPersistor.class), sender, activeGroup);
+
+    // the passive side
+    Persistor persistor = mock(Persistor.class);
+    when(persistor.getEntityPersistor()).thenReturn(mock(EntityPersistor.class));
+    when(persistor.getTransactionOrderPersistor()).thenReturn(mock(TransactionOrderPersistor.class));
+    this.stateManager = mock(StateManager.class);
+    when(stateManager.getCurrentState()).thenReturn(StateManager.PASSIVE_STANDBY);
+    this.entityManager = mock(EntityManager.class);
+    ManagedEntity platform = mock(ManagedEntity.class);
+    doAnswer(invocation -> {
+      ((Consumer<byte[]>)invocation.getArguments()[3]).accept(null);
+      return null;
+    }).when(platform).addRequestMessage(any(ServerEntityRequest.class), any(MessagePayload.class), any(Runnable.class), any(Consumer.class), any(Consumer.class));
+    // the platform and the one entity the placeholders are for
+    ManagedEntity entity = mock(ManagedEntity.class);
+    when(entityManager.getEntity(any(EntityDescriptor.class))).then(invocation -> {
+      EntityDescriptor descriptor = (EntityDescriptor)invocation.getArguments()[0];
+      if (descriptor.isIndexed()) {
+        return descriptor.getFetchID().equals(fetch) ? Optional.of(entity) : Optional.empty();
+      } else {
+        return descriptor.getEntityID().equals(PlatformEntity.PLATFORM_ID) ? Optional.of(platform) : Optional.empty();
+      }
+    });
+    GroupManager<AbstractGroupMessage> passiveGroup = mock(GroupManager.class);
+    doAnswer(invocation -> {
+      ReplicationMessageAck ack = roundTrip((ReplicationMessageAck)invocation.getArguments()[1], new ReplicationMessageAck(), passive);
+      for (ReplicationAckTuple tuple : ack.getBatch()) {
+        if (ReplicationResultCode.RECEIVED != tuple.result) {
+          completed.put(tuple.respondTo, tuple.result);
+        }
+      }
+      deliver(() -> replication.batchAckReceived(ack));
+      ((Runnable)invocation.getArguments()[2]).run();
+      return null;
+    }).when(passiveGroup).sendToWithSentCallback(eq(active), any(), any());
+    doAnswer(invocation -> {
+      ReplicationMessageAck request = roundTrip((ReplicationMessageAck)invocation.getArguments()[1], new ReplicationMessageAck(), passive);
+      Assert.assertEquals(ReplicationMessageAck.RESUME_SYNC, request.getType());
+      deliver(() -> replication.resumePassiveSync(passive, request.getResumeFrom()));
+      return null;
+    }).when(passiveGroup).sendTo(eq(active), any());
+    this.rth = new ReplicatedTransactionHandler(stateManager, persistor, entityManager, passiveGroup);
+    Sink<ReplicatedTransactionHandler.SedaToken> ackSink = mock(Sink.class);
+    doAnswer(invocation -> {
+      ReplicatedTransactionHandler.SedaToken token = (ReplicatedTransactionHandler.SedaToken)invocation.getArguments()[0];
+      run(() -> rth.getOutgoingResponseHandler().handleEvent(token));
+      return null;
+    }).when(ackSink).addSingleThreaded(any());
+    this.rth.setOutgoingResponseSink(ackSink);
+  }
+
+  private void syncPassive() throws Exception {
+    replication.enterActiveState();
+    replication.nodeJoined(passive);
+    replication.startPassiveSync(passive);
+    // the passive only moves to standby once it takes in the end of the sync
+    verify(stateManager, timeout(10000)).moveToPassiveStandbyState();
+    settle();
+  }
+
+  private void disconnect() throws Exception {
+    connected = false;
+    settle();
+    replication.nodeLeft(passive);
+    rth.nodeLeft(active);
+  }
+
+  private void reconnect() throws Exception {
+    connected = true;
+    replication.nodeJoined(passive);
+    rth.nodeJoined(active);
+    settle();
+  }
+
+  private SyncReplicationActivity placeholder() {
+    return SyncReplicationActivity.createOrderingPlaceholder(fetch, ClientID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, "");
+  }
+
+  /**
+   * Queues the delivery on the network, it is lost if the servers are disconnected by the time it runs.
+   */
+  private void deliver(Delivery delivery) {
+    run(() -> {
+      if (connected) {
+        delivery.run();
+      }
+    });
+  }
+
+  /**
+   * Queues work a server hands over to one of its own stages, on the same thread as the network to keep it all in order.
+   */
+  private void run(Delivery delivery) {
+    queued.incrementAndGet();
+    network.execute(() -> {
+      try {
+        delivery.run();
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      }
+    });
+  }
+
+  /**
+   * Waits until nothing is left on the network, deliveries may queue more of them.
+   */
+  private void settle() throws Exception {
+    long before;
+    do {
+      before = queued.get();
+      network.submit(() -> {}).get(10, TimeUnit.SECONDS);
+    } while (before != queued.get());
+  }
+
+  private static <M extends AbstractGroupMessage> M roundTrip(AbstractGroupMessage sending, M receiving, NodeID from) throws IOException {
+    TCByteBufferOutputStream output = new TCByteBufferOutputStream();
+    sending.serializeTo(output);
+    receiving.deserializeFrom(new TCByteBufferInputStream(output.toArray()));
+    receiving.setMessageOrginator(from);
+    return receiving;
+  }
+
+  private interface Delivery {
+    void run() throws Exception;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import org.junit.Test;
+
+import com.tc.async.impl.MockSink;
+import com.tc.net.ClientID;
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.ServerLockLevel;
+import com.tc.object.locks.StringLockID;
+import com.tc.object.locks.ThreadID;
+import com.tc.object.net.DSOChannelManagerEventListener;
+import com.tc.object.net.MockChannelManager;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedLockManagerTest {
+  private static final int LOCKS = 100;
+
+  private final CountingSink     sink           = new CountingSink();
+  private final ListeningManager channelManager = new ListeningManager();
+
+  @Test
+  public void testLocksArePartitionedAcrossShards() {
+    ShardedLockManager manager = new ShardedLockManager(sink, channelManager, 4);
+    // every shard listens to the channel manager for departed clients
+    assertEquals(4, channelManager.listeners.size());
+    manager.start();
+
+    ClientID client = new ClientID(1);
+    Set<LockManagerImpl> shards = new HashSet<LockManagerImpl>();
+    for (int i = 0; i < LOCKS; i++) {
+      LockID lid = new StringLockID("lock-" + i);
+      manager.lock(lid, client, new ThreadID(i), ServerLockLevel.WRITE);
+      shards.add(manager.getShard(lid));
+      assertEquals(manager.indexFor(lid), manager.indexFor(new StringLockID("lock-" + i)));
+    }
+    assertEquals(4, shards.size());
+    assertEquals(LOCKS, manager.getLockCount());
+    assertEquals(LOCKS, manager.getAllLocks().length);
+    assertEquals(LOCKS, sink.count.get());
+
+    for (int i = 0; i < LOCKS; i++) {
+      manager.unlock(new StringLockID("lock-" + i), client, new ThreadID(i));
+    }
+    assertEquals(0, manager.getLockCount());
+  }
+
+  @Test
+  public void testRequestsWaitForStart() {
+    ShardedLockManager manager = new ShardedLockManager(sink, channelManager, 3);
+    ClientID client = new ClientID(1);
+    for (int i = 0; i < LOCKS; i++) {
+      manager.lock(new StringLockID("lock-" + i), client, new ThreadID(i), ServerLockLevel.READ);
+    }
+    assertEquals(0, manager.getLockCount());
+
+    manager.start();
+    assertEquals(LOCKS, manager.getLockCount());
+
+    manager.clearAllLocksFor(client);
+    assertEquals(0, manager.getLockCount());
+    assertTrue(sink.count.get() >= LOCKS);
+  }
+
+  private static class ListeningManager extends MockChannelManager {
+    private final Set<DSOChannelManagerEventListener> listeners = new HashSet<DSOChannelManagerEventListener>();
+
+    @Override
+    public void addEventListener(DSOChannelManagerEventListener listener) {
+      listeners.add(listener);
+    }
+  }
+
+  private static class CountingSink extends MockSink<LockResponseContext> {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public void addMultiThreaded(LockResponseContext context) {
+      count.incrementAndGet();
+    }
+  }
+}
@@ -229,4 +229,67 @@ public class EntityPersistorTest extends TCTestCase {
     this.entityPersistor.removeOrphanedClientsFromJournal(Collections.emptySet());
     Assert.assertFalse(this.entityPersistor.wasEntityCreatedInJournal(client, 1L));
   }
+
+  /**
+   * Test that a reload gets back what was compacted into the snapshot as well as what was only appended to the journal.
+   */
+  public void testReloadReplaysJournalOverSnapshot() throws Exception {
+    NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
+    EntityPersistor persistor = new EntityPersistor(storage, 4);
+    persistor.addTrackingForClient(client);
+    EntityID first = new EntityID("class name", "first");
+    EntityID second = new EntityID("class name", "second");
+    persistor.entityCreated(client, 1L, 1L, first, 1L, 1L, true, new byte[0]);
+    persistor.entityCreated(client, 2L, 1L, second, 1L, 2L, true, new byte[0]);
+    persistor.entityReconfigureSucceeded(client, 3L, 1L, second, 1L, new byte[] { 1 });
+    persistor.entityDestroyed(client, 4L, 1L, first);
+    Assert.assertEquals(1L, persistor.getNextConsumerID());
+    // only the changes made since the last compaction are still logged
+    Assert.assertEquals(2, countJournalRecords(storage));
+
+    persistor = new EntityPersistor(storage, 4);
+    Assert.assertEquals(1, persistor.loadEntityData().size());
+    EntityData.Value value = persistor.loadEntityData().iterator().next();
+    Assert.assertEquals("second", value.entityName);
+    Assert.assertArrayEquals(new byte[] { 1 }, value.configuration);
+    Assert.assertTrue(persistor.wasEntityCreatedInJournal(client, 1L));
+    Assert.assertTrue(persistor.wasEntityDestroyedInJournal(client, 4L));
+    Assert.assertEquals(2L, persistor.getNextConsumerID());
+  }
+
+  /**
+   * Test that replay stops at a damaged record and that the records after it are not replayed later on.
+   */
+  public void testDamagedJournalRecordEndsReplay() throws Exception {
+    NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
+    EntityPersistor persistor = new EntityPersistor(storage);
+    persistor.addTrackingForClient(client);
+    persistor.entityCreated(client, 1L, 1L, new EntityID("class name", "first"), 1L, 1L, true, new byte[0]);
+    persistor.entityCreated(client, 2L, 1L, new EntityID("class name", "second"), 1L, 2L, true, new byte[0]);
+    Assert.assertEquals(5, countJournalRecords(storage));
+    // the entity put of the second create
+    storage.storeDataElement("entity_journal_3.log", "garbage");
+
+    persistor = new EntityPersistor(storage);
+    Assert.assertEquals(1, persistor.loadEntityData().size());
+    Assert.assertEquals(3, countJournalRecords(storage));
+    Assert.assertTrue(persistor.wasEntityCreatedInJournal(client, 1L));
+    Assert.assertFalse(persistor.wasEntityCreatedInJournal(client, 2L));
+
+    persistor.entityCreated(client, 3L, 1L, new EntityID("class name", "third"), 1L, 3L, true, new byte[0]);
+    persistor = new EntityPersistor(storage);
+    Assert.assertEquals(2, persistor.loadEntityData().size());
+    Assert.assertTrue(persistor.wasEntityCreatedInJournal(client, 3L));
+    Assert.assertFalse(persistor.wasEntityCreatedInJournal(client, 2L));
+  }
+
+  private static int countJournalRecords(NullPlatformPersistentStorage storage) {
+    int count = 0;
+    for (String name : storage.nameToDataMap.keySet()) {
+      if (name.startsWith("entity_journal_") && name.endsWith(".log")) {
+        count += 1;
+      }
+    }
+    return count;
+  }
 }
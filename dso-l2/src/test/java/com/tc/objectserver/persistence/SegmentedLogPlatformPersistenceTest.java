@@ -0,0 +1,216 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.terracotta.persistence.IPlatformPersistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class SegmentedLogPlatformPersistenceTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReopenRestoresDataAndSequences() throws Exception {
+    File directory = folder.newFolder();
+    SegmentedLogPlatformPersistence persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    HashMap<String, Long> counters = new HashMap<>();
+    counters.put("counter", 7L);
+    persistence.storeDataElement("gone", "value");
+    persistence.storeDataElement("counters", counters);
+    persistence.storeDataElement("gone", null);
+    for (long i = 1; i <= 5; ++i) {
+      persistence.fastStoreSequence(1L, tuple(i, i * 10), i - 1).get(10, TimeUnit.SECONDS);
+      persistence.fastStoreSequence(2L, tuple(i, i * 10 + 1), 0L).get(10, TimeUnit.SECONDS);
+    }
+    persistence.deleteSequence(2L);
+    persistence.close();
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    assertNull(persistence.loadDataElement("gone"));
+    assertEquals(counters, persistence.loadDataElement("counters"));
+    assertEquals(counters, persistence.loadDataElementInLoader("counters", getClass().getClassLoader()));
+    List<IPlatformPersistence.SequenceTuple> sequence = persistence.loadSequence(1L);
+    // each update completed the one before it
+    assertEquals(2, sequence.size());
+    assertEquals(4L, sequence.get(0).localSequenceID);
+    assertEquals(50L, sequence.get(1).globalSequenceID);
+    assertNull(persistence.loadSequence(2L));
+    persistence.close();
+  }
+
+  @Test
+  public void testRecoveryStopsAtDamagedRecord() throws Exception {
+    File directory = folder.newFolder();
+    SegmentedLogPlatformPersistence persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    persistence.storeDataElement("first", "one");
+    persistence.storeDataElement("second", "two");
+    persistence.storeDataElement("third", "three");
+    persistence.close();
+
+    // flip the last byte written, which belongs to the record of the third element
+    File[] segments = directory.listFiles();
+    assertEquals(1, segments.length);
+    try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+      byte[] content = new byte[(int) file.length()];
+      file.readFully(content);
+      int last = content.length - 1;
+      while (content[last] == 0) {
+        last -= 1;
+      }
+      file.seek(last);
+      file.write(content[last] ^ 0xFF);
+    }
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    assertEquals("one", persistence.loadDataElement("first"));
+    assertEquals("two", persistence.loadDataElement("second"));
+    assertNull(persistence.loadDataElement("third"));
+    persistence.storeDataElement("fourth", "four");
+    persistence.close();
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    assertEquals("two", persistence.loadDataElement("second"));
+    assertNull(persistence.loadDataElement("third"));
+    assertEquals("four", persistence.loadDataElement("fourth"));
+    persistence.close();
+  }
+
+  @Test
+  public void testCompactionKeepsLiveData() throws Exception {
+    File directory = folder.newFolder();
+    SegmentedLogPlatformPersistence persistence = new SegmentedLogPlatformPersistence(directory, 1024, 1L);
+    persistence.fastStoreSequence(1L, tuple(1L, 1L), 0L);
+    byte[] value = new byte[300];
+    for (int i = 0; i < 100; ++i) {
+      Arrays.fill(value, (byte) i);
+      persistence.storeDataElement("overwritten", value);
+    }
+    persistence.close();
+    // the log has rolled over many times but only the live data was kept, in segments which all hold records but the
+    //  newest one, which can have just been rolled over to
+    File[] segments = directory.listFiles();
+    Arrays.sort(segments);
+    assertTrue(segments.length <= 5);
+    for (int i = 0; i < segments.length - 1; ++i) {
+      assertTrue(segments[i].getName(), hasRecords(segments[i]));
+    }
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 1024, 1L);
+    Arrays.fill(value, (byte) 99);
+    assertTrue(Arrays.equals(value, (byte[]) persistence.loadDataElement("overwritten")));
+    assertEquals(1, persistence.loadSequence(1L).size());
+    persistence.close();
+  }
+
+  @Test
+  public void testWritesCarryOnWhileCompacting() throws Exception {
+    File directory = folder.newFolder();
+    SegmentedLogPlatformPersistence persistence = new SegmentedLogPlatformPersistence(directory, 1024, 0L);
+    byte[] value = new byte[300];
+    for (int i = 0; i < 200; ++i) {
+      Arrays.fill(value, (byte) i);
+      persistence.storeDataElement("element-" + (i % 3), value);
+      persistence.fastStoreSequence(1L, tuple(i, i), i - 1);
+    }
+    persistence.close();
+    assertTrue(directory.listFiles().length <= 5);
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 1024, 0L);
+    for (int i = 197; i < 200; ++i) {
+      Arrays.fill(value, (byte) i);
+      assertTrue(Arrays.equals(value, (byte[]) persistence.loadDataElement("element-" + (i % 3))));
+    }
+    List<IPlatformPersistence.SequenceTuple> sequence = persistence.loadSequence(1L);
+    assertEquals(2, sequence.size());
+    assertEquals(199L, sequence.get(1).localSequenceID);
+    persistence.close();
+  }
+
+  @Test
+  public void testUnfinishedCheckpointOnlyDiscardsItself() throws Exception {
+    File directory = folder.newFolder();
+    SegmentedLogPlatformPersistence persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    persistence.storeDataElement("first", "one");
+    persistence.close();
+
+    // the records go after a checkpoint which was cut short while it was being written
+    File[] segments = directory.listFiles();
+    assertEquals(1, segments.length);
+    assertTrue(segments[0].renameTo(new File(directory, "segment-0000000000000002.log")));
+    File checkpoint = new File(directory, "segment-0000000000000001.log");
+    try (DataOutputStream output = new DataOutputStream(new FileOutputStream(checkpoint))) {
+      byte[] begin = { 4 };
+      CRC32 crc = new CRC32();
+      crc.update(begin, 0, begin.length);
+      output.writeInt(begin.length);
+      output.writeInt((int) crc.getValue());
+      output.write(begin);
+      // a record which never made it to the file in full
+      output.writeInt(20);
+      output.writeInt(0);
+      output.write(new byte[] { 1, 0 });
+      output.write(new byte[64]);
+    }
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    assertEquals("one", persistence.loadDataElement("first"));
+    assertFalse(checkpoint.exists());
+    persistence.storeDataElement("second", "two");
+    persistence.close();
+
+    persistence = new SegmentedLogPlatformPersistence(directory, 4096, 0L);
+    assertEquals("one", persistence.loadDataElement("first"));
+    assertEquals("two", persistence.loadDataElement("second"));
+    persistence.close();
+  }
+
+  private static boolean hasRecords(File segment) throws IOException {
+    try (DataInputStream input = new DataInputStream(new FileInputStream(segment))) {
+      return 0 != input.readInt();
+    }
+  }
+
+  private static IPlatformPersistence.SequenceTuple tuple(long local, long global) {
+    IPlatformPersistence.SequenceTuple tuple = new IPlatformPersistence.SequenceTuple();
+    tuple.localSequenceID = local;
+    tuple.globalSequenceID = global;
+    return tuple;
+  }
+}
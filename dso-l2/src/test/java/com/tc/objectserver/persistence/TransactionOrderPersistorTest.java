@@ -25,7 +25,11 @@ import com.tc.test.TCTestCase;
 import com.tc.util.ProductID;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 public class TransactionOrderPersistorTest extends TCTestCase {
@@ -243,6 +247,73 @@ public class TransactionOrderPersistorTest extends TCTestCase {
     assertEquals(0, this.orderPersistor.getIndexToReplay(this.client1, newTransaction));
   }
 
+  /**
+   * Test that group commit stores what a later update doesn't show as complete and completes every future.
+   */
+  public void testGroupCommit() throws Exception {
+    NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
+    TransactionOrderPersistor persistor = new TransactionOrderPersistor(storage, Collections.emptySet(), true, 0L);
+    persistor.addTrackingForClient(client1, ProductID.PERMANENT);
+    persistor.addTrackingForClient(client2, ProductID.PERMANENT);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 1; i < 10; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      futures.add(persistor.updateWithNewMessage(client1, transaction, new TransactionID(0)));
+      futures.add(persistor.updateWithNewMessage(client2, transaction, new TransactionID(i)));
+    }
+    for (Future<Void> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    // the global order survives the grouping
+    assertEquals(0, persistor.getIndexToReplay(client1, new TransactionID(1)));
+    assertEquals(8, persistor.getIndexToReplay(client1, new TransactionID(9)));
+    assertEquals(9, persistor.getIndexToReplay(client2, new TransactionID(9)));
+    assertEquals(-1, persistor.getIndexToReplay(client2, new TransactionID(8)));
+    assertEquals(9, storage.loadSequence(client1.toLong()).size());
+    // each update of client2 completes the ones before it
+    assertEquals(1, storage.loadSequence(client2.toLong()).size());
+    persistor.close();
+    
+    // once closed, updates are stored as they come
+    persistor.updateWithNewMessage(client1, new TransactionID(10), new TransactionID(0)).get(10, TimeUnit.SECONDS);
+    assertEquals(10, storage.loadSequence(client1.toLong()).size());
+  }
+
+  /**
+   * Test that regular clients take part in the global order and that a reload picks up the order of permanent clients.
+   */
+  public void testRegularClientAndReloadKeepOrder() throws Exception {
+    NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
+    TransactionOrderPersistor persistor = new TransactionOrderPersistor(storage, Collections.emptySet());
+    ClientID regular = new ClientID(3);
+    persistor.addTrackingForClient(client1, ProductID.PERMANENT);
+    persistor.addTrackingForClient(regular, ProductID.STRIPE);
+    // enough in flight at once for the tracking of each client to wrap and grow
+    for (int i = 1; i <= 40; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      TransactionID oldest = new TransactionID(Math.max(1, i - 20));
+      persistor.updateWithNewMessage(client1, transaction, oldest);
+      persistor.updateWithNewMessage(regular, transaction, oldest);
+    }
+    assertEquals(80, persistor.getReceivedTransactionCount());
+    assertEquals(-1, persistor.getIndexToReplay(client1, new TransactionID(19)));
+    assertEquals(0, persistor.getIndexToReplay(client1, new TransactionID(20)));
+    assertEquals(1, persistor.getIndexToReplay(regular, new TransactionID(20)));
+    assertEquals(40, persistor.getIndexToReplay(client1, new TransactionID(40)));
+    assertEquals(41, persistor.getIndexToReplay(regular, new TransactionID(40)));
+
+    // only the permanent client is known after a restart, and numbering carries on after its last transaction
+    persistor = new TransactionOrderPersistor(storage, Collections.singleton(client1));
+    assertEquals(79, persistor.getReceivedTransactionCount());
+    assertEquals(0, persistor.getIndexToReplay(client1, new TransactionID(20)));
+    assertEquals(20, persistor.getIndexToReplay(client1, new TransactionID(40)));
+    assertEquals(-1, persistor.getIndexToReplay(regular, new TransactionID(40)));
+    persistor.updateWithNewMessage(client1, new TransactionID(41), new TransactionID(21));
+    assertEquals(80, persistor.getReceivedTransactionCount());
+    assertEquals(-1, persistor.getIndexToReplay(client1, new TransactionID(20)));
+    assertEquals(20, persistor.getIndexToReplay(client1, new TransactionID(41)));
+  }
+
   public void testSaveReloadEmpty() throws IOException {
     // Create the storage.
     NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
@@ -159,6 +159,26 @@ public class NullTCServerInfo extends AbstractTerracottaMBean implements TCServe
     return null;
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencies() {
+    return null;
+  }
+
+  @Override
+  public void resetStageLatencies() {
+    // nothing to reset
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getReplicationWindows() {
+    return null;
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getReplicationCompression() {
+    return null;
+  }
+
   @Override
   public long getMaxMemory() {
     return 0;
@@ -0,0 +1,259 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class TimingWheelTimerTest {
+  private static final long TICK_MILLIS = 10;
+  // A small wheel so that longer delays go through the overflow wheels.
+  private static final int WHEEL_SIZE = 8;
+  private static final long INTERVAL_MILLIS = 100;
+
+  private TestTimeSource source;
+  private TimingWheelTimer timer;
+
+
+  @Before
+  public void setUp() throws Exception {
+    this.source = new TestTimeSource(1);
+    this.timer = new TimingWheelTimer(this.source, TICK_MILLIS, WHEEL_SIZE, 1);
+    this.timer.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.timer.stop();
+  }
+
+  @Test
+  public void testRunOneTask() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    final CountDownLatch latch = new CountDownLatch(1);
+    this.timer.addDelayed(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }}, startTime);
+    // Just short of the start time, it must not run.
+    this.source.passTime(INTERVAL_MILLIS - 1);
+    this.timer.poke();
+    Assert.assertEquals(1, latch.getCount());
+    this.source.passTime(1);
+    this.timer.poke();
+    Assert.assertEquals(0, latch.getCount());
+  }
+
+  @Test
+  public void testRunPeriodicTask() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    final AtomicInteger counter = new AtomicInteger();
+    this.timer.addPeriodic(new Runnable() {
+      @Override
+      public void run() {
+        counter.incrementAndGet();
+      }}, startTime, INTERVAL_MILLIS);
+    // Missed periods are caught up on.
+    this.source.passTime(3 * INTERVAL_MILLIS);
+    this.timer.poke();
+    Assert.assertEquals(3, counter.get());
+    this.source.passTime(INTERVAL_MILLIS / 2);
+    this.timer.poke();
+    Assert.assertEquals(3, counter.get());
+    this.source.passTime(INTERVAL_MILLIS / 2);
+    this.timer.poke();
+    Assert.assertEquals(4, counter.get());
+  }
+
+  @Test
+  public void testTasksThroughOverflowWheels() throws Exception {
+    final int count = 50;
+    final AtomicInteger counter = new AtomicInteger();
+    Runnable increment = new Runnable() {
+      @Override
+      public void run() {
+        counter.incrementAndGet();
+      }};
+    long now = this.source.currentTimeMillis();
+    for (int i = 1; i <= count; ++i) {
+      // Spread over several revolutions of each of the first wheels.
+      this.timer.addDelayed(increment, now + (i * i * 37));
+    }
+    int expected = 0;
+    for (int i = 1; i <= count; ++i) {
+      long startTime = now + (i * i * 37);
+      this.source.passTime(startTime - 1 - this.source.currentTimeMillis());
+      this.timer.poke();
+      Assert.assertEquals(expected, counter.get());
+      this.source.passTime(1);
+      this.timer.poke();
+      expected += 1;
+      Assert.assertEquals(expected, counter.get());
+    }
+  }
+
+  @Test
+  public void testTasksInOneTickRunInStartTimeOrder() throws Exception {
+    long now = this.source.currentTimeMillis();
+    // All land in the same tick, added out of start time order.
+    Assert.assertEquals((now + 2) / TICK_MILLIS, (now + 7) / TICK_MILLIS);
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    this.timer.addDelayed(new Recorder(order, "second"), now + 5);
+    this.timer.addDelayed(new Recorder(order, "first"), now + 2);
+    this.timer.addDelayed(new Recorder(order, "third"), now + 7);
+    this.source.passTime(TICK_MILLIS);
+    this.timer.poke();
+    Assert.assertEquals(Arrays.asList("first", "second", "third"), order);
+  }
+
+  @Test
+  public void testTasksWithOneStartTimeRunInAddedOrder() throws Exception {
+    // Some start far enough out to come back from an overflow wheel into the same bucket as the others.
+    long startTime = this.source.currentTimeMillis() + (WHEEL_SIZE * TICK_MILLIS) + 5;
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20; ++i) {
+      this.timer.addDelayed(new Recorder(order, "task" + i), startTime);
+      expected.add("task" + i);
+      if (5 == i) {
+        this.source.passTime(WHEEL_SIZE * TICK_MILLIS);
+        this.timer.poke();
+      }
+    }
+    this.source.passTime(startTime - this.source.currentTimeMillis());
+    this.timer.poke();
+    Assert.assertEquals(expected, order);
+  }
+
+  @Test
+  public void testAlreadyDueTasksRunInStartTimeOrder() throws Exception {
+    this.source.passTime(INTERVAL_MILLIS);
+    this.timer.poke();
+    long now = this.source.currentTimeMillis();
+    // Both are already due when added, out of start time order, so they must still wait for the tick thread to order them.
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    this.timer.addDelayed(new Recorder(order, "second"), now - 3);
+    this.timer.addDelayed(new Recorder(order, "first"), now - 8);
+    this.timer.poke();
+    Assert.assertEquals(Arrays.asList("first", "second"), order);
+  }
+
+  @Test
+  public void cancelTask() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    final AtomicBoolean bool = new AtomicBoolean(false);
+    long id = this.timer.addDelayed(new Runnable() {
+      @Override
+      public void run() {
+        bool.set(true);
+      }}, startTime);
+    Assert.assertTrue(id > 0);
+    Assert.assertTrue(this.timer.cancel(id));
+    Assert.assertFalse(this.timer.cancel(id));
+    this.source.passTime(INTERVAL_MILLIS);
+    this.timer.poke();
+    Assert.assertFalse(bool.get());
+  }
+
+  @Test
+  public void cancelPeriodTaskWhileRunning() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    SelfDestructingRunnable runnable = new SelfDestructingRunnable();
+    final long id = this.timer.addPeriodic(runnable, startTime, INTERVAL_MILLIS);
+    Assert.assertTrue(id > 0);
+    runnable.setToCancel(this.timer, id);
+    this.source.passTime(2 * INTERVAL_MILLIS);
+    this.timer.poke();
+    Assert.assertEquals(1, runnable.getCounter());
+    Assert.assertTrue(runnable.didCancel());
+  }
+
+  @Test
+  public void cancelAll() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    Runnable increment = new Runnable() {
+      @Override
+      public void run() {
+        counter.incrementAndGet();
+      }};
+    long now = this.source.currentTimeMillis();
+    for (int i = 1; i <= 1000; ++i) {
+      this.timer.addDelayed(increment, now + i);
+      this.timer.addPeriodic(increment, now + i, INTERVAL_MILLIS);
+    }
+    this.timer.cancelAll();
+    this.source.passTime(10 * INTERVAL_MILLIS);
+    this.timer.poke();
+    Assert.assertEquals(0, counter.get());
+  }
+
+
+  private static class Recorder implements Runnable {
+    private final List<String> order;
+    private final String name;
+
+    public Recorder(List<String> order, String name) {
+      this.order = order;
+      this.name = name;
+    }
+
+    @Override
+    public void run() {
+      this.order.add(this.name);
+    }
+  }
+
+  private static class SelfDestructingRunnable implements Runnable {
+    private TimingWheelTimer timer;
+    private long id;
+    private volatile int counter = 0;
+    private volatile boolean didCancel = false;
+    
+    public void setToCancel(TimingWheelTimer timer, long id) {
+      this.timer = timer;
+      this.id = id;
+    }
+    
+    public int getCounter() {
+      return this.counter;
+    }
+    
+    public boolean didCancel() {
+      return this.didCancel;
+    }
+    
+    @Override
+    public void run() {
+      this.counter += 1;
+      this.didCancel = this.timer.cancel(this.id);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import java.nio.ByteBuffer;
+
+import org.terracotta.entity.MessageCodec;
+import org.terracotta.entity.MessageCodecException;
+
+
+/**
+ * Encodes a {@link LoadMessage} as its concurrency key followed by its payload, and a {@link LoadResponse} as its length.
+ */
+public class LoadCodec implements MessageCodec<LoadMessage, LoadResponse> {
+  @Override
+  public byte[] encodeMessage(LoadMessage message) throws MessageCodecException {
+    return ByteBuffer.allocate(4 + message.payload.length).putInt(message.concurrencyKey).put(message.payload).array();
+  }
+
+  @Override
+  public LoadMessage decodeMessage(byte[] bytes) throws MessageCodecException {
+    if (bytes.length < 4) {
+      throw new MessageCodecException("Load message too short: " + bytes.length + " bytes", null);
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int concurrencyKey = buffer.getInt();
+    byte[] payload = new byte[buffer.remaining()];
+    buffer.get(payload);
+    return new LoadMessage(concurrencyKey, payload);
+  }
+
+  @Override
+  public byte[] encodeResponse(LoadResponse response) throws MessageCodecException {
+    return ByteBuffer.allocate(4).putInt(response.length).array();
+  }
+
+  @Override
+  public LoadResponse decodeResponse(byte[] bytes) throws MessageCodecException {
+    return new LoadResponse(ByteBuffer.wrap(bytes).getInt());
+  }
+}
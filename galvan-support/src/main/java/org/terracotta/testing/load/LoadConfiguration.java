@@ -0,0 +1,89 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * What a {@link LoadHarness} run starts and drives: a stripe of one active and the given number of passives on
+ * localhost, clients each with their own connection to it, and worker threads in every client invoking the mixes
+ * against the entities back to back.
+ */
+public class LoadConfiguration {
+  public static final String PREFIX = "load.";
+
+  public final String name;
+  public final int passives;
+  public final int clients;
+  public final int threadsPerClient;
+  public final int entities;
+  public final List<LoadMix> mixes;
+  public final int warmupSeconds;
+  public final int durationSeconds;
+  public final File clusterDirectory;
+  public final File outputDirectory;
+
+  public LoadConfiguration(String name, int passives, int clients, int threadsPerClient, int entities, List<LoadMix> mixes,
+                           int warmupSeconds, int durationSeconds, File clusterDirectory, File outputDirectory) {
+    if (passives < 0 || clients < 1 || threadsPerClient < 1 || entities < 1) {
+      throw new IllegalArgumentException("Need no negative passive count and at least one client, thread and entity");
+    }
+    if (mixes.isEmpty()) {
+      throw new IllegalArgumentException("Need at least one mix");
+    }
+    if (warmupSeconds < 0 || durationSeconds < 1) {
+      throw new IllegalArgumentException("Need no negative warmup and a duration of at least a second");
+    }
+    this.name = name;
+    this.passives = passives;
+    this.clients = clients;
+    this.threadsPerClient = threadsPerClient;
+    this.entities = entities;
+    this.mixes = Collections.unmodifiableList(mixes);
+    this.warmupSeconds = warmupSeconds;
+    this.durationSeconds = durationSeconds;
+    this.clusterDirectory = clusterDirectory;
+    this.outputDirectory = outputDirectory;
+  }
+
+  /**
+   * Reads the configuration from the "load." properties, such as the system properties given to
+   * {@link LoadHarness#main(String[])}, with defaults for those missing.
+   */
+  public static LoadConfiguration fromProperties(Properties properties) {
+    return new LoadConfiguration(
+        properties.getProperty(PREFIX + "name", "load"),
+        Integer.parseInt(properties.getProperty(PREFIX + "passives", "0")),
+        Integer.parseInt(properties.getProperty(PREFIX + "clients", "1")),
+        Integer.parseInt(properties.getProperty(PREFIX + "threadsPerClient", "4")),
+        Integer.parseInt(properties.getProperty(PREFIX + "entities", "1")),
+        LoadMix.parse(properties.getProperty(PREFIX + "mixes", "1:128:16:retired")),
+        Integer.parseInt(properties.getProperty(PREFIX + "warmupSeconds", "10")),
+        Integer.parseInt(properties.getProperty(PREFIX + "durationSeconds", "30")),
+        new File(properties.getProperty(PREFIX + "clusterDirectory", "target/load-cluster")),
+        new File(properties.getProperty(PREFIX + "outputDirectory", "target/load-results")));
+  }
+
+  @Override
+  public String toString() {
+    return name + ": " + passives + " passive(s), " + clients + " client(s) of " + threadsPerClient + " thread(s), "
+        + entities + " entities, mixes " + mixes + ", " + warmupSeconds + "s warmup, " + durationSeconds + "s measured";
+  }
+}
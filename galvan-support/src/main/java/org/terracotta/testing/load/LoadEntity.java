@@ -0,0 +1,71 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import org.terracotta.connection.entity.Entity;
+import org.terracotta.entity.EntityClientEndpoint;
+import org.terracotta.entity.InvocationBuilder;
+import org.terracotta.entity.InvokeFuture;
+import org.terracotta.entity.MessageCodecException;
+import org.terracotta.exception.EntityException;
+
+
+/**
+ * The client side of the entity {@link LoadHarness} drives.  It does nothing but answer invokes, so what is measured is
+ * the platform's cost of getting an invoke to the entity, replicated and acknowledged.
+ */
+public class LoadEntity implements Entity {
+  public static final long VERSION = 1;
+
+  private final EntityClientEndpoint<LoadMessage, LoadResponse> endpoint;
+
+  public LoadEntity(EntityClientEndpoint<LoadMessage, LoadResponse> endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * Invokes the message and returns once the given acknowledgement arrived: the invoke itself blocks until the sent or
+   * received acks, and the response is waited for when the completed or retired ones are asked for.
+   */
+  public void invoke(LoadMessage message, LoadMix.Ack ack, boolean replicate) throws MessageCodecException, EntityException, InterruptedException {
+    InvocationBuilder<LoadMessage, LoadResponse> builder = this.endpoint.beginInvoke().message(message).replicate(replicate);
+    switch (ack) {
+      case SENT:
+        builder.ackSent();
+        break;
+      case RECEIVED:
+        builder.ackReceived();
+        break;
+      case COMPLETED:
+        builder.ackCompleted().blockGetOnRetire(false);
+        break;
+      case RETIRED:
+        builder.ackRetired().blockGetOnRetire(true);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown ack " + ack);
+    }
+    InvokeFuture<LoadResponse> response = builder.invoke();
+    if (ack == LoadMix.Ack.COMPLETED || ack == LoadMix.Ack.RETIRED) {
+      response.get();
+    }
+  }
+
+  @Override
+  public void close() {
+    this.endpoint.close();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import org.terracotta.entity.EntityClientEndpoint;
+import org.terracotta.entity.EntityClientService;
+import org.terracotta.entity.MessageCodec;
+
+
+public class LoadEntityClientService implements EntityClientService<LoadEntity, Void, LoadMessage, LoadResponse, Void> {
+  @Override
+  public boolean handlesEntityType(Class<LoadEntity> type) {
+    return LoadEntity.class == type;
+  }
+
+  @Override
+  public byte[] serializeConfiguration(Void configuration) {
+    return new byte[0];
+  }
+
+  @Override
+  public Void deserializeConfiguration(byte[] configuration) {
+    return null;
+  }
+
+  @Override
+  public LoadEntity create(EntityClientEndpoint<LoadMessage, LoadResponse> endpoint, Void userData) {
+    return new LoadEntity(endpoint);
+  }
+
+  @Override
+  public MessageCodec<LoadMessage, LoadResponse> getMessageCodec() {
+    return new LoadCodec();
+  }
+}
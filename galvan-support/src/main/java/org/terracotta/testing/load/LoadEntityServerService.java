@@ -0,0 +1,171 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.terracotta.entity.ActiveServerEntity;
+import org.terracotta.entity.ClientDescriptor;
+import org.terracotta.entity.ConcurrencyStrategy;
+import org.terracotta.entity.EntityServerService;
+import org.terracotta.entity.InvokeContext;
+import org.terracotta.entity.MessageCodec;
+import org.terracotta.entity.MessageCodecException;
+import org.terracotta.entity.PassiveServerEntity;
+import org.terracotta.entity.PassiveSynchronizationChannel;
+import org.terracotta.entity.ServiceRegistry;
+import org.terracotta.entity.SyncMessageCodec;
+
+
+/**
+ * The server side of {@link LoadEntity}.  {@link LoadHarness} packages this class, its nested classes and the message
+ * classes into a jar it gives the servers, so none of them may use anonymous classes.
+ */
+public class LoadEntityServerService implements EntityServerService<LoadMessage, LoadResponse> {
+  @Override
+  public long getVersion() {
+    return LoadEntity.VERSION;
+  }
+
+  @Override
+  public boolean handlesEntityType(String typeName) {
+    // by name, as the client side classes are not given to the servers
+    return "org.terracotta.testing.load.LoadEntity".equals(typeName);
+  }
+
+  @Override
+  public ActiveServerEntity<LoadMessage, LoadResponse> createActiveEntity(ServiceRegistry registry, byte[] configuration) {
+    return new Active();
+  }
+
+  @Override
+  public PassiveServerEntity<LoadMessage, LoadResponse> createPassiveEntity(ServiceRegistry registry, byte[] configuration) {
+    return new Passive();
+  }
+
+  @Override
+  public ConcurrencyStrategy<LoadMessage> getConcurrencyStrategy(byte[] configuration) {
+    return new KeyFromMessage();
+  }
+
+  @Override
+  public MessageCodec<LoadMessage, LoadResponse> getMessageCodec() {
+    return new LoadCodec();
+  }
+
+  @Override
+  public SyncMessageCodec<LoadMessage> getSyncMessageCodec() {
+    return new NoSync();
+  }
+
+  /**
+   * Runs each invoke under the key the client chose for it.
+   */
+  public static class KeyFromMessage implements ConcurrencyStrategy<LoadMessage> {
+    @Override
+    public int concurrencyKey(LoadMessage message) {
+      return message.concurrencyKey;
+    }
+
+    @Override
+    public Set<Integer> getKeysForSynchronization() {
+      // the entity has no state to hand to a passive
+      return Collections.emptySet();
+    }
+  }
+
+  public static class Active implements ActiveServerEntity<LoadMessage, LoadResponse> {
+    @Override
+    public void connected(ClientDescriptor clientDescriptor) {
+    }
+
+    @Override
+    public void handleReconnect(ClientDescriptor clientDescriptor, byte[] extendedReconnectData) {
+    }
+
+    @Override
+    public void disconnected(ClientDescriptor clientDescriptor) {
+    }
+
+    @Override
+    public LoadResponse invokeActive(InvokeContext context, LoadMessage message) {
+      return new LoadResponse(message.payload.length);
+    }
+
+    @Override
+    public void createNew() {
+    }
+
+    @Override
+    public void loadExisting() {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void synchronizeKeyToPassive(PassiveSynchronizationChannel<LoadMessage> syncChannel, int concurrencyKey) {
+    }
+  }
+
+  public static class Passive implements PassiveServerEntity<LoadMessage, LoadResponse> {
+    @Override
+    public void invokePassive(InvokeContext context, LoadMessage message) {
+    }
+
+    @Override
+    public void startSyncEntity() {
+    }
+
+    @Override
+    public void endSyncEntity() {
+    }
+
+    @Override
+    public void startSyncConcurrencyKey(int concurrencyKey) {
+    }
+
+    @Override
+    public void endSyncConcurrencyKey(int concurrencyKey) {
+    }
+
+    @Override
+    public void notifyClientDisconnectedFromActive(ClientDescriptor client) {
+    }
+
+    @Override
+    public void createNew() {
+    }
+
+    @Override
+    public void destroy() {
+    }
+  }
+
+  public static class NoSync implements SyncMessageCodec<LoadMessage> {
+    @Override
+    public byte[] encode(int concurrencyKey, LoadMessage message) throws MessageCodecException {
+      throw new UnsupportedOperationException("The load entity has nothing to synchronize");
+    }
+
+    @Override
+    public LoadMessage decode(int concurrencyKey, byte[] payload) throws MessageCodecException {
+      throw new UnsupportedOperationException("The load entity has nothing to synchronize");
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import com.tc.stats.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.terracotta.connection.Connection;
+import org.terracotta.connection.entity.EntityRef;
+import org.terracotta.entity.ConcurrencyStrategy;
+import org.terracotta.testing.rules.BasicExternalCluster;
+
+
+/**
+ * Drives a configurable invoke load against a stripe started on localhost by {@link BasicExternalCluster} and reports
+ * its throughput and latency percentiles, for capacity planning and for spotting regressions between builds.
+ * <p>
+ * The clients run in this JVM, each with its own connection, and invoke {@link LoadEntity} instances back to back from
+ * their worker threads.  Invokes during the warmup are not counted.  Like any {@link BasicExternalCluster} user, the
+ * harness needs the kitInstallationPath system property to point at an unpacked kit.
+ * <p>
+ * Run it with {@link #main(String[])}, configured by the "load." system properties of
+ * {@link LoadConfiguration#fromProperties(java.util.Properties)}, or from a test through {@link #run()}.
+ */
+public class LoadHarness {
+  private static final String ENTITY_NAME_PREFIX = "load-";
+
+  private final LoadConfiguration configuration;
+
+  public LoadHarness(LoadConfiguration configuration) {
+    this.configuration = configuration;
+  }
+
+  public static void main(String[] args) {
+    if (null == System.getProperty("kitInstallationPath")) {
+      System.err.println("The kitInstallationPath system property must point at an unpacked kit");
+      System.exit(1);
+    }
+    try {
+      LoadReport report = new LoadHarness(LoadConfiguration.fromProperties(System.getProperties())).run();
+      System.out.println(report);
+      for (File written : report.write()) {
+        System.out.println("Wrote " + written.getAbsolutePath());
+      }
+      System.exit(0);
+    } catch (Throwable t) {
+      System.err.println("LOAD RUN FAILED! " + t.getLocalizedMessage());
+      t.printStackTrace();
+      System.exit(2);
+    }
+  }
+
+  /**
+   * Starts the stripe, runs the load and brings the stripe down again.
+   */
+  public LoadReport run() throws Throwable {
+    File clusterDirectory = this.configuration.clusterDirectory;
+    if (!clusterDirectory.isDirectory() && !clusterDirectory.mkdirs()) {
+      throw new IOException("Cluster directory could not be created: " + clusterDirectory);
+    }
+    File serverJar = writeServerJar(new File(clusterDirectory, "load-entity.jar"));
+    BasicExternalCluster cluster = new BasicExternalCluster(clusterDirectory, 1 + this.configuration.passives,
+        Collections.singletonList(serverJar), "", "", "");
+    cluster.manualStart(this.configuration.name);
+    try {
+      cluster.getClusterControl().waitForActive();
+      if (this.configuration.passives > 0) {
+        cluster.getClusterControl().waitForRunningPassivesInStandby();
+      }
+      return drive(cluster);
+    } finally {
+      cluster.manualStop();
+    }
+  }
+
+  private LoadReport drive(BasicExternalCluster cluster) throws Exception {
+    LoadConfiguration config = this.configuration;
+    Connection admin = cluster.newConnection();
+    List<Connection> connections = new ArrayList<>();
+    List<LoadEntity> fetched = new ArrayList<>();
+    try {
+      for (int i = 0; i < config.entities; i++) {
+        admin.<LoadEntity, Void, Void>getEntityRef(LoadEntity.class, LoadEntity.VERSION, ENTITY_NAME_PREFIX + i).create(null);
+      }
+      List<Worker> workers = new ArrayList<>();
+      for (int client = 0; client < config.clients; client++) {
+        Connection connection = cluster.newConnection();
+        connections.add(connection);
+        LoadEntity[] entities = new LoadEntity[config.entities];
+        for (int i = 0; i < config.entities; i++) {
+          EntityRef<LoadEntity, Void, Void> ref = connection.getEntityRef(LoadEntity.class, LoadEntity.VERSION, ENTITY_NAME_PREFIX + i);
+          entities[i] = ref.fetchEntity(null);
+          fetched.add(entities[i]);
+        }
+        for (int thread = 0; thread < config.threadsPerClient; thread++) {
+          Worker worker = new Worker("Load client " + client + " thread " + thread, entities, config.mixes, client * 1000L + thread);
+          workers.add(worker);
+          worker.start();
+        }
+      }
+
+      Date started = new Date();
+      TimeUnit.SECONDS.sleep(config.warmupSeconds);
+      long start = System.nanoTime();
+      for (Worker worker : workers) {
+        worker.measuring = true;
+      }
+      TimeUnit.SECONDS.sleep(config.durationSeconds);
+      for (Worker worker : workers) {
+        worker.measuring = false;
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      for (Worker worker : workers) {
+        worker.running = false;
+      }
+      for (Worker worker : workers) {
+        worker.join();
+      }
+      return report(started, seconds, workers);
+    } finally {
+      for (LoadEntity entity : fetched) {
+        entity.close();
+      }
+      for (Connection connection : connections) {
+        connection.close();
+      }
+      for (int i = 0; i < config.entities; i++) {
+        try {
+          admin.getEntityRef(LoadEntity.class, LoadEntity.VERSION, ENTITY_NAME_PREFIX + i).destroy();
+        } catch (Exception e) {
+          // the stripe goes down next, this only keeps the server logs clean
+        }
+      }
+      admin.close();
+    }
+  }
+
+  private LoadReport report(Date started, double seconds, List<Worker> workers) {
+    List<LoadMix> mixes = this.configuration.mixes;
+    List<LoadReport.Result> results = new ArrayList<>();
+    LatencyHistogram all = new LatencyHistogram();
+    long allErrors = 0;
+    for (int i = 0; i < mixes.size(); i++) {
+      LatencyHistogram merged = new LatencyHistogram();
+      long errors = 0;
+      for (Worker worker : workers) {
+        merged.add(worker.latencies[i]);
+        errors += worker.errors[i];
+      }
+      all.add(merged);
+      allErrors += errors;
+      results.add(new LoadReport.Result(mixes.get(i).toString(), merged, errors, seconds));
+    }
+    results.add(new LoadReport.Result(LoadReport.ALL, all, allErrors, seconds));
+    return new LoadReport(this.configuration, started, seconds, results);
+  }
+
+  /**
+   * Packages the server side of the load entity into a plugin jar for the servers.
+   */
+  static File writeServerJar(File jar) throws IOException {
+    List<Class<?>> classes = new ArrayList<>();
+    classes.add(LoadEntityServerService.class);
+    Collections.addAll(classes, LoadEntityServerService.class.getDeclaredClasses());
+    classes.add(LoadMessage.class);
+    classes.add(LoadResponse.class);
+    classes.add(LoadCodec.class);
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (Class<?> type : classes) {
+        String name = type.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new JarEntry(name));
+        try (InputStream in = LoadHarness.class.getClassLoader().getResourceAsStream(name)) {
+          if (null == in) {
+            throw new IOException("Class file not found: " + name);
+          }
+          byte[] buffer = new byte[8192];
+          int read;
+          while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+          }
+        }
+        out.closeEntry();
+      }
+      out.putNextEntry(new JarEntry("META-INF/services/org.terracotta.entity.EntityServerService"));
+      out.write((LoadEntityServerService.class.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  /**
+   * One client thread invoking back to back, with a histogram and an error count per mix that only it updates until it
+   * is joined.
+   */
+  private static class Worker extends Thread {
+    private final LoadEntity[] entities;
+    private final List<LoadMix> mixes;
+    private final int[] cumulativeWeights;
+    private final byte[][] payloads;
+    private final Random random;
+    final LatencyHistogram[] latencies;
+    final long[] errors;
+    volatile boolean measuring;
+    volatile boolean running = true;
+
+    Worker(String name, LoadEntity[] entities, List<LoadMix> mixes, long seed) {
+      super(name);
+      setDaemon(true);
+      this.entities = entities;
+      this.mixes = mixes;
+      this.cumulativeWeights = new int[mixes.size()];
+      this.payloads = new byte[mixes.size()][];
+      this.latencies = new LatencyHistogram[mixes.size()];
+      this.errors = new long[mixes.size()];
+      int total = 0;
+      for (int i = 0; i < mixes.size(); i++) {
+        total += mixes.get(i).weight;
+        this.cumulativeWeights[i] = total;
+        this.payloads[i] = new byte[mixes.get(i).payloadSize];
+        this.latencies[i] = new LatencyHistogram();
+      }
+      this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+      int totalWeight = this.cumulativeWeights[this.cumulativeWeights.length - 1];
+      while (this.running) {
+        int pick = this.random.nextInt(totalWeight);
+        int index = 0;
+        while (this.cumulativeWeights[index] <= pick) {
+          index += 1;
+        }
+        LoadMix mix = this.mixes.get(index);
+        int key = (mix.concurrencyKeys == 0) ? ConcurrencyStrategy.UNIVERSAL_KEY : 1 + this.random.nextInt(mix.concurrencyKeys);
+        LoadEntity entity = this.entities[this.random.nextInt(this.entities.length)];
+        boolean counted = this.measuring;
+        long start = System.nanoTime();
+        try {
+          entity.invoke(new LoadMessage(key, this.payloads[index]), mix.ack, mix.replicate);
+          if (counted) {
+            this.latencies[index].record(System.nanoTime() - start);
+          }
+        } catch (InterruptedException e) {
+          return;
+        } catch (Exception e) {
+          if (counted) {
+            this.errors[index] += 1;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import org.terracotta.entity.EntityMessage;
+
+
+/**
+ * An invoke of the load entity: an opaque payload run under the given concurrency key.
+ */
+public class LoadMessage implements EntityMessage {
+  public final int concurrencyKey;
+  public final byte[] payload;
+
+  public LoadMessage(int concurrencyKey, byte[] payload) {
+    this.concurrencyKey = concurrencyKey;
+    this.payload = payload;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * One kind of invoke in a load run, picked in proportion to its weight among the mixes of the run.
+ */
+public class LoadMix {
+  /**
+   * The acknowledgement an invoke waits for, which is what its latency measures.
+   */
+  public enum Ack {
+    SENT,
+    RECEIVED,
+    COMPLETED,
+    RETIRED
+  }
+
+  public final int weight;
+  public final int payloadSize;
+  /**
+   * The invokes are spread over keys 1 to concurrencyKeys, 0 runs them all under the universal key.
+   */
+  public final int concurrencyKeys;
+  public final Ack ack;
+  public final boolean replicate;
+
+  public LoadMix(int weight, int payloadSize, int concurrencyKeys, Ack ack, boolean replicate) {
+    if (weight < 1) {
+      throw new IllegalArgumentException("Weight must be positive: " + weight);
+    }
+    if (payloadSize < 0) {
+      throw new IllegalArgumentException("Payload size must not be negative: " + payloadSize);
+    }
+    if (concurrencyKeys < 0) {
+      throw new IllegalArgumentException("Concurrency key count must not be negative: " + concurrencyKeys);
+    }
+    if (ack == null) {
+      throw new NullPointerException("Ack must be non-null");
+    }
+    this.weight = weight;
+    this.payloadSize = payloadSize;
+    this.concurrencyKeys = concurrencyKeys;
+    this.ack = ack;
+    this.replicate = replicate;
+  }
+
+  /**
+   * Parses a comma separated list of mixes, each written weight:payloadSize:concurrencyKeys:ack[:noreplicate], such as
+   * "90:128:16:retired,10:65536:1:completed".
+   */
+  public static List<LoadMix> parse(String mixes) {
+    List<LoadMix> parsed = new ArrayList<>();
+    for (String mix : mixes.split(",")) {
+      String[] fields = mix.trim().split(":");
+      if (fields.length < 4 || fields.length > 5 || (fields.length == 5 && !"noreplicate".equals(fields[4]))) {
+        throw new IllegalArgumentException("Mix must be weight:payloadSize:concurrencyKeys:ack[:noreplicate]: " + mix);
+      }
+      parsed.add(new LoadMix(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+          Ack.valueOf(fields[3].toUpperCase(Locale.ROOT)), fields.length == 4));
+    }
+    return parsed;
+  }
+
+  @Override
+  public String toString() {
+    return weight + ":" + payloadSize + ":" + concurrencyKeys + ":" + ack.name().toLowerCase(Locale.ROOT) + (replicate ? "" : ":noreplicate");
+  }
+}
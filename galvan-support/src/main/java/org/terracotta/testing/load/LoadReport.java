@@ -0,0 +1,169 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import com.tc.stats.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * The outcome of a {@link LoadHarness} run: throughput and latency percentiles for each mix and for all of them
+ * together, written out as JSON and CSV.
+ * <p>
+ * The CSV file has a header line and then one line per mix, the last one named "all", with the columns
+ * run, mix, count, errors, throughput (invokes/s), mean, p50, p99, p999 and max, the latencies in microseconds.  The JSON
+ * file holds the same figures under "results", along with the configuration of the run.
+ */
+public class LoadReport {
+  public static final String ALL = "all";
+
+  public static class Result {
+    public final String mix;
+    public final long count;
+    public final long errors;
+    public final double throughput;
+    public final double meanMicros;
+    public final double p50Micros;
+    public final double p99Micros;
+    public final double p999Micros;
+    public final double maxMicros;
+
+    Result(String mix, LatencyHistogram latencies, long errors, double seconds) {
+      this.mix = mix;
+      this.count = latencies.getCount();
+      this.errors = errors;
+      this.throughput = this.count / seconds;
+      this.meanMicros = latencies.getMean() / 1000;
+      this.p50Micros = latencies.getValueAtPercentile(50) / 1000.0;
+      this.p99Micros = latencies.getValueAtPercentile(99) / 1000.0;
+      this.p999Micros = latencies.getValueAtPercentile(99.9) / 1000.0;
+      this.maxMicros = latencies.getMax() / 1000.0;
+    }
+  }
+
+  public final LoadConfiguration configuration;
+  public final Date started;
+  public final double measuredSeconds;
+  public final List<Result> results;
+
+  LoadReport(LoadConfiguration configuration, Date started, double measuredSeconds, List<Result> results) {
+    this.configuration = configuration;
+    this.started = started;
+    this.measuredSeconds = measuredSeconds;
+    this.results = Collections.unmodifiableList(new ArrayList<>(results));
+  }
+
+  public Result getTotal() {
+    return this.results.get(this.results.size() - 1);
+  }
+
+  /**
+   * Writes the report to the output directory of the run, as name-timestamp.json and name-timestamp.csv.
+   *
+   * @return the files written
+   */
+  public List<File> write() throws IOException {
+    File directory = this.configuration.outputDirectory;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Output directory could not be created: " + directory);
+    }
+    String base = this.configuration.name + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(this.started);
+    File json = new File(directory, base + ".json");
+    File csv = new File(directory, base + ".csv");
+    try (PrintWriter out = new PrintWriter(json, StandardCharsets.UTF_8.name())) {
+      writeJson(out);
+    }
+    try (PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8.name())) {
+      writeCsv(out);
+    }
+    List<File> written = new ArrayList<>();
+    written.add(json);
+    written.add(csv);
+    return written;
+  }
+
+  void writeCsv(PrintWriter out) {
+    out.println("run,mix,count,errors,throughput,mean,p50,p99,p999,max");
+    for (Result result : this.results) {
+      out.println(this.configuration.name + ",\"" + result.mix + "\"," + result.count + "," + result.errors + ","
+          + format(result.throughput) + "," + format(result.meanMicros) + "," + format(result.p50Micros) + ","
+          + format(result.p99Micros) + "," + format(result.p999Micros) + "," + format(result.maxMicros));
+    }
+  }
+
+  void writeJson(PrintWriter out) {
+    LoadConfiguration config = this.configuration;
+    out.println("{");
+    out.println("  \"name\": " + quote(config.name) + ",");
+    out.println("  \"started\": " + quote(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.ROOT).format(this.started)) + ",");
+    out.println("  \"measuredSeconds\": " + format(this.measuredSeconds) + ",");
+    out.println("  \"configuration\": {");
+    out.println("    \"passives\": " + config.passives + ",");
+    out.println("    \"clients\": " + config.clients + ",");
+    out.println("    \"threadsPerClient\": " + config.threadsPerClient + ",");
+    out.println("    \"entities\": " + config.entities + ",");
+    out.println("    \"warmupSeconds\": " + config.warmupSeconds + ",");
+    out.println("    \"durationSeconds\": " + config.durationSeconds + ",");
+    out.println("    \"mixes\": [");
+    for (int i = 0; i < config.mixes.size(); i++) {
+      LoadMix mix = config.mixes.get(i);
+      out.println("      {\"name\": " + quote(mix.toString()) + ", \"weight\": " + mix.weight + ", \"payloadSize\": " + mix.payloadSize
+          + ", \"concurrencyKeys\": " + mix.concurrencyKeys + ", \"ack\": " + quote(mix.ack.name()) + ", \"replicate\": "
+          + mix.replicate + "}" + ((i < config.mixes.size() - 1) ? "," : ""));
+    }
+    out.println("    ]");
+    out.println("  },");
+    out.println("  \"results\": [");
+    for (int i = 0; i < this.results.size(); i++) {
+      Result result = this.results.get(i);
+      out.println("    {\"mix\": " + quote(result.mix) + ", \"count\": " + result.count + ", \"errors\": " + result.errors
+          + ", \"throughput\": " + format(result.throughput) + ", \"latencyMicros\": {\"mean\": " + format(result.meanMicros)
+          + ", \"p50\": " + format(result.p50Micros) + ", \"p99\": " + format(result.p99Micros) + ", \"p999\": "
+          + format(result.p999Micros) + ", \"max\": " + format(result.maxMicros) + "}}" + ((i < this.results.size() - 1) ? "," : ""));
+    }
+    out.println("  ]");
+    out.println("}");
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static String quote(String value) {
+    return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder summary = new StringBuilder(this.configuration.toString()).append('\n');
+    summary.append(String.format(Locale.ROOT, "%-32s %10s %8s %12s %10s %10s %10s %10s%n", "mix", "count", "errors", "invokes/s", "p50 us", "p99 us", "p999 us", "max us"));
+    for (Result result : this.results) {
+      summary.append(String.format(Locale.ROOT, "%-32s %10d %8d %12.1f %10.1f %10.1f %10.1f %10.1f%n", result.mix, result.count,
+          result.errors, result.throughput, result.p50Micros, result.p99Micros, result.p999Micros, result.maxMicros));
+    }
+    return summary.toString();
+  }
+}
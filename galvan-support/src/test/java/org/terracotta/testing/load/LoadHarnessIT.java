@@ -0,0 +1,48 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.testing.load;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * A short load run against an active and a passive, checking that invokes of every mix got through and were reported.
+ */
+public class LoadHarnessIT {
+  @Test
+  public void testShortRunIsReported() throws Throwable {
+    LoadConfiguration configuration = new LoadConfiguration("LoadHarnessIT", 1, 2, 2, 2,
+        LoadMix.parse("3:128:4:retired,1:4096:0:received"), 2, 3, new File("target/cluster"), new File("target/load-results"));
+    LoadReport report = new LoadHarness(configuration).run();
+
+    Assert.assertEquals(3, report.results.size());
+    for (LoadReport.Result result : report.results) {
+      Assert.assertTrue(result.mix, result.count > 0);
+      Assert.assertEquals(result.mix, 0, result.errors);
+      Assert.assertTrue(result.mix, result.p50Micros <= result.p99Micros && result.p99Micros <= result.p999Micros);
+    }
+    Assert.assertEquals(report.results.get(0).count + report.results.get(1).count, report.getTotal().count);
+
+    List<File> written = report.write();
+    for (File file : written) {
+      Assert.assertTrue(file.length() > 0);
+    }
+  }
+}
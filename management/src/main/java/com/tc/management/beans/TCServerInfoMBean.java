@@ -79,6 +79,28 @@ public interface TCServerInfoMBean extends TerracottaMBean, RuntimeStatisticCons
 
   Map<String, Object> getStatistics();
 
+  /**
+   * Queue wait and handler execution latency percentiles, in nanoseconds, for each SEDA stage of the server.
+   */
+  Map<String, Map<String, Long>> getStageLatencies();
+
+  /**
+   * Starts a fresh measurement period for {@link #getStageLatencies()}.
+   */
+  void resetStageLatencies();
+
+  /**
+   * Replication window size, acknowledgement lag and round trip times, in batches and nanoseconds, for each passive
+   * this server replicates to.
+   */
+  Map<String, Map<String, Long>> getReplicationWindows();
+
+  /**
+   * For each peer server the replication stream is compressed to, the compressed and uncompressed byte counts, the
+   * compressed size as a percentage and the nanoseconds spent compressing.
+   */
+  Map<String, Map<String, Long>> getReplicationCompression();
+
   long getUsedMemory();
 
   long getMaxMemory();
@@ -0,0 +1,228 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import com.tc.util.VicariousThreadLocal;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Slab style pool of either direct or heap buffers in power of two size classes, from
+ * {@link TCByteBufferFactory#FIXED_BUFFER_SIZE} up to a ceiling.
+ * <p>
+ * Threads of the thread groups registered with {@link TCByteBufferFactory#registerThreadGroup(ThreadGroup)} keep a
+ * private cache per size class which they take from and return to without any synchronization. Buffers that do not
+ * fit in the returning thread's cache, and buffers returned by any other thread, go to a bounded shared overflow pool
+ * that every thread falls back on when its own cache is empty. The configured buffer counts are byte budgets in units of
+ * {@link TCByteBufferFactory#FIXED_BUFFER_SIZE}, the memory a pool of only 4K buffers would hold, split evenly across
+ * the size classes, so pooling larger buffers never raises the ceiling of a thread cache or of the shared pool.
+ */
+class SizeClassBufferPool implements BufferPool {
+
+  private static final int                    MIN_SHIFT = Integer.numberOfTrailingZeros(TCByteBufferFactory.FIXED_BUFFER_SIZE);
+
+  private final boolean                       direct;
+  private final int                           classCount;
+  private final int[]                         threadCacheLimits;
+  private final int[]                         sharedLimits;
+  private final ConcurrentLinkedQueue<TCByteBuffer>[] shared;
+  private final AtomicInteger[]               sharedCounts;
+  private final ThreadLocal<ThreadCache>      threadCache;
+
+  private final LongAdder                     threadCacheHits = new LongAdder();
+  private final LongAdder                     sharedHits      = new LongAdder();
+  private final LongAdder                     misses          = new LongAdder();
+  private final LongAdder                     discards        = new LongAdder();
+  private final LongAdder                     pooledBuffers   = new LongAdder();
+  private final LongAdder                     pooledBytes     = new LongAdder();
+
+  @SuppressWarnings("unchecked")
+  SizeClassBufferPool(boolean direct, int maxBufferSize, int threadCacheMaxCount, int sharedMaxCount) {
+    if (Integer.bitCount(maxBufferSize) != 1 || maxBufferSize < TCByteBufferFactory.FIXED_BUFFER_SIZE) {
+      throw new IllegalArgumentException("max pooled buffer size must be a power of two of at least "
+                                         + TCByteBufferFactory.FIXED_BUFFER_SIZE + ": " + maxBufferSize);
+    }
+    this.direct = direct;
+    this.classCount = Integer.numberOfTrailingZeros(maxBufferSize) - MIN_SHIFT + 1;
+    this.threadCacheLimits = new int[classCount];
+    this.sharedLimits = new int[classCount];
+    this.shared = new ConcurrentLinkedQueue[classCount];
+    this.sharedCounts = new AtomicInteger[classCount];
+    for (int i = 0; i < classCount; i++) {
+      this.threadCacheLimits[i] = limitOf(threadCacheMaxCount, i);
+      this.sharedLimits[i] = limitOf(sharedMaxCount, i);
+      this.shared[i] = new ConcurrentLinkedQueue<TCByteBuffer>();
+      this.sharedCounts[i] = new AtomicInteger();
+    }
+    this.threadCache = new VicariousThreadLocal<ThreadCache>() {
+      @Override
+      protected ThreadCache initialValue() {
+        return TCByteBufferFactory.isRegisteredThreadGroup(Thread.currentThread().getThreadGroup()) ? new ThreadCache()
+            : null;
+      }
+    };
+  }
+
+  /**
+   * @return how many buffers of the size class fit in its share of the byte budget of {@code maxCount} 4K buffers
+   */
+  private int limitOf(int maxCount, int sizeClass) {
+    long classBudget = (long) maxCount * TCByteBufferFactory.FIXED_BUFFER_SIZE / classCount;
+    return (int) (classBudget / capacityOf(sizeClass));
+  }
+
+  /**
+   * @return the most bytes the shared pool holds across all size classes
+   */
+  long getSharedByteLimit() {
+    return byteLimitOf(sharedLimits);
+  }
+
+  /**
+   * @return the most bytes one thread's cache holds across all size classes
+   */
+  long getThreadCacheByteLimit() {
+    return byteLimitOf(threadCacheLimits);
+  }
+
+  private long byteLimitOf(int[] limits) {
+    long bytes = 0;
+    for (int i = 0; i < classCount; i++) {
+      bytes += (long) limits[i] * capacityOf(i);
+    }
+    return bytes;
+  }
+
+  int getMaxBufferSize() {
+    return capacityOf(classCount - 1);
+  }
+
+  /**
+   * @return the smallest size class that holds {@code size} bytes, -1 if the size is beyond the ceiling
+   */
+  int sizeClassFor(int size) {
+    if (size <= TCByteBufferFactory.FIXED_BUFFER_SIZE) {
+      return 0;
+    }
+    int index = (32 - Integer.numberOfLeadingZeros(size - 1)) - MIN_SHIFT;
+    return index < classCount ? index : -1;
+  }
+
+  private int exactSizeClass(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      return -1;
+    }
+    int index = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+    return (index >= 0 && index < classCount) ? index : -1;
+  }
+
+  private static int capacityOf(int sizeClass) {
+    return 1 << (sizeClass + MIN_SHIFT);
+  }
+
+  /**
+   * Hands out a checked out buffer of the given size class, creating one if neither the calling thread's cache nor the
+   * shared pool has one available. The buffer's limit is its capacity.
+   */
+  TCByteBuffer take(int sizeClass) {
+    TCByteBuffer buffer = null;
+    ThreadCache cache = threadCache.get();
+    if (cache != null) {
+      buffer = cache.buffers[sizeClass].pollFirst();
+      if (buffer != null) {
+        threadCacheHits.increment();
+      }
+    }
+    if (buffer == null) {
+      buffer = shared[sizeClass].poll();
+      if (buffer != null) {
+        sharedCounts[sizeClass].decrementAndGet();
+        sharedHits.increment();
+      }
+    }
+    if (buffer == null) {
+      misses.increment();
+      return new TCByteBufferImpl(capacityOf(sizeClass), direct, this);
+    }
+    pooledBuffers.decrement();
+    pooledBytes.add(-buffer.capacity());
+    buffer.checkedOut();
+    return buffer;
+  }
+
+  @Override
+  public void offer(TCByteBuffer buf) {
+    int sizeClass = exactSizeClass(buf.capacity());
+    if (sizeClass < 0) {
+      discards.increment();
+      return;
+    }
+    ThreadCache cache = threadCache.get();
+    if (cache != null && cache.buffers[sizeClass].size() < threadCacheLimits[sizeClass]) {
+      cache.buffers[sizeClass].addFirst(buf);
+    } else if (sharedCounts[sizeClass].incrementAndGet() <= sharedLimits[sizeClass]) {
+      shared[sizeClass].offer(buf);
+    } else {
+      sharedCounts[sizeClass].decrementAndGet();
+      discards.increment();
+      return;
+    }
+    pooledBuffers.increment();
+    pooledBytes.add(buf.capacity());
+  }
+
+  /**
+   * Hit, miss and occupancy counters of this pool, keyed with the given prefix.
+   */
+  void addStats(String prefix, Map<String, Long> stats) {
+    stats.put(prefix + "threadCacheHits", threadCacheHits.sum());
+    stats.put(prefix + "sharedHits", sharedHits.sum());
+    stats.put(prefix + "misses", misses.sum());
+    stats.put(prefix + "discards", discards.sum());
+    stats.put(prefix + "pooledBuffers", pooledBuffers.sum());
+    stats.put(prefix + "pooledBytes", pooledBytes.sum());
+  }
+
+  Map<String, Long> getStats() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    addStats("", stats);
+    return stats;
+  }
+
+  @Override
+  public String toString() {
+    return "SizeClassBufferPool[" + (direct ? "direct" : "heap") + ", max=" + getMaxBufferSize() + "]" + getStats();
+  }
+
+  private final class ThreadCache {
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<TCByteBuffer>[] buffers = new ArrayDeque[classCount];
+
+    ThreadCache() {
+      for (int i = 0; i < classCount; i++) {
+        buffers[i] = new ArrayDeque<TCByteBuffer>();
+      }
+    }
+  }
+}
@@ -130,6 +130,13 @@ public interface TCByteBuffer extends Recyclable {
 
   public TCByteBuffer slice();
 
+  /**
+   * A view of {@code length} bytes starting at the absolute {@code index}, regardless of this buffer's position and
+   * limit. Like {@link #duplicate()} and {@link #slice()} the view shares both the content and the reference count of
+   * this buffer.
+   */
+  public TCByteBuffer slice(int index, int length);
+
   public int arrayOffset();
 
   public TCByteBuffer asReadOnlyBuffer();
@@ -176,4 +183,22 @@ public interface TCByteBuffer extends Recyclable {
 
   public BufferPool getBufferPool();
 
+  /**
+   * Adds a reference to the underlying buffer, shared by all of its views. A buffer starts out with a single reference
+   * held by whoever allocated it.
+   *
+   * @throws IllegalStateException if pooling is enabled and this pooled buffer was already fully released
+   */
+  public TCByteBuffer retain();
+
+  /**
+   * Drops a reference to the underlying buffer. The buffer goes back to its pool once the last reference is dropped;
+   * {@link #recycle()} is the same as releasing the caller's reference.
+   *
+   * @return true if this released the last reference
+   */
+  public boolean release();
+
+  public int refCnt();
+
 }
\ No newline at end of file
@@ -21,15 +21,13 @@ package com.tc.bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.tc.util.Assert;
 import com.tc.util.ServiceUtil;
-import com.tc.util.VicariousThreadLocal;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * TCByteBuffer source that hides JDK dependencies and that can pool instances. Instance pooling is likely to be a good
@@ -47,51 +45,30 @@ public class TCByteBufferFactory {
   private static final Logger logger = LoggerFactory.getLogger(TCByteBufferFactory.class);
   
   private static final boolean             disablePooling;
-  private static final int                 poolMaxBufCount;
-  private static final int                 commonPoolMaxBufCount;
-  
+  private static final int                 maxPooledBufferSize;
+
+  // size class pools, null when pooling is disabled
+  private static final SizeClassBufferPool directPool;
+  private static final SizeClassBufferPool nonDirectPool;
+
+  private static final Set<ThreadGroup> handledGroups = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ThreadGroup, Boolean>()));
+
   static {
     TCByteBufferFactoryConfig config = getConfig();
     disablePooling = config.isDisabled();
-    poolMaxBufCount = config.getPoolMaxBufCount();
-    commonPoolMaxBufCount = config.getCommonPoolMaxBufCount();
+    maxPooledBufferSize = Integer.highestOneBit(Math.max(FIXED_BUFFER_SIZE, config.getMaxPooledBufferSize()));
+    if (disablePooling) {
+      directPool = null;
+      nonDirectPool = null;
+    } else {
+      directPool = new SizeClassBufferPool(true, maxPooledBufferSize, config.getPoolMaxBufCount(), config.getCommonPoolMaxBufCount());
+      nonDirectPool = new SizeClassBufferPool(false, maxPooledBufferSize, config.getPoolMaxBufCount(), config.getCommonPoolMaxBufCount());
+    }
   }
-  
-
-  // always use ThreadLocal variables for accessing the buffer pools.
-  private static final LinkedBlockingQueue<TCByteBuffer> directCommonFreePool    = new LinkedBlockingQueue<TCByteBuffer>(commonPoolMaxBufCount);
-  private static final LinkedBlockingQueue<TCByteBuffer> nonDirectCommonFreePool = new LinkedBlockingQueue<TCByteBuffer>(commonPoolMaxBufCount);
-
-  private static final Set<ThreadGroup> handledGroups = Collections.newSetFromMap(new WeakHashMap<ThreadGroup, Boolean>());
-  
-  private static final ThreadLocal<LinkedBlockingQueue<TCByteBuffer>> directFreePool = new VicariousThreadLocal<LinkedBlockingQueue<TCByteBuffer>>() {
-                                                                     @Override
-                                                                     protected LinkedBlockingQueue<TCByteBuffer> initialValue() {
-                                                                       if (handledGroups.contains(Thread.currentThread().getThreadGroup())) {
-                                                                         return new LinkedBlockingQueue<TCByteBuffer>(poolMaxBufCount);
-                                                                       } else {
-                                                                         logger.debug("Buf pool direct for " + Thread.currentThread().getName() + " - using Common Pool");
-                                                                         return directCommonFreePool;
-                                                                       }
-                                                                     }
-                                                                   };
-  private static final ThreadLocal<LinkedBlockingQueue<TCByteBuffer>> nonDirectFreePool = new VicariousThreadLocal<LinkedBlockingQueue<TCByteBuffer>>() {
-                                                                     @Override
-                                                                     protected LinkedBlockingQueue<TCByteBuffer> initialValue() {
-                                                                       if (handledGroups.contains(Thread.currentThread().getThreadGroup())) {
-                                                                         return new LinkedBlockingQueue<TCByteBuffer>(poolMaxBufCount);
-                                                                       } else {
-                                                                         logger.debug("Buf pool nonDirect for " + Thread.currentThread().getName() + " - using Common Pool");
-                                                                         return nonDirectCommonFreePool;
-                                                                       }
-                                                                     }
-                                                                   };
 
   private static TCByteBuffer createNewInstance(boolean direct, int capacity, int index, int totalCount) {
     try {
-      LinkedBlockingQueue<TCByteBuffer> poolQueue = getPoolQueue(direct);
-
-      TCByteBuffer rv = new TCByteBufferImpl(capacity, direct, poolQueue);
+      TCByteBuffer rv = new TCByteBufferImpl(capacity, direct, null);
       // Assert.assertEquals(0, rv.position());
       // Assert.assertEquals(capacity, rv.capacity());
       // Assert.assertEquals(capacity, rv.limit());
@@ -109,14 +86,15 @@ public class TCByteBufferFactory {
   }
 
   /**
-   * Get a single variable sized TCByteBuffer instance Note: These are not pooled (yet)
+   * Get a single variable sized TCByteBuffer instance. When pooling is enabled, sizes from just under
+   * {@link #FIXED_BUFFER_SIZE} up to the configured maximum pooled size are served from power of two size classes and
+   * go back to their pool on {@link TCByteBuffer#recycle()}; other sizes are never pooled.
    * 
-   * @param size The desired minimum capacity of the buffer. The actual capacity may be higher. The buffer's limit will
-   *        be equal to it's capacity.
+   * @param size The desired minimum capacity of the buffer. The actual capacity may be higher (the size class of a
+   *        pooled buffer). The buffer's limit will be equal to the requested size.
    * @param direct True to hint that the buffer should be a direct buffer (ie. not on the Java heap). A direct buffer
    *        will never be returned if this parameter is false. A direct buffer may or MAY NOT returned if the parameter
-   *        is true TODO :: Make this the only interface and make it return fixed size buffer also make sure only
-   *        fixedBufferSize gets to the pool back.
+   *        is true
    */
   public static TCByteBuffer getInstance(boolean direct, int size) {
 
@@ -127,24 +105,24 @@ public class TCByteBufferFactory {
     if (size == 0) { return ZERO_BYTE_BUFFER; }
 
     // Don't give 4k ByteBuffer from pool for smaller size requests.
-    if (disablePooling || size < (FIXED_BUFFER_SIZE - 500) || size > FIXED_BUFFER_SIZE) {
+    if (disablePooling || size < (FIXED_BUFFER_SIZE - 500) || size > maxPooledBufferSize) {
       return createNewInstance(direct, size);
     } else {
-      return getFromPoolOrCreate(direct);
+      SizeClassBufferPool pool = getPool(direct);
+      TCByteBuffer buffer = getFromPoolOrCreate(pool, pool.sizeClassFor(size), 0, 1);
+      buffer.limit(size);
+      return buffer;
     }
   }
 
-  private static TCByteBuffer getFromPoolOrCreate(boolean direct) {
-    return getFromPoolOrCreate(direct, 0, 1);
-  }
-
-  private static TCByteBuffer getFromPoolOrCreate(boolean direct, int i, int numBuffers) {
-
-    TCByteBuffer buffer = getFromPool(direct);
-    if (null == buffer) {
-      buffer = createNewInstance(direct, FIXED_BUFFER_SIZE, i, numBuffers);
+  private static TCByteBuffer getFromPoolOrCreate(SizeClassBufferPool pool, int sizeClass, int i, int numBuffers) {
+    try {
+      return pool.take(sizeClass);
+    } catch (OutOfMemoryError oome) {
+      logger.error("OOME trying to allocate pooled buffer for size class " + sizeClass + " (index " + i + " of count "
+                   + numBuffers + ") " + pool);
+      throw oome;
     }
-    return buffer;
   }
 
   private static TCByteBuffer createNewInstance(boolean direct, int bufferSize) {
@@ -182,8 +160,9 @@ public class TCByteBufferFactory {
         rv[i] = createNewInstance(direct, FIXED_BUFFER_SIZE, i, numBuffers);
       }
     } else { // do pooling logic
+      SizeClassBufferPool pool = getPool(direct);
       for (int i = 0; i < numBuffers; i++) {
-        rv[i] = getFromPoolOrCreate(direct, i, numBuffers);
+        rv[i] = getFromPoolOrCreate(pool, 0, i, numBuffers);
       }
     }
 
@@ -208,32 +187,12 @@ public class TCByteBufferFactory {
     return (getBufferCountNeededForMessageSize(length) * FIXED_BUFFER_SIZE);
   }
   
-  private static LinkedBlockingQueue<TCByteBuffer> getPoolQueue(boolean direct) {
-    if (disablePooling) {
-      return null;     
-    } else {
-      return direct ? directFreePool.get() : nonDirectFreePool.get();
-    }
+  private static SizeClassBufferPool getPool(boolean direct) {
+    return direct ? directPool : nonDirectPool;
   }
 
-  private static TCByteBuffer getFromPool(boolean direct) {
-    if (disablePooling) return null;
-    TCByteBuffer buf = null;
-
-    LinkedBlockingQueue<TCByteBuffer> poolQueue = getPoolQueue(direct);
-
-    Assert.assertNotNull(poolQueue);
-
-    try {
-      if ((buf = poolQueue.poll(0, TimeUnit.MILLISECONDS)) != null) {
-        buf.checkedOut();
-      }
-    } catch (InterruptedException e) {
-      logger.warn("interrupted while getting buffer from pool");
-      Thread.currentThread().interrupt();
-      return null;
-    }
-    return buf;
+  static boolean isRegisteredThreadGroup(ThreadGroup group) {
+    return handledGroups.contains(group);
   }
 
   public static void returnBuffers(TCByteBuffer buffers[]) {
@@ -247,7 +206,7 @@ public class TCByteBufferFactory {
   public static void returnBuffer(TCByteBuffer buf) {
     if (disablePooling) { return; }
 
-    if (buf.capacity() == FIXED_BUFFER_SIZE) {
+    if (buf.capacity() >= FIXED_BUFFER_SIZE && buf.capacity() <= maxPooledBufferSize) {
       BufferPool bufferPool = buf.getBufferPool();
       buf.commit();
 
@@ -280,4 +239,16 @@ public class TCByteBufferFactory {
   public static boolean isPoolingEnabled() {
     return !disablePooling;
   }
+
+  /**
+   * Hit, miss and occupancy counters of the direct and heap buffer pools. Empty when pooling is disabled.
+   */
+  public static Map<String, Long> getPoolStats() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    if (!disablePooling) {
+      directPool.addStats("direct.", stats);
+      nonDirectPool.addStats("heap.", stats);
+    }
+    return stats;
+  }
 }
@@ -24,4 +24,9 @@ public interface TCByteBufferFactoryConfig {
   int getPoolMaxBufCount();
 
   int getCommonPoolMaxBufCount();
+
+  /**
+   * Capacity in bytes of the largest pooled size class, rounded down to a power of two.
+   */
+  int getMaxPooledBufferSize();
 }
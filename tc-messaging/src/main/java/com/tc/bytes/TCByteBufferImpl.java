@@ -22,8 +22,7 @@ import com.tc.util.Assert;
 import com.tc.util.State;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author teck A thin wrapper to a real java.nio.ByteBuffer instance
@@ -39,29 +38,34 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   private final ByteBuffer          buffer;
   private final TCByteBuffer        root;
-  private final LinkedBlockingQueue<TCByteBuffer> bufPool;
+  private final BufferPool          bufPool;
+  // shared by the root and every view of it
+  private final AtomicInteger       refCount;
   private State                     state       = INIT;
 
-  TCByteBufferImpl(int capacity, boolean direct, LinkedBlockingQueue<TCByteBuffer> poolQueue) {
+  TCByteBufferImpl(int capacity, boolean direct, BufferPool pool) {
     if (direct) {
       buffer = ByteBuffer.allocateDirect(capacity);
     } else {
       buffer = ByteBuffer.allocate(capacity);
     }
-    bufPool = poolQueue;
+    bufPool = pool;
     root = this;
+    refCount = new AtomicInteger(1);
   }
 
   private TCByteBufferImpl(ByteBuffer buf) {
     buffer = buf;
     bufPool = null;
     this.root = null;
+    this.refCount = new AtomicInteger(1);
   }
 
-  private TCByteBufferImpl(ByteBuffer buf, TCByteBuffer root) {
+  private TCByteBufferImpl(ByteBuffer buf, TCByteBuffer root, AtomicInteger refCount) {
     buffer = buf;
     bufPool = null;
     this.root = root;
+    this.refCount = refCount;
   }
 
   static TCByteBuffer wrap(byte[] data) {
@@ -346,7 +350,7 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   @Override
   public TCByteBuffer duplicate() {
-    return new TCByteBufferImpl(buffer.duplicate(), root);
+    return new TCByteBufferImpl(buffer.duplicate(), root, refCount);
   }
 
   @Override
@@ -357,7 +361,19 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   @Override
   public TCByteBuffer slice() {
-    return new TCByteBufferImpl(buffer.slice(), root);
+    return new TCByteBufferImpl(buffer.slice(), root, refCount);
+  }
+
+  @Override
+  public TCByteBuffer slice(int index, int length) {
+    if (index < 0 || length < 0 || index + length > capacity()) {
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length + ", capacity " + capacity());
+    }
+    ByteBuffer view = buffer.duplicate();
+    view.clear();
+    view.position(index);
+    view.limit(index + length);
+    return new TCByteBufferImpl(view.slice(), root, refCount);
   }
 
   @Override
@@ -367,7 +383,7 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   @Override
   public TCByteBuffer asReadOnlyBuffer() {
-    return new TCByteBufferImpl(buffer.asReadOnlyBuffer(), root);
+    return new TCByteBufferImpl(buffer.asReadOnlyBuffer(), root, refCount);
   }
 
   @Override
@@ -386,14 +402,46 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
     return buffer.hasArray();
   }
 
-  // Can be called only once on any of the views and the root is gone
+  // Drops the caller's reference, through any of the views; the root is gone once the last reference is dropped
   @Override
   public void recycle() {
-    if (root != null) {
-      TCByteBufferFactory.returnBuffer(root.reInit());
+    release();
+  }
+
+  @Override
+  public TCByteBuffer retain() {
+    while (true) {
+      int count = refCount.get();
+      if (count <= 0 && root != null && TCByteBufferFactory.isPoolingEnabled()) {
+        // it may already have been handed out again
+        throw new IllegalStateException("Buffer already released: " + this);
+      }
+      if (refCount.compareAndSet(count, Math.max(count, 0) + 1)) { return this; }
     }
   }
 
+  @Override
+  public boolean release() {
+    while (true) {
+      int count = refCount.get();
+      if (count <= 0) {
+        // releasing more than once has always been tolerated here, keep it that way
+        return false;
+      }
+      if (refCount.compareAndSet(count, count - 1)) {
+        if (count == 1 && root != null) {
+          TCByteBufferFactory.returnBuffer(root.reInit());
+        }
+        return count == 1;
+      }
+    }
+  }
+
+  @Override
+  public int refCnt() {
+    return refCount.get();
+  }
+
   @Override
   public TCByteBuffer reInit() {
     clear();
@@ -589,6 +637,7 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
   public void checkedOut() {
     if (state == CHECKED_OUT) { throw new AssertionError("Already checked out"); }
     state = CHECKED_OUT;
+    refCount.set(1);
   }
 
   @Override
@@ -599,7 +648,7 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
   @Override
   public void offer(TCByteBuffer buf) throws InterruptedException {
     if (this.bufPool != null) {
-      this.bufPool.offer(buf, 0, TimeUnit.MILLISECONDS);
+      this.bufPool.offer(buf);
     }
   }
 
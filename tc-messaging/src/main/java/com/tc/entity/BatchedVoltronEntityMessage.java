@@ -0,0 +1,110 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.net.ClientID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.tx.TransactionID;
+
+import java.util.Set;
+
+import org.terracotta.entity.EntityMessage;
+
+
+/**
+ * One invocation unpacked from, or about to be packed into, a {@link NetworkVoltronEntityBatchMessage}.
+ */
+class BatchedVoltronEntityMessage implements VoltronEntityMessage {
+  private final ClientID source;
+  private final TransactionID transactionID;
+  private final EntityDescriptor entityDescriptor;
+  private final boolean requiresReplication;
+  private final byte[] extendedData;
+  private final TransactionID oldestTransactionPending;
+  private final Set<Acks> requestedAcks;
+  private EntityMessage message;
+
+  BatchedVoltronEntityMessage(ClientID source, TransactionID transactionID, EntityDescriptor entityDescriptor, boolean requiresReplication, byte[] extendedData, TransactionID oldestTransactionPending, Set<Acks> requestedAcks) {
+    this.source = source;
+    this.transactionID = transactionID;
+    this.entityDescriptor = entityDescriptor;
+    this.requiresReplication = requiresReplication;
+    this.extendedData = extendedData;
+    this.oldestTransactionPending = oldestTransactionPending;
+    this.requestedAcks = requestedAcks;
+  }
+
+  @Override
+  public ClientID getSource() {
+    return this.source;
+  }
+
+  @Override
+  public TransactionID getTransactionID() {
+    return this.transactionID;
+  }
+
+  @Override
+  public EntityDescriptor getEntityDescriptor() {
+    return this.entityDescriptor;
+  }
+
+  @Override
+  public boolean doesRequireReplication() {
+    return this.requiresReplication;
+  }
+
+  @Override
+  public boolean doesRequestReceived() {
+    return this.requestedAcks.contains(Acks.RECEIVED);
+  }
+
+  @Override
+  public Type getVoltronType() {
+    return Type.INVOKE_ACTION;
+  }
+
+  @Override
+  public byte[] getExtendedData() {
+    return this.extendedData;
+  }
+
+  @Override
+  public TransactionID getOldestTransactionOnClient() {
+    return this.oldestTransactionPending;
+  }
+
+  Set<Acks> getRequestedAcks() {
+    return this.requestedAcks;
+  }
+
+  void setEntityMessage(EntityMessage message) {
+    this.message = message;
+  }
+
+  @Override
+  public EntityMessage getEntityMessage() {
+    return this.message;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchedVoltronEntityMessage{" + "source=" + source + ", transactionID=" + transactionID + ", entityDescriptor=" + entityDescriptor + '}';
+  }
+}
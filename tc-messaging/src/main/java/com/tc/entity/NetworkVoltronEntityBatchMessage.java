@@ -0,0 +1,55 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.TCMessage;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.tx.TransactionID;
+
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Several invocations of the same entity by the same client, packed into one network message.  Every invocation keeps
+ * its own transaction so, once the server has unpacked the batch, each one is received, completed, retired and, on
+ * reconnect, resent on its own exactly like an invocation sent as a {@link NetworkVoltronEntityMessage}.
+ */
+public interface NetworkVoltronEntityBatchMessage extends TCMessage {
+  /**
+   * Initializes what the invocations of the batch have in common.  The oldest pending transaction must not be newer
+   * than the first invocation added.
+   */
+  public void setContents(ClientID clientID, EntityDescriptor entityDescriptor, TransactionID oldestTransactionPending);
+
+  /**
+   * Appends an invocation to the batch.
+   * 
+   * @return the invocation as a stand-alone message, for tracking it while it is in flight
+   */
+  public VoltronEntityMessage addInvoke(TransactionID transactionID, boolean requiresReplication, byte[] extendedData, Set<VoltronEntityMessage.Acks> acks);
+
+  /**
+   * @return the invocations of the batch, in the order they were added
+   */
+  public List<VoltronEntityMessage> getInvokes();
+
+  public void setMessageCodecSupplier(MessageCodecSupplier supplier);
+}
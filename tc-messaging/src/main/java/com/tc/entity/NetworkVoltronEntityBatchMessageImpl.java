@@ -0,0 +1,164 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.msg.DSOMessageBase;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import com.tc.util.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.MessageCodec;
+import org.terracotta.entity.MessageCodecException;
+
+
+public class NetworkVoltronEntityBatchMessageImpl extends DSOMessageBase implements NetworkVoltronEntityBatchMessage {
+  private ClientID clientID;
+  private EntityDescriptor entityDescriptor;
+  private TransactionID oldestTransactionPending;
+  private MessageCodecSupplier supplier;
+  private final List<BatchedVoltronEntityMessage> invokes = new ArrayList<BatchedVoltronEntityMessage>();
+
+  public NetworkVoltronEntityBatchMessageImpl(SessionID sessionID, MessageMonitor monitor, TCByteBufferOutputStream out, MessageChannel channel, TCMessageType type) {
+    super(sessionID, monitor, out, channel, type);
+  }
+
+  public NetworkVoltronEntityBatchMessageImpl(SessionID sessionID, MessageMonitor monitor, MessageChannel channel, TCMessageHeader header, TCByteBuffer[] data) {
+    super(sessionID, monitor, channel, header, data);
+  }
+
+  @Override
+  public void setContents(ClientID clientID, EntityDescriptor entityDescriptor, TransactionID oldestTransactionPending) {
+    // Make sure that this wasn't called twice.
+    Assert.assertNull(this.clientID);
+    Assert.assertNotNull(clientID);
+    Assert.assertNotNull(entityDescriptor);
+    Assert.assertNotNull(oldestTransactionPending);
+    // Only invocations can be batched.
+    Assert.assertTrue(entityDescriptor.isIndexed());
+
+    this.clientID = clientID;
+    this.entityDescriptor = entityDescriptor;
+    this.oldestTransactionPending = oldestTransactionPending;
+  }
+
+  @Override
+  public VoltronEntityMessage addInvoke(TransactionID transactionID, boolean requiresReplication, byte[] extendedData, Set<VoltronEntityMessage.Acks> acks) {
+    Assert.assertNotNull(this.clientID);
+    Assert.assertNotNull(transactionID);
+    Assert.assertNotNull(extendedData);
+    Assert.assertNotNull(acks);
+    Assert.assertTrue(this.oldestTransactionPending.compareTo(transactionID) <= 0);
+
+    BatchedVoltronEntityMessage invoke = new BatchedVoltronEntityMessage(this.clientID, transactionID, this.entityDescriptor, requiresReplication, extendedData, this.oldestTransactionPending, acks);
+    this.invokes.add(invoke);
+    return invoke;
+  }
+
+  @Override
+  public List<VoltronEntityMessage> getInvokes() {
+    return Collections.<VoltronEntityMessage>unmodifiableList(this.invokes);
+  }
+
+  @Override
+  public void setMessageCodecSupplier(MessageCodecSupplier supplier) {
+    this.supplier = supplier;
+  }
+
+  @Override
+  protected void dehydrateValues() {
+    TCByteBufferOutputStream outputStream = getOutputStream();
+    // Like the single message, we don't use the NVpair stuff beyond the leading dummy pair.
+    putNVPair((byte)0, (byte)0);
+
+    this.clientID.serializeTo(outputStream);
+    this.entityDescriptor.serializeTo(outputStream);
+    outputStream.writeLong(this.oldestTransactionPending.toLong());
+
+    outputStream.writeInt(this.invokes.size());
+    for (BatchedVoltronEntityMessage invoke : this.invokes) {
+      outputStream.writeLong(invoke.getTransactionID().toLong());
+      outputStream.writeBoolean(invoke.doesRequireReplication());
+      Set<VoltronEntityMessage.Acks> acks = invoke.getRequestedAcks();
+      outputStream.writeByte(acks.size());
+      for (VoltronEntityMessage.Acks ack : acks) {
+        outputStream.writeByte(ack.ordinal());
+      }
+      byte[] extendedData = invoke.getExtendedData();
+      outputStream.writeInt(extendedData.length);
+      outputStream.write(extendedData);
+    }
+  }
+
+  @Override
+  protected boolean hydrateValue(byte name) throws IOException {
+    Assert.assertTrue(0 == name);
+    Assert.assertTrue(null == this.clientID);
+    // Read our dummy byte.
+    getByteValue();
+
+    this.clientID = ClientID.readFrom(getInputStream());
+    this.entityDescriptor = EntityDescriptor.readFrom(getInputStream());
+    this.oldestTransactionPending = new TransactionID(getLongValue());
+
+    // The codec lookup is the same for every invocation, and so is the outcome if it fails.
+    MessageCodec<? extends EntityMessage, ? extends EntityResponse> codec = null;
+    if (this.supplier != null) {
+      codec = this.supplier.getMessageCodec(this.entityDescriptor);
+    }
+
+    int count = getIntValue();
+    for (int i = 0; i < count; i++) {
+      TransactionID transactionID = new TransactionID(getLongValue());
+      boolean requiresReplication = getBooleanValue();
+      Set<VoltronEntityMessage.Acks> acks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
+      int ackCount = getByteValue();
+      for (int x = 0; x < ackCount; x++) {
+        acks.add(VoltronEntityMessage.Acks.values()[getByteValue()]);
+      }
+      byte[] extendedData = getBytesArray();
+      BatchedVoltronEntityMessage invoke = new BatchedVoltronEntityMessage(this.clientID, transactionID, this.entityDescriptor, requiresReplication, extendedData, this.oldestTransactionPending, acks);
+      if (codec != null) {
+        try {
+          invoke.setEntityMessage(codec.decodeMessage(extendedData));
+        } catch (MessageCodecException exception) {
+          // As for the single message, a later stage decodes again and reports the failure to the client.
+        }
+      }
+      this.invokes.add(invoke);
+    }
+    return true;
+  }
+}
@@ -27,7 +27,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Use me to write data to a set of TCByteBuffer instances. <br>
@@ -48,6 +51,10 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
 
   private final List<TCByteBuffer> localBuffers             = new ArrayList<TCByteBuffer>();
 
+  // buffers written by reference, retained until this stream is recycled, and the views of them in "buffers"
+  private final List<TCByteBuffer> sharedBuffers            = new ArrayList<TCByteBuffer>();
+  private final Set<TCByteBuffer>  sharedViews              = Collections.newSetFromMap(new IdentityHashMap<TCByteBuffer, Boolean>());
+
   private TCByteBuffer           current;
   private boolean                closed;
   private int                    written;
@@ -117,6 +124,9 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
   /**
    * Add arbitrary buffers into the stream. All of the data (from position 0 to limit()) in each buffer passed will be
    * used in the stream. If that is not what you want, setup your buffers differently before calling this write()
+   * <p>
+   * The buffers are not copied: each one is retained and stays part of the stream as is, and is released when the
+   * stream is recycled.
    */
   @Override
   public void write(TCByteBuffer[] data) {
@@ -139,7 +149,10 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
       }
 
       written += len;
-      buffers.add(element.duplicate().position(0));
+      sharedBuffers.add(element.retain());
+      TCByteBuffer view = element.duplicate().position(0);
+      sharedViews.add(view);
+      buffers.add(view);
     }
 
     if (!reuseCurrent) {
@@ -244,10 +257,11 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
       final int startIndex = index;
       int size = buffers.get(startIndex).limit();
 
-      if (size < maxBlockSize) {
+      // buffers written by reference are never copied
+      if (size < maxBlockSize && !sharedViews.contains(buffers.get(startIndex))) {
         while (index < (num - 1)) {
           int nextSize = buffers.get(index + 1).limit();
-          if ((size + nextSize) <= maxBlockSize) {
+          if ((size + nextSize) <= maxBlockSize && !sharedViews.contains(buffers.get(index + 1))) {
             size += nextSize;
             index++;
           } else {
@@ -532,6 +546,10 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
         buffer.recycle();
       }
     }
+    for (TCByteBuffer buffer : sharedBuffers) {
+      buffer.release();
+    }
+    sharedBuffers.clear();
   }
 
   @Override
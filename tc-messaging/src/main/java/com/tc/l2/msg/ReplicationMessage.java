@@ -150,4 +150,10 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
   public AbstractGroupMessage asAbstractGroupMessage() {
     return this;
   }
+
+  @Override
+  public boolean isCompressible() {
+    // entity payloads, and passive sync of whole entities, make up most of the replication stream
+    return true;
+  }
 }
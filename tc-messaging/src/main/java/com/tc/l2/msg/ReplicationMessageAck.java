@@ -33,18 +33,38 @@ public class ReplicationMessageAck extends AbstractGroupMessage implements IBatc
   public static final int INVALID               = 0; // Sent to replicate a request on the passive
   public static final int START_SYNC                = 4; // Sent from the passive when it wants the active to start passive sync.
   public static final int BATCH                = 5; // Sent from the passive to ack a batch of messages.
+  public static final int RESUME_SYNC                = 6; // Sent from a standby passive when it wants the active to pick its stream back up.
+  public static final int WINDOW_BATCH                = 7; // Sent from the passive to ack a batch of messages and the newest replication batch it took in.
 
   // Factory methods.
   public static ReplicationMessageAck createSyncRequestMessage() {
     return new ReplicationMessageAck(START_SYNC);
   }
 
+  public static ReplicationMessageAck createResumeRequestMessage(long lastActivityID) {
+    ReplicationMessageAck message = new ReplicationMessageAck(RESUME_SYNC);
+    message.resumeFrom = lastActivityID;
+    return message;
+  }
+
   public static ReplicationMessageAck createBatchAck() {
     return new ReplicationMessageAck(BATCH);
   }
 
+  /**
+   * A batch ack which can also carry the sequence ID of the newest replication batch received, for an active which
+   * paces replication with an adaptive window.  Plain batch acks keep their original wire format.
+   */
+  public static ReplicationMessageAck createWindowBatchAck() {
+    return new ReplicationMessageAck(WINDOW_BATCH);
+  }
+
 
   private List<ReplicationAckTuple> batch;
+  // The sequence ID of the newest ReplicationMessage the passive has taken in, -1 if this ack doesn't carry one.
+  private long receivedReplicationID = -1;
+  // The ID of the newest activity a resuming passive has taken in, the active replays everything after it.
+  private long resumeFrom = -1;
 
   public ReplicationMessageAck() {
     super(INVALID);
@@ -53,16 +73,20 @@ public class ReplicationMessageAck extends AbstractGroupMessage implements IBatc
 //  this type requests passive sync from the active  
   private ReplicationMessageAck(int type) {
     super(type);
-    if (BATCH == type) {
+    if (isBatch()) {
       this.batch = new ArrayList<ReplicationAckTuple>();
     }
   }
 
+  private boolean isBatch() {
+    return BATCH == this.getType() || WINDOW_BATCH == this.getType();
+  }
+
   // Note that this does change the instance, so synchronized would be required if it were being called by multiple threads.
   // However, due to other races in how the using code decides to stop changing a message, it makes more sense for them to serialize on that level.
   @Override
   public void addToBatch(ReplicationAckTuple element) {
-    Assert.assertTrue(BATCH == this.getType());
+    Assert.assertTrue(isBatch());
     this.batch.add(element);
   }
 
@@ -75,32 +99,56 @@ public class ReplicationMessageAck extends AbstractGroupMessage implements IBatc
     return this.batch;
   }
 
+  public void setReceivedReplicationID(long receivedReplicationID) {
+    Assert.assertTrue(WINDOW_BATCH == this.getType());
+    this.receivedReplicationID = receivedReplicationID;
+  }
+
+  public long getReceivedReplicationID() {
+    return this.receivedReplicationID;
+  }
+
+  public long getResumeFrom() {
+    Assert.assertTrue(RESUME_SYNC == this.getType());
+    return this.resumeFrom;
+  }
+
   @Override
   protected void basicDeserializeFrom(TCByteBufferInput in) throws IOException {
-    if (BATCH == this.getType()) {
+    if (isBatch()) {
       int batchSize = in.readInt();
-      // We should never send an empty message.
-      Assert.assertTrue(batchSize > 0);
       this.batch = new ArrayList<ReplicationAckTuple>();
       for (int i = 0; i < batchSize; ++i) {
         SyncReplicationActivity.ActivityID respondTo = new SyncReplicationActivity.ActivityID(in.readLong());
         ReplicationResultCode result = ReplicationResultCode.decode(in.readInt());
         this.batch.add(new ReplicationAckTuple(respondTo, result));
       }
+      if (WINDOW_BATCH == this.getType()) {
+        this.receivedReplicationID = in.readLong();
+      }
+      // We should never send an empty message.
+      Assert.assertTrue(batchSize > 0 || this.receivedReplicationID >= 0);
+    } else if (RESUME_SYNC == this.getType()) {
+      this.resumeFrom = in.readLong();
     }
   }
 
   @Override
   protected void basicSerializeTo(TCByteBufferOutput out) {
-    if (BATCH == this.getType()) {
+    if (isBatch()) {
       int size = this.batch.size();
       // We should never send an empty message.
-      Assert.assertTrue(size > 0);
+      Assert.assertTrue(size > 0 || this.receivedReplicationID >= 0);
       out.writeInt(size);
       for (ReplicationAckTuple tuple : this.batch) {
         out.writeLong(tuple.respondTo.id);
         out.writeInt(tuple.result.code());
       }
+      if (WINDOW_BATCH == this.getType()) {
+        out.writeLong(this.receivedReplicationID);
+      }
+    } else if (RESUME_SYNC == this.getType()) {
+      out.writeLong(this.resumeFrom);
     }
   }
 
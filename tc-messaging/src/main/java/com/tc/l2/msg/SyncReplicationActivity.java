@@ -19,6 +19,8 @@
 package com.tc.l2.msg;
 
 import com.tc.async.api.OrderedEventContext;
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
 import com.tc.io.TCByteBufferInput;
 import com.tc.io.TCByteBufferOutput;
 import com.tc.net.ClientID;
@@ -344,7 +346,12 @@ public class SyncReplicationActivity implements OrderedEventContext {
       
       if (payload != null) {
         out.writeInt(payload.length);
-        out.write(payload);
+        if (payload.length >= TCByteBufferFactory.FIXED_BUFFER_SIZE) {
+          // the same payload goes out to every passive, share it instead of copying it into each message
+          out.write(new TCByteBuffer[] { TCByteBufferFactory.wrap(payload) });
+        } else {
+          out.write(payload);
+        }
       } else {
         out.writeInt(0);
       }
@@ -74,6 +74,13 @@ public abstract class AbstractGroupMessage implements GroupMessage {
     return true;
   }
 
+  /**
+   * @return true for messages carrying bulk data, which are compressed on their way to servers that negotiated it
+   */
+  public boolean isCompressible() {
+    return false;
+  }
+
   private static final synchronized MessageID getNextID() {
     return new MessageID(nextID++);
   }
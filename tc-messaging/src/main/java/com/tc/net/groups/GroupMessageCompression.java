@@ -0,0 +1,143 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.groups;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferInput;
+import com.tc.io.TCByteBufferOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the group messages sent to one peer server, once both ends agreed to it during the group handshake.
+ * <p>
+ * Each message is deflated as a stream of its own at the fastest level, so every element of a batch is matched
+ * against what came before it in the same batch while the receiver can still inflate any message on its own. Messages
+ * smaller than the minimum size go out as they are since they gain little.
+ */
+public class GroupMessageCompression {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final int minimumSize;
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  private final byte[] input = new byte[CHUNK_SIZE];
+  private byte[] output = new byte[CHUNK_SIZE];
+
+  private final LongAdder compressedMessages = new LongAdder();
+  private final LongAdder skippedMessages = new LongAdder();
+  private final LongAdder uncompressedBytes = new LongAdder();
+  private final LongAdder compressedBytes = new LongAdder();
+  private final LongAdder compressNanos = new LongAdder();
+
+  public GroupMessageCompression(int minimumSize) {
+    this.minimumSize = minimumSize;
+  }
+
+  public boolean shouldCompress(int size) {
+    if (size < minimumSize) {
+      skippedMessages.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes the length of the data, then the length and content of its compressed form.
+   */
+  public synchronized void compress(TCByteBuffer[] data, int length, TCByteBufferOutput out) {
+    long start = System.nanoTime();
+    deflater.reset();
+    int compressed = 0;
+    for (TCByteBuffer buffer : data) {
+      TCByteBuffer view = buffer.duplicate().position(0);
+      while (view.hasRemaining()) {
+        int chunk = Math.min(view.remaining(), input.length);
+        view.get(input, 0, chunk);
+        deflater.setInput(input, 0, chunk);
+        while (!deflater.needsInput()) {
+          compressed = deflate(compressed);
+        }
+      }
+    }
+    deflater.finish();
+    while (!deflater.finished()) {
+      compressed = deflate(compressed);
+    }
+    out.writeInt(length);
+    out.writeInt(compressed);
+    out.write(output, 0, compressed);
+
+    compressNanos.add(System.nanoTime() - start);
+    compressedMessages.increment();
+    uncompressedBytes.add(length);
+    compressedBytes.add(compressed);
+  }
+
+  private int deflate(int offset) {
+    if (offset == output.length) {
+      output = Arrays.copyOf(output, output.length * 2);
+    }
+    return offset + deflater.deflate(output, offset, output.length - offset);
+  }
+
+  /**
+   * Reads back what {@link #compress(TCByteBuffer[], int, TCByteBufferOutput)} wrote.
+   */
+  public static byte[] decompress(TCByteBufferInput in) throws IOException {
+    byte[] data = new byte[in.readInt()];
+    byte[] compressed = new byte[in.readInt()];
+    in.readFully(compressed);
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      int length = inflater.inflate(data);
+      if (length != data.length || !inflater.finished()) {
+        throw new IOException("compressed group message inflated to " + length + " of " + data.length + " bytes");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+    return data;
+  }
+
+  /**
+   * Message and byte counts, the compressed size as a percentage of the original and the time spent compressing.
+   */
+  public Map<String, Long> getStats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    long before = uncompressedBytes.sum();
+    long after = compressedBytes.sum();
+    stats.put("compressedMessages", compressedMessages.sum());
+    stats.put("skippedMessages", skippedMessages.sum());
+    stats.put("uncompressedBytes", before);
+    stats.put("compressedBytes", after);
+    stats.put("compressedPercent", (0 == before) ? 100L : after * 100 / before);
+    stats.put("compressNanos", compressNanos.sum());
+    return stats;
+  }
+}
@@ -40,6 +40,7 @@ public class TCGroupHandshakeMessage extends DSOMessageBase {
   private final static byte HANDSHAKE_MESSAGE_ID = 3;
   private final static byte VERSION_ID           = 4;
   private final static byte WEIGHTS_ID           = 5;
+  private final static byte COMPRESSION_ID       = 6;
   private final static int  HANDSHAKE_ACK        = 2;
   private final static int  HANDSHAKE_OK         = 1;
   private final static int  HANDSHAKE_DENY       = 0;
@@ -48,6 +49,7 @@ public class TCGroupHandshakeMessage extends DSOMessageBase {
   private int               message;
   private String            version;
   private long[]            weights;
+  private boolean           compression;
 
   public TCGroupHandshakeMessage(SessionID sessionID, MessageMonitor monitor, TCByteBufferOutputStream out,
                                  MessageChannel channel, TCMessageType type) {
@@ -90,10 +92,22 @@ public class TCGroupHandshakeMessage extends DSOMessageBase {
   }
 
   public void initializeNodeID(ServerID aNodeID, String ver, long[] weightsArray) {
+    initializeNodeID(aNodeID, ver, weightsArray, false);
+  }
+
+  public void initializeNodeID(ServerID aNodeID, String ver, long[] weightsArray, boolean offerCompression) {
     this.messageType = NODE_ID;
     this.nodeID = aNodeID;
     this.version = ver;
     this.weights = weightsArray;
+    this.compression = offerCompression;
+  }
+
+  /**
+   * @return true if the sender can compress and decompress group messages, and wants them compressed
+   */
+  public boolean isCompressionOffered() {
+    return compression;
   }
 
   public String getVersion() {
@@ -114,6 +128,7 @@ public class TCGroupHandshakeMessage extends DSOMessageBase {
         for (long weight : weights) {
           getOutputStream().writeLong(weight);
         }
+        putNVPair(COMPRESSION_ID, compression);
         putNVPair(NODE_ID, nodeID);
         return;
       case HANDSHAKE_MESSAGE_ID:
@@ -139,6 +154,9 @@ public class TCGroupHandshakeMessage extends DSOMessageBase {
       case VERSION_ID:
         version = getStringValue();
         return true;
+      case COMPRESSION_ID:
+        compression = getBooleanValue();
+        return true;
       case WEIGHTS_ID:
         weights = new long[getIntValue()];
         for (int i = 0; i < weights.length; i++) {
@@ -19,6 +19,8 @@
 package com.tc.net.groups;
 
 import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.io.TCByteBufferInput;
 import com.tc.io.TCByteBufferInputStream;
 import com.tc.io.TCByteBufferOutputStream;
 import com.tc.net.protocol.tcm.MessageChannel;
@@ -35,7 +37,9 @@ import java.io.IOException;
  */
 public class TCGroupMessageWrapper extends DSOMessageBase {
   private final static byte GROUP_MESSAGE_ID = 1;
+  private final static byte COMPRESSED_GROUP_MESSAGE_ID = 2;
   private AbstractGroupMessage      message;
+  private GroupMessageCompression   compression;
 
   public TCGroupMessageWrapper(SessionID sessionID, MessageMonitor monitor, TCByteBufferOutputStream out,
                                MessageChannel channel, TCMessageType type) {
@@ -55,33 +59,69 @@ public class TCGroupMessageWrapper extends DSOMessageBase {
     return this.message;
   }
 
+  /**
+   * Compresses the group message, if it is compressible, with the compression negotiated with the receiving server.
+   */
+  public void setCompression(GroupMessageCompression compression) {
+    this.compression = compression;
+  }
+
   @Override
   protected void dehydrateValues() {
-    putNVPair(GROUP_MESSAGE_ID, this.message.getClass().getName());
-    this.message.serializeTo(getOutputStream());
+    if (null != this.compression && this.message.isCompressible()) {
+      TCByteBufferOutputStream raw = new TCByteBufferOutputStream();
+      try {
+        this.message.serializeTo(raw);
+        int length = raw.getBytesWritten();
+        if (this.compression.shouldCompress(length)) {
+          putNVPair(COMPRESSED_GROUP_MESSAGE_ID, this.message.getClass().getName());
+          this.compression.compress(raw.toArray(), length, getOutputStream());
+        } else {
+          putNVPair(GROUP_MESSAGE_ID, this.message.getClass().getName());
+          getOutputStream().write(raw.toArray());
+        }
+      } finally {
+        raw.recycle();
+      }
+    } else {
+      putNVPair(GROUP_MESSAGE_ID, this.message.getClass().getName());
+      this.message.serializeTo(getOutputStream());
+    }
   }
 
   @Override
   protected boolean hydrateValue(byte name) throws IOException {
     switch (name) {
-      case GROUP_MESSAGE_ID:
+      case GROUP_MESSAGE_ID: {
         TCByteBufferInputStream in = getInputStream();
-        try {
-          this.message = (AbstractGroupMessage) Class.forName(in.readString()).newInstance();
-        } catch (InstantiationException e) {
-          throw new RuntimeException(e);
-        } catch (IllegalAccessException e) {
-          throw new RuntimeException(e);
-        } catch (ClassNotFoundException e) {
-          throw new RuntimeException(e);
-        }
+        this.message = createGroupMessage(in.readString());
         this.message.deserializeFrom(in);
         return true;
+      }
+      case COMPRESSED_GROUP_MESSAGE_ID: {
+        TCByteBufferInputStream in = getInputStream();
+        this.message = createGroupMessage(in.readString());
+        TCByteBufferInput data = new TCByteBufferInputStream(TCByteBufferFactory.wrap(GroupMessageCompression.decompress(in)));
+        this.message.deserializeFrom(data);
+        return true;
+      }
       default:
         return false;
     }
   }
 
+  private static AbstractGroupMessage createGroupMessage(String className) {
+    try {
+      return (AbstractGroupMessage) Class.forName(className).newInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public void doRecycleOnRead() {
     if (message.isRecycleOnRead(this)) {
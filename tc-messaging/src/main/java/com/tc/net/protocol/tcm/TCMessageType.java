@@ -56,7 +56,8 @@ public final class TCMessageType {
   public static final int           TYPE_NOOP_MESSAGE              = 21;
   public static final int           TYPE_DIAGNOSTIC_REQUEST                 = 22;
   public static final int           TYPE_DIAGNOSTIC_RESPONSE                 = 23;
-  public static final int           TYPE_LAST_MESSAGE_DO_NOT_USE              = 24;
+  public static final int           TYPE_VOLTRON_ENTITY_BATCH_MESSAGE                 = 24;
+  public static final int           TYPE_LAST_MESSAGE_DO_NOT_USE              = 25;
 
   public static final TCMessageType PING_MESSAGE                                      = new TCMessageType();
   public static final TCMessageType CLIENT_HANDSHAKE_MESSAGE                          = new TCMessageType();
@@ -80,6 +81,7 @@ public final class TCMessageType {
   public static final TCMessageType NOOP_MESSAGE                   = new TCMessageType();  
   public static final TCMessageType DIAGNOSTIC_REQUEST                   = new TCMessageType();  
   public static final TCMessageType DIAGNOSTIC_RESPONSE                   = new TCMessageType();  
+  public static final TCMessageType VOLTRON_ENTITY_BATCH_MESSAGE                      = new TCMessageType();
   
   public static final TCMessageType LAST_MESSAGE_DO_NOT_USE                   = new TCMessageType();  // this one must always be the last
 
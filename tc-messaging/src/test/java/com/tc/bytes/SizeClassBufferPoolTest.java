@@ -0,0 +1,131 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SizeClassBufferPoolTest {
+
+  @Test
+  public void testSizeClasses() {
+    SizeClassBufferPool pool = new SizeClassBufferPool(false, 64 * 1024, 4, 4);
+    assertEquals(64 * 1024, pool.getMaxBufferSize());
+    assertEquals(0, pool.sizeClassFor(1));
+    assertEquals(0, pool.sizeClassFor(4096));
+    assertEquals(1, pool.sizeClassFor(4097));
+    assertEquals(1, pool.sizeClassFor(8192));
+    assertEquals(4, pool.sizeClassFor(64 * 1024));
+    assertEquals(-1, pool.sizeClassFor(64 * 1024 + 1));
+    assertEquals(16 * 1024, pool.take(2).capacity());
+  }
+
+  @Test
+  public void testSharedPoolIsBounded() {
+    SizeClassBufferPool pool = new SizeClassBufferPool(false, 8192, 0, 4);
+    TCByteBuffer[] buffers = new TCByteBuffer[3];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = pool.take(0);
+    }
+    for (TCByteBuffer buffer : buffers) {
+      buffer.commit();
+      pool.offer(buffer);
+    }
+    // each class gets half of the 16K budget: two 4K buffers, one 8K buffer
+    TCByteBuffer large = pool.take(1);
+    TCByteBuffer extra = pool.take(1);
+    large.commit();
+    pool.offer(large);
+    extra.commit();
+    pool.offer(extra);
+
+    Map<String, Long> stats = pool.getStats();
+    assertEquals(Long.valueOf(5), stats.get("misses"));
+    assertEquals(Long.valueOf(2), stats.get("discards"));
+    assertEquals(Long.valueOf(3), stats.get("pooledBuffers"));
+    assertEquals(Long.valueOf(2 * 4096 + 8192), stats.get("pooledBytes"));
+
+    assertSame(buffers[0], pool.take(0));
+    assertSame(buffers[1], pool.take(0));
+    assertSame(large, pool.take(1));
+    stats = pool.getStats();
+    assertEquals(Long.valueOf(3), stats.get("sharedHits"));
+    assertEquals(Long.valueOf(0), stats.get("pooledBytes"));
+  }
+
+  @Test
+  public void testPoolsStayWithinTheirByteBudget() {
+    SizeClassBufferPool pool = new SizeClassBufferPool(false, 64 * 1024, 20, 30);
+    assertTrue(pool.getThreadCacheByteLimit() <= 20L * 4096);
+    assertTrue(pool.getSharedByteLimit() <= 30L * 4096);
+
+    // return as many buffers of every class as a whole 4K budget's worth
+    for (int sizeClass = 0; sizeClass <= pool.sizeClassFor(64 * 1024); sizeClass++) {
+      TCByteBuffer[] buffers = new TCByteBuffer[30 >> sizeClass];
+      for (int i = 0; i < buffers.length; i++) {
+        buffers[i] = pool.take(sizeClass);
+      }
+      for (TCByteBuffer buffer : buffers) {
+        buffer.commit();
+        pool.offer(buffer);
+      }
+    }
+    long pooledBytes = pool.getStats().get("pooledBytes");
+    assertTrue(pooledBytes > 0);
+    assertTrue(pooledBytes <= 30L * 4096);
+  }
+
+  @Test
+  public void testRegisteredThreadsCacheLocally() throws Exception {
+    final SizeClassBufferPool pool = new SizeClassBufferPool(true, 4096, 1, 1);
+    ThreadGroup group = new ThreadGroup("pooled");
+    TCByteBufferFactory.registerThreadGroup(group);
+    final TCByteBuffer[] taken = new TCByteBuffer[4];
+    Thread thread = new Thread(group, new Runnable() {
+      @Override
+      public void run() {
+        taken[0] = pool.take(0);
+        taken[1] = pool.take(0);
+        // the thread cache holds one, the other overflows to the shared pool
+        taken[0].commit();
+        pool.offer(taken[0]);
+        taken[1].commit();
+        pool.offer(taken[1]);
+        taken[2] = pool.take(0);
+        taken[3] = pool.take(0);
+      }
+    });
+    thread.start();
+    thread.join();
+
+    assertSame(taken[0], taken[2]);
+    assertSame(taken[1], taken[3]);
+    assertTrue(taken[0].isDirect());
+    Map<String, Long> stats = pool.getStats();
+    assertEquals(Long.valueOf(1), stats.get("threadCacheHits"));
+    assertEquals(Long.valueOf(1), stats.get("sharedHits"));
+    assertEquals(Long.valueOf(2), stats.get("misses"));
+    assertEquals(Long.valueOf(0), stats.get("pooledBuffers"));
+  }
+}
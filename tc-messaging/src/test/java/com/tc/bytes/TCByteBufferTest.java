@@ -21,6 +21,8 @@ package com.tc.bytes;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class TCByteBufferTest {
@@ -58,4 +60,41 @@ public class TCByteBufferTest {
     }
 
   }
+
+  @Test
+  public void testSliceSharesContentAndReferenceCount() {
+    TCByteBuffer buf = TCByteBufferFactory.getInstance(false, TCByteBufferFactory.FIXED_BUFFER_SIZE);
+    buf.put(10, new byte[] { 1, 2, 3 });
+    TCByteBuffer slice = buf.slice(10, 2);
+    assertEquals(0, slice.position());
+    assertEquals(2, slice.limit());
+    assertEquals(1, slice.get(0));
+    assertEquals(2, slice.get(1));
+
+    assertEquals(1, buf.refCnt());
+    slice.retain();
+    assertEquals(2, buf.refCnt());
+
+    long pooled = pooledHeapBuffers();
+    // the allocator's reference goes away but the slice still holds the buffer
+    buf.recycle();
+    assertEquals(1, slice.refCnt());
+    assertEquals(pooled, pooledHeapBuffers());
+    assertTrue(slice.release());
+    assertEquals(0, buf.refCnt());
+    assertEquals(pooled + 1, pooledHeapBuffers());
+    // releasing too often is tolerated
+    assertFalse(buf.release());
+
+    try {
+      buf.slice(4090, 10);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  private static long pooledHeapBuffers() {
+    return TCByteBufferFactory.getPoolStats().get("heap.pooledBuffers");
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import java.io.IOException;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.entity.VoltronEntityMessage.Acks;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.net.protocol.tcm.UnknownNameException;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.EntityID;
+import com.tc.object.FetchID;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+
+public class NetworkVoltronEntityBatchMessageImplTest {
+  @Test
+  public void testSerialization() throws UnknownNameException, IOException {
+    MessageMonitor monitor = mock(MessageMonitor.class);
+    TCByteBufferOutputStream outputStream = new TCByteBufferOutputStream(4, 4096, false);
+    NetworkVoltronEntityBatchMessageImpl message = new NetworkVoltronEntityBatchMessageImpl(new SessionID(0), monitor, outputStream, null, TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE);
+
+    ClientID clientID = new ClientID(1);
+    EntityDescriptor entityDescriptor = EntityDescriptor.createDescriptorForInvoke(new FetchID(2), new ClientInstanceID(3));
+    TransactionID oldestTransactionPending = new TransactionID(4);
+    message.setContents(clientID, entityDescriptor, oldestTransactionPending);
+    message.addInvoke(new TransactionID(5), true, new byte[] { 1 }, EnumSet.of(Acks.RECEIVED));
+    message.addInvoke(new TransactionID(6), false, new byte[0], EnumSet.noneOf(Acks.class));
+    message.addInvoke(new TransactionID(7), true, new byte[] { 2, 3 }, EnumSet.of(Acks.SENT, Acks.RETIRED));
+    message.dehydrate();
+
+    TCMessageHeader header = (TCMessageHeader) message.getHeader();
+    TCByteBuffer[] payload = message.getPayload();
+    outputStream.close();
+    NetworkVoltronEntityBatchMessageImpl decodingMessage = new NetworkVoltronEntityBatchMessageImpl(SessionID.NULL_ID, monitor, null, header, payload);
+    decodingMessage.hydrate();
+
+    List<VoltronEntityMessage> invokes = decodingMessage.getInvokes();
+    assertEquals(3, invokes.size());
+    for (int i = 0; i < invokes.size(); i++) {
+      VoltronEntityMessage invoke = invokes.get(i);
+      assertEquals(clientID, invoke.getSource());
+      assertEquals(new TransactionID(5 + i), invoke.getTransactionID());
+      // invoke descriptors can't be compared as a whole
+      assertEquals(entityDescriptor.getFetchID(), invoke.getEntityDescriptor().getFetchID());
+      assertEquals(entityDescriptor.getClientInstanceID(), invoke.getEntityDescriptor().getClientInstanceID());
+      assertEquals(VoltronEntityMessage.Type.INVOKE_ACTION, invoke.getVoltronType());
+      assertEquals(oldestTransactionPending, invoke.getOldestTransactionOnClient());
+    }
+    assertTrue(invokes.get(0).doesRequireReplication());
+    assertTrue(invokes.get(0).doesRequestReceived());
+    assertArrayEquals(new byte[] { 1 }, invokes.get(0).getExtendedData());
+    assertFalse(invokes.get(1).doesRequireReplication());
+    assertFalse(invokes.get(1).doesRequestReceived());
+    assertEquals(0, invokes.get(1).getExtendedData().length);
+    assertEquals(EnumSet.of(Acks.SENT, Acks.RETIRED), ((BatchedVoltronEntityMessage) invokes.get(2)).getRequestedAcks());
+    assertArrayEquals(new byte[] { 2, 3 }, invokes.get(2).getExtendedData());
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testLifecycleDescriptorRejected() {
+    NetworkVoltronEntityBatchMessageImpl message = new NetworkVoltronEntityBatchMessageImpl(new SessionID(0), mock(MessageMonitor.class), new TCByteBufferOutputStream(), null, TCMessageType.VOLTRON_ENTITY_BATCH_MESSAGE);
+    message.setContents(new ClientID(1), EntityDescriptor.createDescriptorForLifecycle(EntityID.NULL_ID, 1), new TransactionID(1));
+  }
+}
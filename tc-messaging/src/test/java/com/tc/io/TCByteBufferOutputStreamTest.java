@@ -231,6 +231,26 @@ public class TCByteBufferOutputStreamTest {
     }
   }
 
+  @Test
+  public void testArrayWriteSharesBuffers() {
+    TCByteBufferOutputStream output = new TCByteBufferOutputStream();
+    byte[] payload = new byte[] { 4, 5, 6 };
+    TCByteBuffer shared = TCByteBufferFactory.wrap(payload);
+    output.write(new byte[] { 1, 2, 3 });
+    output.write(new TCByteBuffer[] { shared });
+    output.write(new byte[] { 7, 8 });
+    assertEquals(2, shared.refCnt());
+
+    TCByteBuffer[] bufsOut = output.toArray();
+    // the small buffers on either side are not consolidated across the shared one
+    assertEquals(3, bufsOut.length);
+    assertTrue(payload == bufsOut[1].array());
+    compareData(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, bufsOut);
+
+    output.recycle();
+    assertEquals(1, shared.refCnt());
+  }
+
   @Test
   public void testBytesWritten() {
     TCByteBufferOutputStream bbos = new TCByteBufferOutputStream();
@@ -0,0 +1,62 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.l2.msg;
+
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReplicationMessageAckTest {
+
+  @SuppressWarnings("resource")
+  private ReplicationMessageAck writeAndRead(ReplicationMessageAck ack) throws Exception {
+    TCByteBufferOutputStream bo = new TCByteBufferOutputStream();
+    ack.serializeTo(bo);
+    TCByteBufferInputStream bi = new TCByteBufferInputStream(bo.toArray());
+    ReplicationMessageAck read = new ReplicationMessageAck();
+    read.deserializeFrom(bi);
+    // nothing left over, both sides agree on the format
+    assertEquals(0, bi.available());
+    return read;
+  }
+
+  @Test
+  public void testBatchAckCarriesNoReplicationID() throws Exception {
+    ReplicationMessageAck ack = ReplicationMessageAck.createBatchAck();
+    ack.addToBatch(new ReplicationAckTuple(new SyncReplicationActivity.ActivityID(7), ReplicationResultCode.RECEIVED));
+    ReplicationMessageAck read = writeAndRead(ack);
+    assertEquals(ReplicationMessageAck.BATCH, read.getType());
+    assertEquals(1, read.getBatchSize());
+    assertEquals(7, read.getBatch().get(0).respondTo.id);
+    assertEquals(-1, read.getReceivedReplicationID());
+  }
+
+  @Test
+  public void testWindowBatchAckCarriesReplicationID() throws Exception {
+    ReplicationMessageAck ack = ReplicationMessageAck.createWindowBatchAck();
+    ack.setReceivedReplicationID(42);
+    ReplicationMessageAck read = writeAndRead(ack);
+    assertEquals(ReplicationMessageAck.WINDOW_BATCH, read.getType());
+    assertEquals(0, read.getBatchSize());
+    assertEquals(42, read.getReceivedReplicationID());
+  }
+}